@@ -21,6 +21,7 @@ import com.intellij.openapi.components.ApplicationComponent;
 import com.intellij.psi.ElementManipulators;
 import net.venaglia.nondairy.soylang.elements.SoyPsiElement;
 import net.venaglia.nondairy.soylang.elements.SoyElementManipulator;
+import net.venaglia.nondairy.soylang.elements.SoyFunctionRegistry;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -41,6 +42,7 @@ public class NonDairyMain implements ApplicationComponent {
                 ElementManipulators.INSTANCE.addExplicitExtension(SoyPsiElement.class, new SoyElementManipulator());
             }
         });
+        SoyFunctionRegistry.INSTANCE.registerConfiguredFunctions();
     }
 
     public void disposeComponent() {
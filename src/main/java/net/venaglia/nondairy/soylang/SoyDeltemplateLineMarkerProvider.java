@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang;
+
+import com.intellij.codeInsight.daemon.RelatedItemLineMarkerInfo;
+import com.intellij.codeInsight.daemon.RelatedItemLineMarkerProvider;
+import com.intellij.codeInsight.navigation.NavigationGutterIconBuilder;
+import com.intellij.icons.AllIcons;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.NotNullLazyValue;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import net.venaglia.nondairy.i18n.I18N;
+import net.venaglia.nondairy.soylang.cache.CacheEntry;
+import net.venaglia.nondairy.soylang.cache.DeltemplateOverrideCache;
+import net.venaglia.nondairy.soylang.elements.AbsoluteTemplateNameDef;
+import net.venaglia.nondairy.soylang.elements.TreeNavigator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Adds "overrides" and "overridden by" gutter markers to deltemplates, using
+ * the {@link DeltemplateOverrideCache}. The implementations a marker
+ * navigates to are only located when the marker is clicked.
+ */
+public class SoyDeltemplateLineMarkerProvider extends RelatedItemLineMarkerProvider {
+
+    @Override
+    protected void collectNavigationMarkers(@NotNull PsiElement element,
+                                            @NotNull Collection<? super RelatedItemLineMarkerInfo> result) {
+        PsiElement parent = element.getParent();
+        if (!(parent instanceof AbsoluteTemplateNameDef) ||
+            element.getFirstChild() != null ||
+            parent.getFirstChild() != element) {
+            return; // markers are placed on the first leaf of a deltemplate name
+        }
+        PsiFile psiFile = parent.getContainingFile();
+        VirtualFile file = psiFile == null ? null : psiFile.getVirtualFile();
+        if (file == null) {
+            return;
+        }
+        Project project = parent.getProject();
+        Collection<Module> modules = Arrays.asList(TreeNavigator.INSTANCE.getModules(project));
+        String name = ((AbsoluteTemplateNameDef)parent).getName();
+        CacheEntry entry = DeltemplateOverrideCache.findEntry(modules, file, name, parent.getTextRange());
+        if (entry == null) {
+            return; // not indexed yet
+        }
+        boolean isDefault = DeltemplateOverrideCache.isDefault(entry);
+        List<CacheEntry> related = DeltemplateOverrideCache.findImplementations(modules,
+                                                                               entry.getTemplate(),
+                                                                               entry.getVariant(),
+                                                                               !isDefault);
+        if (related.isEmpty()) {
+            return;
+        }
+        String tooltip = isDefault
+                         ? I18N.msg("gutter.deltemplate.overridden", related.size())
+                         : I18N.msg("gutter.deltemplate.overrides", entry.getTemplate());
+        NavigationGutterIconBuilder<PsiElement> builder =
+                NavigationGutterIconBuilder.create(isDefault
+                                                   ? AllIcons.Gutter.OverridenMethod
+                                                   : AllIcons.Gutter.OverridingMethod)
+                                           .setTargets(new DeltemplateTargets(project, related))
+                                           .setTooltipText(tooltip)
+                                           .setPopupTitle(I18N.msg("gutter.deltemplate.popup.title", entry.getTemplate()));
+        result.add(builder.createLineMarkerInfo(element));
+    }
+
+    /**
+     * Locates the deltemplate_name elements of indexed implementations, using
+     * the offsets recorded when their files were indexed.
+     */
+    private static class DeltemplateTargets extends NotNullLazyValue<Collection<? extends PsiElement>> {
+
+        private final Project project;
+        private final Collection<CacheEntry> entries;
+
+        private DeltemplateTargets(@NotNull Project project, @NotNull Collection<CacheEntry> entries) {
+            this.project = project;
+            this.entries = entries;
+        }
+
+        @NotNull
+        @Override
+        protected Collection<? extends PsiElement> compute() {
+            List<PsiElement> targets = new ArrayList<PsiElement>(entries.size());
+            for (CacheEntry entry : entries) {
+                PsiElement target = findTarget(entry);
+                if (target != null) {
+                    targets.add(target);
+                }
+            }
+            return targets;
+        }
+
+        @Nullable
+        private PsiElement findTarget(@NotNull CacheEntry entry) {
+            VirtualFile file = entry.getFile();
+            PsiFile psiFile = file == null ? null : TreeNavigator.INSTANCE.getPsiManager(project).findFile(file);
+            PsiElement leaf = psiFile == null || entry.getOffset() < 0 ? null : psiFile.findElementAt(entry.getOffset());
+            AbsoluteTemplateNameDef name = PsiTreeUtil.getParentOfType(leaf, AbsoluteTemplateNameDef.class, false);
+            return name != null && entry.getTemplate().equals(name.getName()) ? name : null;
+        }
+    }
+}
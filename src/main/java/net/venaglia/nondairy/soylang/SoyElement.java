@@ -21,6 +21,7 @@ import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.TokenSet;
 import net.venaglia.nondairy.soylang.elements.*;
 import net.venaglia.nondairy.soylang.elements.factory.ElementClass;
+import net.venaglia.nondairy.soylang.lexer.SoyToken;
 import org.jetbrains.annotations.NonNls;
 
 import java.lang.reflect.Field;
@@ -35,6 +36,11 @@ import java.util.TreeMap;
  *
  * Class to represent and statically enumerate all supported parser tokens
  * generated by the soy parser classes.
+ *
+ * The tag pairs enclosing templates and deltemplates are
+ * {@link SoyTemplateBlockType}s rather than SoyElements, so they can be
+ * reparsed on their own, and template bodies are a
+ * {@link SoyTemplateBodyType}, so they can be parsed lazily.
  */
 public final class SoyElement extends IElementType {
 
@@ -76,7 +82,7 @@ public final class SoyElement extends IElementType {
     public static final SoyElement template_name_ref = new SoyElement(1202, "template_name_ref");
     @ElementClass(AbsoluteTemplateNameRef.class)
     public static final SoyElement template_name_ref_absolute = new SoyElement(1203, "template_name_ref_absolute");
-    public static final SoyElement template_tag_pair = new SoyElement(1204, "template_tag_pair");
+    public static final SoyTemplateBlockType template_tag_pair = new SoyTemplateBlockType(1204, "template_tag_pair", SoyToken.TEMPLATE);
 
     @ElementClass(DelegateTemplateDefElement.class)
     public static final SoyElement deltemplate_tag = new SoyElement(1205, "deltemplate_tag");
@@ -84,7 +90,7 @@ public final class SoyElement extends IElementType {
     public static final SoyElement deltemplate_name = new SoyElement(1206, "deltemplate_name");
     @ElementClass(AbsoluteDelegateNameRef.class)
     public static final SoyElement deltemplate_name_ref = new SoyElement(1207, "deltemplate_name_ref");
-    public static final SoyElement deltemplate_tag_pair = new SoyElement(1208, "deltemplate_tag_pair");
+    public static final SoyTemplateBlockType deltemplate_tag_pair = new SoyTemplateBlockType(1208, "deltemplate_tag_pair", SoyToken.DELTEMPLATE);
 
     @ElementClass(SoyDocCommentElement.class)
     public static final SoyElement doc_comment = new SoyElement(1300, "doc_comment");
@@ -135,7 +141,7 @@ public final class SoyElement extends IElementType {
     public static final SoyElement key_literal = new SoyElement(1812, "key_literal");
     public static final SoyElement value_literal = new SoyElement(1813, "value_literal");
 
-    @ElementClass(SoyCommandTag.class)
+    @ElementClass(CallTagElement.class)
     public static final SoyElement call_tag = new SoyElement(1900, "call_tag");
     public static final SoyElement call_tag_pair = new SoyElement(1901, "call_tag_pair");
     @ElementClass(SoyCommandTag.class)
@@ -151,6 +157,7 @@ public final class SoyElement extends IElementType {
     public static final SoyElement let_tag_pair = new SoyElement(2101, "let_tag_pair");
 
     public static final SoyElement template_content = new SoyElement(4000, "template_content");
+    public static final SoyTemplateBodyType template_body = new SoyTemplateBodyType(4001, "template_body");
 
     public static final SoyElement ignored_text = new SoyElement(7000, "ignored_text");
     public static final SoyElement invalid_text = new SoyElement(7001, "invalid_text");
@@ -80,7 +80,7 @@ public class SoyFile extends PsiFileBase implements ModuleRef {
     }
 
     public NamespaceDefElement getNamespaceElement() {
-        PsiElement element = NAMESPACE_NAME_PATH.navigate(this).oneOrNull();
+        PsiElement element = NAMESPACE_NAME_PATH.first(this);
         return element instanceof NamespaceDefElement ? (NamespaceDefElement)element : null;
     }
 
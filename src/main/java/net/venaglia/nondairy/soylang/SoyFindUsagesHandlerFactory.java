@@ -18,16 +18,32 @@ package net.venaglia.nondairy.soylang;
 
 import com.intellij.find.findUsages.FindUsagesHandler;
 import com.intellij.find.findUsages.FindUsagesHandlerFactory;
+import com.intellij.find.findUsages.FindUsagesOptions;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiReference;
+import com.intellij.psi.search.GlobalSearchScope;
 import com.intellij.psi.search.SearchScope;
+import com.intellij.usageView.UsageInfo;
+import com.intellij.util.Processor;
+import net.venaglia.nondairy.soylang.cache.CallEdge;
+import net.venaglia.nondairy.soylang.cache.CallGraphCache;
+import net.venaglia.nondairy.soylang.cache.TemplateDeclarationIndex;
+import net.venaglia.nondairy.soylang.elements.LocalTemplateNameDef;
 import net.venaglia.nondairy.soylang.elements.SoyNamedElement;
 import net.venaglia.nondairy.soylang.elements.SoyPsiElement;
 import net.venaglia.nondairy.soylang.elements.SoyPsiElementReference;
+import net.venaglia.nondairy.soylang.elements.TreeNavigator;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Set;
 
 /**
  * User: ed
@@ -47,10 +63,63 @@ public class SoyFindUsagesHandlerFactory extends FindUsagesHandlerFactory {
             if (forHighlightUsages) {
                 return new HighlightUsagesHandler(element);
             }
+            if (element instanceof LocalTemplateNameDef) {
+                return new TemplateUsagesHandler(element);
+            }
             return new FindUsagesHandler(element) {};
         }
         return null;
     }
+
+    /**
+     * Searches for usages of a template in the files that call it, as
+     * recorded in the {@link CallGraphCache}, before the rest of the search
+     * scope. The call graph only decides which files are searched first, so
+     * references it does not record are still found.
+     */
+    private static class TemplateUsagesHandler extends FindUsagesHandler {
+
+        private TemplateUsagesHandler(@NotNull PsiElement psiElement) {
+            super(psiElement);
+        }
+
+        @Override
+        public boolean processElementUsages(@NotNull PsiElement element,
+                                            @NotNull Processor<UsageInfo> processor,
+                                            @NotNull FindUsagesOptions options) {
+            GlobalSearchScope callerScope = getCallerScope(element);
+            if (callerScope == null) {
+                return super.processElementUsages(element, processor, options);
+            }
+            FindUsagesOptions callers = options.clone();
+            callers.searchScope = options.searchScope.intersectWith(callerScope);
+            FindUsagesOptions others = options.clone();
+            others.searchScope = options.searchScope.intersectWith(GlobalSearchScope.notScope(callerScope));
+            return super.processElementUsages(element, processor, callers) &&
+                   super.processElementUsages(element, processor, others);
+        }
+
+        @Nullable
+        private GlobalSearchScope getCallerScope(@NotNull PsiElement element) {
+            String templateName = ((LocalTemplateNameDef)element).getTemplateName();
+            PsiFile containingFile = element.getContainingFile();
+            VirtualFile file = containingFile == null ? null : containingFile.getVirtualFile();
+            if (templateName == null || file == null) {
+                return null;
+            }
+            Project project = element.getProject();
+            Collection<Module> modules = Arrays.asList(TreeNavigator.INSTANCE.getModules(project));
+            if (TemplateDeclarationIndex.findTemplates(modules, templateName).isEmpty()) {
+                return null; // not indexed yet, calls to it may not be either
+            }
+            Set<VirtualFile> files = new HashSet<VirtualFile>();
+            files.add(file);
+            for (CallEdge edge : CallGraphCache.findCallers(modules, templateName, false)) {
+                files.add(edge.getFile());
+            }
+            return GlobalSearchScope.filesScope(project, files);
+        }
+    }
     
     private static class HighlightUsagesHandler extends FindUsagesHandler {
 
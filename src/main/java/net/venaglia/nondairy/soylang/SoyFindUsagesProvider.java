@@ -1,7 +1,6 @@
 package net.venaglia.nondairy.soylang;
 
 import com.intellij.lang.ASTNode;
-import com.intellij.lang.cacheBuilder.DefaultWordsScanner;
 import com.intellij.lang.cacheBuilder.WordsScanner;
 import com.intellij.lang.findUsages.FindUsagesProvider;
 import com.intellij.psi.PsiElement;
@@ -10,8 +9,7 @@ import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.TokenSet;
 import net.venaglia.nondairy.i18n.I18N;
 import net.venaglia.nondairy.soylang.elements.TemplateMemberElement;
-import net.venaglia.nondairy.soylang.lexer.SoyToken;
-import net.venaglia.nondairy.soylang.lexer.SoyWordScanningLexer;
+import net.venaglia.nondairy.soylang.lexer.SoyWordsScanner;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -49,10 +47,7 @@ public class SoyFindUsagesProvider implements FindUsagesProvider {
 
     @Override
     public WordsScanner getWordsScanner() {
-        return new DefaultWordsScanner(new SoyWordScanningLexer(),
-                                       SoyToken.NAME_TOKENS,
-                                       SoyToken.COMMENT_TOKENS,
-                                       TokenSet.create(SoyToken.STRING_LITERAL));
+        return new SoyWordsScanner();
     }
 
     @Override
@@ -71,7 +71,7 @@ public class SoyFoldingBuilder implements FoldingBuilder {
     @Override
     public String getPlaceholderText(@NotNull ASTNode node) {
 //        if (node.getElementType() == SoyElement.template_tag_pair) {
-            PsiElement element = PATH_TO_PLACEHOLDER_LABEL.navigate(node.getPsi()).oneOrNull();
+            PsiElement element = PATH_TO_PLACEHOLDER_LABEL.first(node.getPsi());
             if (element instanceof SoyCommandTag) {
                 SoyCommandTag commandTag = (SoyCommandTag)element;
                 String command = commandTag.getCommand();
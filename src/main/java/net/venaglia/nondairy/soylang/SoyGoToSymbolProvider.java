@@ -102,7 +102,7 @@ public class SoyGoToSymbolProvider extends GoToSymbolProvider {
         PsiFile psiFile = psiManager.findFile(cacheEntry.getFile());
         if (psiFile != null) {
             PsiElementPath path = PATH_TO_TEMPLATES.append(new NamePredicate(cacheEntry.getTemplate()));
-            return path.navigate(psiFile).oneOrNull();
+            return path.first(psiFile);
         }
         return null;
     }
@@ -22,9 +22,12 @@ import com.intellij.lang.PsiParser;
 import com.intellij.psi.tree.IElementType;
 import com.intellij.psi.tree.TokenSet;
 import net.venaglia.nondairy.soylang.lexer.SoyToken;
+import net.venaglia.nondairy.soylang.parser.ParseTrace;
 import net.venaglia.nondairy.soylang.parser.PsiBuilderTokenSource;
 import net.venaglia.nondairy.soylang.parser.SoyStructureParser;
+import net.venaglia.nondairy.soylang.parser.TokenSource;
 import net.venaglia.nondairy.soylang.parser.TrackedPsiBuilderTokenSource;
+import net.venaglia.nondairy.soylang.parser.TracingTokenSource;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
@@ -50,6 +53,15 @@ import java.util.concurrent.atomic.AtomicReference;
  * <code>net.venaglia.nondairy.parser.debugFile=parse-log.html</code>
  * This will record the creation of the FIRST soy psi tree parsed, step by
  * step, to the specified file. This filename should end in ".html".
+ *
+ * When the root is a {@link SoyTemplateBlockType}, a single edited template
+ * is being reparsed on its own, and the tree built is rooted at its tag pair.
+ * Template bodies are collapsed, to be parsed when first expanded, with a
+ * {@link SoyTemplateBodyType} root. The debugging modes parse every body
+ * eagerly.
+ *
+ * For a lighter weight look at parses in a running IDE, a sample of parses
+ * may be traced instead; see {@link ParseTrace}.
  */
 public class SoyParser implements PsiParser {
 
@@ -84,7 +96,8 @@ public class SoyParser implements PsiParser {
             file.done(root);
             return builder.getTreeBuilt();
         }
-        if (logToFile != null || PARANOID) {
+        boolean fileRoot = !(root instanceof SoyTemplateBlockType || root instanceof SoyTemplateBodyType);
+        if (fileRoot && (logToFile != null || PARANOID)) {
             TrackedPsiBuilderTokenSource tokenSource = new TrackedPsiBuilderTokenSource(builder);
             PsiBuilder.Marker file = builder.mark();
 //            while (!tokenSource.eof()) tokenSource.advance();
@@ -99,9 +112,30 @@ public class SoyParser implements PsiParser {
             }
         }
 
-        PsiBuilder.Marker file = builder.mark();
-        new SoyStructureParser(new PsiBuilderTokenSource(builder)).parse();
-        file.done(root);
+        ParseTrace trace = ParseTrace.start(String.valueOf(root), builder.getOriginalText());
+        TokenSource tokenSource = trace == null
+                                  ? new PsiBuilderTokenSource(builder)
+                                  : new TracingTokenSource(builder, trace);
+        try {
+            return parse(root, builder, tokenSource);
+        } finally {
+            if (trace != null) {
+                trace.finish();
+            }
+        }
+    }
+
+    @NotNull
+    private ASTNode parse(IElementType root, PsiBuilder builder, TokenSource tokenSource) {
+        PsiBuilder.Marker marker = builder.mark();
+        if (root instanceof SoyTemplateBlockType) {
+            new SoyStructureParser(tokenSource, true).parseTemplateBlock();
+        } else if (root instanceof SoyTemplateBodyType) {
+            new SoyStructureParser(tokenSource).parseTemplateBody();
+        } else {
+            new SoyStructureParser(tokenSource, true).parse();
+        }
+        marker.done(root);
         return builder.getTreeBuilt();
     }
 
@@ -76,7 +76,7 @@ public class SoyProjectComponent extends AbstractProjectComponent implements Per
                 Document document = event.getDocument();
                 VirtualFile file = FileDocumentManager.getInstance().getFile(document);
                 if (file != null) {
-                    soyCacheUpdater.updateCache(file);
+                    soyCacheUpdater.scheduleUpdate(file);
                 }
             }
         });
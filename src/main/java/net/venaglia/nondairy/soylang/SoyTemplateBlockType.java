@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.Language;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.impl.source.tree.LazyParseableElement;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.IReparseableElementType;
+import com.intellij.psi.tree.TokenSet;
+import net.venaglia.nondairy.soylang.lexer.SoyLexer;
+import net.venaglia.nondairy.soylang.lexer.SoyToken;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Element type for the tag pair that encloses a template or deltemplate.
+ * These elements are parsed along with the rest of the file, but an edit
+ * confined to one of them reparses only that template, using
+ * {@link SoyParser}. Edits that would change the template's boundaries
+ * reparse the whole file.
+ */
+public class SoyTemplateBlockType extends IReparseableElementType {
+
+    private static final TokenSet TOP_LEVEL_COMMANDS =
+            TokenSet.create(SoyToken.TEMPLATE, SoyToken.DELTEMPLATE, SoyToken.NAMESPACE, SoyToken.DELPACKAGE, SoyToken.ALIAS);
+
+    private final short value;
+    private final String name;
+    private final SoyToken command;
+
+    SoyTemplateBlockType(int value, @NonNls @NotNull String name, @NotNull SoyToken command) {
+        super(name, SoyLanguage.INSTANCE);
+        this.value = (short)value;
+        this.name = name;
+        this.command = command;
+    }
+
+    public short value() {
+        return value;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    /**
+     * @return The command of the tags that open and close this block.
+     */
+    @NotNull
+    public SoyToken getCommand() {
+        return command;
+    }
+
+    /**
+     * Checks that the edited text is still exactly one template: it must
+     * begin with this block's open tag, end with its close tag, and declare
+     * no other top level tags in between.
+     * @param buffer The text of the block, after the edit.
+     * @param fileLanguage The language of the file being edited.
+     * @param project The project the file belongs to.
+     * @return true if the block can be reparsed on its own.
+     */
+    @Override
+    public boolean isParsable(CharSequence buffer, Language fileLanguage, Project project) {
+        SoyLexer lexer = new SoyLexer(true);
+        lexer.start(buffer);
+        boolean closing = false;
+        boolean closed = false;
+        for (IElementType type = lexer.getTokenType(); type != null; type = lexer.getTokenType()) {
+            if (closed) {
+                return false; // text follows the close tag
+            }
+            boolean atStart = lexer.getTokenStart() == 0;
+            if (type == SoyToken.TAG_LBRACE || type == SoyToken.TAG_END_LBRACE) {
+                lexer.advance();
+                IElementType tag = lexer.getTokenType();
+                if (TOP_LEVEL_COMMANDS.contains(tag)) {
+                    if (tag != command || closing || atStart == (type == SoyToken.TAG_END_LBRACE)) {
+                        return false;
+                    }
+                    closing = type == SoyToken.TAG_END_LBRACE;
+                } else if (atStart) {
+                    return false;
+                }
+                continue;
+            } else if (atStart) {
+                return false;
+            } else if (closing && type == SoyToken.TAG_RBRACE) {
+                closed = true;
+            }
+            lexer.advance();
+        }
+        return closed;
+    }
+
+    /**
+     * Creates the node that replaces this block when it is reparsed. The
+     * inherited implementation returns null, which makes the platform fall
+     * back to reparsing the whole file.
+     * @param text The text of the block, after the edit.
+     * @return An unparsed node of this type, parsed when first accessed.
+     */
+    @Override
+    public ASTNode createNode(CharSequence text) {
+        return new LazyParseableElement(this, text);
+    }
+
+    @Override
+    public String toString() {
+        return name + "." + value;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.PsiBuilderFactory;
+import com.intellij.lexer.Lexer;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.ILazyParseableElementType;
+import net.venaglia.nondairy.soylang.lexer.SoyLexer;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Element type for the content of a template, between its open and close
+ * tags. When a file is parsed, each body is collapsed without being parsed,
+ * and is only parsed when something descends into it. Consumers that only
+ * need namespaces, aliases, template tags and doc comments never pay for the
+ * expressions within template bodies.
+ *
+ * A body is lexed starting from the lexer state at its first token, found by
+ * lexing the text that precedes it within its parent.
+ */
+public class SoyTemplateBodyType extends ILazyParseableElementType {
+
+    private final short value;
+    private final String name;
+
+    SoyTemplateBodyType(int value, @NonNls @NotNull String name) {
+        super(name, SoyLanguage.INSTANCE);
+        this.value = (short)value;
+        this.name = name;
+    }
+
+    public short value() {
+        return value;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    protected ASTNode doParseContents(@NotNull ASTNode chameleon, @NotNull PsiElement psi) {
+        ASTNode parent = chameleon.getTreeParent();
+        final int initialState = parent == null
+                                 ? 0
+                                 : SoyLexer.getStateAt(parent.getChars(),
+                                                       chameleon.getStartOffset() - parent.getStartOffset());
+        Lexer lexer = new SoyLexer() {
+            @Override
+            public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int state) {
+                super.start(buffer, startOffset, endOffset, startOffset == 0 ? initialState : state);
+            }
+        };
+        PsiBuilder builder = PsiBuilderFactory.getInstance().createBuilder(psi.getProject(),
+                                                                           chameleon,
+                                                                           lexer,
+                                                                           getLanguage(),
+                                                                           chameleon.getChars());
+        return new SoyParser().parse(this, builder).getFirstChildNode();
+    }
+
+    @Override
+    public String toString() {
+        return name + "." + value;
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.actions;
+
+import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbAwareAction;
+import com.intellij.openapi.ui.Messages;
+import net.venaglia.nondairy.i18n.I18N;
+import net.venaglia.nondairy.soylang.parser.ParseTrace;
+
+/**
+ * Writes the parse traces kept by {@link ParseTrace} to the IDE log, and
+ * shows a summary of them in a dialog. The action is only visible when the
+ * IDE was started with parse tracing enabled.
+ */
+public class ParseTraceReportAction extends DumbAwareAction {
+
+    private static final Logger LOG = Logger.getInstance(ParseTraceReportAction.class);
+
+    @Override
+    public void update(AnActionEvent e) {
+        e.getPresentation().setEnabledAndVisible(ParseTrace.TRACING_ENABLED);
+    }
+
+    @Override
+    public void actionPerformed(AnActionEvent e) {
+        LOG.info("Soy parse traces:\n" + ParseTrace.formatReport(ParseTrace.CAPACITY)); //NON-NLS
+        int choice = Messages.showDialog(e.getProject(),
+                                         ParseTrace.formatSummary(),
+                                         I18N.msg("action.parse.trace.report.title"),
+                                         new String[]{ Messages.OK_BUTTON, I18N.msg("action.parse.trace.report.reset") },
+                                         0,
+                                         Messages.getInformationIcon());
+        if (choice == 1) {
+            ParseTrace.reset();
+        }
+    }
+}
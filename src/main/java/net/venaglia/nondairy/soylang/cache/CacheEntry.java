@@ -18,6 +18,13 @@ package net.venaglia.nondairy.soylang.cache;
 
 import com.intellij.openapi.vfs.VirtualFile;
 import net.venaglia.nondairy.soylang.elements.TreeNavigator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * User: ed
@@ -25,6 +32,12 @@ import net.venaglia.nondairy.soylang.elements.TreeNavigator;
  * Time: 10:17 PM
  *
  * Represents a single immutable template definition in a source file.
+ *
+ * Along with its name, each entry records where the template is declared, the
+ * parameters it declares, its visibility and, for deltemplates, its variant,
+ * all taken from the source text
+ * when the file is indexed. These allow callers to answer questions about a
+ * template without loading or parsing the file that declares it.
  */
 public class CacheEntry {
 
@@ -32,12 +45,41 @@ public class CacheEntry {
     private final String template;
     private final boolean deltemplate;
     private final String fileUrl;
+    private final int offset;
+    private final List<String> parameters;
+    private final List<String> requiredParameters;
+    private final boolean privateTemplate;
+    private final String variant;
 
     public CacheEntry(String namespace, String template, boolean deltemplate, VirtualFile file) {
+        this(namespace, template, deltemplate, file, -1, Collections.<String>emptyList(), Collections.<String>emptyList(), false, null);
+    }
+
+    public CacheEntry(String namespace,
+                      String template,
+                      boolean deltemplate,
+                      VirtualFile file,
+                      int offset,
+                      @NotNull Collection<String> parameters,
+                      @NotNull Collection<String> requiredParameters,
+                      boolean privateTemplate,
+                      @Nullable String variant) {
         this.namespace = namespace;
         this.template = template;
         this.deltemplate = deltemplate;
         this.fileUrl = file.getUrl();
+        this.offset = offset;
+        this.parameters = toList(parameters);
+        this.requiredParameters = toList(requiredParameters);
+        this.privateTemplate = privateTemplate;
+        this.variant = variant;
+    }
+
+    @NotNull
+    private static List<String> toList(@NotNull Collection<String> values) {
+        return values.isEmpty()
+               ? Collections.<String>emptyList()
+               : Collections.unmodifiableList(new ArrayList<String>(values));
     }
 
     public String getNamespace() {
@@ -56,6 +98,48 @@ public class CacheEntry {
         return TreeNavigator.INSTANCE.getFile(fileUrl);
     }
 
+    /**
+     * @return The offset of the template name within its file, as of the
+     *     last time the file was indexed, or -1 if it is not known.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return The names of the parameters declared by this template, both in
+     *     its doc comment and by inner @param commands, in declaration order.
+     */
+    @NotNull
+    public List<String> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return The names of the parameters declared with @param, rather than
+     *     @param?, in this template's doc comment.
+     */
+    @NotNull
+    public List<String> getRequiredParameters() {
+        return requiredParameters;
+    }
+
+    /**
+     * @return true if this template is declared with private="true".
+     */
+    public boolean isPrivateTemplate() {
+        return privateTemplate;
+    }
+
+    /**
+     * @return The value of the variant attribute of this deltemplate, or null
+     *     if it does not declare one.
+     */
+    @Nullable
+    public String getVariant() {
+        return variant;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -67,6 +151,7 @@ public class CacheEntry {
         if (fileUrl != null ? !fileUrl.equals(that.fileUrl) : that.fileUrl != null) return false;
         if (namespace != null ? !namespace.equals(that.namespace) : that.namespace != null) return false;
         if (template != null ? !template.equals(that.template) : that.template != null) return false;
+        if (variant != null ? !variant.equals(that.variant) : that.variant != null) return false;
 
         return true;
     }
@@ -77,6 +162,7 @@ public class CacheEntry {
         result = 31 * result + (template != null ? template.hashCode() : 0);
         result = 31 * result + (deltemplate ? 1 : 0);
         result = 31 * result + (fileUrl != null ? fileUrl.hashCode() : 0);
+        result = 31 * result + (variant != null ? variant.hashCode() : 0);
         return result;
     }
 
@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.cache;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single call or delcall command, as found in the source text of a file.
+ * The caller is the fully qualified name of the enclosing template, or the
+ * name of the enclosing deltemplate. The callee is the fully qualified name
+ * of the invoked template, with local names and aliases expanded, or the
+ * name of the invoked deltemplate.
+ */
+public class CallEdge {
+
+    @Nullable
+    private final String caller;
+    private final boolean callerDelegate;
+    @NotNull
+    private final String callee;
+    private final boolean calleeDelegate;
+    @NotNull
+    private final VirtualFile file;
+    private final int offset;
+
+    public CallEdge(@Nullable String caller,
+                    boolean callerDelegate,
+                    @NotNull String callee,
+                    boolean calleeDelegate,
+                    @NotNull VirtualFile file,
+                    int offset) {
+        this.caller = caller;
+        this.callerDelegate = callerDelegate;
+        this.callee = callee;
+        this.calleeDelegate = calleeDelegate;
+        this.file = file;
+        this.offset = offset;
+    }
+
+    /**
+     * @return The name of the template or deltemplate making this call, or
+     *     null if the call is not within a template.
+     */
+    @Nullable
+    public String getCaller() {
+        return caller;
+    }
+
+    /**
+     * @return true if the call is made from a deltemplate.
+     */
+    public boolean isCallerDelegate() {
+        return callerDelegate;
+    }
+
+    @NotNull
+    public String getCallee() {
+        return callee;
+    }
+
+    /**
+     * @return true if this is a delcall command.
+     */
+    public boolean isCalleeDelegate() {
+        return calleeDelegate;
+    }
+
+    @NotNull
+    public VirtualFile getFile() {
+        return file;
+    }
+
+    /**
+     * @return The offset of the callee's name within the file.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CallEdge callEdge = (CallEdge)o;
+
+        if (offset != callEdge.offset) return false;
+        if (callerDelegate != callEdge.callerDelegate) return false;
+        if (calleeDelegate != callEdge.calleeDelegate) return false;
+        if (caller != null ? !caller.equals(callEdge.caller) : callEdge.caller != null) return false;
+        if (!callee.equals(callEdge.callee)) return false;
+        return file.equals(callEdge.file);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = caller != null ? caller.hashCode() : 0;
+        result = 31 * result + callee.hashCode();
+        result = 31 * result + file.hashCode();
+        result = 31 * result + offset;
+        return result;
+    }
+
+    @Override
+    @NonNls
+    public String toString() {
+        return (callerDelegate ? "deltemplate " : "template ") + caller +
+               (calleeDelegate ? " -> delcall " : " -> call ") + callee +
+               " @ " + file.getName() + ":" + offset;
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.cache;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.venaglia.nondairy.soylang.ModuleRef;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This cache stores the call graph of the soy files in a module, as a
+ * {@link CallEdge} for each call and delcall command. It is maintained by
+ * {@link SoyCacheUpdater} alongside the {@link NamespaceCache}, and is
+ * updated one file at a time, whenever that file's text changes.
+ *
+ * Edges are indexed by file, by caller and by callee, so finding the callers
+ * or callees of a template does not require searching or parsing files.
+ */
+public class CallGraphCache implements ModuleRef {
+
+    private static final Key<CallGraphCache> CALL_GRAPH_CACHE_KEY = new Key<CallGraphCache>("non-dairy.call-graph-cache");
+
+    @NotNull
+    private final Module module;
+
+    private final Map<VirtualFile,List<CallEdge>> edgesByFile = new HashMap<VirtualFile,List<CallEdge>>();
+    private final Map<String,Set<CallEdge>> edgesByCallee = new HashMap<String,Set<CallEdge>>();
+    private final Map<String,Set<CallEdge>> edgesByCaller = new HashMap<String,Set<CallEdge>>();
+
+    public CallGraphCache(@NotNull Module module) {
+        this.module = module;
+    }
+
+    @Override
+    @NotNull
+    public Module getModule() {
+        return module;
+    }
+
+    /**
+     * Replaces the edges previously recorded for a file.
+     * @param file The file the edges were found in.
+     * @param edges The calls made in the file.
+     */
+    public synchronized void update(@NotNull VirtualFile file, @NotNull List<CallEdge> edges) {
+        removeImpl(file);
+        if (!edges.isEmpty()) {
+            edgesByFile.put(file, edges);
+            for (CallEdge edge : edges) {
+                add(edgesByCallee, getKey(edge.getCallee(), edge.isCalleeDelegate()), edge);
+                add(edgesByCaller, getKey(edge.getCaller(), edge.isCallerDelegate()), edge);
+            }
+        }
+    }
+
+    /**
+     * Removes all edges recorded for a file.
+     * @param file The file that was removed.
+     */
+    public synchronized void remove(@NotNull VirtualFile file) {
+        removeImpl(file);
+    }
+
+    private void removeImpl(@NotNull VirtualFile file) {
+        List<CallEdge> previous = edgesByFile.remove(file);
+        if (previous != null) {
+            for (CallEdge edge : previous) {
+                remove(edgesByCallee, getKey(edge.getCallee(), edge.isCalleeDelegate()), edge);
+                remove(edgesByCaller, getKey(edge.getCaller(), edge.isCallerDelegate()), edge);
+            }
+        }
+    }
+
+    /**
+     * @param callee The fully qualified name of a template, or the name of a
+     *     deltemplate.
+     * @param delegate true if callee names a deltemplate.
+     * @return The calls made to the specified template.
+     */
+    @NotNull
+    public synchronized Collection<CallEdge> getCallers(@NotNull String callee, boolean delegate) {
+        return copy(edgesByCallee.get(getKey(callee, delegate)));
+    }
+
+    /**
+     * @param caller The fully qualified name of a template, or the name of a
+     *     deltemplate.
+     * @param delegate true if caller names a deltemplate.
+     * @return The calls made from the specified template.
+     */
+    @NotNull
+    public synchronized Collection<CallEdge> getCallees(@NotNull String caller, boolean delegate) {
+        return copy(edgesByCaller.get(getKey(caller, delegate)));
+    }
+
+    /**
+     * @param file The file to check.
+     * @return The calls made within the specified file.
+     */
+    @NotNull
+    public synchronized Collection<CallEdge> getEdges(@NotNull VirtualFile file) {
+        List<CallEdge> edges = edgesByFile.get(file);
+        return edges == null ? Collections.<CallEdge>emptyList() : new ArrayList<CallEdge>(edges);
+    }
+
+    @NotNull
+    @NonNls
+    private static String getKey(String name, boolean delegate) {
+        return (delegate ? "del:" : "tmpl:") + name;
+    }
+
+    private static void add(Map<String,Set<CallEdge>> map, String key, CallEdge edge) {
+        Set<CallEdge> edges = map.get(key);
+        if (edges == null) {
+            edges = new LinkedHashSet<CallEdge>(4);
+            map.put(key, edges);
+        }
+        edges.add(edge);
+    }
+
+    private static void remove(Map<String,Set<CallEdge>> map, String key, CallEdge edge) {
+        Set<CallEdge> edges = map.get(key);
+        if (edges != null && edges.remove(edge) && edges.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    @NotNull
+    private static Collection<CallEdge> copy(Set<CallEdge> edges) {
+        return edges == null ? Collections.<CallEdge>emptyList() : new ArrayList<CallEdge>(edges);
+    }
+
+    /**
+     * Finds the calls made to a template in any of the passed modules.
+     * @param modules The modules to search.
+     * @param callee The fully qualified name of a template, or the name of a
+     *     deltemplate.
+     * @param delegate true if callee names a deltemplate.
+     * @return The calls found.
+     */
+    @NotNull
+    public static List<CallEdge> findCallers(@NotNull Collection<Module> modules,
+                                             @NotNull String callee,
+                                             boolean delegate) {
+        List<CallEdge> result = new ArrayList<CallEdge>();
+        for (Module module : modules) {
+            result.addAll(getCache(module).getCallers(callee, delegate));
+        }
+        return result;
+    }
+
+    /**
+     * Finds the calls made from a template in any of the passed modules.
+     * @param modules The modules to search.
+     * @param caller The fully qualified name of a template, or the name of a
+     *     deltemplate.
+     * @param delegate true if caller names a deltemplate.
+     * @return The calls found.
+     */
+    @NotNull
+    public static List<CallEdge> findCallees(@NotNull Collection<Module> modules,
+                                             @NotNull String caller,
+                                             boolean delegate) {
+        List<CallEdge> result = new ArrayList<CallEdge>();
+        for (Module module : modules) {
+            result.addAll(getCache(module).getCallees(caller, delegate));
+        }
+        return result;
+    }
+
+    @NotNull
+    public static CallGraphCache getCache(@NotNull Module module) {
+        CallGraphCache cache = module.getUserData(CALL_GRAPH_CACHE_KEY);
+        if (cache == null) {
+            cache = new CallGraphCache(module);
+            module.putUserData(CALL_GRAPH_CACHE_KEY, cache);
+        }
+        return cache;
+    }
+}
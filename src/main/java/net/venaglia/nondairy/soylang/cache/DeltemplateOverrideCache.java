@@ -0,0 +1,222 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.cache;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.venaglia.nondairy.soylang.ModuleRef;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This cache stores every implementation of each deltemplate in a module,
+ * keyed by deltemplate name, regardless of the delpackage that provides it.
+ * It is maintained by {@link SoyCacheUpdater} alongside the
+ * {@link DelegatePackageCache}, one file at a time.
+ *
+ * An implementation in the default delpackage is the default for its name
+ * and variant; implementations in any other delpackage override it. Both
+ * directions are answered from this cache, without visiting each
+ * {@link DelegateTemplateCache}.
+ */
+public class DeltemplateOverrideCache implements ModuleRef {
+
+    private static final Key<DeltemplateOverrideCache> DELTEMPLATE_OVERRIDE_CACHE_KEY =
+            new Key<DeltemplateOverrideCache>("non-dairy.deltemplate-override-cache");
+
+    @NotNull
+    private final Module module;
+
+    private final Map<VirtualFile,List<CacheEntry>> entriesByFile = new HashMap<VirtualFile,List<CacheEntry>>();
+    private final Map<String,Set<CacheEntry>> entriesByName = new HashMap<String,Set<CacheEntry>>();
+
+    public DeltemplateOverrideCache(@NotNull Module module) {
+        this.module = module;
+    }
+
+    @Override
+    @NotNull
+    public Module getModule() {
+        return module;
+    }
+
+    /**
+     * Replaces the deltemplates previously recorded for a file.
+     * @param file The file the deltemplates are declared in.
+     * @param entries The deltemplates declared in the file.
+     */
+    public synchronized void update(@NotNull VirtualFile file, @NotNull List<CacheEntry> entries) {
+        removeImpl(file);
+        if (!entries.isEmpty()) {
+            entriesByFile.put(file, entries);
+            for (CacheEntry entry : entries) {
+                Set<CacheEntry> implementations = entriesByName.get(entry.getTemplate());
+                if (implementations == null) {
+                    implementations = new LinkedHashSet<CacheEntry>(4);
+                    entriesByName.put(entry.getTemplate(), implementations);
+                }
+                implementations.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes all deltemplates recorded for a file.
+     * @param file The file that was removed.
+     */
+    public synchronized void remove(@NotNull VirtualFile file) {
+        removeImpl(file);
+    }
+
+    private void removeImpl(@NotNull VirtualFile file) {
+        List<CacheEntry> previous = entriesByFile.remove(file);
+        if (previous != null) {
+            for (CacheEntry entry : previous) {
+                Set<CacheEntry> implementations = entriesByName.get(entry.getTemplate());
+                if (implementations != null && implementations.remove(entry) && implementations.isEmpty()) {
+                    entriesByName.remove(entry.getTemplate());
+                }
+            }
+        }
+    }
+
+    /**
+     * @param name The name of a deltemplate.
+     * @return Every implementation of the deltemplate, of any variant.
+     */
+    @NotNull
+    public synchronized Collection<CacheEntry> getImplementations(@NotNull String name) {
+        Set<CacheEntry> implementations = entriesByName.get(name);
+        return implementations == null
+               ? Collections.<CacheEntry>emptyList()
+               : new ArrayList<CacheEntry>(implementations);
+    }
+
+    /**
+     * Finds the deltemplate named by an element in a file. The offset
+     * recorded when the file was last indexed may have moved since, so when
+     * no entry of the same name was recorded within the element's range, the
+     * entry of that name recorded closest to it is returned.
+     * @param file The file to check.
+     * @param name The name of the deltemplate.
+     * @param range The range of the deltemplate name within the file.
+     * @return The deltemplate found, or null if the file declared no
+     *     deltemplate of that name when it was last indexed.
+     */
+    @Nullable
+    public synchronized CacheEntry getEntry(@NotNull VirtualFile file, @NotNull String name, @NotNull TextRange range) {
+        List<CacheEntry> entries = entriesByFile.get(file);
+        CacheEntry closest = null;
+        int closestDistance = Integer.MAX_VALUE;
+        if (entries != null) {
+            for (CacheEntry entry : entries) {
+                if (!name.equals(entry.getTemplate())) {
+                    continue;
+                }
+                if (range.containsOffset(entry.getOffset())) {
+                    return entry;
+                }
+                int distance = Math.abs(entry.getOffset() - range.getStartOffset());
+                if (distance < closestDistance) {
+                    closest = entry;
+                    closestDistance = distance;
+                }
+            }
+        }
+        return closest;
+    }
+
+    /**
+     * @param entry A deltemplate implementation.
+     * @return true if the entry is declared in the default delpackage.
+     */
+    public static boolean isDefault(@NotNull CacheEntry entry) {
+        return DelegatePackageCache.DEFAULT_DELEGATE.equals(entry.getNamespace());
+    }
+
+    /**
+     * Finds the implementations of a deltemplate in any of the passed
+     * modules.
+     * @param modules The modules to search.
+     * @param name The name of the deltemplate.
+     * @param variant The variant to match, or null to match only
+     *     implementations that do not declare a variant.
+     * @param defaults true to find implementations in the default
+     *     delpackage, false to find those that override them.
+     * @return The implementations found.
+     */
+    @NotNull
+    public static List<CacheEntry> findImplementations(@NotNull Collection<Module> modules,
+                                                       @NotNull String name,
+                                                       @Nullable String variant,
+                                                       boolean defaults) {
+        List<CacheEntry> result = new ArrayList<CacheEntry>();
+        for (Module module : modules) {
+            for (CacheEntry entry : getCache(module).getImplementations(name)) {
+                if (isDefault(entry) == defaults &&
+                    (variant == null ? entry.getVariant() == null : variant.equals(entry.getVariant()))) {
+                    result.add(entry);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the deltemplate named by an element in a file.
+     * @param modules The modules to search.
+     * @param file The file to check.
+     * @param name The name of the deltemplate.
+     * @param range The range of the deltemplate name within the file.
+     * @return The deltemplate found, or null if there is none.
+     * @see #getEntry(VirtualFile, String, TextRange)
+     */
+    @Nullable
+    public static CacheEntry findEntry(@NotNull Collection<Module> modules,
+                                       @NotNull VirtualFile file,
+                                       @NotNull String name,
+                                       @NotNull TextRange range) {
+        for (Module module : modules) {
+            CacheEntry entry = getCache(module).getEntry(file, name, range);
+            if (entry != null) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    @NotNull
+    public static DeltemplateOverrideCache getCache(@NotNull Module module) {
+        DeltemplateOverrideCache cache = module.getUserData(DELTEMPLATE_OVERRIDE_CACHE_KEY);
+        if (cache == null) {
+            cache = new DeltemplateOverrideCache(module);
+            module.putUserData(DELTEMPLATE_OVERRIDE_CACHE_KEY, cache);
+        }
+        return cache;
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.cache;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.Key;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.venaglia.nondairy.soylang.ModuleRef;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This cache stores the namespaces declared in a module as a trie, one node
+ * per dot separated segment, along with the aliases declared in each file.
+ * It is maintained by {@link SoyCacheUpdater} alongside the
+ * {@link NamespaceCache}, one file at a time.
+ *
+ * Prefix and "children of" queries walk only the segments of the prefix, then
+ * visit only the matching nodes, so their cost is proportional to the size of
+ * the result rather than the number of namespaces in the module.
+ */
+public class NamespaceTrie implements ModuleRef {
+
+    private static final Key<NamespaceTrie> NAMESPACE_TRIE_KEY = new Key<NamespaceTrie>("non-dairy.namespace-trie");
+
+    @NotNull
+    private final Module module;
+
+    private final Node root = new Node(null, "");
+    private final Map<VirtualFile,String> namespacesByFile = new HashMap<VirtualFile,String>();
+    private final Map<VirtualFile,Map<String,List<String>>> aliasesByFile = new HashMap<VirtualFile,Map<String,List<String>>>();
+
+    public NamespaceTrie(@NotNull Module module) {
+        this.module = module;
+    }
+
+    @Override
+    @NotNull
+    public Module getModule() {
+        return module;
+    }
+
+    /**
+     * Replaces the namespace and aliases previously recorded for a file.
+     * @param file The file that was indexed.
+     * @param namespace The namespace declared in the file, or null if it
+     *     does not declare one.
+     * @param aliases The fully qualified namespaces aliased in the file.
+     */
+    public synchronized void update(@NotNull VirtualFile file,
+                                    @Nullable String namespace,
+                                    @NotNull Collection<String> aliases) {
+        removeImpl(file);
+        if (namespace != null) {
+            namespacesByFile.put(file, namespace);
+            getOrCreate(namespace).declarations++;
+        }
+        if (!aliases.isEmpty()) {
+            Map<String,List<String>> aliasesBySegment = new HashMap<String,List<String>>();
+            for (String alias : aliases) {
+                String segment = alias.substring(alias.lastIndexOf('.') + 1);
+                List<String> candidates = aliasesBySegment.get(segment);
+                if (candidates == null) {
+                    candidates = new ArrayList<String>(1);
+                    aliasesBySegment.put(segment, candidates);
+                }
+                candidates.add(alias);
+            }
+            aliasesByFile.put(file, aliasesBySegment);
+        }
+    }
+
+    /**
+     * Removes the namespace and aliases recorded for a file.
+     * @param file The file that was removed.
+     */
+    public synchronized void remove(@NotNull VirtualFile file) {
+        removeImpl(file);
+    }
+
+    private void removeImpl(@NotNull VirtualFile file) {
+        aliasesByFile.remove(file);
+        String namespace = namespacesByFile.remove(file);
+        Node node = namespace == null ? null : find(namespace);
+        if (node != null) {
+            node.declarations--;
+            node.prune();
+        }
+    }
+
+    /**
+     * @param namespace A fully qualified namespace.
+     * @return true if at least one file in this module declares the
+     *     namespace.
+     */
+    public synchronized boolean isDeclared(@NotNull String namespace) {
+        Node node = find(namespace);
+        return node != null && node.declarations > 0;
+    }
+
+    /**
+     * @param namespace A namespace, or the empty string for the root.
+     * @return The fully qualified names of the namespaces, declared or not,
+     *     that are one segment below the specified namespace.
+     */
+    @NotNull
+    public synchronized List<String> getChildren(@NotNull String namespace) {
+        Node node = namespace.length() == 0 ? root : find(namespace);
+        if (node == null || node.children == null) {
+            return Collections.emptyList();
+        }
+        List<String> children = new ArrayList<String>(node.children.size());
+        for (Node child : node.children.values()) {
+            children.add(child.namespace);
+        }
+        return children;
+    }
+
+    /**
+     * @param prefix The start of a namespace. The last segment may be
+     *     partial, as in "my.app.u" or "my.app.".
+     * @return The declared namespaces that start with the specified prefix,
+     *     in sorted order.
+     */
+    @NotNull
+    public synchronized List<String> findNamespaces(@NotNull String prefix) {
+        int lastDot = prefix.lastIndexOf('.');
+        Node parent = lastDot < 0 ? root : find(prefix.substring(0, lastDot));
+        if (parent == null || parent.children == null) {
+            return Collections.emptyList();
+        }
+        String partial = prefix.substring(lastDot + 1);
+        List<String> result = new ArrayList<String>();
+        Map<String,Node> matches = partial.length() == 0
+                                   ? parent.children
+                                   : parent.children.subMap(partial, partial + Character.MAX_VALUE);
+        for (Node node : matches.values()) {
+            node.collect(result);
+        }
+        return result;
+    }
+
+    /**
+     * A file may alias more than one namespace ending in the same segment,
+     * so an alias can have several candidates; callers should check which
+     * of them declares what they are looking for.
+     * @param file The file the alias is used in.
+     * @param alias The last segment of an aliased namespace.
+     * @return The fully qualified namespaces aliased in the specified file
+     *     that end with the alias, in the order they are declared.
+     */
+    @NotNull
+    public synchronized List<String> resolveAliases(@NotNull VirtualFile file, @NotNull String alias) {
+        Map<String,List<String>> aliases = aliasesByFile.get(file);
+        List<String> candidates = aliases == null ? null : aliases.get(alias);
+        return candidates == null ? Collections.<String>emptyList() : new ArrayList<String>(candidates);
+    }
+
+    @Nullable
+    private Node find(@NotNull String namespace) {
+        Node node = root;
+        int start = 0;
+        while (node != null && start <= namespace.length()) {
+            int end = namespace.indexOf('.', start);
+            if (end < 0) {
+                end = namespace.length();
+            }
+            node = node.children == null ? null : node.children.get(namespace.substring(start, end));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    @NotNull
+    private Node getOrCreate(@NotNull String namespace) {
+        Node node = root;
+        int start = 0;
+        while (start <= namespace.length()) {
+            int end = namespace.indexOf('.', start);
+            if (end < 0) {
+                end = namespace.length();
+            }
+            node = node.getOrCreateChild(namespace.substring(start, end), namespace.substring(0, end));
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private static class Node {
+
+        @Nullable
+        private final Node parent;
+        @NotNull
+        @NonNls
+        private final String namespace;
+
+        private TreeMap<String,Node> children;
+        private int declarations;
+
+        private Node(@Nullable Node parent, @NotNull String namespace) {
+            this.parent = parent;
+            this.namespace = namespace;
+        }
+
+        @NotNull
+        private Node getOrCreateChild(@NotNull String segment, @NotNull String namespace) {
+            if (children == null) {
+                children = new TreeMap<String,Node>();
+            }
+            Node child = children.get(segment);
+            if (child == null) {
+                child = new Node(this, namespace);
+                children.put(segment, child);
+            }
+            return child;
+        }
+
+        private void prune() {
+            Node node = this;
+            while (node.parent != null && node.declarations <= 0 && (node.children == null || node.children.isEmpty())) {
+                String segment = node.namespace.substring(node.namespace.lastIndexOf('.') + 1);
+                node.parent.children.remove(segment);
+                node = node.parent;
+            }
+        }
+
+        private void collect(@NotNull Collection<String> result) {
+            if (declarations > 0) {
+                result.add(namespace);
+            }
+            if (children != null) {
+                for (Node child : children.values()) {
+                    child.collect(result);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the declared namespaces that start with a prefix in any of the
+     * passed modules.
+     * @param modules The modules to search.
+     * @param prefix The start of a namespace, the last segment may be partial.
+     * @return The namespaces found, without duplicates.
+     */
+    @NotNull
+    public static Collection<String> findNamespaces(@NotNull Collection<Module> modules, @NotNull String prefix) {
+        Collection<String> result = new LinkedHashSet<String>();
+        for (Module module : modules) {
+            result.addAll(getCache(module).findNamespaces(prefix));
+        }
+        return result;
+    }
+
+    @NotNull
+    public static NamespaceTrie getCache(@NotNull Module module) {
+        NamespaceTrie cache = module.getUserData(NAMESPACE_TRIE_KEY);
+        if (cache == null) {
+            cache = new NamespaceTrie(module);
+            module.putUserData(NAMESPACE_TRIE_KEY, cache);
+        }
+        return cache;
+    }
+}
@@ -25,6 +25,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.search.FilenameIndex;
+import com.intellij.util.Alarm;
 import net.venaglia.nondairy.i18n.I18N;
 import net.venaglia.nondairy.soylang.ModuleRef;
 import net.venaglia.nondairy.soylang.NamespaceRef;
@@ -47,9 +48,13 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -65,15 +70,52 @@ public class SoyCacheUpdater extends DumbModeTask {
     @NonNls
     private static final String MATCH_COMMANDS_PATTERN = "\\{(delpackage|namespace|alias|deltemplate|template)\\s+\\.?([a-z0-9_.]+)";
     private static final Pattern MATCH_COMMANDS = Pattern.compile(MATCH_COMMANDS_PATTERN, Pattern.MULTILINE | Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+    @NonNls
+    private static final String MATCH_PARAMS_PATTERN = "@param(\\??)\\s+(\\w+)";
+    private static final Pattern MATCH_PARAMS = Pattern.compile(MATCH_PARAMS_PATTERN);
+    @NonNls
+    private static final String MATCH_INNER_PARAMS_PATTERN = "\\{@param\\??\\s+(\\w+)|\\{/(?:del)?template\\}";
+    private static final Pattern MATCH_INNER_PARAMS = Pattern.compile(MATCH_INNER_PARAMS_PATTERN);
+    @NonNls
+    private static final String MATCH_PRIVATE_PATTERN = "\\sprivate\\s*=\\s*\"true\"";
+    private static final Pattern MATCH_PRIVATE = Pattern.compile(MATCH_PRIVATE_PATTERN);
+    @NonNls
+    private static final String MATCH_VARIANT_PATTERN = "\\svariant\\s*=\\s*\"([^\"]*)\"";
+    private static final Pattern MATCH_VARIANT = Pattern.compile(MATCH_VARIANT_PATTERN);
+    @NonNls
+    private static final String MATCH_CALLS_PATTERN = "\\{(delcall|call)\\s+(\\.?[a-z0-9_.]+)";
+    private static final Pattern MATCH_CALLS = Pattern.compile(MATCH_CALLS_PATTERN, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
 
     @NonNls
     private static final String DEBUG_CACHE_PROPERTY = "net.venaglia.nondairy.cache.debug";
     private static final long DEBUG_CACHE_CHANGE_DETECTION_DELAY = 1000L;
 
+    /** Time to wait after the last edit to a document before re-indexing it */
+    private static final int DOCUMENT_UPDATE_DELAY = 300;
+
     private final Project project;
     private final AtomicLong lastUpdate = new AtomicLong();
+    private final AtomicLong generation = new AtomicLong();
+    private final ConcurrentMap<VirtualFile,String> declarationsByFile = new ConcurrentHashMap<VirtualFile,String>();
+    private final Set<VirtualFile> pendingUpdates = Collections.newSetFromMap(new ConcurrentHashMap<VirtualFile,Boolean>());
+    private final Runnable pendingUpdater = new Runnable() {
+        @Override
+        public void run() {
+            ApplicationManager.getApplication().runReadAction(new Runnable() {
+                @Override
+                public void run() {
+                    for (Iterator<VirtualFile> i = pendingUpdates.iterator(); i.hasNext(); ) {
+                        VirtualFile file = i.next();
+                        i.remove();
+                        updateCache(file);
+                    }
+                }
+            });
+        }
+    };
 
     private volatile boolean disposed = false;
+    private Alarm updateAlarm; // created on first use, guarded by this
 
     public SoyCacheUpdater(Project project) {
         this.project = project;
@@ -118,6 +160,25 @@ public class SoyCacheUpdater extends DumbModeTask {
         updateCache(virtualFile);
     }
 
+    /**
+     * Queues a file to be re-indexed on a pooled thread, once its document has
+     * not been edited for {@link #DOCUMENT_UPDATE_DELAY} milliseconds. Until
+     * then, the offsets cached for the file may be stale, which callers of
+     * {@link TemplateDeclarationIndex} already tolerate.
+     * @param file The file whose document was changed.
+     */
+    public synchronized void scheduleUpdate(@NotNull VirtualFile file) {
+        if (disposed || !isCacheableSoyFile(file)) {
+            return;
+        }
+        pendingUpdates.add(file);
+        if (updateAlarm == null) {
+            updateAlarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD);
+        }
+        updateAlarm.cancelAllRequests();
+        updateAlarm.addRequest(pendingUpdater, DOCUMENT_UPDATE_DELAY);
+    }
+
     public void updateCache(@NotNull VirtualFile file) {
         if (disposed) {
             return;
@@ -126,6 +187,7 @@ public class SoyCacheUpdater extends DumbModeTask {
             NamespaceCache namespaceCache = getNamespaceCache(file);
             DelegatePackageCache delegatePackageCache = getDelegatePackageCache(file);
             AliasCache aliasCache = getAliasCache(file);
+            CallGraphCache callGraphCache = getCallGraphCache(file);
             if (namespaceCache != null) {
                 removeFromCacheImpl(namespaceCache, file);
             }
@@ -135,8 +197,17 @@ public class SoyCacheUpdater extends DumbModeTask {
             if (delegatePackageCache != null) {
                 removeFromCacheImpl(delegatePackageCache, file);
             }
+            String declarations = null;
             if (namespaceCache != null || delegatePackageCache != null) {
-                updateCacheImpl(namespaceCache, aliasCache, delegatePackageCache, file);
+                declarations = updateCacheImpl(namespaceCache, aliasCache, delegatePackageCache, callGraphCache, file);
+            } else if (callGraphCache != null) {
+                callGraphCache.remove(file);
+            }
+            String previous = declarations == null
+                              ? declarationsByFile.remove(file)
+                              : declarationsByFile.put(file, declarations);
+            if (declarations == null ? previous != null : !declarations.equals(previous)) {
+                generation.incrementAndGet();
             }
             lastUpdate.set(System.currentTimeMillis());
         }
@@ -150,20 +221,49 @@ public class SoyCacheUpdater extends DumbModeTask {
                           .equals(file.getExtension());
     }
 
+    /**
+     * Counts the changes made to the declarations this cache holds. Unlike
+     * the time of the last update, the generation only advances when a
+     * namespace, delpackage, alias, template or deltemplate command is
+     * added, removed or renamed, so edits that do not touch declarations
+     * leave it unchanged.
+     * @return The current generation of the template cache.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * @return A string summarizing the commands declared in the file, in
+     *     order, suitable for detecting changes to its declarations.
+     */
     @SuppressWarnings("StringEquality")
-    private void updateCacheImpl(@Nullable NamespaceCache namespaceCache,
+    @NotNull
+    private String updateCacheImpl(@Nullable NamespaceCache namespaceCache,
                                  @Nullable AliasCache aliasCache,
                                  @Nullable DelegatePackageCache delegatePackageCache,
+                                 @Nullable CallGraphCache callGraphCache,
                                  @NotNull VirtualFile file) {
         Document document = TreeNavigator.INSTANCE.getDocument(file);
-        Collection<String> templates = new ArrayList<String>(16);
-        Collection<String> deltemplates = new ArrayList<String>(16);
+        Collection<Declaration> templates = new ArrayList<Declaration>(16);
+        Collection<Declaration> deltemplates = new ArrayList<Declaration>(16);
+        List<Declaration> callers = new ArrayList<Declaration>(32);
+        Map<String,String> aliases = new HashMap<String,String>();
+        List<String> aliasNamespaces = new ArrayList<String>();
+        List<CallEdge> calls = Collections.emptyList();
         String delegate = DelegatePackageCache.DEFAULT_DELEGATE;
         String namespace = NamespaceCache.DEFAULT_NAMESPACE;
+        StringBuilder declarations = new StringBuilder(256);
         if (document != null) {
-            Matcher matcher = MATCH_COMMANDS.matcher(document.getCharsSequence());
+            CharSequence text = document.getCharsSequence();
+            int[] comments = findComments(text);
+            Matcher matcher = MATCH_COMMANDS.matcher(text);
             while (matcher.find()) {
+                if (findComment(comments, matcher.start()) >= 0) {
+                    continue;
+                }
                 String command = matcher.group(1);
+                declarations.append(command).append(' ').append(matcher.group(2));
                 if ("delpackage".equals(command)) { //NON-NLS
                     if (delegate == DelegatePackageCache.DEFAULT_DELEGATE) {
                         delegate = matcher.group(2);
@@ -175,20 +275,38 @@ public class SoyCacheUpdater extends DumbModeTask {
                 } else if ("alias".equals(command)) { //NON-NLS
                     AliasCacheEntry aliasCacheEntry = aliasCache.getOrCreate(matcher.group(2));
                     aliasCacheEntry.add(file);
+                    String alias = matcher.group(2);
+                    aliases.put(alias.substring(alias.lastIndexOf('.') + 1), alias);
+                    aliasNamespaces.add(alias);
                 } else if ("deltemplate".equals(command)) { //NON-NLS
-                    deltemplates.add(matcher.group(2));
+                    Declaration declaration = new Declaration(text, comments, matcher);
+                    declaration.appendTo(declarations);
+                    deltemplates.add(declaration);
+                    callers.add(declaration);
                 } else {
-                    templates.add(matcher.group(2));
+                    Declaration declaration = new Declaration(text, comments, matcher);
+                    declaration.appendTo(declarations);
+                    templates.add(declaration);
+                    callers.add(declaration);
                 }
+                declarations.append('\n');
+            }
+            if (callGraphCache != null) {
+                calls = findCalls(text, comments, namespace, aliases, callers, file);
             }
         }
+        if (callGraphCache != null) {
+            callGraphCache.update(file, calls);
+        }
         if (namespaceCache != null) {
+            NamespaceTrie.getCache(namespaceCache.getModule())
+                         .update(file, namespace == NamespaceCache.DEFAULT_NAMESPACE ? null : namespace, aliasNamespaces);
             TemplateCache templateCache = namespaceCache.getOrCreate(namespace);
             templateCache.addFile(file);
             Collection<CacheEntry> newEntries = new ArrayList<CacheEntry>(templates.size());
-            for (String template : templates) {
-                CacheEntry cacheEntry = new CacheEntry(namespace, template, false, file);
-                templateCache.getOrCreate(template).add(cacheEntry);
+            for (Declaration template : templates) {
+                CacheEntry cacheEntry = template.toCacheEntry(namespace, false, file);
+                templateCache.getOrCreate(template.name).add(cacheEntry);
                 newEntries.add(cacheEntry);
             }
             namespaceCache.added(newEntries.iterator());
@@ -196,20 +314,76 @@ public class SoyCacheUpdater extends DumbModeTask {
         if (delegatePackageCache != null) {
             DelegateTemplateCache templateCache = delegatePackageCache.getOrCreate(delegate);
             templateCache.addFile(file);
-            Collection<CacheEntry> newEntries = new ArrayList<CacheEntry>(templates.size());
-            for (String template : deltemplates) {
-                CacheEntry cacheEntry = new CacheEntry(delegate, template, true, file);
-                templateCache.getOrCreate(template).add(cacheEntry);
+            List<CacheEntry> newEntries = new ArrayList<CacheEntry>(deltemplates.size());
+            for (Declaration template : deltemplates) {
+                CacheEntry cacheEntry = template.toCacheEntry(delegate, true, file);
+                templateCache.getOrCreate(template.name).add(cacheEntry);
                 newEntries.add(cacheEntry);
             }
             delegatePackageCache.added(newEntries.iterator());
+            DeltemplateOverrideCache.getCache(delegatePackageCache.getModule()).update(file, newEntries);
         }
+        return declarations.toString();
+    }
+
+    /**
+     * Finds the call and delcall commands in the source text of a file. Each
+     * call is attributed to the closest template or deltemplate declared
+     * before it, and the names of called templates are expanded using the
+     * file's namespace and aliases.
+     */
+    @NotNull
+    private static List<CallEdge> findCalls(@NotNull CharSequence text,
+                                            @NotNull int[] comments,
+                                            @NotNull String namespace,
+                                            @NotNull Map<String,String> aliases,
+                                            @NotNull List<Declaration> declarations,
+                                            @NotNull VirtualFile file) {
+        List<CallEdge> calls = new ArrayList<CallEdge>();
+        Matcher matcher = MATCH_CALLS.matcher(text);
+        Declaration caller = null;
+        int next = 0;
+        while (matcher.find()) {
+            if (findComment(comments, matcher.start()) >= 0) {
+                continue;
+            }
+            int offset = matcher.start(2);
+            while (next < declarations.size() && declarations.get(next).offset < offset) {
+                caller = declarations.get(next++);
+            }
+            boolean delcall = "delcall".equalsIgnoreCase(matcher.group(1)); //NON-NLS
+            String callee = matcher.group(2);
+            if (!delcall) {
+                callee = expandTemplateName(callee, namespace, aliases);
+            }
+            calls.add(new CallEdge(caller == null ? null : caller.getQualifiedName(namespace),
+                                   caller != null && caller.delegate,
+                                   callee,
+                                   delcall,
+                                   file,
+                                   offset));
+        }
+        return calls;
+    }
+
+    @NotNull
+    private static String expandTemplateName(@NotNull String name,
+                                             @NotNull String namespace,
+                                             @NotNull Map<String,String> aliases) {
+        if (name.startsWith(".")) {
+            return namespace + name;
+        }
+        int firstDot = name.indexOf('.');
+        String alias = firstDot > 0 ? aliases.get(name.substring(0, firstDot)) : null;
+        return alias == null ? name : alias + name.substring(firstDot);
     }
 
     public void removeFromCache(@NotNull VirtualFile file) {
         if (disposed) {
             return;
         }
+        declarationsByFile.remove(file);
+        generation.incrementAndGet();
         NamespaceCache namespaceCache = getNamespaceCache(file);
         if (namespaceCache != null) {
             removeFromCacheImpl(namespaceCache, file);
@@ -226,6 +400,18 @@ public class SoyCacheUpdater extends DumbModeTask {
                 removeFromCacheImpl(DelegatePackageCache.getCache(module), file);
             }
         }
+        CallGraphCache callGraphCache = getCallGraphCache(file);
+        if (callGraphCache != null) {
+            callGraphCache.remove(file);
+            DeltemplateOverrideCache.getCache(callGraphCache.getModule()).remove(file);
+            NamespaceTrie.getCache(callGraphCache.getModule()).remove(file);
+        } else {
+            for (Module module : TreeNavigator.INSTANCE.getModules(project)) {
+                CallGraphCache.getCache(module).remove(file);
+                DeltemplateOverrideCache.getCache(module).remove(file);
+                NamespaceTrie.getCache(module).remove(file);
+            }
+        }
     }
 
     public <T> SimpleRef<T> getCachedRef(final SimpleRef<T> source) {
@@ -280,8 +466,177 @@ public class SoyCacheUpdater extends DumbModeTask {
         return module == null ? null : DelegatePackageCache.getCache(module);
     }
 
-    public void dispose() {
+    private CallGraphCache getCallGraphCache(VirtualFile file) {
+        if (disposed) {
+            return null;
+        }
+        ProjectFileIndex fileIndex = TreeNavigator.INSTANCE.getProjectFileIndex(project);
+        Module module = fileIndex.getModuleForFile(file);
+        return module == null ? null : CallGraphCache.getCache(module);
+    }
+
+    public synchronized void dispose() {
         disposed = true;
+        pendingUpdates.clear();
+        if (updateAlarm != null) {
+            updateAlarm.cancelAllRequests();
+            updateAlarm.dispose();
+        }
+    }
+
+    /**
+     * Finds the comments in soy source text. Block comments may appear
+     * anywhere, while line comments must be preceded by whitespace, so that
+     * the slashes in a url are not mistaken for one.
+     * @param text The source text to scan.
+     * @return The start and end offsets of each comment, in order.
+     */
+    @NotNull
+    static int[] findComments(@NotNull CharSequence text) {
+        int[] comments = new int[16];
+        int count = 0;
+        for (int i = 0, l = text.length(); i < l - 1; i++) {
+            if (text.charAt(i) != '/') {
+                continue;
+            }
+            char next = text.charAt(i + 1);
+            int end;
+            if (next == '*') {
+                end = i + 2;
+                while (end < l && !(text.charAt(end - 1) == '*' && text.charAt(end) == '/' && end - 1 > i + 1)) {
+                    end++;
+                }
+                end = Math.min(end + 1, l);
+            } else if (next == '/' && (i == 0 || Character.isWhitespace(text.charAt(i - 1)))) {
+                end = i + 2;
+                while (end < l && text.charAt(end) != '\n') {
+                    end++;
+                }
+            } else {
+                continue;
+            }
+            if (count == comments.length) {
+                comments = Arrays.copyOf(comments, count * 2);
+            }
+            comments[count++] = i;
+            comments[count++] = end;
+            i = end - 1;
+        }
+        return Arrays.copyOf(comments, count);
+    }
+
+    /**
+     * @param comments The comment offsets returned by
+     *     {@link #findComments(CharSequence)}.
+     * @param offset An offset into the same text.
+     * @return The index into comments of the start of the comment containing
+     *     the offset, or -1 if the offset is not within a comment.
+     */
+    static int findComment(@NotNull int[] comments, int offset) {
+        int low = 0;
+        int high = comments.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (comments[mid * 2 + 1] <= offset) {
+                low = mid + 1;
+            } else if (comments[mid * 2] > offset) {
+                high = mid - 1;
+            } else {
+                return mid * 2;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A template or deltemplate declaration, as found in the source text of a
+     * file. The parameters are taken from the doc comment immediately
+     * preceding the command, and from any inner @param commands before the
+     * closing tag. Matches that fall within comments are ignored.
+     */
+    private static class Declaration {
+
+        private final String name;
+        private final boolean delegate;
+        private final int offset;
+        private final Collection<String> parameters = new ArrayList<String>(4);
+        private final Collection<String> requiredParameters = new ArrayList<String>(4);
+        private final boolean privateTemplate;
+        private final String variant;
+
+        private Declaration(@NotNull CharSequence text, @NotNull int[] comments, @NotNull Matcher command) {
+            this.name = command.group(2);
+            this.delegate = "deltemplate".equalsIgnoreCase(command.group(1)); //NON-NLS
+            this.offset = command.start(2);
+            int tagEnd = indexOf(text, '}', command.end());
+            Matcher privateMatcher = MATCH_PRIVATE.matcher(text);
+            Matcher variantMatcher = MATCH_VARIANT.matcher(text);
+            if (tagEnd > 0) {
+                privateMatcher.region(command.end(), tagEnd);
+                variantMatcher.region(command.end(), tagEnd);
+            }
+            this.privateTemplate = tagEnd > 0 && find(privateMatcher, comments);
+            this.variant = delegate && tagEnd > 0 && find(variantMatcher, comments) ? variantMatcher.group(1) : null;
+            int docEnd = command.start();
+            while (docEnd > 0 && Character.isWhitespace(text.charAt(docEnd - 1))) {
+                docEnd--;
+            }
+            int doc = docEnd > 0 ? findComment(comments, docEnd - 1) : -1;
+            if (doc >= 0 && comments[doc + 1] == docEnd && docEnd - comments[doc] > 4 &&
+                text.charAt(comments[doc] + 1) == '*' && text.charAt(comments[doc] + 2) == '*') {
+                Matcher matcher = MATCH_PARAMS.matcher(text);
+                matcher.region(comments[doc], docEnd);
+                while (matcher.find()) {
+                    parameters.add(matcher.group(2));
+                    if (matcher.group(1).length() == 0) {
+                        requiredParameters.add(matcher.group(2));
+                    }
+                }
+            }
+            if (tagEnd > 0) {
+                Matcher matcher = MATCH_INNER_PARAMS.matcher(text);
+                matcher.region(tagEnd, text.length());
+                while (find(matcher, comments) && matcher.group(1) != null) {
+                    parameters.add(matcher.group(1));
+                }
+            }
+        }
+
+        @NotNull
+        private CacheEntry toCacheEntry(@NotNull String place, boolean deltemplate, @NotNull VirtualFile file) {
+            return new CacheEntry(place, name, deltemplate, file, offset, parameters, requiredParameters, privateTemplate, variant);
+        }
+
+        @NotNull
+        private String getQualifiedName(@NotNull String namespace) {
+            return delegate ? name : namespace + "." + name;
+        }
+
+        private void appendTo(@NotNull StringBuilder buffer) {
+            buffer.append(privateTemplate ? " private" : "").append(' ').append(parameters); //NON-NLS
+            buffer.append(' ').append(requiredParameters);
+            if (variant != null) {
+                buffer.append(" variant=").append(variant); //NON-NLS
+            }
+        }
+
+        private static boolean find(@NotNull Matcher matcher, @NotNull int[] comments) {
+            while (matcher.find()) {
+                if (findComment(comments, matcher.start()) < 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static int indexOf(@NotNull CharSequence text, char c, int from) {
+            for (int i = from, l = text.length(); i < l; i++) {
+                if (text.charAt(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
     }
 
     private class CachingRef<T> implements SimpleRef<T> {
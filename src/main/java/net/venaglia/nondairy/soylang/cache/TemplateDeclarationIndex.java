@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.cache;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.ProjectFileIndex;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import net.venaglia.nondairy.soylang.elements.TreeNavigator;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Looks up template and deltemplate declarations by name, using the entries
+ * recorded in the {@link NamespaceCache} and {@link DelegatePackageCache}
+ * when files are indexed by {@link SoyCacheUpdater}.
+ *
+ * Each {@link CacheEntry} found here carries the file, offset, declared
+ * parameters and visibility of the declaration, so callers can navigate to
+ * a template, or check the parameters it accepts, without building psi for
+ * the files that declare it.
+ */
+public class TemplateDeclarationIndex {
+
+    private TemplateDeclarationIndex() {
+        // static methods only
+    }
+
+    /**
+     * Finds the declarations of a template.
+     * @param modules The modules to search.
+     * @param templateName The fully qualified name of the template.
+     * @return The declarations found, or an empty collection if there are
+     *     none or the name is not fully qualified.
+     */
+    @NotNull
+    public static List<CacheEntry> findTemplates(@NotNull Collection<Module> modules,
+                                                 @NotNull @NonNls String templateName) {
+        int lastDot = templateName.lastIndexOf('.');
+        if (lastDot <= 0 || lastDot == templateName.length() - 1) {
+            return Collections.emptyList();
+        }
+        String namespace = templateName.substring(0, lastDot);
+        String shortName = templateName.substring(lastDot + 1);
+        List<CacheEntry> result = new ArrayList<CacheEntry>(2);
+        for (Module module : modules) {
+            TemplateCache templateCache = NamespaceCache.getCache(module).get(namespace);
+            if (templateCache != null) {
+                addAll(templateCache.get(shortName), result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the declarations of a deltemplate, in all delegate packages.
+     * @param modules The modules to search.
+     * @param deltemplateName The name of the deltemplate.
+     * @return The declarations found, or an empty collection if there are
+     *     none.
+     */
+    @NotNull
+    public static List<CacheEntry> findDeltemplates(@NotNull Collection<Module> modules,
+                                                    @NotNull @NonNls String deltemplateName) {
+        List<CacheEntry> result = new ArrayList<CacheEntry>(4);
+        for (Module module : modules) {
+            for (DelegateTemplateCache templateCache : DelegatePackageCache.getCache(module).values()) {
+                addAll(templateCache.get(deltemplateName), result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param entries Declarations found by this index.
+     * @return The names of all parameters declared by any of the passed
+     *     declarations.
+     */
+    @NotNull
+    public static Set<String> getParameters(@NotNull Collection<CacheEntry> entries) {
+        Set<String> parameters = new LinkedHashSet<String>();
+        for (CacheEntry entry : entries) {
+            parameters.addAll(entry.getParameters());
+        }
+        return parameters;
+    }
+
+    /**
+     * @param entries Declarations found by this index.
+     * @return The names of all parameters declared as required, in the doc
+     *     comment of any of the passed declarations.
+     */
+    @NotNull
+    public static Set<String> getRequiredParameters(@NotNull Collection<CacheEntry> entries) {
+        Set<String> parameters = new LinkedHashSet<String>();
+        for (CacheEntry entry : entries) {
+            parameters.addAll(entry.getRequiredParameters());
+        }
+        return parameters;
+    }
+
+    /**
+     * Collects the module containing the passed element, along with all the
+     * modules it depends on.
+     * @param element The element to start from.
+     * @param modules The collection to add modules to.
+     */
+    public static void getModulesToSearch(@NotNull PsiElement element, @NotNull Set<Module> modules) {
+        PsiFile containingFile = element.getContainingFile();
+        VirtualFile virtualFile = containingFile == null ? null : containingFile.getVirtualFile();
+        if (virtualFile != null) {
+            ProjectFileIndex fileIndex = TreeNavigator.INSTANCE.getProjectFileIndex(element.getProject());
+            Module module = fileIndex.getModuleForFile(virtualFile);
+            if (module != null && !modules.contains(module)) {
+                modules.add(module);
+                collectModuleDependencies(module, modules);
+            }
+        }
+    }
+
+    private static void collectModuleDependencies(@NotNull Module start, @NotNull Set<Module> modules) {
+        ModuleRootManager moduleRootManager = ModuleRootManager.getInstance(start);
+        if (moduleRootManager != null) {
+            for (Module module : moduleRootManager.getDependencies()) {
+                if (!modules.contains(module)) {
+                    modules.add(module);
+                    collectModuleDependencies(module, modules);
+                }
+            }
+        }
+    }
+
+    private static void addAll(Set<CacheEntry> entries, Collection<CacheEntry> buffer) {
+        if (entries != null) {
+            //noinspection SynchronizationOnLocalVariableOrMethodParameter
+            synchronized (entries) {
+                buffer.addAll(entries);
+            }
+        }
+    }
+}
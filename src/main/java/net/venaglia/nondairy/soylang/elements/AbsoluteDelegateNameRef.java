@@ -56,7 +56,7 @@ public class AbsoluteDelegateNameRef extends SoyPsiElement implements SoyNamedEl
     }
 
     @Override
-    public PsiReference getReference() {
+    protected PsiReference createReference() {
         String packageName = getDelegatePackage();
         String templateName = getName();
         if (templateName == null) return null;
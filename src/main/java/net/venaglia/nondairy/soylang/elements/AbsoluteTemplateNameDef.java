@@ -109,7 +109,7 @@ public class AbsoluteTemplateNameDef
     }
 
     private boolean isPrivate() {
-        return !PRIVATE_ATTRIBUTE_PATH.navigate(this).isEmpty();
+        return PRIVATE_ATTRIBUTE_PATH.any(this);
     }
 
     public PsiElementCollection getParameterDeclarations() {
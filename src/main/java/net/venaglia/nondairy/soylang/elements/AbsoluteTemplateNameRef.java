@@ -16,6 +16,7 @@
 
 package net.venaglia.nondairy.soylang.elements;
 
+import com.intellij.codeInsight.lookup.LookupElementBuilder;
 import com.intellij.lang.ASTNode;
 import com.intellij.navigation.ItemPresentation;
 import com.intellij.openapi.module.Module;
@@ -27,13 +28,14 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiReference;
 import com.intellij.util.IncorrectOperationException;
 import net.venaglia.nondairy.soylang.SoyProjectComponent;
-import net.venaglia.nondairy.soylang.cache.AliasCache;
-import net.venaglia.nondairy.soylang.cache.AliasCacheEntry;
 import net.venaglia.nondairy.soylang.cache.NamespaceCache;
+import net.venaglia.nondairy.soylang.cache.NamespaceTrie;
 import net.venaglia.nondairy.soylang.cache.SoyCacheUpdater;
 import net.venaglia.nondairy.soylang.cache.TemplateCache;
+import net.venaglia.nondairy.soylang.cache.TemplateDeclarationIndex;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
 import net.venaglia.nondairy.soylang.elements.path.TemplatePath;
+import net.venaglia.nondairy.soylang.icons.SoyIcons;
 import net.venaglia.nondairy.util.SimpleRef;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
@@ -41,6 +43,9 @@ import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 /**
  * User: ed
@@ -79,11 +84,41 @@ public class AbsoluteTemplateNameRef extends SoyPsiElement implements SoyNamedEl
     }
 
     @Override
-    public PsiReference getReference() {
+    protected PsiReference createReference() {
         String templateName = getTemplateName();
         PsiElementPath pathToTemplateName = TemplatePath.forTemplateName(templateName)
                 .debug("for_template_name!absolute");
-        return new SoyPsiElementReference(this, pathToTemplateName, null);
+        return new SoyPsiElementReference(this, pathToTemplateName, null) {
+            @NotNull
+            @Override
+            public Object[] getVariants() {
+                Object[] templates = super.getVariants();
+                Collection<String> namespaces = getNamespaceVariants();
+                Object[] variants = new Object[templates.length + namespaces.size()];
+                System.arraycopy(templates, 0, variants, 0, templates.length);
+                int i = templates.length;
+                for (String namespace : namespaces) {
+                    variants[i++] = LookupElementBuilder.create(namespace).withIcon(SoyIcons.NAMESPACE);
+                }
+                return variants;
+            }
+        };
+    }
+
+    /**
+     * @return The namespaces that complete the namespace portion of this
+     *     template name, found by prefix in the {@link NamespaceTrie}.
+     */
+    @NotNull
+    private Collection<String> getNamespaceVariants() {
+        String text = getText();
+        int lastDot = text.lastIndexOf('.');
+        if (lastDot < 0) {
+            return Collections.emptyList();
+        }
+        Set<Module> modules = new HashSet<Module>();
+        TemplateDeclarationIndex.getModulesToSearch(this, modules);
+        return NamespaceTrie.findNamespaces(modules, text.substring(0, lastDot));
     }
 
     @Override
@@ -144,16 +179,9 @@ public class AbsoluteTemplateNameRef extends SoyPsiElement implements SoyNamedEl
         if (exists(rawName.substring(0, dot), templateShortName, namespaceCache)) {
             return rawName;
         }
-        AliasCache aliasCache =  AliasCache.getCache(module);
-        Collection<AliasCacheEntry> caches = aliasCache.getReferencingAliasCaches(file);
-
-        for (AliasCacheEntry entry : caches) {
-            String alias = entry.getNamespace();
-            String lastPart = alias.substring(alias.lastIndexOf('.') + 1);
-            if (lastPart.equals(expectedLastPart)) {
-                if (exists(alias, templateShortName.substring(1), namespaceCache)) {
-                    return alias + templateShortName;
-                }
+        for (String alias : NamespaceTrie.getCache(module).resolveAliases(file, expectedLastPart)) {
+            if (exists(alias, templateShortName.substring(1), namespaceCache)) {
+                return alias + templateShortName;
             }
         }
 
@@ -53,7 +53,7 @@ public class AliasTagElement extends SoyCommandTag implements NamespaceMemberEle
     @Override
     @Nullable
     public String getNamespace() {
-        PsiElement element = PATH_TO_ALIAS_NAMESPACE_NAME.navigate(this).oneOrNull();
+        PsiElement element = PATH_TO_ALIAS_NAMESPACE_NAME.first(this);
         if (element instanceof NamespaceRefElement) {
             return ((NamespaceRefElement)element).getName();
         }
@@ -52,7 +52,7 @@ public class AttributeElement extends SoyPsiElement {
      */
     @Nullable
     public String getAttributeName() {
-        PsiElement element = PATH_TO_ATTRIBUTE_NAME.navigate(this).oneOrNull();
+        PsiElement element = PATH_TO_ATTRIBUTE_NAME.first(this);
         return element instanceof Key ? ((Key)element).getName() : null;
     }
 
@@ -62,7 +62,7 @@ public class AttributeElement extends SoyPsiElement {
      */
     @Nullable
     public String getAttributeValue() {
-        PsiElement element = PATH_TO_ATTRIBUTE_VALUE.navigate(this).oneOrNull();
+        PsiElement element = PATH_TO_ATTRIBUTE_VALUE.first(this);
         return element instanceof Value ? ((Value)element).getValue() : null;
     }
 
@@ -75,7 +75,7 @@ public class AttributeElement extends SoyPsiElement {
      */
     @NotNull
     public String getAttributeValue(@NotNull String defaultValue) {
-        PsiElement element = PATH_TO_ATTRIBUTE_VALUE.navigate(this).oneOrNull();
+        PsiElement element = PATH_TO_ATTRIBUTE_VALUE.first(this);
         return element instanceof Value ? ((Value)element).getValue() : defaultValue;
     }
 
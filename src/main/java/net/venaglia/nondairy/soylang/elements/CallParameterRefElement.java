@@ -22,19 +22,16 @@ import com.intellij.lang.ASTNode;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiReference;
 import com.intellij.util.IncorrectOperationException;
-import net.venaglia.nondairy.soylang.SoyElement;
 import net.venaglia.nondairy.soylang.elements.path.ElementPredicate;
 import net.venaglia.nondairy.soylang.elements.path.ElementTypePredicate;
-import net.venaglia.nondairy.soylang.elements.path.NamePredicate;
+import net.venaglia.nondairy.soylang.elements.path.ParameterPredicate;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementCollection;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
-import net.venaglia.nondairy.soylang.elements.path.PushPopPredicate;
-import net.venaglia.nondairy.soylang.elements.path.SoyFileElementTraversalPredicate;
-import net.venaglia.nondairy.soylang.elements.path.TemplatePath;
+import net.venaglia.nondairy.soylang.elements.path.TraversalPredicate;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Collection;
 
 /**
  * User: ed
@@ -42,6 +39,9 @@ import java.util.Set;
  * Time: 5:24:32 PM
  *
  * SoyPsiElement that represents a parameter reference within a soy param tag.
+ *
+ * The invoked template is resolved by the enclosing {@link CallTagElement},
+ * so every parameter passed to the same call shares a single resolution.
  */
 public class CallParameterRefElement extends ParameterElement {
 
@@ -55,80 +55,91 @@ public class CallParameterRefElement extends ParameterElement {
         }
     };
 
-    private static final PushPopPredicate.PopJoin POP_JOIN = new PushPopPredicate.PopJoin() {
+    private static final PsiElementPath PATH_TO_CALL_TAG =
+            new PsiElementPath(new ElementTypePredicate(param_tag).onFirstAncestor(),
+                               new ElementTypePredicate(call_tag).onPreviousSiblings(false))
+            .debug("path_to_call_tag");
 
+    /**
+     * Traverses from a parameter passed to a call to the template_name
+     * elements of the invoked templates, as resolved and cached by the
+     * enclosing {@link CallTagElement}.
+     */
+    private static final TraversalPredicate INVOKED_TEMPLATES = new TraversalPredicate.AlwaysTrue() {
+        @NotNull
         @Override
-        public PsiElementCollection join(PsiElementCollection current, PsiElementCollection popped) {
-            Set<String> names = new HashSet<String>(popped.size());
-            for (PsiElement element : popped) {
-                if (element instanceof TemplateMemberElement) {
-                    names.add(((TemplateMemberElement)element).getTemplateName());
-                }
-            }
+        public PsiElementCollection traverse(@NotNull Collection<PsiElement> current) {
             PsiElementCollection result = new PsiElementCollection();
             for (PsiElement element : current) {
-                if (element instanceof TemplateMemberElement &&
-                        names.contains(((TemplateMemberElement)element).getTemplateName())) {
-                    result.add(element);
+                CallTagElement callTag = element instanceof CallParameterRefElement
+                                         ? ((CallParameterRefElement)element).getCallTag()
+                                         : null;
+                if (callTag != null) {
+                    result.addAll(callTag.getInvokedTemplates());
                 }
             }
             return result;
         }
-    };
 
-    private static final PsiElementPath PATH_TO_INVOKED_TEMPLATE_NAME =
-                    new PsiElementPath(new ElementTypePredicate(param_tag).onFirstAncestor(),
-                                       new ElementTypePredicate(call_tag).onPreviousSiblings(false),
-                                       new ElementTypePredicate(tag_between_braces).onChildren(),
-                                       new ElementTypePredicate(template_name_ref, template_name_ref_absolute).onChildren(),
-                                       PushPopPredicate.push(),
-                                       SoyFileElementTraversalPredicate.filesStartingOnNamespaceElement(),
-                                       new ElementTypePredicate(SoyElement.soy_file).onChildren(),
-                                       new ElementTypePredicate(SoyElement.tag_and_doc_comment).onChildren(),
-                                       new ElementTypePredicate(SoyElement.template_tag).onChildrenOfChildren(),
-                                       PushPopPredicate.popAndJoin(POP_JOIN),
-                                       new ElementTypePredicate(SoyElement.template_name).onChildrenOfChildren()
-)
-            .debug("path_to_invoked_template_name");
+        @Override
+        public boolean test(PsiElement element) {
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "invoked-templates"; //NON-NLS
+        }
+    };
 
+    private static final PsiElementPath PATH_TO_TEMPLATE_PARAMETERS =
+            new PsiElementPath(INVOKED_TEMPLATES).append(ParameterRefElement.PATH_TO_PARAMETER_DEF)
+            .debug("path_to_template_params");
 
     public CallParameterRefElement(@NotNull ASTNode node) {
         super(node);
     }
 
+    /**
+     * @return The call tag this parameter is passed to, or null if this
+     *     parameter is not within a call.
+     */
+    @Nullable
+    public CallTagElement getCallTag() {
+        PsiElement element = PATH_TO_CALL_TAG.first(this);
+        return element instanceof CallTagElement ? (CallTagElement)element : null;
+    }
+
     @Override
-    public PsiReference getReference() {
-        PsiElement element = PATH_TO_INVOKED_TEMPLATE_NAME.navigate(this).oneOrNull();
-        if (element instanceof TemplateMemberElement) {
-            String myTemplateName = ((TemplateMemberElement)element).getTemplateName();
-            if (myTemplateName != null) {
-                ElementPredicate parameterNamePredicate = new NamePredicate(getName());
-                PsiElementPath pathToTemplateParameters =
-                        TemplatePath.forTemplateName(myTemplateName)
-                                    .debug("for_template_name!call")
-                                    .append(ParameterRefElement.PATH_TO_PARAMETER_DEF)
-                                    .debug("path_to_template_params");
-                return new SoyPsiElementReference(this, pathToTemplateParameters, parameterNamePredicate).bound(BIND_HANDLER);
-            }
+    protected PsiReference createReference() {
+        if (getTemplateName() != null) {
+            ElementPredicate parameterPredicate = new ParameterPredicate(getName());
+            return new SoyPsiElementReference(this, PATH_TO_TEMPLATE_PARAMETERS, parameterPredicate).bound(BIND_HANDLER);
         }
         return null;
     }
 
+    /**
+     * @return The template_name element of the template this parameter is
+     *     passed to, or null if the call does not resolve to exactly one
+     *     template.
+     */
+    @Nullable
+    private TemplateMemberElement getInvokedTemplate() {
+        CallTagElement callTag = getCallTag();
+        PsiElement element = callTag == null ? null : callTag.getInvokedTemplates().oneOrNull();
+        return element instanceof TemplateMemberElement ? (TemplateMemberElement)element : null;
+    }
+
     @Override
     public String getTemplateName() {
-        PsiElement element = PATH_TO_INVOKED_TEMPLATE_NAME.navigate(this).oneOrNull();
-        if (element instanceof TemplateMemberElement) {
-            return ((TemplateMemberElement)element).getTemplateName();
-        }
-        return null;
+        TemplateMemberElement template = getInvokedTemplate();
+        return template == null ? null : template.getTemplateName();
     }
 
     @Override
     public String getNamespace() {
-        PsiElement element = PATH_TO_INVOKED_TEMPLATE_NAME.navigate(this).oneOrNull();
-        if (element instanceof TemplateMemberElement) {
-            return ((TemplateMemberElement)element).getNamespace();
-        }
-        return null;
+        TemplateMemberElement template = getInvokedTemplate();
+        return template == null ? null : template.getNamespace();
     }
 }
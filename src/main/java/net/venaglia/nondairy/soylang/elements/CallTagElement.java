@@ -0,0 +1,208 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.openapi.module.Module;
+import com.intellij.psi.PsiElement;
+import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.soylang.cache.CacheEntry;
+import net.venaglia.nondairy.soylang.cache.TemplateDeclarationIndex;
+import net.venaglia.nondairy.soylang.elements.path.ElementTypePredicate;
+import net.venaglia.nondairy.soylang.elements.path.ParameterSymbolTable;
+import net.venaglia.nondairy.soylang.elements.path.PsiElementCollection;
+import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
+import net.venaglia.nondairy.soylang.elements.path.TemplatePath;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * SoyPsiElement that represents a soy call tag.
+ *
+ * The template invoked by this call, and the parameters it declares, are
+ * resolved once and shared by every {param} passed to the call. They are
+ * resolved again only after the containing file is modified, the
+ * declarations held in the template cache change, or the resolved template
+ * is no longer valid.
+ */
+public class CallTagElement extends SoyCommandTag {
+
+    private static final PsiElementPath PATH_TO_TEMPLATE_NAME_REF = new PsiElementPath(
+            new ElementTypePredicate(SoyElement.tag_between_braces).onChildren(),
+            new ElementTypePredicate(SoyElement.template_name_ref, SoyElement.template_name_ref_absolute).onChildren()
+    ).debug("call_tag!template_name_ref");
+
+    private volatile Invocation invocation = null;
+
+    public CallTagElement(@NotNull ASTNode node) {
+        super(node);
+    }
+
+    /**
+     * @return The element naming the template invoked by this call, or null
+     *     if this call does not name a template.
+     */
+    @Nullable
+    public TemplateMemberElement getTemplateNameRef() {
+        PsiElement element = PATH_TO_TEMPLATE_NAME_REF.first(this);
+        return element instanceof TemplateMemberElement ? (TemplateMemberElement)element : null;
+    }
+
+    /**
+     * @return The fully qualified name of the template invoked by this call,
+     *     or null if it cannot be determined.
+     */
+    @Nullable
+    public String getInvokedTemplateName() {
+        return getInvocation().templateName;
+    }
+
+    /**
+     * @return The template_name elements of the templates invoked by this
+     *     call.
+     */
+    @NotNull
+    public PsiElementCollection getInvokedTemplates() {
+        PsiElementCollection templates = getInvocation().getTemplates();
+        return templates.isEmpty() ? PsiElementCollection.EMPTY : new PsiElementCollection(templates);
+    }
+
+    /**
+     * Returns the names of the parameters declared by the template invoked
+     * by this call. These are read from the {@link TemplateDeclarationIndex}
+     * when the template has been indexed, so the file declaring it need not
+     * be parsed.
+     * @return The declared parameter names, or null if the invoked template
+     *     cannot be found.
+     */
+    @Nullable
+    public Set<String> getDeclaredParameters() {
+        return getInvocation().getDeclaredParameters();
+    }
+
+    @NotNull
+    private Invocation getInvocation() {
+        long fileModificationStamp = getFileModificationStamp(this);
+        long cacheGeneration = getCacheGeneration(this);
+        Invocation invocation = this.invocation;
+        if (invocation == null || !invocation.isCurrent(fileModificationStamp, cacheGeneration)) {
+            TemplateMemberElement templateNameRef = getTemplateNameRef();
+            String templateName = templateNameRef == null ? null : templateNameRef.getTemplateName();
+            invocation = new Invocation(templateNameRef, templateName, fileModificationStamp, cacheGeneration);
+            this.invocation = invocation;
+        }
+        return invocation;
+    }
+
+    /**
+     * The template invoked by a call, along with the modification stamps it
+     * was resolved at. The templates and parameters are each resolved on
+     * first use, since most callers need only one of them.
+     */
+    private static final class Invocation {
+
+        @Nullable
+        private final TemplateMemberElement templateNameRef;
+        @Nullable
+        private final String templateName;
+        private final long fileModificationStamp;
+        private final long cacheGeneration;
+
+        private volatile PsiElementCollection templates;
+        private volatile Set<String> declaredParameters;
+        private volatile boolean declaredParametersResolved;
+
+        private Invocation(@Nullable TemplateMemberElement templateNameRef,
+                           @Nullable String templateName,
+                           long fileModificationStamp,
+                           long cacheGeneration) {
+            this.templateNameRef = templateNameRef;
+            this.templateName = templateName;
+            this.fileModificationStamp = fileModificationStamp;
+            this.cacheGeneration = cacheGeneration;
+        }
+
+        private boolean isCurrent(long fileModificationStamp, long cacheGeneration) {
+            if (this.fileModificationStamp != fileModificationStamp || this.cacheGeneration != cacheGeneration) {
+                return false;
+            }
+            PsiElementCollection templates = this.templates;
+            if (templates != null) {
+                for (PsiElement template : templates) {
+                    if (!template.isValid()) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        @NotNull
+        private PsiElementCollection getTemplates() {
+            PsiElementCollection templates = this.templates;
+            if (templates == null) {
+                if (templateNameRef == null || templateName == null) {
+                    templates = PsiElementCollection.EMPTY;
+                } else {
+                    templates = TemplatePath.forTemplateName(templateName).navigate(templateNameRef);
+                }
+                this.templates = templates;
+            }
+            return templates;
+        }
+
+        @Nullable
+        private Set<String> getDeclaredParameters() {
+            if (!declaredParametersResolved) {
+                declaredParameters = resolveDeclaredParameters();
+                declaredParametersResolved = true;
+            }
+            return declaredParameters;
+        }
+
+        @Nullable
+        private Set<String> resolveDeclaredParameters() {
+            if (templateNameRef == null || templateName == null) {
+                return null;
+            }
+            Set<Module> modules = new HashSet<Module>();
+            TemplateDeclarationIndex.getModulesToSearch(templateNameRef, modules);
+            List<CacheEntry> declarations = TemplateDeclarationIndex.findTemplates(modules, templateName);
+            if (!declarations.isEmpty()) {
+                return Collections.unmodifiableSet(TemplateDeclarationIndex.getParameters(declarations));
+            }
+            PsiElementCollection templates = getTemplates();
+            if (templates.isEmpty()) {
+                return null;
+            }
+            Set<String> declared = new HashSet<String>();
+            for (PsiElement template : templates) {
+                for (PsiElement element : ParameterSymbolTable.forElement(template).getVisibleDefinitions(template)) {
+                    if (element instanceof ParameterElement) {
+                        declared.add(((ParameterElement)element).getName());
+                    }
+                }
+            }
+            return Collections.unmodifiableSet(declared);
+        }
+    }
+}
@@ -44,7 +44,7 @@ public class DelegatePackageElement extends SoyCommandTag {
     @Nullable
     @NonNls
     public String getDelegatePackage() {
-        PsiElement element = PATH_TO_DELEGATE_NAME.navigate(this).oneOrNull();
+        PsiElement element = PATH_TO_DELEGATE_NAME.first(this);
         if (element != null) {
             return element.getText();
         }
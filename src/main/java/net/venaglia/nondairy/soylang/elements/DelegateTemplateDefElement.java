@@ -69,7 +69,7 @@ public class DelegateTemplateDefElement extends SoyCommandTag implements SoyName
     }
 
     public String getDelegatePackage() {
-        PsiElement element = PATH_TO_PACKAGE_NAME.navigate(this).oneOrNull();
+        PsiElement element = PATH_TO_PACKAGE_NAME.first(this);
         if (element instanceof DelegatePackageElement) {
             return ((DelegatePackageElement)element).getDelegatePackage();
         }
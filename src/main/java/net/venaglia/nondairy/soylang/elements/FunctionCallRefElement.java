@@ -17,25 +17,15 @@
 package net.venaglia.nondairy.soylang.elements;
 
 import com.intellij.lang.ASTNode;
-import com.intellij.navigation.ItemPresentation;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.ElementManipulators;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiNamedElement;
 import com.intellij.psi.PsiReference;
-import com.intellij.psi.impl.source.DummyHolder;
-import com.intellij.psi.impl.source.DummyHolderElement;
-import com.intellij.psi.impl.source.IdentityCharTable;
-import com.intellij.psi.impl.source.tree.LazyParseableElement;
 import com.intellij.util.IncorrectOperationException;
-import net.venaglia.nondairy.soylang.SoyElement;
-import net.venaglia.nondairy.soylang.SoyLanguage;
-import net.venaglia.nondairy.soylang.icons.SoyIcons;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
-import javax.swing.*;
-
 /**
  * User: ed
  * Date: 1/17/12
@@ -45,8 +35,6 @@ import javax.swing.*;
  */
 public class FunctionCallRefElement extends SoyPsiElement implements PsiNamedElement {
 
-    private FunctionCallRefElement.FunctionElementReference functionElementReference;
-
     public FunctionCallRefElement(@NotNull ASTNode node) {
         super(node);
     }
@@ -58,44 +46,32 @@ public class FunctionCallRefElement extends SoyPsiElement implements PsiNamedEle
 
     @Override
     public PsiElement setName(@NotNull @NonNls String name) throws IncorrectOperationException {
-        functionElementReference = null;
         TextRange range = getTextRange().shiftRight(0 - getTextOffset());
         return ElementManipulators.getManipulator(this).handleContentChange(this, range, name);
     }
 
     @Override
-    public PsiReference getReference() {
-        if (functionElementReference == null) {
-            functionElementReference = new FunctionElementReference();
-        }
-        return functionElementReference;
+    protected PsiReference createReference() {
+        return new FunctionElementReference();
     }
 
     /**
-     * Custom reference object that resolves to a dummy psi element for the
-     * encapsulating FunctionCallRefElement.
+     * Custom reference object that resolves to the shared element the
+     * {@link SoyFunctionRegistry} holds for the invoked function.
      */
     // someday this could find the Java class that implements SoyFunction
     private class FunctionElementReference extends SoyPsiElementReference {
 
         private final String functionName;
-        private final FunctionDefElement element;
 
         public FunctionElementReference() {
             super(FunctionCallRefElement.this);
             functionName = FunctionCallRefElement.this.getText();
-            element = new FunctionDefElement(functionName);
-            new DummyHolder(FunctionCallRefElement.this.getManager(),
-                            new DummyHolderElement(functionName),
-                            null,
-                            IdentityCharTable.INSTANCE,
-                            true,
-                            SoyLanguage.INSTANCE);
         }
 
         @Override
         public PsiElement resolve() {
-            return element;
+            return SoyFunctionRegistry.INSTANCE.getFunction(functionName);
         }
 
         @Override
@@ -110,44 +86,4 @@ public class FunctionCallRefElement extends SoyPsiElement implements PsiNamedEle
             return true;
         }
     }
-
-    /**
-     * A dummy PsiElement to act as a surrogate reference for
-     * FunctionCallRefElement objects.
-     */
-    private static class FunctionDefElement extends SoyPsiElement implements PsiNamedElement, ItemPresentation {
-
-        private final String name;
-
-        private FunctionDefElement(@NotNull String name) {
-            super(new LazyParseableElement(SoyElement.function_call_name, name));
-            this.name = name;
-        }
-
-        @Override
-        public String getName() {
-            return name;
-        }
-
-        @Override
-        public String getPresentableText() {
-            return name;
-        }
-
-        @Override
-        public String getLocationString() {
-            return null;
-        }
-
-        @Override
-        public Icon getIcon(boolean open) {
-            return SoyIcons.FUNCTION;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            return o instanceof FunctionDefElement && name.equals(((FunctionDefElement)o).getName());
-        }
-    }
-
 }
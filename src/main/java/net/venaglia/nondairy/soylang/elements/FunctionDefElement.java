@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements;
+
+import com.intellij.navigation.ItemPresentation;
+import com.intellij.psi.PsiNamedElement;
+import com.intellij.psi.PsiReference;
+import com.intellij.psi.impl.source.tree.LazyParseableElement;
+import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.soylang.icons.SoyIcons;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+
+/**
+ * A lightweight PsiElement to act as the navigation target of every
+ * FunctionCallRefElement that invokes the same soy function. Instances are
+ * shared, and are only created by the {@link SoyFunctionRegistry}.
+ */
+public class FunctionDefElement extends SoyPsiElement implements PsiNamedElement, ItemPresentation {
+
+    private final String name;
+    private final boolean builtIn;
+
+    FunctionDefElement(@NotNull String name, boolean builtIn) {
+        super(new LazyParseableElement(SoyElement.function_call_name, name));
+        this.name = name;
+        this.builtIn = builtIn;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return true if this function is provided by the soy compiler itself,
+     *     rather than by a plugin.
+     */
+    public boolean isBuiltIn() {
+        return builtIn;
+    }
+
+    @Override
+    public String getPresentableText() {
+        return name;
+    }
+
+    @Override
+    public PsiReference getReference() {
+        // not part of any file, so there is nothing to cache against
+        return null;
+    }
+
+    @Override
+    public String getLocationString() {
+        return null;
+    }
+
+    @Override
+    public Icon getIcon(boolean open) {
+        return SoyIcons.FUNCTION;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof FunctionDefElement && name.equals(((FunctionDefElement)o).getName());
+    }
+
+    @Override
+    public int hashCode() {
+        return name.hashCode();
+    }
+}
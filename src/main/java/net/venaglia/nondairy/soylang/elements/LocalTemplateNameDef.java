@@ -107,14 +107,14 @@ public class LocalTemplateNameDef
     @Override
     @Nullable
     public String getNamespace() {
-        PsiElement namespace = PATH_TO_NAMESPACE_NAME.navigate(this).oneOrNull();
+        PsiElement namespace = PATH_TO_NAMESPACE_NAME.first(this);
         return namespace instanceof NamespaceMemberElement
                ? ((NamespaceMemberElement)namespace).getNamespace()
                : null;
     }
 
     private boolean isPrivate() {
-        return !PRIVATE_ATTRIBUTE_PATH.navigate(this).isEmpty();
+        return PRIVATE_ATTRIBUTE_PATH.any(this);
     }
 
     public PsiElementCollection getParameterDeclarations() {
@@ -59,7 +59,7 @@ public class LocalTemplateNameRef
     }
 
     @Override
-    public PsiReference getReference() {
+    protected PsiReference createReference() {
         final String myTemplateName = getTemplateName();
         if (myTemplateName == null) {
             return null;
@@ -117,7 +117,7 @@ public class LocalTemplateNameRef
 
     @Override
     public String getNamespace() {
-        PsiElement namespace = PATH_TO_NAMESPACE_NAME.navigate(this).oneOrNull();
+        PsiElement namespace = PATH_TO_NAMESPACE_NAME.first(this);
         return namespace instanceof NamespaceMemberElement
                ? ((NamespaceMemberElement)namespace).getNamespace()
                : null;
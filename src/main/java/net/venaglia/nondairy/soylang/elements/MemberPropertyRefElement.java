@@ -67,7 +67,19 @@ public class MemberPropertyRefElement
 
         @Override
         public SoyPsiElement resolveFinalElement() {
-            ASTNode[] children = getNode().getChildren(null);
+            return create(getNode());
+        }
+
+        /**
+         * Builds the final element for a bracketed property reference
+         * directly, without first building a ForBracketedStringLiteral.
+         * @param node The bracket_property_ref node.
+         * @return A MemberPropertyRefElement if the brackets contain a simple
+         *     string literal, otherwise a plain SoyPsiElement.
+         */
+        @NotNull
+        public static SoyPsiElement create(@NotNull ASTNode node) {
+            ASTNode[] children = node.getChildren(null);
             if (children != null && children.length == 3 &&
                 children[0].getElementType() == SoyToken.LBRACK &&
                 children[1].getElementType() == SoyElement.constant_expression &&
@@ -78,9 +90,9 @@ public class MemberPropertyRefElement
                     children[children.length - 1].getElementType() == SoyToken.STRING_LITERAL_END) {
                     StringBuilder buffer = new StringBuilder();
                     for (int i = 1, l = children.length - 1; i < l; i++) {
-                        ASTNode node = children[i];
-                        IElementType elementType = node.getElementType();
-                        String text = node.getText();
+                        ASTNode child = children[i];
+                        IElementType elementType = child.getElementType();
+                        String text = child.getText();
                         if (elementType == SoyToken.STRING_LITERAL) {
                             buffer.append(text);
                         } else if (elementType == SoyToken.STRING_LITERAL_ESCAPE && text.charAt(0) == '\\') {
@@ -97,17 +109,17 @@ public class MemberPropertyRefElement
                                     char c = (char)Integer.parseInt(text.substring(2), 16);
                                     text = String.valueOf(c); 
                                     break;
-                                default: return new SoyPsiElement(getNode());
+                                default: return new SoyPsiElement(node);
                             }
                             buffer.append(text);
                         } else {
-                            return new SoyPsiElement(getNode());
+                            return new SoyPsiElement(node);
                         }
                     }
-                    return new MemberPropertyRefElement(getNode(), buffer.toString());
+                    return new MemberPropertyRefElement(node, buffer.toString());
                 }
             }
-            return new SoyPsiElement(getNode());
+            return new SoyPsiElement(node);
         }
     }
 }
@@ -87,7 +87,7 @@ public class NamespaceRefElement
     }
 
     @Override
-    public PsiReference getReference() {
+    protected PsiReference createReference() {
         final String namespace = getName();
         if (namespace == null) {
             return null;
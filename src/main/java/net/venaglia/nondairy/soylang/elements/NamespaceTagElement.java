@@ -48,7 +48,7 @@ public class NamespaceTagElement extends SoyCommandTag implements NamespaceMembe
     @Override
     @Nullable
     public String getNamespace() {
-        PsiElement element = PATH_TO_NAMESPACE_NAME.navigate(this).oneOrNull();
+        PsiElement element = PATH_TO_NAMESPACE_NAME.first(this);
         if (element instanceof NamespaceDefElement) {
             return ((NamespaceDefElement)element).getName();
         }
@@ -65,7 +65,7 @@ public abstract class ParameterElement
 
     @Override
     public String getTemplateName() {
-        PsiElement element = PATH_TO_CONTAINING_TEMPLATE_NAME.navigate(this).oneOrNull();
+        PsiElement element = PATH_TO_CONTAINING_TEMPLATE_NAME.first(this);
         if (element instanceof TemplateMemberElement) {
             return ((TemplateMemberElement)element).getTemplateName();
         }
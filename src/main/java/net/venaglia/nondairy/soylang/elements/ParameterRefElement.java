@@ -16,19 +16,13 @@
 
 package net.venaglia.nondairy.soylang.elements;
 
-import static net.venaglia.nondairy.soylang.SoyElement.*;
-
 import com.intellij.lang.ASTNode;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiNamedElement;
 import com.intellij.psi.PsiReference;
-import com.intellij.psi.tree.TokenSet;
 import com.intellij.util.IncorrectOperationException;
-import net.venaglia.nondairy.soylang.elements.path.CommandBoundaryPredicate;
-import net.venaglia.nondairy.soylang.elements.path.ElementPredicate;
-import net.venaglia.nondairy.soylang.elements.path.ElementTypePredicate;
+import net.venaglia.nondairy.soylang.elements.path.ParameterPath;
+import net.venaglia.nondairy.soylang.elements.path.ParameterPredicate;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
-import net.venaglia.nondairy.soylang.elements.path.PushPopPredicate;
 import org.jetbrains.annotations.NotNull;
 
 /**
@@ -51,59 +45,18 @@ public class ParameterRefElement extends ParameterElement {
         }
     };
 
-    public static final PsiElementPath PATH_TO_INNER_PARAM_DEF =
-            new PsiElementPath( //
-                    new ElementTypePredicate(template_tag_pair).onFirstAncestor(),
-                    new ElementTypePredicate(tag).onChildren(),
-                    new ElementTypePredicate(tag_between_braces).onChildren(),
-                    new ElementTypePredicate(parameter_def).onChildren()).debug("path_to_parameter_def!template");
-
-    public static final PsiElementPath PATH_TO_TEMPLATE_DEF =
-            new PsiElementPath(new ElementTypePredicate(tag_and_doc_comment).onFirstAncestor(),
-                    new ElementTypePredicate(doc_comment).onChildren(),
-                    new ElementTypePredicate(doc_comment_tag_with_description).onChildren(),
-                    new ElementTypePredicate(doc_comment_param_def).onChildren()).debug("path_to_parameter_def!template");
-
-
-    public static final PsiElementPath PATH_TO_ITERATOR_DEF =
-            new PsiElementPath(new ElementTypePredicate(iterator_tag_pair).onAncestors(),
-                               new ElementTypePredicate(iterator_tag).onChildren(),
-                               new CommandBoundaryPredicate(SoyCommandTag.Boundary.BEGIN),
-                               new ElementTypePredicate(tag_between_braces).onChildren(),
-                               new ElementTypePredicate(parameter_def).onChildren()).debug("path_to_parameter_def!iterator");
-
-    public static final TokenSet TAG_PAIR_CONTAINERS = TokenSet.andNot(TAG_PAIR_TOKENS, TokenSet.create(let_tag_pair));
-
-    public static final PsiElementPath PATH_TO_LET_DEF =
-            new PsiElementPath(new ElementTypePredicate(TAG_PAIR_CONTAINERS).onAncestors(),
-                               PushPopPredicate.push(),
-                               new ElementTypePredicate(let_tag_pair).onChildren(),
-                               PushPopPredicate.popAdd(),
-                               new ElementTypePredicate(let_tag).onChildren(),
-                               new ElementTypePredicate(tag_between_braces).onChildren(),
-                               new ElementTypePredicate(let_parameter_def).onChildren()).debug("path_to_parameter_def!let");
-
-    public static final PsiElementPath PATH_TO_PARAMETER_DEF =
-                PATH_TO_TEMPLATE_DEF.or(PATH_TO_ITERATOR_DEF, PATH_TO_LET_DEF).or(PATH_TO_INNER_PARAM_DEF).debug("path_to_parameter_def");
-
-    private final ElementPredicate parameterNamePredicate;
+    /**
+     * Finds the parameter declarations visible from an element, answering
+     * from the template's {@link net.venaglia.nondairy.soylang.elements.path.ParameterSymbolTable}.
+     */
+    public static final PsiElementPath PATH_TO_PARAMETER_DEF = ParameterPath.INSTANCE;
 
     public ParameterRefElement(@NotNull ASTNode node) {
         super(node);
-        parameterNamePredicate = new ElementPredicate() {
-            @Override
-            public boolean test(PsiElement element) {
-                return (element instanceof PsiNamedElement) && getName().equals(((PsiNamedElement)element).getName());
-            }
-            @Override
-            public String toString() {
-                return "[name=" + getName() + "]"; //NON-NLS
-            }
-        };
     }
 
     @Override
-    public PsiReference getReference() {
-        return new SoyPsiElementReference(this, PATH_TO_PARAMETER_DEF, parameterNamePredicate).bound(BIND_HANDLER);
+    protected PsiReference createReference() {
+        return new SoyPsiElementReference(this, PATH_TO_PARAMETER_DEF, new ParameterPredicate(getName())).bound(BIND_HANDLER);
     }
 }
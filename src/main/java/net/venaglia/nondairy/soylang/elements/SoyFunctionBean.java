@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.venaglia.nondairy.soylang.elements;
+
+import com.intellij.openapi.extensions.ExtensionPointName;
+import com.intellij.util.xmlb.annotations.Attribute;
+import org.jetbrains.annotations.NonNls;
+
+/**
+ * Declares a function provided by a soy compiler plugin, so calls to it
+ * resolve to an element in the {@link SoyFunctionRegistry}:
+ * <pre>
+ *     &lt;extensions defaultExtensionNs="net.venaglia.nondairy"&gt;
+ *         &lt;soyFunction name="myFunction"/&gt;
+ *     &lt;/extensions&gt;
+ * </pre>
+ */
+public class SoyFunctionBean {
+
+    public static final ExtensionPointName<SoyFunctionBean> EP_NAME =
+            ExtensionPointName.create("net.venaglia.nondairy.soyFunction");
+
+    @NonNls
+    @Attribute("name")
+    public String name;
+}
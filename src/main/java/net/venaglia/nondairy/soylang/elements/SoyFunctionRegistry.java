@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements;
+
+import com.intellij.openapi.extensions.Extensions;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Application level registry of the soy functions that function calls
+ * resolve to. Each function is represented by a single shared
+ * {@link FunctionDefElement}, so resolving a function call does not allocate
+ * anything once its function is known.
+ *
+ * The functions built into the soy compiler are registered up front.
+ * Functions provided by soy plugins are registered only when they are
+ * declared through the {@link SoyFunctionBean#EP_NAME} extension point.
+ * Calls to any other function resolve to a transient element that is not
+ * registered.
+ */
+public class SoyFunctionRegistry {
+
+    public static final SoyFunctionRegistry INSTANCE = new SoyFunctionRegistry(Collections.<String>emptyList());
+
+    @NonNls
+    private static final String[] BUILT_IN_FUNCTIONS = {
+            "isFirst", "isLast", "index", "isNonnull", "checkNotNull", "hasData",
+            "length", "keys", "augmentMap", "quoteKeysIfJs", "mapKeys", "legacyObjectMapToMap",
+            "round", "floor", "ceiling", "min", "max", "randomInt", "parseInt", "parseFloat",
+            "strContains", "strIndexOf", "strLen", "strSub", "strToAsciiLowerCase", "strToAsciiUpperCase",
+            "css", "xid", "bidiDirAttr", "bidiEndEdge", "bidiGlobalDir", "bidiMark",
+            "bidiMarkAfter", "bidiStartEdge", "bidiTextDir", "v1Expression"
+    };
+
+    private final ConcurrentMap<String,FunctionDefElement> functions =
+            new ConcurrentHashMap<String,FunctionDefElement>(64);
+
+    SoyFunctionRegistry(@NotNull Collection<String> pluginFunctions) {
+        for (String name : BUILT_IN_FUNCTIONS) {
+            functions.put(name, new FunctionDefElement(name, true));
+        }
+        for (String name : pluginFunctions) {
+            register(name);
+        }
+    }
+
+    /**
+     * Registers the plugin functions declared through the
+     * {@link SoyFunctionBean#EP_NAME} extension point.
+     */
+    public void registerConfiguredFunctions() {
+        for (SoyFunctionBean bean : Extensions.getExtensions(SoyFunctionBean.EP_NAME)) {
+            if (bean.name != null && bean.name.length() > 0) {
+                register(bean.name);
+            }
+        }
+    }
+
+    private void register(@NotNull @NonNls String name) {
+        if (!functions.containsKey(name)) {
+            functions.putIfAbsent(name, new FunctionDefElement(name, false));
+        }
+    }
+
+    /**
+     * @param name The name of a function.
+     * @return The shared element that represents the function, or a new
+     *     element that is not registered, if the function is not known.
+     */
+    @NotNull
+    public FunctionDefElement getFunction(@NotNull @NonNls String name) {
+        FunctionDefElement function = functions.get(name);
+        return function == null ? new FunctionDefElement(name, false) : function;
+    }
+
+    /**
+     * @param name The name of a function.
+     * @return The shared element that represents the function, or null if it
+     *     has not been registered.
+     */
+    @Nullable
+    public FunctionDefElement findFunction(@NotNull @NonNls String name) {
+        return functions.get(name);
+    }
+
+    /**
+     * @param name The name of a function.
+     * @return true if the function is built into the soy compiler.
+     */
+    public boolean isBuiltIn(@NotNull @NonNls String name) {
+        FunctionDefElement function = functions.get(name);
+        return function != null && function.isBuiltIn();
+    }
+
+    /**
+     * @return Every function registered so far.
+     */
+    @NotNull
+    public Collection<FunctionDefElement> getFunctions() {
+        return Collections.unmodifiableCollection(functions.values());
+    }
+}
@@ -23,15 +23,17 @@ import com.intellij.navigation.ItemPresentation;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiNamedElement;
+import com.intellij.psi.PsiReference;
 import com.intellij.util.IncorrectOperationException;
 import net.venaglia.nondairy.soylang.ModuleRef;
+import net.venaglia.nondairy.soylang.SoyProjectComponent;
+import net.venaglia.nondairy.soylang.cache.SoyCacheUpdater;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 /**
  * User: ed
  * Date: Jul 31, 2010
@@ -43,13 +45,12 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 public class SoyPsiElement extends PsiElementBase implements PsiElement, ModuleRef {
 
-    private static final AtomicLong LAST_CREATED = new AtomicLong();
-
     @NotNull
     private final ASTNode node;
 
+    private volatile CachedReference cachedReference = null;
+
     public SoyPsiElement(@NotNull ASTNode node) {
-        LAST_CREATED.set(System.currentTimeMillis());
         this.node = node;
     }
 
@@ -169,6 +170,42 @@ public class SoyPsiElement extends PsiElementBase implements PsiElement, ModuleR
         return String.format(fmt, getClass().getSimpleName(), getNode().getElementType(), n, l);
     }
 
+    /**
+     * Returns the reference built by {@link #createReference()}. The
+     * reference is built once, then reused until the file containing this
+     * element is modified or the declarations held in the template cache
+     * change, so repeated resolution can be answered by the reference's own
+     * memo.
+     * @return The reference for this element, or null if it does not refer
+     *     to another element.
+     */
+    @Override
+    @Nullable
+    public PsiReference getReference() {
+        long fileModificationStamp = getFileModificationStamp(this);
+        long cacheGeneration = getCacheGeneration(this);
+        CachedReference cached = cachedReference;
+        if (cached == null ||
+            cached.fileModificationStamp != fileModificationStamp ||
+            cached.cacheGeneration != cacheGeneration) {
+            cached = new CachedReference(createReference(), fileModificationStamp, cacheGeneration);
+            cachedReference = cached;
+        }
+        return cached.reference;
+    }
+
+    /**
+     * Builds the reference for this element. Subclasses that refer to other
+     * elements should override this method rather than
+     * {@link #getReference()}, which caches the value returned here.
+     * @return A new reference for this element, or null if it does not refer
+     *     to another element.
+     */
+    @Nullable
+    protected PsiReference createReference() {
+        return null;
+    }
+
     public PsiElement setName(@NonNls String name) throws IncorrectOperationException {
         throw new IncorrectOperationException("Rename is not implemented for " + getClass().getSimpleName());
     }
@@ -207,13 +244,47 @@ public class SoyPsiElement extends PsiElementBase implements PsiElement, ModuleR
     }
 
     /**
-     * This method provides the timestamp of the most recently created
-     * SoyPsiElement. This timestamp is useful for knowing when cached data
-     * that relates to SoyPsiElement objects should be invalidated.
-     * @return a timestamp indicating the last time a SoyPsiElement was created.
+     * This method provides the modification stamp of the file containing the
+     * passed element. The stamp changes whenever that file's psi tree is
+     * modified, so it is useful for knowing when cached data derived from the
+     * elements of a single file should be invalidated.
+     * @param element The element whose containing file should be checked.
+     * @return the modification stamp of the containing file, or -1 if the
+     *     element does not belong to a file.
      */
-    public static long getLastCreated() {
-        return LAST_CREATED.get();
+    public static long getFileModificationStamp(@NotNull PsiElement element) {
+        PsiFile file = element.getContainingFile();
+        return file == null ? -1L : file.getModificationStamp();
+    }
+
+    /**
+     * @param element The element whose project should be checked.
+     * @return The generation of the template cache for the element's
+     *     project, or 0 if the cache is not available.
+     * @see SoyCacheUpdater#getGeneration()
+     */
+    static long getCacheGeneration(@NotNull PsiElement element) {
+        SoyProjectComponent component = SoyProjectComponent.getSoyProjectComponent(element);
+        SoyCacheUpdater soyCacheUpdater = component == null ? null : component.getSoyCacheUpdater();
+        return soyCacheUpdater == null ? 0L : soyCacheUpdater.getGeneration();
+    }
+
+    /**
+     * A reference built by {@link #createReference()}, along with the
+     * modification stamps it was built at.
+     */
+    private static final class CachedReference {
+
+        @Nullable
+        private final PsiReference reference;
+        private final long fileModificationStamp;
+        private final long cacheGeneration;
+
+        private CachedReference(@Nullable PsiReference reference, long fileModificationStamp, long cacheGeneration) {
+            this.reference = reference;
+            this.fileModificationStamp = fileModificationStamp;
+            this.cacheGeneration = cacheGeneration;
+        }
     }
 
 }
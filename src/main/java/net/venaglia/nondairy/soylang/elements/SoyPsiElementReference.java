@@ -28,20 +28,11 @@ import com.intellij.util.IncorrectOperationException;
 import net.venaglia.nondairy.soylang.elements.path.ElementPredicate;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementCollection;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
-import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
-import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.LinkedList;
-import java.util.Map;
-import java.util.Set;
 
 /**
  * User: ed
@@ -63,8 +54,7 @@ public class SoyPsiElementReference extends PsiReferenceBase<SoyPsiElement> {
     private BindHandler bindHandler = null;
     private ResolveHandler resolveHandler = null;
 
-    private long lastFoundAt = 0L;
-    private PsiElement lastFound = null;
+    private volatile ResolveStamp lastResolved = null;
 
     /**
      * Builds a SoyPsiElementReference that resolves to itself.
@@ -109,9 +99,10 @@ public class SoyPsiElementReference extends PsiReferenceBase<SoyPsiElement> {
     }
 
     /**
-     * This constructor is the delegate of all public constructors. Subclasses
-     * that are built to extend the interfaces supported by this class, must
-     * provide a public constructor with a signature that matches this one.
+     * This constructor is the delegate of all public constructors, and is
+     * also used by {@link #bound(BindHandler)} and
+     * {@link #poly(ResolveHandler)} to build the subclasses that extend the
+     * interfaces supported by this class.
      * @param myElement The starting element this reference begins with.
      * @param path The path this element should follow to find the references
      *     element(s).
@@ -156,20 +147,19 @@ public class SoyPsiElementReference extends PsiReferenceBase<SoyPsiElement> {
     @Override
     @Nullable
     public PsiElement resolve() {
-        if (lastFoundAt > 0L && lastFoundAt > SoyPsiElement.getLastCreated()) {
-            return lastFound;
-        }
         if (resolveHandler != null) {
             ResolveResult[] resolveResults = multiResolve(false);
             return resolveResults.length == 1 ? resolveResults[0].getElement() : null;
         }
-        PsiElementCollection elements = path.navigate(myElement);
-        if (predicate != null) {
-            elements = elements.applyPredicate(predicate);
+        long fileModificationStamp = SoyPsiElement.getFileModificationStamp(myElement);
+        long cacheGeneration = SoyPsiElement.getCacheGeneration(myElement);
+        ResolveStamp lastResolved = this.lastResolved;
+        if (lastResolved != null && lastResolved.isCurrent(fileModificationStamp, cacheGeneration)) {
+            return lastResolved.element;
         }
-        PsiElement element = elements.oneOrNull();
-        lastFound = element;
-        lastFoundAt = System.currentTimeMillis();
+        PsiElement element = path.first(myElement, predicate);
+        boolean local = element != null && element.getContainingFile() == myElement.getContainingFile();
+        this.lastResolved = new ResolveStamp(element, fileModificationStamp, local ? -1L : cacheGeneration);
         return element;
     }
 
@@ -227,9 +217,13 @@ public class SoyPsiElementReference extends PsiReferenceBase<SoyPsiElement> {
      *     BindablePsiReference.
      */
     public BindablePsiReference bound(@NotNull BindHandler bindHandler) {
-        return ReferenceFactory.factoryFor(this)
-                               .extend(BindablePsiReference.class)
-                               .create(getConstructorParams(bindHandler, null));
+        if (this instanceof BindablePsiReference) {
+            throw new IllegalStateException("Interface is already implemented: BindablePsiReference");
+        }
+        if (this instanceof PsiPolyVariantReference) {
+            return new BoundPoly(myElement, path, predicate, bindHandler, resolveHandler, getRange());
+        }
+        return new Bound(myElement, path, predicate, bindHandler, resolveHandler, getRange());
     }
 
     /**
@@ -242,224 +236,84 @@ public class SoyPsiElementReference extends PsiReferenceBase<SoyPsiElement> {
      *     PsiPolyVariantReference.
      */
     public PsiPolyVariantReference poly(@NotNull ResolveHandler resolveHandler) {
-        return ReferenceFactory.factoryFor(this)
-                               .extend(PsiPolyVariantReference.class)
-                               .create(getConstructorParams(null, resolveHandler));
+        if (this instanceof PsiPolyVariantReference) {
+            throw new IllegalStateException("Interface is already implemented: PsiPolyVariantReference");
+        }
+        if (this instanceof BindablePsiReference) {
+            return new BoundPoly(myElement, path, predicate, bindHandler, resolveHandler, getRange());
+        }
+        return new Poly(myElement, path, predicate, bindHandler, resolveHandler, getRange());
     }
 
     /**
-     * This class and its subclasses are required to provide a normalized
-     * constructor signature. This method provides the proper constructor
-     * parameters to match that constructor.
-     * @param bindHandler Handler to provide a custom implementation for
-     *     {@link BindablePsiReference#bindToElement(com.intellij.psi.PsiElement)}.
-     * @param resolveHandler Handler to provide a custom implementation for
-     *     {@link PsiPolyVariantReference#multiResolve(boolean)}.
-     * @return an array of objects matching the normalized constructor
-     *     signature.
+     * @return The range passed when this reference was built, or null if
+     *     the default range should be used.
      */
-    Object[] getConstructorParams(@Nullable BindHandler bindHandler,
-                                  @Nullable ResolveHandler resolveHandler) {
-        return new Object[]{
-                myElement,
-                path,
-                predicate,
-                bindHandler == null ? this.bindHandler : bindHandler,
-                resolveHandler == null ? this.resolveHandler : resolveHandler,
-                withRange ? getRangeInElement() : null,
-        };
+    @Nullable
+    private TextRange getRange() {
+        return withRange ? getRangeInElement() : null;
     }
 
-    private static class Bound extends SoyPsiElementReference implements BindablePsiReference {
+    /**
+     * The result of a previous call to {@link #resolve()}, along with the
+     * modification stamps it depends on. Elements resolved within the same
+     * file depend only on that file's modification stamp. Elements resolved
+     * in another file, or not found at all, also depend on the generation of
+     * the template cache, since changes to other files can affect them.
+     */
+    private static final class ResolveStamp {
 
-        public Bound(SoyPsiElement myElement,
-                     PsiElementPath path,
-                     @Nullable ElementPredicate predicate,
-                     BindHandler bindHandler,
-                     ResolveHandler resolveHandler,
-                     TextRange range) {
-            super(myElement, path, predicate, bindHandler, resolveHandler, range);
+        @Nullable
+        private final PsiElement element;
+        private final long fileModificationStamp;
+        private final long cacheGeneration;
+
+        private ResolveStamp(@Nullable PsiElement element, long fileModificationStamp, long cacheGeneration) {
+            this.element = element;
+            this.fileModificationStamp = fileModificationStamp;
+            this.cacheGeneration = cacheGeneration;
         }
-    }
 
-    private static class Poly extends SoyPsiElementReference implements PsiPolyVariantReference {
-
-        public Poly(@NotNull SoyPsiElement myElement,
-                    @NotNull PsiElementPath path,
-                    @Nullable ElementPredicate predicate,
-                    @Nullable BindHandler bindHandler,
-                    @Nullable ResolveHandler resolveHandler,
-                    @Nullable TextRange range) {
-            super(myElement, path, predicate, bindHandler, resolveHandler, range);
+        private boolean isCurrent(long fileModificationStamp, long cacheGeneration) {
+            return this.fileModificationStamp == fileModificationStamp &&
+                   (this.cacheGeneration == -1L || this.cacheGeneration == cacheGeneration) &&
+                   (element == null || element.isValid());
         }
     }
 
-    private static class BoundPoly extends SoyPsiElementReference implements BindablePsiReference, PsiPolyVariantReference {
+    private static class Bound extends SoyPsiElementReference implements BindablePsiReference {
 
-        public BoundPoly(@NotNull SoyPsiElement myElement,
-                         @NotNull PsiElementPath path,
-                         @Nullable ElementPredicate predicate,
-                         @Nullable BindHandler bindHandler,
-                         @Nullable ResolveHandler resolveHandler,
-                         @Nullable TextRange range) {
+        private Bound(@NotNull SoyPsiElement myElement,
+                      @NotNull PsiElementPath path,
+                      @Nullable ElementPredicate predicate,
+                      @Nullable BindHandler bindHandler,
+                      @Nullable ResolveHandler resolveHandler,
+                      @Nullable TextRange range) {
             super(myElement, path, predicate, bindHandler, resolveHandler, range);
         }
     }
 
-    /**
-     * Helper class to construct the proper SoyPsiElementReference based on a
-     * combination of supported interfaces.
-     * @param <R> The specific type this factory will create.
-     */
-    private static class ReferenceFactory<R> {
-
-        /** The interfaces we can support support */
-        private static final Set<Class<?>> SUPPORTED_INTERFACES;
-
-        /** The factory instances, keyed by the interfaces they support */
-        private static Map<Set<Class<?>>,ReferenceFactory<?>> FACTORIES_BY_INTERFACE_SET;
-
-        static {
-            Set<Class<?>> classes = new HashSet<Class<?>>();
-            classes.add(PsiPolyVariantReference.class);
-            classes.add(BindablePsiReference.class);
-            SUPPORTED_INTERFACES = Collections.unmodifiableSet(classes);
-            Map<Set<Class<?>>,ReferenceFactory<?>> factoriesByInterfaceSet = new HashMap<Set<Class<?>>,ReferenceFactory<?>>();
-            ReferenceFactory<SoyPsiElementReference> defaultFactory =
-                    new ReferenceFactory<SoyPsiElementReference>() {
-                        @Override
-                        SoyPsiElementReference create(@NotNull Object[] params) {
-                            return new SoyPsiElementReference(
-                                    (SoyPsiElement)params[0],
-                                    (PsiElementPath)params[1],
-                                    (ElementPredicate)params[2],
-                                    (BindHandler)params[3],
-                                    (ResolveHandler)params[4],
-                                    (TextRange)params[5]
-                            );
-                        }
-                    };
-            factoriesByInterfaceSet.put(defaultFactory.supportedInterfaces, defaultFactory);
-            for (Class<?> cls : SoyPsiElementReference.class.getDeclaredClasses()) {
-                if (SoyPsiElementReference.class.isAssignableFrom(cls)) {
-                    ReferenceFactory<?> factory = initFor(cls);
-                    factoriesByInterfaceSet.put(factory.supportedInterfaces, factory);
-                }
-            }
-            FACTORIES_BY_INTERFACE_SET = Collections.unmodifiableMap(factoriesByInterfaceSet);
-        }
-
-        private final Class<R> type;
-        private final Constructor<R> ctor;
-        private final Set<Class<?>> supportedInterfaces;
-
-        private ReferenceFactory() {
-            type = null;
-            ctor = null;
-            supportedInterfaces = Collections.emptySet();
-        }
-
-        private ReferenceFactory(Class<R> type) {
-            this.type = type;
-            try {
-                this.ctor = type.getConstructor(SoyPsiElement.class,
-                                                PsiElementPath.class,
-                                                ElementPredicate.class,
-                                                BindHandler.class,
-                                                ResolveHandler.class,
-                                                TextRange.class);
-            } catch (NoSuchMethodException e) {
-                throw new RuntimeException(e);
-            }
-            Set<Class<?>> interfaces = new HashSet<Class<?>>(Arrays.asList(this.type.getInterfaces()));
-            interfaces.retainAll(SUPPORTED_INTERFACES);
-            this.supportedInterfaces = Collections.unmodifiableSet(interfaces);
-        }
-
-        /**
-         * Creates a new SoyPsiElementReference from the passed params.
-         * @param params params suitable for the normalized constructor.
-         * @return The new reference object.
-         */
-        R create(@NotNull Object[] params) {
-            try {
-                return ctor.newInstance(params);
-            } catch (InstantiationException e) {
-                throw new RuntimeException(e);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException(e);
-            } catch (InvocationTargetException e) {
-                throw new RuntimeException(e);
-            }
-        }
-
-        /**
-         * Finds a factory to build references that support all current
-         * interfaces, plus the one passed.
-         * @param iface The interface that also needs ot be implemented.
-         * @param <N> The new interface.
-         * @return A ReferenceFactory that also support the specified
-         *     interface.
-         * @throws IllegalStateException if the current factory already
-         *     supports the specified interface.
-         * @throws UnsupportedOperationException if no factory is available to
-         *     support the passed interface.
-         */
-        @NotNull
-        <N> ReferenceFactory<? extends N> extend(Class<N> iface) {
-            if (supportedInterfaces.contains(iface)) {
-                throw new IllegalStateException("Interface is already implemented: " + iface.getSimpleName());
-            }
-            Set<Class<?>> newIfaces = new HashSet<Class<?>>(supportedInterfaces);
-            newIfaces.add(iface);
-            return lookupFailIfNotFound(newIfaces);
-        }
+    private static class Poly extends SoyPsiElementReference implements PsiPolyVariantReference {
 
-        /**
-         * Finds a factory applicable for an existing refernce object.
-         * @param base The existing reference to obtain a factory for.
-         * @return A factory that can build a reference that supports the same
-         *     interfaces as the passed object.
-         * @throws UnsupportedOperationException if no factory is available to
-         *     support the passed interface.
-         */
-        @NotNull
-        static ReferenceFactory<?> factoryFor(SoyPsiElementReference base) {
-            Set<Class<?>> supportedInterfaces = new HashSet<Class<?>>();
-            for (Class<?> i : SUPPORTED_INTERFACES) {
-                if (i.isInstance(base)) {
-                    supportedInterfaces.add(i);
-                }
-            }
-            return lookupFailIfNotFound(supportedInterfaces);
+        private Poly(@NotNull SoyPsiElement myElement,
+                     @NotNull PsiElementPath path,
+                     @Nullable ElementPredicate predicate,
+                     @Nullable BindHandler bindHandler,
+                     @Nullable ResolveHandler resolveHandler,
+                     @Nullable TextRange range) {
+            super(myElement, path, predicate, bindHandler, resolveHandler, range);
         }
+    }
 
-        @NotNull
-        private static <N> ReferenceFactory<? extends N> lookupFailIfNotFound(Set<Class<?>> supportedInterfaces) {
-            ReferenceFactory<N> factory = lookup(supportedInterfaces);
-            if (factory == null) {
-                @NonNls
-                StringBuilder buffer = new StringBuilder();
-                buffer.append("Unsupported combination of interfaces: [");
-                boolean first = true;
-                for (Class<?> i : supportedInterfaces) {
-                    if (first) first = false; else buffer.append(", ");
-                    buffer.append(i.getSimpleName());
-                }
-                buffer.append("]");
-                throw new UnsupportedOperationException(buffer.toString());
-            }
-            return factory;
-        }
+    private static class BoundPoly extends SoyPsiElementReference implements BindablePsiReference, PsiPolyVariantReference {
 
-        @SuppressWarnings("unchecked")
-        @Nullable
-        private static <N> ReferenceFactory<N> lookup(Set<Class<?>> supportedInterfaces) {
-            return (ReferenceFactory<N>)FACTORIES_BY_INTERFACE_SET.get(supportedInterfaces);
-        }
-        
-        private static <R> ReferenceFactory<R> initFor(Class<R> type) {
-            return new ReferenceFactory<R>(type);
+        private BoundPoly(@NotNull SoyPsiElement myElement,
+                          @NotNull PsiElementPath path,
+                          @Nullable ElementPredicate predicate,
+                          @Nullable BindHandler bindHandler,
+                          @Nullable ResolveHandler resolveHandler,
+                          @Nullable TextRange range) {
+            super(myElement, path, predicate, bindHandler, resolveHandler, range);
         }
     }
 }
@@ -64,7 +64,7 @@ public class TemplateDefElement extends SoyCommandTag implements TemplateMemberE
 
     @Nullable
     public String getLocalName() {
-        PsiElement element = PATH_TO_TEMPLATE_NAME.navigate(this).oneOrNull();
+        PsiElement element = PATH_TO_TEMPLATE_NAME.first(this);
         return element instanceof LocalTemplateNameDef ? ((LocalTemplateNameDef)element).getName() : null;
     }
 
@@ -31,13 +31,17 @@ import com.intellij.psi.PsiManager;
 import com.intellij.psi.impl.source.SourceTreeToPsiMap;
 import com.intellij.psi.impl.source.tree.CompositeElement;
 import com.intellij.psi.impl.source.tree.SharedImplUtil;
+import com.intellij.psi.tree.TokenSet;
 import com.intellij.psi.util.PsiUtilCore;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 
 /**
  * The TreeNavigator interface is used to close a gap the test framework.
@@ -90,6 +94,76 @@ public abstract class TreeNavigator {
     @NotNull
     public abstract PsiElement[] getAllChildren(@NotNull ASTNode node);
 
+    /**
+     * Cursor style alternative to {@link #getAllChildren(ASTNode)}, that does
+     * not allocate. Together with {@link #getNextSiblingElement(ASTNode, TokenSet)}
+     * this visits the same elements, in the same order, as getAllChildren().
+     * @param node The node whose children are being visited.
+     * @param filter Only children with these element types are returned, or
+     *     null to return all children.
+     * @return The first child that would be returned by getAllChildren(), or
+     *     null if there is none.
+     */
+    @Nullable
+    public abstract PsiElement getFirstChildElement(@NotNull ASTNode node, @Nullable TokenSet filter);
+
+    /**
+     * @param node A node previously returned by
+     *     {@link #getFirstChildElement(ASTNode, TokenSet)} or by this method.
+     * @param filter Only siblings with these element types are returned, or
+     *     null to return all siblings.
+     * @return The next sibling that would be returned by getAllChildren() on
+     *     the parent node, or null if there is none.
+     */
+    @Nullable
+    public abstract PsiElement getNextSiblingElement(@NotNull ASTNode node, @Nullable TokenSet filter);
+
+    /**
+     * Lists the children of an element, in the same order as
+     * {@link PsiElement#getChildren()}. The children of soy elements are
+     * visited through {@link #getFirstChildElement(ASTNode, TokenSet)} and
+     * {@link #getNextSiblingElement(ASTNode, TokenSet)}, without building an
+     * array. Other elements, such as files, include leaves among their
+     * children, so they are asked for them directly.
+     * @param parent The element whose children are listed.
+     * @return The children of the element.
+     */
+    @NotNull
+    public Iterable<PsiElement> children(@NotNull final PsiElement parent) {
+        if (!(parent instanceof SoyPsiElement)) {
+            return Arrays.asList(parent.getChildren());
+        }
+        return new Iterable<PsiElement>() {
+            @Override
+            public Iterator<PsiElement> iterator() {
+                return new Iterator<PsiElement>() {
+
+                    private PsiElement next = getFirstChildElement(parent.getNode(), null);
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null;
+                    }
+
+                    @Override
+                    public PsiElement next() {
+                        if (next == null) {
+                            throw new NoSuchElementException();
+                        }
+                        PsiElement child = next;
+                        next = getNextSiblingElement(child.getNode(), null);
+                        return child;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+
     @Nullable
     public abstract PsiElement getNextSibling(@NotNull ASTNode node);
 
@@ -140,21 +214,45 @@ public abstract class TreeNavigator {
         @NotNull
         @Override
         public PsiElement[] getAllChildren(@NotNull ASTNode node) {
-            PsiElement psiChild = getFirstChild(node);
-            if (psiChild == null || psiChild == PsiUtilCore.NULL_PSI_ELEMENT) {
+            PsiElement psiChild = getFirstChildElement(node, null);
+            if (psiChild == null) {
                 return PsiElement.EMPTY_ARRAY;
             }
 
             List<PsiElement> result = new ArrayList<PsiElement>();
-            while (psiChild != null && psiChild != PsiUtilCore.NULL_PSI_ELEMENT) {
-                if (psiChild.getNode() instanceof CompositeElement) {
-                    result.add(psiChild);
-                }
-                psiChild = psiChild.getNextSibling();
+            while (psiChild != null) {
+                result.add(psiChild);
+                psiChild = getNextSiblingElement(psiChild.getNode(), null);
             }
             return PsiUtilCore.toPsiElementArray(result);
         }
 
+        @Nullable
+        @Override
+        public PsiElement getFirstChildElement(@NotNull ASTNode node, @Nullable TokenSet filter) {
+            return findCompositeElement(node.getFirstChildNode(), filter);
+        }
+
+        @Nullable
+        @Override
+        public PsiElement getNextSiblingElement(@NotNull ASTNode node, @Nullable TokenSet filter) {
+            return findCompositeElement(node.getTreeNext(), filter);
+        }
+
+        @Nullable
+        private static PsiElement findCompositeElement(@Nullable ASTNode node, @Nullable TokenSet filter) {
+            for (; node != null; node = node.getTreeNext()) {
+                if (node instanceof CompositeElement &&
+                    (filter == null || filter.contains(node.getElementType()))) {
+                    PsiElement psi = node.getPsi();
+                    if (psi != null && psi != PsiUtilCore.NULL_PSI_ELEMENT) {
+                        return psi;
+                    }
+                }
+            }
+            return null;
+        }
+
         @Nullable
         @Override
         public PsiElement getNextSibling(@NotNull ASTNode node) {
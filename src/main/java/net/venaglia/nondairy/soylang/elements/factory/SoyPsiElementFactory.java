@@ -18,17 +18,39 @@ package net.venaglia.nondairy.soylang.elements.factory;
 
 import com.intellij.extapi.psi.PsiElementBase;
 import com.intellij.lang.ASTNode;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.tree.IElementType;
 import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.soylang.elements.AbsoluteDelegateNameRef;
+import net.venaglia.nondairy.soylang.elements.AbsoluteTemplateNameDef;
+import net.venaglia.nondairy.soylang.elements.AbsoluteTemplateNameRef;
+import net.venaglia.nondairy.soylang.elements.AliasTagElement;
+import net.venaglia.nondairy.soylang.elements.AttributeElement;
+import net.venaglia.nondairy.soylang.elements.CallParameterRefElement;
+import net.venaglia.nondairy.soylang.elements.CallTagElement;
+import net.venaglia.nondairy.soylang.elements.DelegatePackageElement;
+import net.venaglia.nondairy.soylang.elements.DelegateTemplateDefElement;
+import net.venaglia.nondairy.soylang.elements.FunctionCallRefElement;
 import net.venaglia.nondairy.soylang.elements.IntermediateElement;
+import net.venaglia.nondairy.soylang.elements.LocalTemplateNameDef;
+import net.venaglia.nondairy.soylang.elements.LocalTemplateNameRef;
+import net.venaglia.nondairy.soylang.elements.MemberPropertyRefElement;
+import net.venaglia.nondairy.soylang.elements.NamespaceDefElement;
+import net.venaglia.nondairy.soylang.elements.NamespaceRefElement;
+import net.venaglia.nondairy.soylang.elements.NamespaceTagElement;
+import net.venaglia.nondairy.soylang.elements.ParameterDefElement;
+import net.venaglia.nondairy.soylang.elements.ParameterRefElement;
+import net.venaglia.nondairy.soylang.elements.SoyCommandTag;
+import net.venaglia.nondairy.soylang.elements.SoyDocCommentElement;
 import net.venaglia.nondairy.soylang.elements.SoyPsiElement;
+import net.venaglia.nondairy.soylang.elements.TemplateDefElement;
 import net.venaglia.nondairy.soylang.lexer.SoyToken;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -41,36 +63,50 @@ import java.util.Map;
  *
  * This factory will build build an internal index of delegate factories based
  * on {@link ElementClass} annotations on the constants defined in
- * {@link SoyElement} and {@link SoyToken}.
+ * {@link SoyElement} and {@link SoyToken}. The annotations are only read once,
+ * when this class is loaded; each annotated class is then built by a
+ * statically typed factory registered in {@link #buildFactoriesByClass()},
+ * and looked up by the index of the node's element type.
  */
 public class SoyPsiElementFactory implements PsiElementFactory<PsiElement> {
 
+    private static final Logger LOG = Logger.getInstance(SoyPsiElementFactory.class);
+
     private static final SoyPsiElementFactory INSTANCE = new SoyPsiElementFactory();
     
     private SoyPsiElementFactory() { } // singleton
 
-    private final static Map<IElementType, PsiElementFactory<?>> FACTORIES_BY_ELEMENT;
+    /** Delegate factories, indexed by {@link IElementType#getIndex()} */
+    private final static PsiElementFactory<?>[] FACTORIES_BY_ELEMENT_INDEX;
 
     static {
-        Map<IElementType, PsiElementFactory<?>> factoriesByElement =
-                new HashMap<IElementType, PsiElementFactory<?>>();
+        Map<Class<?>,PsiElementFactory<?>> factoriesByClass = buildFactoriesByClass();
+        Map<IElementType,PsiElementFactory<?>> factoriesByElement =
+                new HashMap<IElementType,PsiElementFactory<?>>();
         try {
             for (Field field : SoyElement.class.getFields()) {
                 if (shouldBuildSimpleFactoryFor(field)) {
                         factoriesByElement.put((SoyElement)field.get(null),
-                                               buildFactory(field));
+                                               buildFactory(field, factoriesByClass));
                 }
             }
             for (Field field : SoyToken.class.getFields()) {
                 if (shouldBuildSimpleFactoryFor(field)) {
                     factoriesByElement.put((SoyElement)field.get(null),
-                                           buildFactory(field));
+                                           buildFactory(field, factoriesByClass));
                 }
             }
         } catch (Exception e) {
             throw new RuntimeException(e); // shouldn't happen
         }
-        FACTORIES_BY_ELEMENT = Collections.unmodifiableMap(factoriesByElement);
+        int length = 0;
+        for (IElementType type : factoriesByElement.keySet()) {
+            length = Math.max(length, type.getIndex() + 1);
+        }
+        FACTORIES_BY_ELEMENT_INDEX = new PsiElementFactory<?>[length];
+        for (Map.Entry<IElementType,PsiElementFactory<?>> entry : factoriesByElement.entrySet()) {
+            FACTORIES_BY_ELEMENT_INDEX[entry.getKey().getIndex()] = entry.getValue();
+        }
     }
 
     private static boolean shouldBuildSimpleFactoryFor(Field field) {
@@ -85,15 +121,185 @@ public class SoyPsiElementFactory implements PsiElementFactory<PsiElement> {
     }
 
     @SuppressWarnings("unchecked")
-    private static <T extends PsiElementBase> PsiElementFactory<T> buildFactory(Field field)
+    static <T extends PsiElementBase> PsiElementFactory<T> buildFactory(Field field,
+                                                                               Map<Class<?>,PsiElementFactory<?>> factoriesByClass)
             throws NoSuchMethodException, IllegalAccessException {
         Class<?> cls = field.getAnnotation(ElementClass.class).value();
+        PsiElementFactory<?> factory = factoriesByClass.get(cls);
+        if (factory != null) {
+            return (PsiElementFactory<T>)factory;
+        }
+        LOG.warn("No static factory is registered for " + cls.getName() + //NON-NLS
+                 ", falling back to reflection for " + field.getName()); //NON-NLS
         return new SimplePsiElementFactory<T>((Class<T>)cls);
     }
 
+    /**
+     * Statically typed factories for every class referenced by an
+     * {@link ElementClass} annotation. Classes that are annotated, but
+     * missing here, are still built, but by a reflective
+     * {@link SimplePsiElementFactory}.
+     * @return The factories, keyed by the class they build.
+     */
+    static Map<Class<?>,PsiElementFactory<?>> buildFactoriesByClass() {
+        Map<Class<?>,PsiElementFactory<?>> factories = new HashMap<Class<?>,PsiElementFactory<?>>();
+        factories.put(SoyCommandTag.class, new PsiElementFactory<SoyCommandTag>() {
+            @Override
+            public SoyCommandTag create(@NotNull ASTNode node) {
+                return new SoyCommandTag(node);
+            }
+        });
+        factories.put(DelegatePackageElement.class, new PsiElementFactory<DelegatePackageElement>() {
+            @Override
+            public DelegatePackageElement create(@NotNull ASTNode node) {
+                return new DelegatePackageElement(node);
+            }
+        });
+        factories.put(NamespaceTagElement.class, new PsiElementFactory<NamespaceTagElement>() {
+            @Override
+            public NamespaceTagElement create(@NotNull ASTNode node) {
+                return new NamespaceTagElement(node);
+            }
+        });
+        factories.put(AliasTagElement.class, new PsiElementFactory<AliasTagElement>() {
+            @Override
+            public AliasTagElement create(@NotNull ASTNode node) {
+                return new AliasTagElement(node);
+            }
+        });
+        factories.put(NamespaceDefElement.class, new PsiElementFactory<NamespaceDefElement>() {
+            @Override
+            public NamespaceDefElement create(@NotNull ASTNode node) {
+                return new NamespaceDefElement(node);
+            }
+        });
+        factories.put(NamespaceRefElement.class, new PsiElementFactory<NamespaceRefElement>() {
+            @Override
+            public NamespaceRefElement create(@NotNull ASTNode node) {
+                return new NamespaceRefElement(node);
+            }
+        });
+        factories.put(TemplateDefElement.class, new PsiElementFactory<TemplateDefElement>() {
+            @Override
+            public TemplateDefElement create(@NotNull ASTNode node) {
+                return new TemplateDefElement(node);
+            }
+        });
+        factories.put(LocalTemplateNameDef.class, new PsiElementFactory<LocalTemplateNameDef>() {
+            @Override
+            public LocalTemplateNameDef create(@NotNull ASTNode node) {
+                return new LocalTemplateNameDef(node);
+            }
+        });
+        factories.put(LocalTemplateNameRef.class, new PsiElementFactory<LocalTemplateNameRef>() {
+            @Override
+            public LocalTemplateNameRef create(@NotNull ASTNode node) {
+                return new LocalTemplateNameRef(node);
+            }
+        });
+        factories.put(AbsoluteTemplateNameRef.class, new PsiElementFactory<AbsoluteTemplateNameRef>() {
+            @Override
+            public AbsoluteTemplateNameRef create(@NotNull ASTNode node) {
+                return new AbsoluteTemplateNameRef(node);
+            }
+        });
+        factories.put(DelegateTemplateDefElement.class, new PsiElementFactory<DelegateTemplateDefElement>() {
+            @Override
+            public DelegateTemplateDefElement create(@NotNull ASTNode node) {
+                return new DelegateTemplateDefElement(node);
+            }
+        });
+        factories.put(AbsoluteTemplateNameDef.class, new PsiElementFactory<AbsoluteTemplateNameDef>() {
+            @Override
+            public AbsoluteTemplateNameDef create(@NotNull ASTNode node) {
+                return new AbsoluteTemplateNameDef(node);
+            }
+        });
+        factories.put(AbsoluteDelegateNameRef.class, new PsiElementFactory<AbsoluteDelegateNameRef>() {
+            @Override
+            public AbsoluteDelegateNameRef create(@NotNull ASTNode node) {
+                return new AbsoluteDelegateNameRef(node);
+            }
+        });
+        factories.put(SoyDocCommentElement.class, new PsiElementFactory<SoyDocCommentElement>() {
+            @Override
+            public SoyDocCommentElement create(@NotNull ASTNode node) {
+                return new SoyDocCommentElement(node);
+            }
+        });
+        factories.put(ParameterDefElement.class, new PsiElementFactory<ParameterDefElement>() {
+            @Override
+            public ParameterDefElement create(@NotNull ASTNode node) {
+                return new ParameterDefElement(node);
+            }
+        });
+        factories.put(AttributeElement.class, new PsiElementFactory<AttributeElement>() {
+            @Override
+            public AttributeElement create(@NotNull ASTNode node) {
+                return new AttributeElement(node);
+            }
+        });
+        factories.put(AttributeElement.Key.class, new PsiElementFactory<AttributeElement.Key>() {
+            @Override
+            public AttributeElement.Key create(@NotNull ASTNode node) {
+                return new AttributeElement.Key(node);
+            }
+        });
+        factories.put(AttributeElement.Value.class, new PsiElementFactory<AttributeElement.Value>() {
+            @Override
+            public AttributeElement.Value create(@NotNull ASTNode node) {
+                return new AttributeElement.Value(node);
+            }
+        });
+        factories.put(FunctionCallRefElement.class, new PsiElementFactory<FunctionCallRefElement>() {
+            @Override
+            public FunctionCallRefElement create(@NotNull ASTNode node) {
+                return new FunctionCallRefElement(node);
+            }
+        });
+        factories.put(ParameterRefElement.class, new PsiElementFactory<ParameterRefElement>() {
+            @Override
+            public ParameterRefElement create(@NotNull ASTNode node) {
+                return new ParameterRefElement(node);
+            }
+        });
+        factories.put(CallTagElement.class, new PsiElementFactory<CallTagElement>() {
+            @Override
+            public CallTagElement create(@NotNull ASTNode node) {
+                return new CallTagElement(node);
+            }
+        });
+        factories.put(CallParameterRefElement.class, new PsiElementFactory<CallParameterRefElement>() {
+            @Override
+            public CallParameterRefElement create(@NotNull ASTNode node) {
+                return new CallParameterRefElement(node);
+            }
+        });
+        factories.put(MemberPropertyRefElement.class, new PsiElementFactory<MemberPropertyRefElement>() {
+            @Override
+            public MemberPropertyRefElement create(@NotNull ASTNode node) {
+                return new MemberPropertyRefElement(node);
+            }
+        });
+        // builds the final element directly, skipping the intermediate one
+        factories.put(MemberPropertyRefElement.ForBracketedStringLiteral.class, new PsiElementFactory<SoyPsiElement>() {
+            @Override
+            public SoyPsiElement create(@NotNull ASTNode node) {
+                return MemberPropertyRefElement.ForBracketedStringLiteral.create(node);
+            }
+        });
+        return factories;
+    }
+
+    @Nullable
+    private static PsiElementFactory<?> getFactory(@NotNull IElementType type) {
+        int index = type.getIndex();
+        return index >= 0 && index < FACTORIES_BY_ELEMENT_INDEX.length ? FACTORIES_BY_ELEMENT_INDEX[index] : null;
+    }
+
     @Override
     public PsiElement create(@NotNull ASTNode node) {
-        PsiElementFactory<?> factory = FACTORIES_BY_ELEMENT.get(node.getElementType());
+        PsiElementFactory<?> factory = getFactory(node.getElementType());
         if (factory == null) {
             return new SoyPsiElement(node);
         }
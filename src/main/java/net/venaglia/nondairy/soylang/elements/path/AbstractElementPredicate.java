@@ -16,16 +16,14 @@
 
 package net.venaglia.nondairy.soylang.elements.path;
 
-import com.intellij.openapi.util.Pair;
 import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiElement;
+import net.venaglia.nondairy.soylang.elements.TreeNavigator;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Deque;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -38,6 +36,19 @@ import java.util.List;
  */
 public abstract class AbstractElementPredicate implements ElementPredicate {
 
+    /**
+     * Adds the children of the passed element to the buffer, in the same
+     * order as {@link PsiElement#getChildren()}.
+     * @param element The element whose children are added.
+     * @param buffer The collection to add to.
+     * @see TreeNavigator#children(PsiElement)
+     */
+    static void addChildren(@NotNull PsiElement element, @NotNull Collection<PsiElement> buffer) {
+        for (PsiElement child : TreeNavigator.INSTANCE.children(element)) {
+            buffer.add(child);
+        }
+    }
+
     /**
      * Negates the logic of {@link #test(com.intellij.psi.PsiElement)}
      * @return A predicate with inverted logic
@@ -120,16 +131,22 @@ public abstract class AbstractElementPredicate implements ElementPredicate {
      *     logic of this ElementPredicate.
      */
     public TraversalPredicate onAllDescendants() {
-        return new AbstractTraversalPredicate(">>") {
+        return new LevelOrderTraversalPredicate(">>") {
             @NotNull
             @Override
             public PsiElementCollection traverse(@NotNull Collection<PsiElement> current) {
                 PsiElementCollection buffer = new PsiElementCollection();
-                Deque<PsiElement> queue = new LinkedList<PsiElement>(current);
-                while (!queue.isEmpty()) {
-                    List<PsiElement> children = Arrays.asList(queue.pop().getChildren());
-                    buffer.addAll(children);
-                    queue.addAll(children);
+                List<PsiElement> level = new ArrayList<PsiElement>(current);
+                List<PsiElement> nextLevel = new ArrayList<PsiElement>();
+                while (!level.isEmpty()) {
+                    for (PsiElement element : level) {
+                        addChildren(element, nextLevel);
+                    }
+                    buffer.addAll(nextLevel);
+                    List<PsiElement> swap = level;
+                    level = nextLevel;
+                    nextLevel = swap;
+                    nextLevel.clear();
                 }
                 return buffer;
             }
@@ -166,27 +183,24 @@ public abstract class AbstractElementPredicate implements ElementPredicate {
         if (from == 1 && to == 1) {
             return onChildren();
         }
-        return new AbstractTraversalPredicate(">>{" + from + ".." + to + "}") {
+        return new LevelOrderTraversalPredicate(">>{" + from + ".." + to + "}") {
             @NotNull
             @Override
             public PsiElementCollection traverse(@NotNull Collection<PsiElement> current) {
                 PsiElementCollection buffer = new PsiElementCollection();
-                Deque<Pair<Integer,PsiElement>> queue = new LinkedList<Pair<Integer,PsiElement>>();
-                for (PsiElement element : current) {
-                    queue.add(Pair.create(1, element));
-                }
-                while (!queue.isEmpty()) {
-                    Pair<Integer,PsiElement> pair = queue.pop();
-                    int d = pair.first;
-                    List<PsiElement> children = Arrays.asList(pair.second.getChildren());
-                    if (d >= from) {
-                        buffer.addAll(children);
+                List<PsiElement> level = new ArrayList<PsiElement>(current);
+                List<PsiElement> nextLevel = new ArrayList<PsiElement>();
+                for (int d = 1; d <= to && !level.isEmpty(); d++) {
+                    for (PsiElement element : level) {
+                        addChildren(element, nextLevel);
                     }
-                    if (d < to) {
-                        for (PsiElement element : children) {
-                            queue.add(Pair.create(d + 1, element));
-                        }
+                    if (d >= from) {
+                        buffer.addAll(nextLevel);
                     }
+                    List<PsiElement> swap = level;
+                    level = nextLevel;
+                    nextLevel = swap;
+                    nextLevel.clear();
                 }
                 return buffer;
             }
@@ -205,7 +219,7 @@ public abstract class AbstractElementPredicate implements ElementPredicate {
             public PsiElementCollection traverse(@NotNull Collection<PsiElement> current) {
                 PsiElementCollection buffer = new PsiElementCollection();
                 for (PsiElement element : current) {
-                    for (PsiElement child : element.getChildren()) {
+                    for (PsiElement child : TreeNavigator.INSTANCE.children(element)) {
                         if (AbstractElementPredicate.this.test(child)) {
                             buffer.add(child);
                             break;
@@ -229,7 +243,7 @@ public abstract class AbstractElementPredicate implements ElementPredicate {
             public PsiElementCollection traverse(@NotNull Collection<PsiElement> current) {
                 PsiElementCollection buffer = new PsiElementCollection();
                 for (PsiElement element : current) {
-                    buffer.addAll(Arrays.asList(element.getChildren()));
+                    addChildren(element, buffer);
                 }
                 return buffer;
             }
@@ -247,9 +261,9 @@ public abstract class AbstractElementPredicate implements ElementPredicate {
             @Override
             public PsiElementCollection traverse(@NotNull Collection<PsiElement> current) {
                 PsiElementCollection buffer = new PsiElementCollection();
-                for (PsiElement child : current) {
-                    for (PsiElement grandChild : child.getChildren()) {
-                        buffer.addAll(Arrays.asList(grandChild.getChildren()));
+                for (PsiElement element : current) {
+                    for (PsiElement child : TreeNavigator.INSTANCE.children(element)) {
+                        addChildren(child, buffer);
                     }
                 }
                 return buffer;
@@ -386,6 +400,19 @@ public abstract class AbstractElementPredicate implements ElementPredicate {
         }
     }
 
+    /**
+     * Base class for traversals that descend from all of their elements
+     * together, breadth first.
+     */
+    private abstract class LevelOrderTraversalPredicate
+            extends AbstractTraversalPredicate
+            implements TraversalPredicate.LevelOrder {
+
+        public LevelOrderTraversalPredicate(@NotNull @NonNls String symbol) {
+            super(symbol);
+        }
+    }
+
     @NoMatchHanding(onNoMatch = TraverseEmpty.TRAVERSE_AGAIN)
     private class FirstAncestorTraversalPredicate extends AbstractTraversalPredicate {
 
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements.path;
+
+import com.intellij.psi.PsiElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A PsiElementPath that finds the parameter declarations visible from the
+ * starting element, answering from the template's
+ * {@link ParameterSymbolTable} rather than by navigating the psi tree.
+ *
+ * When filtered by a {@link ParameterPredicate}, as is done when resolving a
+ * parameter reference, declarations are looked up by name.
+ */
+public class ParameterPath extends PsiElementPath {
+
+    public static final PsiElementPath INSTANCE = new ParameterPath().debug("parameter_path");
+
+    private ParameterPath() {
+        super(PsiElementPath.ANY);
+    }
+
+    @NotNull
+    @Override
+    PsiElementCollection navigateImpl(@NotNull Collection<PsiElement> start) {
+        if (start.size() == 1) {
+            PsiElement element = start.iterator().next();
+            return ParameterSymbolTable.forElement(element).getVisibleDefinitions(element);
+        }
+        PsiElementCollection buffer = new PsiElementCollection();
+        for (PsiElement element : start) {
+            buffer.addAll(ParameterSymbolTable.forElement(element).getVisibleDefinitions(element));
+        }
+        return buffer;
+    }
+
+    @NotNull
+    @Override
+    Iterator<PsiElement> iterate(@NotNull Collection<PsiElement> start) {
+        return navigateImpl(start).iterator();
+    }
+
+    @NotNull
+    @Override
+    Iterator<PsiElement> iterate(@NotNull PsiElement start, @Nullable ElementPredicate filter) {
+        if (filter instanceof ParameterPredicate) {
+            String name = ((ParameterPredicate)filter).getName();
+            return ParameterSymbolTable.forElement(start).getDefinitions(start, name).iterator();
+        }
+        return super.iterate(start, filter);
+    }
+
+    @Override
+    boolean isDistributive() {
+        return true;
+    }
+}
@@ -34,9 +34,19 @@ public class ParameterPredicate extends AbstractElementPredicate {
         this.name = name;
     }
 
+    @NotNull
+    public String getName() {
+        return name;
+    }
+
     @Override
     public boolean test(PsiElement element) {
         return element instanceof ParameterElement &&
                name.equals(((ParameterElement)element).getName());
     }
+
+    @Override
+    public String toString() {
+        return "[name=" + name + "]"; //NON-NLS
+    }
 }
@@ -0,0 +1,402 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements.path;
+
+import static net.venaglia.nondairy.soylang.SoyElement.*;
+
+import com.intellij.openapi.util.Key;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import net.venaglia.nondairy.soylang.elements.ParameterElement;
+import net.venaglia.nondairy.soylang.elements.SoyCommandTag;
+import net.venaglia.nondairy.soylang.elements.SoyPsiElement;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Symbol table of the parameters visible within a single template. Tables
+ * are built lazily, stored on the template_tag_pair (or
+ * deltemplate_tag_pair) element, and discarded once the file containing
+ * them has been modified. Elements that are not within a template share a
+ * detached table, stored on their doc comment when they have one.
+ *
+ * Parameters are declared in four ways, searched in this order: doc
+ * comment @param tags, iterator variables of enclosing foreach/for
+ * commands, let commands within enclosing commands, and inner @param
+ * declarations. The symbols declared by each enclosing command form a
+ * nested scope, keyed by name, that is only computed when first needed.
+ */
+public class ParameterSymbolTable {
+
+    private static final Key<ParameterSymbolTable> SYMBOL_TABLE_KEY =
+            new Key<ParameterSymbolTable>("non-dairy.parameter-symbol-table");
+
+    private static final TokenSet ROOT_TOKENS = TokenSet.create(template_tag_pair, deltemplate_tag_pair);
+
+    private static final TokenSet LET_CONTAINERS = TokenSet.orSet(TokenSet.andNot(TAG_PAIR_TOKENS, TokenSet.create(let_tag_pair)),
+                                                                  TokenSet.create(template_body));
+
+    private static final PsiElementPath PATH_TO_DOC_PARAMS =
+            new PsiElementPath(new ElementTypePredicate(tag_and_doc_comment).onFirstAncestor(),
+                               new ElementTypePredicate(doc_comment).onChildren(),
+                               new ElementTypePredicate(doc_comment_tag_with_description).onChildren(),
+                               new ElementTypePredicate(doc_comment_param_def).onChildren()).debug("parameter_symbols!doc");
+
+    private static final PsiElementPath PATH_FROM_DOC_COMMENT_TO_PARAMS =
+            new PsiElementPath(new ElementTypePredicate(doc_comment).onChildren(),
+                               new ElementTypePredicate(doc_comment_tag_with_description).onChildren(),
+                               new ElementTypePredicate(doc_comment_param_def).onChildren()).debug("parameter_symbols!detached_doc");
+
+    private static final PsiElementPath PATH_TO_INNER_PARAMS =
+            new PsiElementPath(new ElementTypePredicate(template_body).onChildren(),
+                               new ElementTypePredicate(tag).onChildren(),
+                               new ElementTypePredicate(tag_between_braces).onChildren(),
+                               new ElementTypePredicate(parameter_def).onChildren()).debug("parameter_symbols!inner");
+
+    private static final PsiElementPath PATH_TO_ITERATOR_PARAMS =
+            new PsiElementPath(new ElementTypePredicate(iterator_tag).onChildren(),
+                               new CommandBoundaryPredicate(SoyCommandTag.Boundary.BEGIN),
+                               new ElementTypePredicate(tag_between_braces).onChildren(),
+                               new ElementTypePredicate(parameter_def).onChildren()).debug("parameter_symbols!iterator");
+
+    private static final PsiElementPath PATH_TO_LET_PAIR_PARAMS =
+            new PsiElementPath(new ElementTypePredicate(let_tag_pair).onChildren(),
+                               new ElementTypePredicate(let_tag).onChildren(),
+                               new ElementTypePredicate(tag_between_braces).onChildren(),
+                               new ElementTypePredicate(let_parameter_def).onChildren()).debug("parameter_symbols!let_pair");
+
+    private static final PsiElementPath PATH_TO_LET_PARAMS =
+            new PsiElementPath(new ElementTypePredicate(let_tag).onChildren(),
+                               new ElementTypePredicate(tag_between_braces).onChildren(),
+                               new ElementTypePredicate(let_parameter_def).onChildren()).debug("parameter_symbols!let");
+
+    private static final PsiElementPath PATH_TO_PARAMETER_REFS =
+            new PsiElementPath(new ElementTypePredicate(parameter_ref).onAllDescendants()).debug("parameter_symbols!refs");
+
+    private static final Scope EMPTY_SCOPE = new Scope(Symbols.EMPTY, Symbols.EMPTY, Symbols.EMPTY);
+
+    /** The template this table was built for, or null for a detached table */
+    @Nullable
+    private final PsiElement root;
+
+    /** The element this table is stored on */
+    @NotNull
+    private final PsiElement owner;
+
+    private final long fileModificationStamp;
+
+    private final Symbols docParams;
+    private final Symbols innerParams;
+
+    private final ConcurrentMap<PsiElement,Scope> scopes = new ConcurrentHashMap<PsiElement,Scope>();
+
+    private volatile Set<String> namesReferenced;
+
+    private ParameterSymbolTable(@Nullable PsiElement root, @NotNull PsiElement owner) {
+        this.root = root;
+        this.owner = owner;
+        this.fileModificationStamp = SoyPsiElement.getFileModificationStamp(owner);
+        if (root != null) {
+            this.docParams = new Symbols(PATH_TO_DOC_PARAMS.navigate(root));
+        } else if (getElementType(owner) == tag_and_doc_comment) {
+            this.docParams = new Symbols(PATH_FROM_DOC_COMMENT_TO_PARAMS.navigate(owner));
+        } else {
+            this.docParams = Symbols.EMPTY;
+        }
+        this.innerParams = root != null && root.getNode().getElementType() == template_tag_pair
+                           ? new Symbols(PATH_TO_INNER_PARAMS.navigate(root))
+                           : Symbols.EMPTY;
+    }
+
+    private boolean isValid() {
+        return fileModificationStamp == SoyPsiElement.getFileModificationStamp(owner);
+    }
+
+    /**
+     * Finds the symbol table for the template that contains the passed
+     * element, building it if necessary.
+     * @param element An element within a template, or the template's
+     *     template_tag_pair element itself.
+     * @return The symbol table that applies to element.
+     */
+    @NotNull
+    public static ParameterSymbolTable forElement(@NotNull PsiElement element) {
+        PsiElement root = element;
+        while (root != null && !(root instanceof PsiFile) && !ROOT_TOKENS.contains(getElementType(root))) {
+            root = root.getParent();
+        }
+        if (root == null || root instanceof PsiFile) {
+            // not inside a template, share the table with everything under the same doc comment
+            PsiElement owner = element;
+            for (PsiElement e = element; e != null && !(e instanceof PsiFile); e = e.getParent()) {
+                if (getElementType(e) == tag_and_doc_comment) {
+                    owner = e;
+                    break;
+                }
+            }
+            return getTable(null, owner);
+        }
+        return getTable(root, root);
+    }
+
+    @NotNull
+    private static ParameterSymbolTable getTable(@Nullable PsiElement root, @NotNull PsiElement owner) {
+        ParameterSymbolTable table = owner.getUserData(SYMBOL_TABLE_KEY);
+        if (table == null || !table.isValid()) {
+            table = new ParameterSymbolTable(root, owner);
+            owner.putUserData(SYMBOL_TABLE_KEY, table);
+        }
+        return table;
+    }
+
+    @Nullable
+    private static IElementType getElementType(@NotNull PsiElement element) {
+        return element.getNode() == null ? null : element.getNode().getElementType();
+    }
+
+    @NotNull
+    private Scope getScope(@NotNull PsiElement container) {
+        Scope scope = scopes.get(container);
+        if (scope == null) {
+            IElementType type = getElementType(container);
+            if (type == iterator_tag_pair || LET_CONTAINERS.contains(type)) {
+                scope = new Scope(type == iterator_tag_pair ? new Symbols(PATH_TO_ITERATOR_PARAMS.navigate(container)) : Symbols.EMPTY,
+                                  LET_CONTAINERS.contains(type) ? new Symbols(PATH_TO_LET_PAIR_PARAMS.navigate(container)) : Symbols.EMPTY,
+                                  LET_CONTAINERS.contains(type) ? new Symbols(PATH_TO_LET_PARAMS.navigate(container)) : Symbols.EMPTY);
+            } else {
+                scope = EMPTY_SCOPE;
+            }
+            Scope existing = scopes.putIfAbsent(container, scope);
+            if (existing != null) {
+                scope = existing;
+            }
+        }
+        return scope;
+    }
+
+    /**
+     * @param element The element to start from.
+     * @return The scopes enclosing element, innermost first.
+     */
+    @NotNull
+    private List<Scope> getScopes(@NotNull PsiElement element) {
+        List<Scope> buffer = new ArrayList<Scope>(4);
+        for (PsiElement e = element; e != null; e = e.getParent()) {
+            Scope scope = getScope(e);
+            if (scope != EMPTY_SCOPE) {
+                buffer.add(scope);
+            }
+            if (e == root || e instanceof PsiFile) {
+                break;
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Finds the declaration that a parameter reference at the passed element
+     * resolves to.
+     * @param element The element making the reference.
+     * @param name The parameter name, without the leading '$'.
+     * @return The first declaration of name that is visible from element, or
+     *     null if the name is not declared.
+     */
+    @Nullable
+    public PsiElement resolve(@NotNull PsiElement element, @NotNull @NonNls String name) {
+        PsiElement found = docParams.first(name);
+        if (found != null) {
+            return found;
+        }
+        List<Scope> scopes = getScopes(element);
+        for (Scope scope : scopes) {
+            found = scope.iteratorParams.first(name);
+            if (found != null) return found;
+        }
+        for (Scope scope : scopes) {
+            found = scope.letPairParams.first(name);
+            if (found != null) return found;
+        }
+        for (Scope scope : scopes) {
+            found = scope.letParams.first(name);
+            if (found != null) return found;
+        }
+        return innerParams.first(name);
+    }
+
+    /**
+     * @param element The element making the reference.
+     * @param name The parameter name, without the leading '$'.
+     * @return Every declaration of name that is visible from element, in the
+     *     order they are searched by {@link #resolve(PsiElement, String)}.
+     */
+    @NotNull
+    public PsiElementCollection getDefinitions(@NotNull PsiElement element, @NotNull @NonNls String name) {
+        PsiElementCollection buffer = new PsiElementCollection();
+        buffer.addAll(docParams.all(name));
+        List<Scope> scopes = getScopes(element);
+        for (Scope scope : scopes) {
+            buffer.addAll(scope.iteratorParams.all(name));
+        }
+        for (Scope scope : scopes) {
+            buffer.addAll(scope.letPairParams.all(name));
+        }
+        for (Scope scope : scopes) {
+            buffer.addAll(scope.letParams.all(name));
+        }
+        buffer.addAll(innerParams.all(name));
+        return buffer.isEmpty() ? PsiElementCollection.EMPTY : buffer;
+    }
+
+    /**
+     * @param element The element to start from.
+     * @return Every declaration that is visible from element, in the order
+     *     they are searched by {@link #resolve(PsiElement, String)}.
+     */
+    @NotNull
+    public PsiElementCollection getVisibleDefinitions(@NotNull PsiElement element) {
+        PsiElementCollection buffer = new PsiElementCollection();
+        buffer.addAll(docParams.elements);
+        List<Scope> scopes = getScopes(element);
+        for (Scope scope : scopes) {
+            buffer.addAll(scope.iteratorParams.elements);
+        }
+        for (Scope scope : scopes) {
+            buffer.addAll(scope.letPairParams.elements);
+        }
+        for (Scope scope : scopes) {
+            buffer.addAll(scope.letParams.elements);
+        }
+        buffer.addAll(innerParams.elements);
+        return buffer;
+    }
+
+    /**
+     * @param element The element making the reference.
+     * @param name The parameter name, without the leading '$'.
+     * @return true if name is declared by an iterator enclosing element.
+     */
+    public boolean isIteratorVariable(@NotNull PsiElement element, @NotNull @NonNls String name) {
+        for (Scope scope : getScopes(element)) {
+            if (scope.iteratorParams.first(name) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The parameters declared in the doc comment of this template,
+     *     in document order.
+     */
+    @NotNull
+    public List<PsiElement> getDocParameters() {
+        return docParams.elements;
+    }
+
+    /**
+     * @param name The parameter name, without the leading '$'.
+     * @return true if any parameter_ref within this template uses name.
+     */
+    public boolean isReferenced(@NotNull @NonNls String name) {
+        Set<String> names = namesReferenced;
+        if (names == null) {
+            names = new HashSet<String>();
+            if (root != null) {
+                for (PsiElement ref : PATH_TO_PARAMETER_REFS.navigate(root)) {
+                    if (ref instanceof ParameterElement) {
+                        names.add(((ParameterElement)ref).getName());
+                    }
+                }
+            }
+            namesReferenced = names;
+        }
+        return names.contains(name);
+    }
+
+    /**
+     * Parameters declared directly by a single enclosing command.
+     */
+    private static class Scope {
+
+        private final Symbols iteratorParams;
+        private final Symbols letPairParams;
+        private final Symbols letParams;
+
+        private Scope(Symbols iteratorParams, Symbols letPairParams, Symbols letParams) {
+            this.iteratorParams = iteratorParams;
+            this.letPairParams = letPairParams;
+            this.letParams = letParams;
+        }
+    }
+
+    /**
+     * Declarations kept both in document order and keyed by name.
+     */
+    private static class Symbols {
+
+        private static final Symbols EMPTY = new Symbols(PsiElementCollection.EMPTY);
+
+        private final List<PsiElement> elements;
+        private final Map<String,List<PsiElement>> byName;
+
+        private Symbols(@NotNull PsiElementCollection found) {
+            if (found.isEmpty()) {
+                elements = Collections.emptyList();
+                byName = Collections.emptyMap();
+                return;
+            }
+            elements = Collections.unmodifiableList(new ArrayList<PsiElement>(found));
+            byName = new HashMap<String,List<PsiElement>>();
+            for (PsiElement element : elements) {
+                if (element instanceof ParameterElement) {
+                    String name = ((ParameterElement)element).getName();
+                    List<PsiElement> list = byName.get(name);
+                    if (list == null) {
+                        list = new ArrayList<PsiElement>(1);
+                        byName.put(name, list);
+                    }
+                    list.add(element);
+                }
+            }
+        }
+
+        @Nullable
+        private PsiElement first(@NotNull String name) {
+            List<PsiElement> list = byName.get(name);
+            return list == null ? null : list.get(0);
+        }
+
+        @NotNull
+        private List<PsiElement> all(@NotNull String name) {
+            List<PsiElement> list = byName.get(name);
+            return list == null ? Collections.<PsiElement>emptyList() : list;
+        }
+    }
+}
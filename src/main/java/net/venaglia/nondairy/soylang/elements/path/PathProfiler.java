@@ -0,0 +1,260 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements.path;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects timing and element counts for {@link PsiElementPath} navigation,
+ * keyed by the name passed to {@link PsiElementPath#debug(String)}.
+ *
+ * Profiling is off unless the system property
+ * {@link #PROFILE_PATH_PROPERTY_NAME} is set to "true" on the Java command
+ * line. When it is off, every hook in {@link PsiElementPath} is guarded by
+ * the constant {@link #PROFILING_ENABLED}, and costs nothing.
+ */
+public class PathProfiler {
+
+    /**
+     * System property that may be set to "true" to enable profiling of
+     * PsiElementPath navigation.
+     */
+    @NonNls
+    public static final String PROFILE_PATH_PROPERTY_NAME = "net.venaglia.nondairy.path.profile";
+
+    public static final boolean PROFILING_ENABLED = Boolean.getBoolean(PROFILE_PATH_PROPERTY_NAME);
+
+    @NonNls
+    private static final String ANONYMOUS = "(anonymous)";
+
+    private static final ConcurrentMap<String,Stats> STATS = new ConcurrentHashMap<String,Stats>();
+
+    private static final Comparator<Stats> BY_TOTAL_TIME = new Comparator<Stats>() {
+        @Override
+        public int compare(Stats a, Stats b) {
+            long ta = a.getTotalNanos(), tb = b.getTotalNanos();
+            return ta < tb ? 1 : ta > tb ? -1 : a.getName().compareTo(b.getName());
+        }
+    };
+
+    private PathProfiler() {
+        // static methods only
+    }
+
+    @NotNull
+    private static Stats getStats(@Nullable String name) {
+        if (name == null || name.startsWith("anonymous at ")) {
+            name = ANONYMOUS;
+        }
+        Stats stats = STATS.get(name);
+        if (stats == null) {
+            Stats newStats = new Stats(name);
+            stats = STATS.putIfAbsent(name, newStats);
+            if (stats == null) {
+                stats = newStats;
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Records a single, completed navigation.
+     * @param name The debug name of the path.
+     * @param elapsedNanos How long navigation took.
+     * @param resultSize The number of elements navigation produced.
+     */
+    static void recordNavigation(@Nullable String name, long elapsedNanos, int resultSize) {
+        getStats(name).recordNavigation(elapsedNanos, resultSize);
+    }
+
+    /**
+     * Records the number of elements that survived a single step of a path.
+     * @param name The debug name of the path.
+     * @param step The index of the predicate within the path.
+     * @param elementCount The number of elements produced by that step.
+     */
+    static void recordStep(@Nullable String name, int step, int elementCount) {
+        getStats(name).recordStep(step, elementCount);
+    }
+
+    /**
+     * @return A snapshot of the statistics collected so far, ordered from
+     *     the most to the least total time spent.
+     */
+    @NotNull
+    public static List<Stats> getStats() {
+        List<Stats> result = new ArrayList<Stats>(STATS.size());
+        for (Stats stats : STATS.values()) {
+            result.add(stats.copy());
+        }
+        Collections.sort(result, BY_TOTAL_TIME);
+        return result;
+    }
+
+    /**
+     * Discards all statistics collected so far.
+     */
+    public static void reset() {
+        STATS.clear();
+    }
+
+    /**
+     * Builds a plain text report of the paths that have taken the most time.
+     * @param limit The maximum number of paths to include.
+     * @return The formatted report.
+     */
+    @NotNull
+    @NonNls
+    public static String formatReport(int limit) {
+        List<Stats> stats = getStats();
+        StringBuilder buffer = new StringBuilder(256);
+        buffer.append(String.format("%-48s %8s %10s %10s %10s %8s  %s%n",
+                                    "path", "calls", "total ms", "avg us", "max us", "avg out", "avg elements per step"));
+        int count = 0;
+        for (Stats s : stats) {
+            if (count++ >= limit) {
+                break;
+            }
+            long calls = Math.max(1L, s.getCalls());
+            buffer.append(String.format("%-48s %8d %10.2f %10.1f %10.1f %8.1f  ",
+                                        s.getName(),
+                                        s.getCalls(),
+                                        s.getTotalNanos() / 1000000.0,
+                                        s.getTotalNanos() / 1000.0 / calls,
+                                        s.getMaxNanos() / 1000.0,
+                                        s.getResultElements() / (double)calls));
+            long[] stepElements = s.getStepElements();
+            long[] stepCalls = s.getStepCalls();
+            for (int i = 0; i < stepElements.length; i++) {
+                if (i > 0) {
+                    buffer.append(" > ");
+                }
+                buffer.append(stepCalls[i] == 0 ? "-" : String.format("%.1f", stepElements[i] / (double)stepCalls[i]));
+            }
+            buffer.append(String.format("%n"));
+        }
+        if (stats.isEmpty()) {
+            buffer.append(PROFILING_ENABLED
+                          ? "(no paths have been navigated)"
+                          : "(profiling is disabled, set -D" + PROFILE_PATH_PROPERTY_NAME + "=true to enable)");
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Statistics collected for a single named path.
+     */
+    public static final class Stats {
+
+        private final String name;
+
+        private long calls;
+        private long totalNanos;
+        private long maxNanos;
+        private long resultElements;
+        private long[] stepElements;
+        private long[] stepCalls;
+
+        private Stats(@NotNull String name) {
+            this.name = name;
+            this.stepElements = new long[4];
+            this.stepCalls = new long[4];
+        }
+
+        private synchronized void recordNavigation(long elapsedNanos, int resultSize) {
+            calls++;
+            totalNanos += elapsedNanos;
+            if (elapsedNanos > maxNanos) {
+                maxNanos = elapsedNanos;
+            }
+            resultElements += resultSize;
+        }
+
+        private synchronized void recordStep(int step, int elementCount) {
+            if (step >= stepElements.length) {
+                int length = Math.max(step + 1, stepElements.length * 2);
+                stepElements = Arrays.copyOf(stepElements, length);
+                stepCalls = Arrays.copyOf(stepCalls, length);
+            }
+            stepElements[step] += elementCount;
+            stepCalls[step]++;
+        }
+
+        @NotNull
+        private synchronized Stats copy() {
+            Stats copy = new Stats(name);
+            copy.calls = calls;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            copy.resultElements = resultElements;
+            int steps = stepCalls.length;
+            while (steps > 0 && stepCalls[steps - 1] == 0) {
+                steps--;
+            }
+            copy.stepElements = Arrays.copyOf(stepElements, steps);
+            copy.stepCalls = Arrays.copyOf(stepCalls, steps);
+            return copy;
+        }
+
+        @NotNull
+        public String getName() {
+            return name;
+        }
+
+        /** @return The number of times this path was navigated. */
+        public synchronized long getCalls() {
+            return calls;
+        }
+
+        /** @return The total time spent navigating this path, including nested paths. */
+        public synchronized long getTotalNanos() {
+            return totalNanos;
+        }
+
+        /** @return The longest time spent in a single navigation of this path. */
+        public synchronized long getMaxNanos() {
+            return maxNanos;
+        }
+
+        /** @return The total number of elements produced by this path. */
+        public synchronized long getResultElements() {
+            return resultElements;
+        }
+
+        /** @return The total number of elements produced by each step of this path. */
+        @NotNull
+        public synchronized long[] getStepElements() {
+            return stepElements.clone();
+        }
+
+        /** @return The number of times each step of this path was executed. */
+        @NotNull
+        public synchronized long[] getStepCalls() {
+            return stepCalls.clone();
+        }
+    }
+}
@@ -29,6 +29,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -36,7 +37,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -157,6 +160,12 @@ public class PsiElementPath {
 
     private final TraverseEmpty defaultTraverseEmpty;
 
+    /**
+     * Index of the first predicate that may be evaluated one element at a
+     * time, when navigation starts from a single element. Computed lazily.
+     */
+    private int lazyFrom = -1;
+
     /**
      * Constructs a new path defined by the passed predicates. Predicates are
      * applied in the order passed.
@@ -216,16 +225,22 @@ public class PsiElementPath {
             name = TraceState.getName();
             TraceState.summaryMessage("## [ begin path: %s ]", name);
         }
+        long started = PathProfiler.PROFILING_ENABLED ? System.nanoTime() : 0L;
+        PsiElementCollection result = PsiElementCollection.EMPTY;
         try {
-            return navigateImpl(start);
+            result = navigateImpl(start);
+            return result;
         } catch (ProcessCanceledException e) {
             TraceState.summaryMessage("## [ cancelled path: %s ] (%s: %s)", name, e.getClass().getSimpleName(), e.getMessage());
-            return PsiElementCollection.EMPTY;
+            throw e;
         } catch (RuntimeException e) {
             LOG.error(e);
             TraceState.summaryMessage("## [ abort path: %s ] (%s: %s)", name, e.getClass().getSimpleName(), e.getMessage());
             return PsiElementCollection.EMPTY;
         } finally {
+            if (PathProfiler.PROFILING_ENABLED) {
+                PathProfiler.recordNavigation(this.name, System.nanoTime() - started, result.size());
+            }
             if (TraceState.isSummaryEnabled()) {
                 TraceState.summaryMessage("## [ end path: %s ]", name);
             }
@@ -233,10 +248,112 @@ public class PsiElementPath {
         }
     }
 
+    /**
+     * Executes navigation lazily starting from the passed element, and returns
+     * the first element found. Unlike <code>navigate(start).oneOrNull()</code>,
+     * each candidate element is followed through the remaining steps of this
+     * path before the next candidate is considered, so navigation stops as
+     * soon as a single element survives every step.
+     * @param start Where to start
+     * @return The first element navigation would produce, or null if there is
+     *     none.
+     */
+    public final @Nullable PsiElement first(@NotNull PsiElement start) {
+        return navigateLazily(start, null, 1).oneOrNull();
+    }
+
+    /**
+     * Executes navigation lazily starting from the passed element, and returns
+     * the first element found that is also accepted by the passed filter.
+     * @param start Where to start
+     * @param filter An additional predicate applied to the results of this
+     *     path, or null.
+     * @return The first element navigation would produce that is accepted by
+     *     filter, or null if there is none.
+     * @see #first(PsiElement)
+     */
+    public final @Nullable PsiElement first(@NotNull PsiElement start, @Nullable ElementPredicate filter) {
+        return navigateLazily(start, filter, 1).oneOrNull();
+    }
+
+    /**
+     * Executes navigation lazily starting from the passed element, stopping
+     * as soon as any element is found.
+     * @param start Where to start
+     * @return true if navigation would produce at least one element, false
+     *     otherwise.
+     * @see #first(PsiElement)
+     */
+    public final boolean any(@NotNull PsiElement start) {
+        return !navigateLazily(start, null, 1).isEmpty();
+    }
+
+    /**
+     * Executes navigation lazily starting from the passed element, stopping
+     * as soon as the specified number of elements have been found.
+     * @param start Where to start
+     * @param n The maximum number of elements to return.
+     * @return A collection containing, at most, the first n elements that
+     *     navigation would produce, in the same order.
+     * @see #first(PsiElement)
+     */
+    public final @NotNull PsiElementCollection limit(@NotNull PsiElement start, int n) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("n must be a positive integer: " + n);
+        }
+        return navigateLazily(start, null, n);
+    }
+
+    @NotNull
+    private PsiElementCollection navigateLazily(@NotNull PsiElement start,
+                                                @Nullable ElementPredicate filter,
+                                                int limit) {
+        TraceState.push(name);
+        String name = null;
+        if (TraceState.isSummaryEnabled()) {
+            name = TraceState.getName();
+            TraceState.summaryMessage("## [ begin lazy path: %s ] (limit %d)", name, limit);
+        }
+        long started = PathProfiler.PROFILING_ENABLED ? System.nanoTime() : 0L;
+        PsiElementCollection buffer = new PsiElementCollection();
+        try {
+            Iterator<PsiElement> iterator = iterate(start, filter);
+            while (buffer.size() < limit && iterator.hasNext()) {
+                buffer.add(iterator.next());
+            }
+            return buffer.isEmpty() ? PsiElementCollection.EMPTY : buffer;
+        } catch (ProcessCanceledException e) {
+            TraceState.summaryMessage("## [ cancelled lazy path: %s ] (%s: %s)", name, e.getClass().getSimpleName(), e.getMessage());
+            throw e;
+        } catch (RuntimeException e) {
+            LOG.error(e);
+            TraceState.summaryMessage("## [ abort lazy path: %s ] (%s: %s)", name, e.getClass().getSimpleName(), e.getMessage());
+            return PsiElementCollection.EMPTY;
+        } finally {
+            if (PathProfiler.PROFILING_ENABLED) {
+                PathProfiler.recordNavigation(this.name, System.nanoTime() - started, buffer.size());
+            }
+            if (TraceState.isSummaryEnabled()) {
+                TraceState.summaryMessage("## [ end lazy path: %s ]", name);
+            }
+            TraceState.pop();
+        }
+    }
+
     @NotNull PsiElementCollection navigateImpl(@NotNull Collection<PsiElement> start) {
+        return navigateSteps(start, elementReferencePath.length);
+    }
+
+    /**
+     * Eagerly executes the first <code>steps</code> predicates of this path.
+     * @param start Elements indicating where navigation should start
+     * @param steps The number of predicates to execute.
+     * @return A collection of elements containing the results of navigation.
+     */
+    @NotNull PsiElementCollection navigateSteps(@NotNull Collection<PsiElement> start, int steps) {
         Map<Key,Object> navigationData = null;
         PsiElementCollection current = new PsiElementCollection(start);
-        for (int i = 0, j = elementReferencePath.length; i < j; ++i) {
+        for (int i = 0, j = steps; i < j; ++i) {
             ElementPredicate next = elementReferencePath[i];
 
             if (next == null) {
@@ -260,25 +377,16 @@ public class PsiElementPath {
             }
             if (current.isEmpty()) {
                 if (getNoMatchOnStart(next, defaultTraverseEmpty) == ABORT) {
-                    TraceState.detailMessage("\tABORT!");
+                    if (TraceState.TRACING_ENABLED) {
+                        TraceState.detailMessage("\tABORT!");
+                    }
                     return PsiElementCollection.EMPTY;
                 }
             }
             TraverseEmpty noMatch = getNoMatch(next, defaultTraverseEmpty);
-            if (next instanceof TraversalPredicate) {
-                TraversalPredicate traversal = (TraversalPredicate)next;
-                PsiElementCollection buffer;
-                do {
-                    current = traversal.traverse(current);
-                    if (current.isEmpty()) {
-                        buffer = PsiElementCollection.EMPTY;
-                        break;
-                    }
-                    buffer = current.applyPredicate(next);
-                } while (buffer.isEmpty() && noMatch == TRAVERSE_AGAIN);
-                current = buffer;
-            } else {
-                current = current.applyPredicate(next);
+            current = applyStep(next, current, noMatch);
+            if (PathProfiler.PROFILING_ENABLED) {
+                PathProfiler.recordStep(name, i, current.size());
             }
             if (TraceState.isDetailEnabled()) {
                 TraceState.detailMessage("\t%s (%d %s)",
@@ -290,7 +398,9 @@ public class PsiElementPath {
                 }
             }
             if (i < j && noMatch == ABORT && current.isEmpty() && PushPopPredicate.isStackEmpty(navigationData)) {
-                TraceState.detailMessage("\tABORT!");
+                if (TraceState.TRACING_ENABLED) {
+                    TraceState.detailMessage("\tABORT!");
+                }
                 break;
             }
         }
@@ -298,6 +408,133 @@ public class PsiElementPath {
         return current;
     }
 
+    @NotNull
+    private static PsiElementCollection applyStep(@NotNull ElementPredicate next,
+                                                  @NotNull Collection<PsiElement> current,
+                                                  @NotNull TraverseEmpty noMatch) {
+        if (next instanceof TraversalPredicate) {
+            TraversalPredicate traversal = (TraversalPredicate)next;
+            PsiElementCollection buffer;
+            do {
+                PsiElementCollection traversed = traversal.traverse(current);
+                if (traversed.isEmpty()) {
+                    buffer = PsiElementCollection.EMPTY;
+                    break;
+                }
+                buffer = traversed.applyPredicate(next);
+                current = traversed;
+            } while (buffer.isEmpty() && noMatch == TRAVERSE_AGAIN);
+            return buffer;
+        }
+        return PsiElementCollection.castOrCopy(current).applyPredicate(next);
+    }
+
+    /**
+     * Builds an iterator over the elements produced by
+     * {@link #navigateImpl(java.util.Collection)}. Elements are produced on
+     * demand; where possible, each element is followed through all remaining
+     * steps before the next one is considered.
+     *
+     * The returned iterator may produce duplicate elements, but the first
+     * occurrence of each element is produced in the same order as
+     * navigateImpl. Steps that would change that order when evaluated one
+     * element at a time, such as {@link TraversalPredicate.LevelOrder}
+     * traversals, are evaluated eagerly.
+     * @param start Elements indicating where navigation should start
+     * @return An iterator over the results of navigation.
+     */
+    @NotNull
+    Iterator<PsiElement> iterate(@NotNull Collection<PsiElement> start) {
+        int from = getLazyFrom(start.size() == 1);
+        Collection<PsiElement> current = from == 0 ? start : navigateSteps(start, from);
+        if (from == elementReferencePath.length || current.isEmpty()) {
+            return current.iterator();
+        }
+        if (TraceState.TRACING_ENABLED) {
+            TraceState.detailMessage("\tlazy from step %d", from);
+        }
+        return new DepthFirstIterator(current, from);
+    }
+
+    /**
+     * Builds an iterator over the elements produced by navigating from a
+     * single element that are also accepted by the passed filter. Paths that
+     * index their results may override this to avoid testing every element.
+     * @param start Where to start
+     * @param filter An additional predicate applied to the results of this
+     *     path, or null.
+     * @return An iterator over the filtered results of navigation.
+     */
+    @NotNull
+    Iterator<PsiElement> iterate(@NotNull PsiElement start, @Nullable final ElementPredicate filter) {
+        final Iterator<PsiElement> iterator = iterate(Collections.singleton(start));
+        if (filter == null) {
+            return iterator;
+        }
+        return new LookAheadIterator() {
+            @Nullable
+            @Override
+            protected PsiElement findNext() {
+                while (iterator.hasNext()) {
+                    PsiElement element = iterator.next();
+                    if (filter.test(element)) {
+                        return element;
+                    }
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * @return true if navigating from a collection of elements produces the
+     *     same elements, in the same order, as navigating from each of those
+     *     elements in turn, false otherwise.
+     */
+    boolean isDistributive() {
+        return getLazyFrom(false) == 0;
+    }
+
+    private int getLazyFrom(boolean singleStart) {
+        if (lazyFrom < 0) {
+            int from = 0;
+            for (int i = 0; i < elementReferencePath.length; i++) {
+                if (!isDistributive(elementReferencePath[i], i == 0)) {
+                    from = i + 1;
+                }
+            }
+            lazyFrom = from;
+        }
+        if (!singleStart && lazyFrom == 0 && elementReferencePath.length > 0 &&
+            (elementReferencePath[0] instanceof TraversalPredicate.LevelOrder ||
+             getNoMatchOnStart(elementReferencePath[0], defaultTraverseEmpty) != ABORT ||
+             getNoMatch(elementReferencePath[0], defaultTraverseEmpty) != ABORT)) {
+            return 1;
+        }
+        return lazyFrom;
+    }
+
+    /**
+     * Predicates that keep state across elements, or that must see the
+     * collection as a whole, cannot be evaluated one element at a time.
+     * Neither can level order traversals, which interleave the descendants
+     * of all their elements.
+     */
+    private boolean isDistributive(@Nullable ElementPredicate next, boolean firstStep) {
+        if (next == null || next == LogElementsPredicate.INSTANCE || next instanceof InstancePredicate) {
+            return false;
+        }
+        if (firstStep) {
+            // a single non-empty starting element behaves the same either way
+            return true;
+        }
+        if (next instanceof TraversalPredicate.LevelOrder) {
+            return false;
+        }
+        return getNoMatchOnStart(next, defaultTraverseEmpty) == ABORT &&
+               getNoMatch(next, defaultTraverseEmpty) == ABORT;
+    }
+
     @NotNull
     protected TraverseEmpty getNoMatchOnStart(@NotNull Object predicate,
                                               @NotNull TraverseEmpty defaultValue) {
@@ -512,6 +749,36 @@ public class PsiElementPath {
             }
             return buffer;
         }
+
+        @NotNull
+        @Override
+        Iterator<PsiElement> iterate(@NotNull final Collection<PsiElement> start) {
+            final Iterator<PsiElementPath> paths = new ArrayList<PsiElementPath>(delegates).iterator();
+            return new LookAheadIterator() {
+
+                private Iterator<PsiElement> current = Collections.<PsiElement>emptySet().iterator();
+
+                @Nullable
+                @Override
+                protected PsiElement findNext() {
+                    while (!current.hasNext()) {
+                        if (!paths.hasNext()) {
+                            return null;
+                        }
+                        current = paths.next().iterate(start);
+                    }
+                    return current.next();
+                }
+            };
+        }
+
+        @Override
+        boolean isDistributive() {
+            for (PsiElementPath psiPath : delegates) {
+                if (!psiPath.isDistributive()) return false;
+            }
+            return true;
+        }
     }
 
     private static class MyAlwaysTruePredicate extends AbstractElementPredicate implements ElementPredicate.AlwaysTrue {
@@ -551,23 +818,56 @@ public class PsiElementPath {
             PsiElementCollection buffer = PsiElementPath.this.navigateImpl(start);
             int seq = 0;
             for (PsiElementPath psiPath : exclude) {
-                TraceState.summaryMessage("## begin exclude...");
                 if (TraceState.traceActive()) {
+                    TraceState.summaryMessage("## begin exclude...");
                     TraceState.pushName("exclude[" + (seq++) + "]");
                     try {
                         buffer.removeAll(psiPath.navigate(start));
                     } finally {
                         TraceState.pop();
                     }
+                    TraceState.summaryMessage("## end exclude.");
                 } else {
                     buffer.removeAll(psiPath.navigateImpl(start));
                 }
-                TraceState.summaryMessage("## end exclude.");
                 if (buffer.isEmpty()) return PsiElementCollection.EMPTY;
             }
             return buffer;
         }
 
+        @NotNull
+        @Override
+        Iterator<PsiElement> iterate(@NotNull final Collection<PsiElement> start) {
+            final Iterator<PsiElement> iterator = PsiElementPath.this.iterate(start);
+            return new LookAheadIterator() {
+
+                private PsiElementCollection excluded;
+
+                @Nullable
+                @Override
+                protected PsiElement findNext() {
+                    while (iterator.hasNext()) {
+                        PsiElement element = iterator.next();
+                        if (excluded == null) {
+                            excluded = new PsiElementCollection();
+                            for (PsiElementPath psiPath : exclude) {
+                                excluded.addAll(psiPath.navigateImpl(start));
+                            }
+                        }
+                        if (!excluded.contains(element)) {
+                            return element;
+                        }
+                    }
+                    return null;
+                }
+            };
+        }
+
+        @Override
+        boolean isDistributive() {
+            return false;
+        }
+
         @Override
         public PsiElementPath or(@NotNull PsiElementPath... psiPath) {
             throw new UnsupportedOperationException("or() not supported after calling seq()");
@@ -619,6 +919,144 @@ public class PsiElementPath {
             }
             return buffer;
         }
+
+        @NotNull
+        @Override
+        Iterator<PsiElement> iterate(@NotNull Collection<PsiElement> start) {
+            List<PsiElementPath> paths = new ArrayList<PsiElementPath>(this.seq);
+            int lazyFrom = paths.size();
+            while (lazyFrom > 1 && paths.get(lazyFrom - 1).isDistributive()) {
+                lazyFrom--;
+            }
+            // paths before lazyFrom - 1 are evaluated eagerly, the rest on demand
+            Collection<PsiElement> buffer = start;
+            for (int i = 0; i < lazyFrom - 1; i++) {
+                buffer = paths.get(i).navigateImpl(buffer);
+            }
+            Iterator<PsiElement> iterator = paths.get(lazyFrom - 1).iterate(buffer);
+            for (int i = lazyFrom; i < paths.size(); i++) {
+                iterator = new FlatMapIterator(iterator, paths.get(i));
+            }
+            return iterator;
+        }
+
+        @Override
+        boolean isDistributive() {
+            for (PsiElementPath path : seq) {
+                if (!path.isDistributive()) return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Lazily follows each element through the remaining predicates of this
+     * path, depth first, before moving on to the next element.
+     */
+    private class DepthFirstIterator extends LookAheadIterator {
+
+        /** pending elements at each step; levels[0] holds the starting elements */
+        private final Iterator<PsiElement>[] levels;
+        private final int from;
+
+        private int depth = 0;
+
+        @SuppressWarnings("unchecked")
+        private DepthFirstIterator(@NotNull Collection<PsiElement> start, int from) {
+            this.from = from;
+            this.levels = (Iterator<PsiElement>[])new Iterator[elementReferencePath.length - from + 1];
+            this.levels[0] = start.iterator();
+        }
+
+        @Nullable
+        @Override
+        protected PsiElement findNext() {
+            int last = levels.length - 1;
+            while (depth >= 0) {
+                Iterator<PsiElement> iterator = levels[depth];
+                if (!iterator.hasNext()) {
+                    levels[depth--] = null;
+                    continue;
+                }
+                PsiElement element = iterator.next();
+                if (depth == last) {
+                    return element;
+                }
+                ElementPredicate next = elementReferencePath[from + depth];
+                TraverseEmpty noMatch = getNoMatch(next, defaultTraverseEmpty);
+                PsiElementCollection found = applyStep(next, Collections.singleton(element), noMatch);
+                if (PathProfiler.PROFILING_ENABLED) {
+                    PathProfiler.recordStep(name, from + depth, found.size());
+                }
+                levels[++depth] = found.iterator();
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Lazily navigates a path from each element produced by another iterator.
+     */
+    private static class FlatMapIterator extends LookAheadIterator {
+
+        private final Iterator<PsiElement> source;
+        private final PsiElementPath path;
+
+        private Iterator<PsiElement> current = Collections.<PsiElement>emptySet().iterator();
+
+        private FlatMapIterator(@NotNull Iterator<PsiElement> source, @NotNull PsiElementPath path) {
+            this.source = source;
+            this.path = path;
+        }
+
+        @Nullable
+        @Override
+        protected PsiElement findNext() {
+            while (!current.hasNext()) {
+                if (!source.hasNext()) {
+                    return null;
+                }
+                current = path.iterate(Collections.singleton(source.next()));
+            }
+            return current.next();
+        }
+    }
+
+    /**
+     * Base class for the iterators used by lazy navigation.
+     */
+    private abstract static class LookAheadIterator implements Iterator<PsiElement> {
+
+        private PsiElement next;
+
+        /**
+         * @return The next element, or null if there are no more elements.
+         */
+        @Nullable
+        protected abstract PsiElement findNext();
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = findNext();
+            }
+            return next != null;
+        }
+
+        @Override
+        public PsiElement next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            PsiElement element = next;
+            next = null;
+            return element;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
     }
 
     /**
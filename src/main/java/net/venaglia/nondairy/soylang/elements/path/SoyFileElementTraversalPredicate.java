@@ -17,18 +17,19 @@
 package net.venaglia.nondairy.soylang.elements.path;
 
 import com.intellij.openapi.module.Module;
-import com.intellij.openapi.roots.ModuleRootManager;
-import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
+import com.intellij.psi.tree.IElementType;
+import net.venaglia.nondairy.soylang.SoyElement;
 import net.venaglia.nondairy.soylang.SoyFileType;
 //import net.venaglia.nondairy.soylang.cache.DelegatePackageCache;
-import net.venaglia.nondairy.soylang.cache.DelegatePackageCache;
-import net.venaglia.nondairy.soylang.cache.DelegateTemplateCache;
+import net.venaglia.nondairy.soylang.cache.CacheEntry;
+import net.venaglia.nondairy.soylang.cache.DeltemplateOverrideCache;
 import net.venaglia.nondairy.soylang.cache.NamespaceCache;
 import net.venaglia.nondairy.soylang.cache.TemplateCache;
+import net.venaglia.nondairy.soylang.cache.TemplateDeclarationIndex;
 import net.venaglia.nondairy.soylang.elements.DelegateMemberElement;
 import net.venaglia.nondairy.soylang.elements.NamespaceMemberElement;
 import net.venaglia.nondairy.soylang.elements.TreeNavigator;
@@ -110,37 +111,25 @@ public class SoyFileElementTraversalPredicate implements TraversalPredicate {
     }
 
     void getModulesToSearch(@NotNull PsiElement element, @NotNull Set<Module> modules) {
-        ProjectFileIndex fileIndex = TreeNavigator.INSTANCE.getProjectFileIndex(element.getProject());
-        VirtualFile virtualFile = element.getContainingFile().getVirtualFile();
-        if (virtualFile != null) {
-            Module module = fileIndex.getModuleForFile(virtualFile);
-            if (module != null && !modules.contains(module)) {
-                modules.add(module);
-                collectModuleDependencies(module, modules);
-            }
-        }
-    }
-    
-    private void collectModuleDependencies (@NotNull Module start, @NotNull Set<Module> modules) {
-        ModuleRootManager moduleRootManager = ModuleRootManager.getInstance(start);
-        if (moduleRootManager != null) {
-            for (Module module : moduleRootManager.getDependencies()) {
-                if (!modules.contains(module)) {
-                    modules.add(module);
-                    collectModuleDependencies(module, modules);
-                }
-            }
-        }
+        TemplateDeclarationIndex.getModulesToSearch(element, modules);
     }
-    
+
     private Collection<VirtualFile> findFiles(@NotNull Module module,
                                               @NotNull Collection<NamespaceOrDeltemplate> nops) {
         Collection<VirtualFile> files = new HashSet<VirtualFile>();
         for (TemplateCache cache : getTemplateCaches(module, nops)) {
             files.addAll(cache.getFiles());
         }
-        for (DelegateTemplateCache cache : getDelegateTemplateCaches(module, nops)) {
-            files.addAll(cache.getFiles());
+        DeltemplateOverrideCache overrideCache = DeltemplateOverrideCache.getCache(module);
+        for (NamespaceOrDeltemplate nop : nops) {
+            if (nop.deltemplate != null) {
+                for (CacheEntry entry : overrideCache.getImplementations(nop.deltemplate)) {
+                    VirtualFile file = entry.getFile();
+                    if (file != null) {
+                        files.add(file);
+                    }
+                }
+            }
         }
         return files;
     }
@@ -157,22 +146,6 @@ public class SoyFileElementTraversalPredicate implements TraversalPredicate {
         return caches;
     }
 
-    private Set<DelegateTemplateCache> getDelegateTemplateCaches(@NotNull Module module,
-                                                                 @NotNull Collection<NamespaceOrDeltemplate> nops) {
-        DelegatePackageCache delegatePackageCache = DelegatePackageCache.getCache(module);
-        Set<DelegateTemplateCache> caches = new TinySet<DelegateTemplateCache>();
-        for (NamespaceOrDeltemplate nop : nops) {
-            if (nop.deltemplate != null) {
-                for (DelegateTemplateCache dtc : delegatePackageCache.values()) {
-                    if (dtc.containsKey(nop.deltemplate)) {
-                        caches.add(dtc);
-                    }
-                }
-            }
-        }
-        return caches;
-    }
-
     @Override
     public boolean test(PsiElement element) {
         return true; // filtering is handled by the index
@@ -249,6 +222,18 @@ public class SoyFileElementTraversalPredicate implements TraversalPredicate {
         return new SoyFileElementTraversalPredicate();
     }
 
+    /**
+     * Builds a predicate that finds the template_name elements declaring a
+     * template, using the offsets recorded by the
+     * {@link TemplateDeclarationIndex} rather than walking every template in
+     * every file of the template's namespace.
+     * @param templateName The fully qualified name of the template.
+     * @return A predicate that traverses to the template's declarations.
+     */
+    public static TraversalPredicate templateNameDeclarations(@NotNull @NonNls String templateName) {
+        return new TemplateNameDeclarationsPredicate(templateName);
+    }
+
     private static class FilesByNamespaceOrDeltemplatePredicate extends SoyFileElementTraversalPredicate {
 
         private final Set<NamespaceOrDeltemplate> naps;
@@ -277,4 +262,97 @@ public class SoyFileElementTraversalPredicate implements TraversalPredicate {
             return files;
         }
     }
+
+    /**
+     * Builds psi only for the files that declare the template, as found in
+     * the index. Soy files have no stub tree, so this is left to resolving a
+     * reference; inspections and annotations that only need a template's
+     * parameters or existence read them from {@link TemplateDeclarationIndex}
+     * instead.
+     */
+    private static class TemplateNameDeclarationsPredicate extends SoyFileElementTraversalPredicate {
+
+        /** Used for files that have not been indexed, or whose offsets are stale */
+        private static final PsiElementPath PATH_TO_TEMPLATE_TAGS = new PsiElementPath(
+                new ElementTypePredicate(SoyElement.soy_file).onChildren(),
+                new ElementTypePredicate(SoyElement.template_tag).onDescendants(2,3)
+        ).debug("template_name_declarations!fallback");
+
+        private static final PsiElementPath PATH_TO_TEMPLATE_NAME = new PsiElementPath(
+                new ElementTypePredicate(SoyElement.tag_between_braces).onChildren(),
+                new ElementTypePredicate(SoyElement.template_name).onChildren()
+        );
+
+        private final String templateName;
+        private final ElementPredicate templateNamePredicate;
+
+        private TemplateNameDeclarationsPredicate(@NotNull @NonNls String templateName) {
+            this.templateName = templateName;
+            this.templateNamePredicate = new TemplateNamePredicate(templateName);
+        }
+
+        @NotNull
+        @Override
+        public PsiElementCollection traverse(@NotNull Collection<PsiElement> current) {
+            Set<Module> search = new HashSet<Module>();
+            Set<PsiFile> unindexedFiles = new HashSet<PsiFile>();
+            for (PsiElement element : current) {
+                getModulesToSearch(element, search);
+                PsiFile containingFile = element.getContainingFile();
+                VirtualFile virtualFile = containingFile == null ? null : containingFile.getVirtualFile();
+                if (containingFile != null && (virtualFile == null || TemplateCache.fromFile(virtualFile) == null)) {
+                    unindexedFiles.add(containingFile);
+                }
+            }
+            PsiElementCollection names = new PsiElementCollection();
+            Set<PsiFile> staleFiles = new HashSet<PsiFile>();
+            for (Module module : search) {
+                PsiManager manager = TreeNavigator.INSTANCE.getPsiManager(module.getProject());
+                for (CacheEntry entry : TemplateDeclarationIndex.findTemplates(Collections.singleton(module), templateName)) {
+                    VirtualFile file = entry.getFile();
+                    PsiFile psiFile = file == null ? null : manager.findFile(file);
+                    if (psiFile != null) {
+                        PsiElement name = findTemplateName(psiFile, entry.getOffset());
+                        if (name != null) {
+                            names.add(name);
+                        } else {
+                            staleFiles.add(psiFile);
+                        }
+                    }
+                }
+            }
+            unindexedFiles.addAll(staleFiles);
+            for (PsiFile psiFile : unindexedFiles) {
+                for (PsiElement templateTag : PATH_TO_TEMPLATE_TAGS.navigate(psiFile)) {
+                    if (templateNamePredicate.test(templateTag)) {
+                        names.addAll(PATH_TO_TEMPLATE_NAME.navigate(templateTag));
+                    }
+                }
+            }
+            return names;
+        }
+
+        @Nullable
+        private PsiElement findTemplateName(@NotNull PsiFile psiFile, int offset) {
+            PsiElement element = offset < 0 ? null : psiFile.findElementAt(offset);
+            while (element != null && !(element instanceof PsiFile)) {
+                IElementType type = element.getNode().getElementType();
+                if (type == SoyElement.template_name) {
+                    PsiElement parent = element.getParent();
+                    PsiElement templateTag = parent == null ? null : parent.getParent();
+                    return templateTag != null && templateNamePredicate.test(templateTag) ? element : null;
+                }
+                if (type == SoyElement.template_tag) {
+                    break;
+                }
+                element = element.getParent();
+            }
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return "templateDeclarations(" + templateName + ")"; //NON-NLS
+        }
+    }
 }
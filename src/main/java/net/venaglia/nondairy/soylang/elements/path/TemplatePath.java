@@ -32,7 +32,9 @@ import java.util.Iterator;
  * qualified name.
  *
  * This path makes use of {@link SoyFileElementTraversalPredicate} to navigate
- * to other files.
+ * to other files. Templates are found by their fully qualified name through
+ * the offsets recorded in
+ * {@link net.venaglia.nondairy.soylang.cache.TemplateDeclarationIndex}.
  */
 public class TemplatePath extends PsiElementPath {
 
@@ -56,15 +58,8 @@ public class TemplatePath extends PsiElementPath {
         if (lastDot < 0) {
             throw new IllegalArgumentException("invalid template name: " + templateName);
         }
-        String namespace = templateName.substring(0, lastDot);
-//        templateName = templateName.substring(lastDot + 1);
         return new ElementPredicate[]{
-                SoyFileElementTraversalPredicate.filesForNamespace(namespace),
-                new ElementTypePredicate(SoyElement.soy_file).onChildren(),
-                new ElementTypePredicate(SoyElement.template_tag).onDescendants(2,3),
-                new TemplateNamePredicate(templateName),
-                new ElementTypePredicate(SoyElement.tag_between_braces).onChildren(),
-                new ElementTypePredicate(SoyElement.template_name).onChildren()
+                SoyFileElementTraversalPredicate.templateNameDeclarations(templateName)
         };
     }
 
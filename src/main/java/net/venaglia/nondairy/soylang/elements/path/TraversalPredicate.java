@@ -41,4 +41,12 @@ public interface TraversalPredicate extends ElementPredicate {
     PsiElementCollection traverse(@NotNull Collection<PsiElement> current);
 
     public interface AlwaysTrue extends TraversalPredicate, ElementPredicate.AlwaysTrue {}
+
+    /**
+     * Marks a traversal that visits the elements passed to
+     * {@link #traverse(java.util.Collection)} all together, one level of the
+     * psi tree at a time. Its results are not the results of traversing each
+     * element in turn, so it cannot be evaluated one element at a time.
+     */
+    public interface LevelOrder extends TraversalPredicate {}
 }
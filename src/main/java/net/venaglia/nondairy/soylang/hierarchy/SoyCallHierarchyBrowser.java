@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.venaglia.nondairy.soylang.hierarchy;
+
+import com.intellij.ide.hierarchy.CallHierarchyBrowserBase;
+import com.intellij.ide.hierarchy.HierarchyBrowserManager;
+import com.intellij.ide.hierarchy.HierarchyNodeDescriptor;
+import com.intellij.ide.hierarchy.HierarchyTreeStructure;
+import com.intellij.ide.util.treeView.AlphaComparator;
+import com.intellij.ide.util.treeView.NodeDescriptor;
+import com.intellij.ide.util.treeView.SourceComparator;
+import com.intellij.openapi.actionSystem.ActionGroup;
+import com.intellij.openapi.actionSystem.ActionManager;
+import com.intellij.openapi.actionSystem.ActionPlaces;
+import com.intellij.openapi.actionSystem.IdeActions;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiElement;
+import com.intellij.ui.PopupHandler;
+import org.jetbrains.annotations.NotNull;
+
+import javax.swing.*;
+import java.util.Comparator;
+import java.util.Map;
+
+/**
+ * Shows the templates that call, or are called by, a template.
+ */
+public class SoyCallHierarchyBrowser extends CallHierarchyBrowserBase {
+
+    public SoyCallHierarchyBrowser(@NotNull Project project, @NotNull PsiElement template) {
+        super(project, template);
+    }
+
+    @Override
+    protected void createTrees(@NotNull Map<String,JTree> type2TreeMap) {
+        ActionGroup group = (ActionGroup)ActionManager.getInstance().getAction(IdeActions.GROUP_CALL_HIERARCHY_POPUP);
+        type2TreeMap.put(CALLER_TYPE, createHierarchyTree(group));
+        type2TreeMap.put(CALLEE_TYPE, createHierarchyTree(group));
+    }
+
+    @NotNull
+    private JTree createHierarchyTree(@NotNull ActionGroup group) {
+        JTree tree = createTree(false);
+        PopupHandler.installPopupHandler(tree, group, ActionPlaces.CALL_HIERARCHY_VIEW_POPUP, ActionManager.getInstance());
+        return tree;
+    }
+
+    @Override
+    protected PsiElement getElementFromDescriptor(@NotNull HierarchyNodeDescriptor descriptor) {
+        return descriptor.getPsiElement();
+    }
+
+    @Override
+    protected boolean isApplicableElement(@NotNull PsiElement element) {
+        return SoyCallHierarchyProvider.getTemplateName(element) != null;
+    }
+
+    @Override
+    protected HierarchyTreeStructure createHierarchyTreeStructure(@NotNull String type, @NotNull PsiElement psiElement) {
+        String templateName = SoyCallHierarchyProvider.getTemplateName(psiElement);
+        if (templateName == null) {
+            return null;
+        }
+        SoyCallHierarchyNodeDescriptor base = new SoyCallHierarchyNodeDescriptor(myProject,
+                                                                                 null,
+                                                                                 psiElement,
+                                                                                 templateName,
+                                                                                 SoyCallHierarchyProvider.isDelegate(psiElement),
+                                                                                 true);
+        if (CALLER_TYPE.equals(type)) {
+            return new SoyCallTreeStructure.Callers(myProject, base);
+        }
+        if (CALLEE_TYPE.equals(type)) {
+            return new SoyCallTreeStructure.Callees(myProject, base);
+        }
+        return null;
+    }
+
+    @Override
+    protected Comparator<NodeDescriptor> getComparator() {
+        if (HierarchyBrowserManager.getInstance(myProject).getState().SORT_ALPHABETICALLY) {
+            return AlphaComparator.INSTANCE;
+        }
+        return SourceComparator.INSTANCE;
+    }
+}
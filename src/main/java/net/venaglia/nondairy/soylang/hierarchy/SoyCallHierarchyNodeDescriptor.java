@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.venaglia.nondairy.soylang.hierarchy;
+
+import com.intellij.ide.IdeBundle;
+import com.intellij.ide.hierarchy.HierarchyNodeDescriptor;
+import com.intellij.ide.util.treeView.NodeDescriptor;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ui.util.CompositeAppearance;
+import com.intellij.openapi.util.Comparing;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A node in a call hierarchy. The node names a template, and navigates to
+ * the call that links it to its parent node; the base node navigates to the
+ * template itself.
+ */
+public class SoyCallHierarchyNodeDescriptor extends HierarchyNodeDescriptor {
+
+    @NotNull
+    private final String templateName;
+    private final boolean delegate;
+
+    public SoyCallHierarchyNodeDescriptor(@NotNull Project project,
+                                          @Nullable NodeDescriptor parentDescriptor,
+                                          @NotNull PsiElement element,
+                                          @NotNull String templateName,
+                                          boolean delegate,
+                                          boolean isBase) {
+        super(project, parentDescriptor, element, isBase);
+        this.templateName = templateName;
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return The fully qualified name of the template, or the name of the
+     *     deltemplate, this node represents.
+     */
+    @NotNull
+    public String getTemplateName() {
+        return templateName;
+    }
+
+    /**
+     * @return true if this node represents a deltemplate.
+     */
+    public boolean isDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return true if an ancestor of this node represents the same
+     *     template, so expanding this node would repeat the hierarchy.
+     */
+    public boolean isRecursive() {
+        for (NodeDescriptor d = getParentDescriptor(); d != null; d = d.getParentDescriptor()) {
+            if (d instanceof SoyCallHierarchyNodeDescriptor) {
+                SoyCallHierarchyNodeDescriptor ancestor = (SoyCallHierarchyNodeDescriptor)d;
+                if (ancestor.delegate == delegate && ancestor.templateName.equals(templateName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isValid() {
+        PsiElement element = getPsiElement();
+        return element != null && element.isValid();
+    }
+
+    @Override
+    public boolean update() {
+        boolean changes = super.update();
+        CompositeAppearance oldText = myHighlightedText;
+        myHighlightedText = new CompositeAppearance();
+        PsiElement element = getPsiElement();
+        if (element == null) {
+            myHighlightedText.getBeginning().addText(IdeBundle.message("node.hierarchy.invalid"),
+                                                     HierarchyNodeDescriptor.getInvalidPrefixAttributes());
+        }
+        myHighlightedText.getEnding().addText(templateName);
+        PsiFile file = element == null ? null : element.getContainingFile();
+        if (file != null) {
+            myHighlightedText.getEnding().addText(" (" + file.getName() + ")", //NON-NLS
+                                                  HierarchyNodeDescriptor.getPackageNameAttributes());
+        }
+        myName = myHighlightedText.getText();
+        if (!Comparing.equal(myHighlightedText, oldText)) {
+            changes = true;
+        }
+        return changes;
+    }
+}
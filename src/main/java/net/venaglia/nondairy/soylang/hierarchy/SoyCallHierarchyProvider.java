@@ -0,0 +1,112 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.venaglia.nondairy.soylang.hierarchy;
+
+import com.intellij.ide.hierarchy.CallHierarchyBrowserBase;
+import com.intellij.ide.hierarchy.HierarchyBrowser;
+import com.intellij.ide.hierarchy.HierarchyProvider;
+import com.intellij.openapi.actionSystem.CommonDataKeys;
+import com.intellij.openapi.actionSystem.DataContext;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import net.venaglia.nondairy.soylang.elements.AbsoluteDelegateNameRef;
+import net.venaglia.nondairy.soylang.elements.AbsoluteTemplateNameDef;
+import net.venaglia.nondairy.soylang.elements.DelegateTemplateDefElement;
+import net.venaglia.nondairy.soylang.elements.TemplateMemberElement;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Provides the caller and callee hierarchies of a template or deltemplate.
+ * The hierarchy is built from the {@link net.venaglia.nondairy.soylang.cache.CallGraphCache},
+ * so expanding a node does not search the text of any file.
+ */
+public class SoyCallHierarchyProvider implements HierarchyProvider {
+
+    @Nullable
+    @Override
+    public PsiElement getTarget(@NotNull DataContext dataContext) {
+        PsiElement element = CommonDataKeys.PSI_ELEMENT.getData(dataContext);
+        if (element == null) {
+            Editor editor = CommonDataKeys.EDITOR.getData(dataContext);
+            PsiFile file = CommonDataKeys.PSI_FILE.getData(dataContext);
+            if (editor != null && file != null) {
+                element = file.findElementAt(editor.getCaretModel().getOffset());
+            }
+        }
+        return findTemplateElement(element);
+    }
+
+    @NotNull
+    @Override
+    public HierarchyBrowser createHierarchyBrowser(PsiElement target) {
+        return new SoyCallHierarchyBrowser(target.getProject(), target);
+    }
+
+    @Override
+    public void browserActivated(@NotNull HierarchyBrowser hierarchyBrowser) {
+        ((SoyCallHierarchyBrowser)hierarchyBrowser).changeView(CallHierarchyBrowserBase.CALLER_TYPE);
+    }
+
+    /**
+     * @param element The element at the caret.
+     * @return The template name at, or the template tag enclosing, the
+     *     passed element, or null if it is not within a template.
+     */
+    @Nullable
+    static PsiElement findTemplateElement(@Nullable PsiElement element) {
+        for (PsiElement e = element; e != null && !(e instanceof PsiFile); e = e.getParent()) {
+            if (getTemplateName(e) != null) {
+                return e;
+            }
+        }
+        return element == null ? null : TemplateMemberElement.PATH_TO_CONTAINING_TEMPLATE_NAME.first(element);
+    }
+
+    /**
+     * @param element A template name, or template tag.
+     * @return The fully qualified name of the template, or the name of the
+     *     deltemplate, that the passed element names.
+     */
+    @Nullable
+    static String getTemplateName(@NotNull PsiElement element) {
+        if (element instanceof AbsoluteDelegateNameRef) {
+            return ((AbsoluteDelegateNameRef)element).getName();
+        }
+        if (element instanceof DelegateTemplateDefElement) {
+            return ((DelegateTemplateDefElement)element).getTemplateName();
+        }
+        if (element instanceof TemplateMemberElement) {
+            return ((TemplateMemberElement)element).getTemplateName();
+        }
+        return null;
+    }
+
+    /**
+     * @param element A template name, or template tag.
+     * @return true if the passed element names a deltemplate.
+     */
+    static boolean isDelegate(@NotNull PsiElement element) {
+        if (element instanceof AbsoluteDelegateNameRef || element instanceof DelegateTemplateDefElement) {
+            return true;
+        }
+        return element instanceof AbsoluteTemplateNameDef &&
+               TemplateMemberElement.PATH_TO_CONTAINING_TEMPLATE_NAME.first(element) instanceof DelegateTemplateDefElement;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.venaglia.nondairy.soylang.hierarchy;
+
+import com.intellij.ide.hierarchy.HierarchyNodeDescriptor;
+import com.intellij.ide.hierarchy.HierarchyTreeStructure;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.util.ArrayUtil;
+import net.venaglia.nondairy.soylang.cache.CallEdge;
+import net.venaglia.nondairy.soylang.cache.CallGraphCache;
+import net.venaglia.nondairy.soylang.elements.TreeNavigator;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Builds a call hierarchy from the edges recorded in the
+ * {@link CallGraphCache}. Each child node is placed on the first call that
+ * links it to its parent; a template that calls another several times
+ * appears once.
+ */
+abstract class SoyCallTreeStructure extends HierarchyTreeStructure {
+
+    private SoyCallTreeStructure(@NotNull Project project, @NotNull SoyCallHierarchyNodeDescriptor base) {
+        super(project, base);
+    }
+
+    @NotNull
+    @Override
+    protected Object[] buildChildren(@NotNull HierarchyNodeDescriptor descriptor) {
+        if (!(descriptor instanceof SoyCallHierarchyNodeDescriptor)) {
+            return ArrayUtil.EMPTY_OBJECT_ARRAY;
+        }
+        SoyCallHierarchyNodeDescriptor parent = (SoyCallHierarchyNodeDescriptor)descriptor;
+        if (parent.isRecursive()) {
+            return ArrayUtil.EMPTY_OBJECT_ARRAY;
+        }
+        Collection<Module> modules = Arrays.asList(TreeNavigator.INSTANCE.getModules(myProject));
+        PsiManager manager = TreeNavigator.INSTANCE.getPsiManager(myProject);
+        Set<Pair<String,Boolean>> seen = new HashSet<Pair<String,Boolean>>();
+        List<SoyCallHierarchyNodeDescriptor> children = new ArrayList<SoyCallHierarchyNodeDescriptor>();
+        for (CallEdge edge : findEdges(modules, parent.getTemplateName(), parent.isDelegate())) {
+            String templateName = getTemplateName(edge);
+            boolean delegate = isDelegate(edge);
+            if (templateName == null || !seen.add(Pair.create(templateName, delegate))) {
+                continue;
+            }
+            PsiElement call = findCall(manager, edge);
+            if (call != null) {
+                children.add(new SoyCallHierarchyNodeDescriptor(myProject, parent, call, templateName, delegate, false));
+            }
+        }
+        return children.toArray();
+    }
+
+    @Nullable
+    private static PsiElement findCall(@NotNull PsiManager manager, @NotNull CallEdge edge) {
+        VirtualFile file = edge.getFile();
+        PsiFile psiFile = file == null || !file.isValid() ? null : manager.findFile(file);
+        if (psiFile == null) {
+            return null;
+        }
+        PsiElement call = psiFile.findElementAt(edge.getOffset());
+        return call == null ? psiFile : call;
+    }
+
+    @NotNull
+    protected abstract List<CallEdge> findEdges(@NotNull Collection<Module> modules,
+                                                @NotNull String templateName,
+                                                boolean delegate);
+
+    @Nullable
+    protected abstract String getTemplateName(@NotNull CallEdge edge);
+
+    protected abstract boolean isDelegate(@NotNull CallEdge edge);
+
+    /**
+     * The templates that call the base template, and their callers in turn.
+     */
+    static class Callers extends SoyCallTreeStructure {
+
+        Callers(@NotNull Project project, @NotNull SoyCallHierarchyNodeDescriptor base) {
+            super(project, base);
+        }
+
+        @NotNull
+        @Override
+        protected List<CallEdge> findEdges(@NotNull Collection<Module> modules,
+                                           @NotNull String templateName,
+                                           boolean delegate) {
+            return CallGraphCache.findCallers(modules, templateName, delegate);
+        }
+
+        @Nullable
+        @Override
+        protected String getTemplateName(@NotNull CallEdge edge) {
+            return edge.getCaller();
+        }
+
+        @Override
+        protected boolean isDelegate(@NotNull CallEdge edge) {
+            return edge.isCallerDelegate();
+        }
+    }
+
+    /**
+     * The templates called by the base template, and the templates they
+     * call in turn.
+     */
+    static class Callees extends SoyCallTreeStructure {
+
+        Callees(@NotNull Project project, @NotNull SoyCallHierarchyNodeDescriptor base) {
+            super(project, base);
+        }
+
+        @NotNull
+        @Override
+        protected List<CallEdge> findEdges(@NotNull Collection<Module> modules,
+                                           @NotNull String templateName,
+                                           boolean delegate) {
+            return CallGraphCache.findCallees(modules, templateName, delegate);
+        }
+
+        @Nullable
+        @Override
+        protected String getTemplateName(@NotNull CallEdge edge) {
+            return edge.getCallee();
+        }
+
+        @Override
+        protected boolean isDelegate(@NotNull CallEdge edge) {
+            return edge.isCalleeDelegate();
+        }
+    }
+}
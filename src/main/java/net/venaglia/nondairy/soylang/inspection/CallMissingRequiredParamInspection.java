@@ -21,8 +21,11 @@ import com.intellij.codeInspection.InspectionManager;
 import com.intellij.codeInspection.LocalQuickFix;
 import com.intellij.codeInspection.ProblemDescriptor;
 import com.intellij.codeInspection.ProblemHighlightType;
+import com.intellij.openapi.module.Module;
 import com.intellij.psi.PsiElement;
 import net.venaglia.nondairy.soylang.SoyFile;
+import net.venaglia.nondairy.soylang.cache.CacheEntry;
+import net.venaglia.nondairy.soylang.cache.TemplateDeclarationIndex;
 import net.venaglia.nondairy.soylang.elements.AbsoluteTemplateNameRef;
 import net.venaglia.nondairy.soylang.elements.AttributeElement;
 import net.venaglia.nondairy.soylang.elements.LocalTemplateNameRef;
@@ -105,7 +108,7 @@ public class CallMissingRequiredParamInspection extends AbstractSoyInspection {
                                 @NotNull List<ProblemDescriptor> problems) {
         for (PsiElement element : PATH_TO_CALLS.navigate(file)) {
             checkCanceled();
-            TemplateMemberElement templateName = (TemplateMemberElement)PATH_TO_TEMPLATE_NAME.navigate(element).oneOrNull();
+            TemplateMemberElement templateName = (TemplateMemberElement)PATH_TO_TEMPLATE_NAME.first(element);
             Set<String> requiredParams = loadRequiredParams(templateName);
             if (requiredParams.size() > 0) {
                 Set<String> passedParams = loadPassedParams(element);
@@ -131,14 +134,14 @@ public class CallMissingRequiredParamInspection extends AbstractSoyInspection {
     @Nullable
     private Set<String> loadPassedParams(PsiElement callTag) {
         Set<String> params = new HashSet<String>();
-        AttributeElement dataAttr = (AttributeElement)PATH_TO_DATA_ATTRIBUTE.navigate(callTag).oneOrNull();
+        AttributeElement dataAttr = (AttributeElement)PATH_TO_DATA_ATTRIBUTE.first(callTag);
         if (dataAttr != null) {
             @NonNls String dataValue = dataAttr.getAttributeValue("");
             if (dataValue.startsWith("$")) {
                 return null; // params passed by object, can't validate
             }
             if ("all".equals(dataValue)) {
-                params.addAll(loadRequiredParams(PATH_TO_ENCLOSING_TEMPLATE.navigate(callTag).oneOrNull()));
+                params.addAll(loadRequiredParams(PATH_TO_ENCLOSING_TEMPLATE.first(callTag)));
             }
         }
         PsiElementCollection elements = PATH_TO_PARAM_NAMES.navigate(callTag);
@@ -172,9 +175,15 @@ public class CallMissingRequiredParamInspection extends AbstractSoyInspection {
                     pathToTemplateParameters = PATH_TO_REQUIRED_TEMPLATE_PARAMS;
                 }
                 else if (templateNameElement instanceof AbsoluteTemplateNameRef) {
+                    Set<Module> modules = new HashSet<Module>();
+                    TemplateDeclarationIndex.getModulesToSearch(templateNameElement, modules);
+                    List<CacheEntry> declarations = TemplateDeclarationIndex.findTemplates(modules, myTemplateName);
+                    if (!declarations.isEmpty()) {
+                        return TemplateDeclarationIndex.getRequiredParameters(declarations);
+                    }
+                    // not indexed yet, so the declaring file's psi is needed
                     templateNameElement = (TemplateMemberElement) TemplatePath.forTemplateName(myTemplateName)
-                            .navigate(templateNameElement)
-                            .oneOrNull();
+                            .first(templateNameElement);
                     if (templateNameElement == null) {
                         return Collections.emptySet();
                     }
@@ -18,8 +18,6 @@ package net.venaglia.nondairy.soylang.inspection;
 
 import static net.venaglia.nondairy.soylang.SoyElement.*;
 
-import com.google.common.collect.Collections2;
-import com.google.common.collect.Sets;
 import com.intellij.codeHighlighting.HighlightDisplayLevel;
 import com.intellij.codeInspection.InspectionManager;
 import com.intellij.codeInspection.ProblemDescriptor;
@@ -32,20 +30,14 @@ import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiElement;
 import net.venaglia.nondairy.soylang.SoyElement;
 import net.venaglia.nondairy.soylang.SoyFile;
+import net.venaglia.nondairy.soylang.elements.CallTagElement;
 import net.venaglia.nondairy.soylang.elements.ParameterElement;
-import net.venaglia.nondairy.soylang.elements.ParameterRefElement;
-import net.venaglia.nondairy.soylang.elements.TemplateMemberElement;
 import net.venaglia.nondairy.soylang.elements.path.ElementTypePredicate;
-import net.venaglia.nondairy.soylang.elements.path.ParameterPredicate;
-import net.venaglia.nondairy.soylang.elements.path.PsiElementCollection;
+import net.venaglia.nondairy.soylang.elements.path.ParameterSymbolTable;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
-import net.venaglia.nondairy.soylang.elements.path.PushPopPredicate;
-import net.venaglia.nondairy.soylang.elements.path.SoyFileElementTraversalPredicate;
-import net.venaglia.nondairy.soylang.elements.path.TraverseEmpty;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
@@ -56,100 +48,17 @@ import java.util.Set;
  */
 public class CallParameterNotDefinedInspection extends AbstractSoyInspectionWithSingleQuickFix {
 
-    private static final PushPopPredicate.PopJoin FILTER_UNDECLARED_POP_JOIN = new PushPopPredicate.PopJoin() {
-        @Override
-        public PsiElementCollection join(PsiElementCollection current, PsiElementCollection popped) {
-            @NonNls Set<String> namesDeclared = new HashSet<String>(current.size());
-            for (PsiElement element : current) {
-                if (element instanceof ParameterElement) {
-                    namesDeclared.add(((ParameterElement) element).getName());
-                }
-            }
-            PsiElementCollection result = new PsiElementCollection(popped.size());
-            for (PsiElement element : popped) {
-                if (element instanceof ParameterElement &&
-                        !namesDeclared.contains(((ParameterElement) element).getName()) &&
-                        ParameterRefElement.PATH_TO_ITERATOR_DEF.navigate(element)
-                                .applyPredicate(new ParameterPredicate(((ParameterElement) element).getName()))
-                                .isEmpty()) {
-                    result.add(element);
-                }
-            }
-            return result;
-        }
-    };
-
-    private static final PushPopPredicate.PopJoin FILTER_TEMPLATE_NAMES_POP_JOIN = new PushPopPredicate.PopJoin() {
-
-        @Override
-        public PsiElementCollection join(PsiElementCollection current, PsiElementCollection popped) {
-            Set<String> names = new HashSet<String>(popped.size());
-            for (PsiElement element : popped) {
-                if (element instanceof TemplateMemberElement) {
-                    names.add(((TemplateMemberElement) element).getTemplateName());
-                }
-            }
-            PsiElementCollection result = new PsiElementCollection();
-            for (PsiElement element : current) {
-                if (element instanceof TemplateMemberElement &&
-                        names.contains(((TemplateMemberElement) element).getTemplateName())) {
-                    result.add(element);
-                }
-            }
-            return result;
-        }
-    };
-
-    //TODO: deduplicate
-
-    private static final PsiElementPath PATH_TO_UNDECLARED_CALL_PARAMS =
-            new PsiElementPath(TraverseEmpty.CONTINUE,
-                    new ElementTypePredicate(param_tag).onChildren(),
-                    new ElementTypePredicate(invocation_parameter_ref).onChildrenOfChildren(),
-                    PushPopPredicate.push(),
-                    PushPopPredicate.push(),
-                    SoyFileElementTraversalPredicate.filesStartingOnNamespaceElement(),
-                    new ElementTypePredicate(soy_file).onChildren(),
-                    new ElementTypePredicate(tag_and_doc_comment).onChildren(),
-                    new ElementTypePredicate(template_tag).onChildrenOfChildren(),
-                    PushPopPredicate.popAndJoin(FILTER_TEMPLATE_NAMES_POP_JOIN),
-                    new ElementTypePredicate(tag_and_doc_comment).onFirstAncestor(),
-                    new ElementTypePredicate(doc_comment).onChildren(),
-                    new ElementTypePredicate(doc_comment_tag_with_description).onChildren(),
-                    new ElementTypePredicate(doc_comment_param_def).onChildren(),
-                    PushPopPredicate.popAndJoin(FILTER_UNDECLARED_POP_JOIN)).debug("call_parameter_not_declared!call_params");
-
-    private static final PsiElementPath FIND_UNDECLARED_PARAMS =
-            new PsiElementPath(TraverseEmpty.CONTINUE,
-                    new ElementTypePredicate(SoyElement.soy_file).onChildren(),
+    private static final PsiElementPath PATH_TO_CALL_TAGS =
+            new PsiElementPath(new ElementTypePredicate(SoyElement.soy_file).onChildren(),
                     new ElementTypePredicate(SoyElement.tag_and_doc_comment).onChildren(),
                     new ElementTypePredicate(call_tag_pair).onAllDescendants(),
-                    PATH_TO_UNDECLARED_CALL_PARAMS.asForkingTraversalPredicate()).debug("call_parameter_not_declared!main");
+                    new ElementTypePredicate(call_tag).onChildren()).debug("call_parameter_not_declared!calls");
 
-    private static final PsiElementPath PATH_TO_UNDECLARED_CALL_INNER_PARAMS =
-            new PsiElementPath( //
-                    TraverseEmpty.CONTINUE,
+    private static final PsiElementPath PATH_TO_CALL_PARAMS =
+            new PsiElementPath(new ElementTypePredicate(call_tag_pair).onParent(),
                     new ElementTypePredicate(param_tag).onChildren(),
-                    new ElementTypePredicate(invocation_parameter_ref).onChildrenOfChildren(),
-                    PushPopPredicate.push(),
-                    PushPopPredicate.push(),
-                    SoyFileElementTraversalPredicate.filesStartingOnNamespaceElement(),
-                    new ElementTypePredicate(soy_file).onChildren(),
-                    new ElementTypePredicate(tag_and_doc_comment).onChildren(),
-                    new ElementTypePredicate(template_tag).onChildrenOfChildren(),
-                    PushPopPredicate.popAndJoin(FILTER_TEMPLATE_NAMES_POP_JOIN),
-                    new ElementTypePredicate(template_tag_pair).onFirstAncestor(),
-                    new ElementTypePredicate(tag).onChildren(),
-                    new ElementTypePredicate(tag_between_braces).onChildren(),
-                    new ElementTypePredicate(parameter_def).onChildren(),
-                    PushPopPredicate.popAndJoin(FILTER_UNDECLARED_POP_JOIN)).debug("call_parameter_not_declared!call_params");
-
-    private static final PsiElementPath FIND_UNDECLARED_INNER_PARAMS =
-            new PsiElementPath(TraverseEmpty.CONTINUE,
-                    new ElementTypePredicate(SoyElement.soy_file).onChildren(),
-                    new ElementTypePredicate(SoyElement.tag_and_doc_comment).onChildren(),
-                    new ElementTypePredicate(call_tag_pair).onAllDescendants(),
-                    PATH_TO_UNDECLARED_CALL_INNER_PARAMS.asForkingTraversalPredicate()).debug("call_parameter_not_declared!main");
+                    new ElementTypePredicate(invocation_parameter_ref).onChildrenOfChildren())
+                    .debug("call_parameter_not_declared!call_params");
 
     private static final PsiElementPath PATH_TO_TEMPLATE_TAG_PAIR =
             new PsiElementPath(new ElementTypePredicate(template_tag_pair).onFirstAncestor());
@@ -178,17 +87,26 @@ public class CallParameterNotDefinedInspection extends AbstractSoyInspectionWith
                                 @NotNull InspectionManager manager,
                                 boolean isOnTheFly,
                                 @NotNull List<ProblemDescriptor> problems) {
-        PsiElementCollection elements1 = FIND_UNDECLARED_PARAMS.navigate(file);
-        PsiElementCollection elements2 = FIND_UNDECLARED_INNER_PARAMS.navigate(file);
-        for (PsiElement element : Sets.intersection(elements1, elements2)) {
+        for (PsiElement callTag : PATH_TO_CALL_TAGS.navigate(file)) {
             checkCanceled();
-            if (element instanceof ParameterElement) {
-                String name = ((ParameterElement) element).getName();
-                problems.add(manager.createProblemDescriptor(element,
-                        getMessage(name),
-                        getQuickFix(name),
-                        ProblemHighlightType.GENERIC_ERROR_OR_WARNING,
-                        true));
+            Set<String> declared = callTag instanceof CallTagElement
+                                   ? ((CallTagElement)callTag).getDeclaredParameters()
+                                   : null;
+            if (declared == null) {
+                continue; // unknown template, reported by another inspection
+            }
+            for (PsiElement element : PATH_TO_CALL_PARAMS.navigate(callTag)) {
+                if (element instanceof ParameterElement) {
+                    String name = ((ParameterElement) element).getName();
+                    if (!declared.contains(name) &&
+                            !ParameterSymbolTable.forElement(element).isIteratorVariable(element, name)) {
+                        problems.add(manager.createProblemDescriptor(element,
+                                getMessage(name),
+                                getQuickFix(name),
+                                ProblemHighlightType.GENERIC_ERROR_OR_WARNING,
+                                true));
+                    }
+                }
             }
         }
     }
@@ -198,8 +116,8 @@ public class CallParameterNotDefinedInspection extends AbstractSoyInspectionWith
         ParameterElement element = (ParameterElement) descriptor.getPsiElement();
         VirtualFile containingFile = element.getContainingFile().getVirtualFile();
         @NonNls String parameterName = element.getName();
-        PsiElement templatePair = PATH_TO_TEMPLATE_TAG_PAIR.navigate(element).oneOrNull();
-        PsiElement doc = templatePair == null ? null : PATH_TO_TEMPLATE_DOC.navigate(templatePair).oneOrNull();
+        PsiElement templatePair = PATH_TO_TEMPLATE_TAG_PAIR.first(element);
+        PsiElement doc = templatePair == null ? null : PATH_TO_TEMPLATE_DOC.first(templatePair);
         int insertionPoint = 0;
         @NonNls String insertionText = null;
         if (containingFile == null) {
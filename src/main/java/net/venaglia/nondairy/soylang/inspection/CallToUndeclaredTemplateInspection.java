@@ -21,19 +21,18 @@ import com.intellij.codeInspection.InspectionManager;
 import com.intellij.codeInspection.LocalQuickFix;
 import com.intellij.codeInspection.ProblemDescriptor;
 import com.intellij.codeInspection.ProblemHighlightType;
+import com.intellij.openapi.module.Module;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiNamedElement;
 import net.venaglia.nondairy.soylang.SoyElement;
 import net.venaglia.nondairy.soylang.SoyFile;
+import net.venaglia.nondairy.soylang.cache.TemplateDeclarationIndex;
 import net.venaglia.nondairy.soylang.elements.AbsoluteTemplateNameRef;
 import net.venaglia.nondairy.soylang.elements.LocalTemplateNameRef;
-import net.venaglia.nondairy.soylang.elements.TemplateMemberElement;
 import net.venaglia.nondairy.soylang.elements.path.ElementTypePredicate;
-import net.venaglia.nondairy.soylang.elements.path.PsiElementCollection;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementMapper;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
-import net.venaglia.nondairy.soylang.elements.path.PushPopPredicate;
-import net.venaglia.nondairy.soylang.elements.path.SoyFileElementTraversalPredicate;
+import net.venaglia.nondairy.soylang.elements.path.TemplateNamePredicate;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.HashSet;
@@ -54,27 +53,6 @@ public class CallToUndeclaredTemplateInspection extends AbstractSoyInspection {
         }
     };
 
-    private static final PushPopPredicate.PopJoin POP_JOIN = new PushPopPredicate.PopJoin() {
-
-        @Override
-        public PsiElementCollection join(PsiElementCollection current, PsiElementCollection popped) {
-            Set<String> names = new HashSet<String>(popped.size());
-            for (PsiElement element : popped) {
-                if (element instanceof TemplateMemberElement) {
-                    names.add(((TemplateMemberElement)element).getTemplateName());
-                }
-            }
-            PsiElementCollection result = new PsiElementCollection();
-            for (PsiElement element : current) {
-                if (element instanceof TemplateMemberElement &&
-                        names.contains(((TemplateMemberElement)element).getTemplateName())) {
-                    result.add(element);
-                }
-            }
-            return result;
-        }
-    };
-
     private static final PsiElementPath PATH_TO_TEMPLATE_DEFS =
             new PsiElementPath(new ElementTypePredicate(SoyElement.tag_and_doc_comment).onChildrenOfChildren(),
                     new ElementTypePredicate(SoyElement.template_tag_pair).onChildren(),
@@ -85,13 +63,11 @@ public class CallToUndeclaredTemplateInspection extends AbstractSoyInspection {
             new PsiElementPath(new ElementTypePredicate(SoyElement.call_tag).onAllDescendants(),
                                new ElementTypePredicate(SoyElement.template_name_ref, SoyElement.template_name_ref_absolute).onChildrenOfChildren()).debug("call_to_undeclared!calls");
 
-    private static final PsiElementPath PATH_TO_FILE =
-            new PsiElementPath(PushPopPredicate.push(),
-                               SoyFileElementTraversalPredicate.filesStartingOnNamespaceElement(),
-                               new ElementTypePredicate(SoyElement.soy_file).onChildren(),
+    /** Used when the file being inspected has not been indexed yet */
+    private static final PsiElementPath PATH_TO_LOCAL_TEMPLATES =
+            new PsiElementPath(new ElementTypePredicate(SoyElement.soy_file).onFirstAncestor(),
                                new ElementTypePredicate(SoyElement.tag_and_doc_comment).onChildren(),
-                               new ElementTypePredicate(SoyElement.template_tag).onChildrenOfChildren(),
-                               PushPopPredicate.popAndJoin(POP_JOIN)).debug("call_to_undeclared!file");
+                               new ElementTypePredicate(SoyElement.template_tag).onChildrenOfChildren()).debug("call_to_undeclared!file");
 
     public CallToUndeclaredTemplateInspection() {
         super("call.undeclared.template");
@@ -114,7 +90,8 @@ public class CallToUndeclaredTemplateInspection extends AbstractSoyInspection {
                     isProblem = true;
                 }
             } else if (element instanceof AbsoluteTemplateNameRef) {
-                if (PATH_TO_FILE.navigate(element).isEmpty()) {
+                String templateName = ((AbsoluteTemplateNameRef)element).getTemplateName();
+                if (!isDeclared(element, templateName)) {
                     isProblem = true;
                 }
             }
@@ -128,6 +105,13 @@ public class CallToUndeclaredTemplateInspection extends AbstractSoyInspection {
         }
     }
 
+    private static boolean isDeclared(@NotNull PsiElement element, @NotNull String templateName) {
+        Set<Module> modules = new HashSet<Module>();
+        TemplateDeclarationIndex.getModulesToSearch(element, modules);
+        return !TemplateDeclarationIndex.findTemplates(modules, templateName).isEmpty() ||
+               PATH_TO_LOCAL_TEMPLATES.first(element, new TemplateNamePredicate(templateName)) != null;
+    }
+
     @NotNull
     @Override
     public HighlightDisplayLevel getDefaultLevel() {
@@ -54,7 +54,7 @@ public class MsgTagWithoutDescriptionInspection extends AbstractSoyInspection {
                                new ElementPredicate() {
                                    @Override
                                    public boolean test(PsiElement element) {
-                                       return PATH_TO_DESC_VALUE.navigate(element).isEmpty();
+                                       return !PATH_TO_DESC_VALUE.any(element);
                                    }
 
                                    @Override
@@ -29,19 +29,16 @@ import com.intellij.psi.PsiElement;
 import net.venaglia.nondairy.soylang.SoyElement;
 import net.venaglia.nondairy.soylang.SoyFile;
 import net.venaglia.nondairy.soylang.elements.ParameterElement;
-import net.venaglia.nondairy.soylang.elements.ParameterRefElement;
+import net.venaglia.nondairy.soylang.elements.path.AbstractElementPredicate;
+import net.venaglia.nondairy.soylang.elements.path.ElementPredicate;
 import net.venaglia.nondairy.soylang.elements.path.ElementTypePredicate;
-import net.venaglia.nondairy.soylang.elements.path.ParameterPredicate;
+import net.venaglia.nondairy.soylang.elements.path.ParameterSymbolTable;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementCollection;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
-import net.venaglia.nondairy.soylang.elements.path.PushPopPredicate;
-import net.venaglia.nondairy.soylang.elements.path.TraverseEmpty;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 
 import static net.venaglia.nondairy.soylang.SoyElement.*;
 
@@ -52,52 +49,29 @@ import static net.venaglia.nondairy.soylang.SoyElement.*;
  */
 public class ParameterNotDefinedInspection extends AbstractSoyInspectionWithSingleQuickFix {
 
-    private static final PushPopPredicate.PopJoin FILTER_UNDECLARED_POP_JOIN = new PushPopPredicate.PopJoin() {
+    private static final ElementPredicate UNDECLARED_PARAMETER = new AbstractElementPredicate() {
         @Override
-        public PsiElementCollection join(PsiElementCollection current, PsiElementCollection popped) {
-            @NonNls Set<String> namesDeclared = new HashSet<String>(current.size());
-            namesDeclared.add("ij"); // $ij is always defined
-            for (PsiElement element : current) {
-                if (element instanceof ParameterElement) {
-                    namesDeclared.add(((ParameterElement)element).getName());
-                }
+        public boolean test(PsiElement element) {
+            if (!(element instanceof ParameterElement)) {
+                return false;
             }
-            PsiElementCollection result = new PsiElementCollection(popped.size());
-            for (PsiElement element : popped) {
-                if (element instanceof ParameterElement &&
-                    !namesDeclared.contains(((ParameterElement)element).getName()) &&
-                    ParameterRefElement.PATH_TO_LET_DEF.navigate(element)
-                                                       .applyPredicate(new ParameterPredicate(((ParameterElement)element).getName()))
-                                                       .isEmpty() &&
-                    ParameterRefElement.PATH_TO_INNER_PARAM_DEF.navigate(element)
-                            .applyPredicate(new ParameterPredicate(((ParameterElement)element).getName()))
-                            .isEmpty() &&
-                    ParameterRefElement.PATH_TO_ITERATOR_DEF.navigate(element)
-                                                            .applyPredicate(new ParameterPredicate(((ParameterElement)element).getName()))
-                                                            .isEmpty()) {
-                    result.add(element);
-                }
-            }
-            return result;
+            @NonNls String name = ((ParameterElement)element).getName();
+            return !"ij".equals(name) && // $ij is always defined
+                   ParameterSymbolTable.forElement(element).resolve(element, name) == null;
         }
-    };
 
-    private static final PsiElementPath PATH_TO_UNDECLARED_PARAMS =
-            new PsiElementPath(TraverseEmpty.CONTINUE,
-                               new ElementTypePredicate(template_tag_pair).onChildren(),
-                               new ElementTypePredicate(parameter_ref).onAllDescendants(),
-                               PushPopPredicate.push(),
-                               new ElementTypePredicate(tag_and_doc_comment).onFirstAncestor(),
-                               new ElementTypePredicate(doc_comment).onChildren(),
-                               new ElementTypePredicate(doc_comment_tag_with_description).onChildren(),
-                               new ElementTypePredicate(doc_comment_param_def).onChildren(),
-                               PushPopPredicate.popAndJoin(FILTER_UNDECLARED_POP_JOIN)).debug("parameter_not_declared!local_params");
+        @Override
+        public String toString() {
+            return "[undeclared]"; //NON-NLS
+        }
+    };
 
     private static final PsiElementPath FIND_UNDECLARED_PARAMS =
-            new PsiElementPath(TraverseEmpty.CONTINUE,
-                               new ElementTypePredicate(SoyElement.soy_file).onChildren(),
+            new PsiElementPath(new ElementTypePredicate(SoyElement.soy_file).onChildren(),
                                new ElementTypePredicate(SoyElement.tag_and_doc_comment).onChildren(),
-                               PATH_TO_UNDECLARED_PARAMS.asForkingTraversalPredicate()).debug("parameter_not_declared!main");
+                               new ElementTypePredicate(template_tag_pair).onChildren(),
+                               new ElementTypePredicate(parameter_ref).onAllDescendants(),
+                               UNDECLARED_PARAMETER).debug("parameter_not_declared!main");
 
     private static final PsiElementPath PATH_TO_TEMPLATE_TAG_PAIR =
             new PsiElementPath(new ElementTypePredicate(template_tag_pair).onFirstAncestor());
@@ -146,8 +120,8 @@ public class ParameterNotDefinedInspection extends AbstractSoyInspectionWithSing
         ParameterElement element = (ParameterElement)descriptor.getPsiElement();
         VirtualFile containingFile = element.getContainingFile().getVirtualFile();
         @NonNls String parameterName = element.getName();
-        PsiElement templatePair = PATH_TO_TEMPLATE_TAG_PAIR.navigate(element).oneOrNull();
-        PsiElement doc = templatePair == null ? null : PATH_TO_TEMPLATE_DOC.navigate(templatePair).oneOrNull();
+        PsiElement templatePair = PATH_TO_TEMPLATE_TAG_PAIR.first(element);
+        PsiElement doc = templatePair == null ? null : PATH_TO_TEMPLATE_DOC.first(templatePair);
         int insertionPoint = 0;
         @NonNls String insertionText = null;
         if (containingFile == null) {
@@ -30,15 +30,11 @@ import net.venaglia.nondairy.soylang.SoyElement;
 import net.venaglia.nondairy.soylang.SoyFile;
 import net.venaglia.nondairy.soylang.elements.ParameterElement;
 import net.venaglia.nondairy.soylang.elements.path.ElementTypePredicate;
-import net.venaglia.nondairy.soylang.elements.path.PsiElementCollection;
+import net.venaglia.nondairy.soylang.elements.path.ParameterSymbolTable;
 import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
-import net.venaglia.nondairy.soylang.elements.path.PushPopPredicate;
-import net.venaglia.nondairy.soylang.elements.path.TraverseEmpty;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,43 +45,10 @@ import java.util.regex.Pattern;
  */
 public class ParameterNotUsedInspection extends AbstractSoyInspectionWithSingleQuickFix {
 
-    private static final PushPopPredicate.PopJoin POP_JOIN = new PushPopPredicate.PopJoin() {
-        @Override
-        public PsiElementCollection join(PsiElementCollection current, PsiElementCollection popped) {
-            Set<String> namesUsed = new HashSet<String>(current.size());
-            for (PsiElement element : current) {
-                if (element instanceof ParameterElement) {
-                    namesUsed.add(((ParameterElement)element).getName());
-                }
-            }
-            PsiElementCollection result = new PsiElementCollection(popped.size());
-            for (PsiElement element : popped) {
-                if (element instanceof ParameterElement &&
-                    !namesUsed.contains(((ParameterElement)element).getName())) {
-                    result.add(element);
-                }
-            }
-            return result;
-        }
-    };
-
-    private static final PsiElementPath PATH_TO_UNUSED_PARAMS = new PsiElementPath(
-            TraverseEmpty.CONTINUE,
-            new ElementTypePredicate(SoyElement.doc_comment).onChildren(),
-            new ElementTypePredicate(SoyElement.doc_comment_tag_with_description).onChildren(),
-            new ElementTypePredicate(SoyElement.doc_comment_param_def).onChildren(),
-            PushPopPredicate.push(),
-            PsiElementPath.PARENT_ELEMENT,
-            PsiElementPath.PARENT_ELEMENT,
-            new ElementTypePredicate(SoyElement.template_tag_pair).onNextSiblings(false),
-            new ElementTypePredicate(SoyElement.parameter_ref).onAllDescendants(),
-            PushPopPredicate.popAndJoin(POP_JOIN)
-    ).debug("parameter_not_used!unused_params");
-
-    private static final PsiElementPath FIND_UNUSED_PARAMS = new PsiElementPath(
+    private static final PsiElementPath PATH_TO_TEMPLATES = new PsiElementPath(
             new ElementTypePredicate(SoyElement.soy_file).onChildren(),
             new ElementTypePredicate(SoyElement.tag_and_doc_comment).onChildren(),
-            PATH_TO_UNUSED_PARAMS.asForkingTraversalPredicate()
+            new ElementTypePredicate(SoyElement.template_tag_pair, SoyElement.deltemplate_tag_pair).onChildren()
     ).debug("parameter_not_used!templates");
 
     public ParameterNotUsedInspection() {
@@ -108,17 +71,20 @@ public class ParameterNotUsedInspection extends AbstractSoyInspectionWithSingleQ
                                 @NotNull InspectionManager manager,
                                 boolean isOnTheFly,
                                 @NotNull List<ProblemDescriptor> problems) {
-        PsiElementCollection elements = FIND_UNUSED_PARAMS.navigate(file);
-        for (PsiElement element : elements) {
+        for (PsiElement template : PATH_TO_TEMPLATES.navigate(file)) {
             checkCanceled();
-            if (element instanceof ParameterElement) {
-                String name = ((ParameterElement)element).getName();
-                problems.add(manager.createProblemDescriptor(element,
-                        getMessage(name),
-                        getQuickFix(name),
-                        ProblemHighlightType.GENERIC_ERROR_OR_WARNING,
-                        true));
-
+            ParameterSymbolTable symbols = ParameterSymbolTable.forElement(template);
+            for (PsiElement element : symbols.getDocParameters()) {
+                if (element instanceof ParameterElement) {
+                    String name = ((ParameterElement)element).getName();
+                    if (!symbols.isReferenced(name)) {
+                        problems.add(manager.createProblemDescriptor(element,
+                                getMessage(name),
+                                getQuickFix(name),
+                                ProblemHighlightType.GENERIC_ERROR_OR_WARNING,
+                                true));
+                    }
+                }
             }
         }
     }
@@ -37,6 +37,7 @@ public class SoyInspectionToolProvider implements InspectionToolProvider {
                 ParameterAlreadyDeclaredInspection.class,
                 ParameterNotUsedInspection.class,
                 ParameterNotDefinedInspection.class,
+                TemplateNotCalledInspection.class,
                 UnnecessaryAliasInspection.class
         };
     }
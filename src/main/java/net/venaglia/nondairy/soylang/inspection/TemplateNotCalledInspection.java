@@ -0,0 +1,149 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.inspection;
+
+import com.intellij.codeHighlighting.HighlightDisplayLevel;
+import com.intellij.codeInspection.InspectionManager;
+import com.intellij.codeInspection.LocalQuickFix;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ProblemHighlightType;
+import com.intellij.codeInspection.ui.SingleCheckboxOptionsPanel;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiElement;
+import net.venaglia.nondairy.i18n.I18N;
+import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.soylang.SoyFile;
+import net.venaglia.nondairy.soylang.cache.CacheEntry;
+import net.venaglia.nondairy.soylang.cache.CallEdge;
+import net.venaglia.nondairy.soylang.cache.CallGraphCache;
+import net.venaglia.nondairy.soylang.cache.TemplateDeclarationIndex;
+import net.venaglia.nondairy.soylang.elements.TemplateDefElement;
+import net.venaglia.nondairy.soylang.elements.TreeNavigator;
+import net.venaglia.nondairy.soylang.elements.path.ElementTypePredicate;
+import net.venaglia.nondairy.soylang.elements.path.PsiElementPath;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.swing.*;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Detects templates that are not called by any template in the project, as
+ * recorded in the {@link CallGraphCache}. Public templates are often
+ * rendered directly by application code, so they are only reported when
+ * {@link #REPORT_PUBLIC_TEMPLATES} is set.
+ */
+public class TemplateNotCalledInspection extends AbstractSoyInspection {
+
+    private static final PsiElementPath PATH_TO_TEMPLATE_TAGS = new PsiElementPath(
+            new ElementTypePredicate(SoyElement.soy_file).onChildren(),
+            new ElementTypePredicate(SoyElement.tag_and_doc_comment).onChildren(),
+            new ElementTypePredicate(SoyElement.template_tag).onChildrenOfChildren()
+    ).debug("template_not_called!templates");
+
+    private static final PsiElementPath PATH_TO_TEMPLATE_NAME = new PsiElementPath(
+            new ElementTypePredicate(SoyElement.tag_between_braces).onChildren(),
+            new ElementTypePredicate(SoyElement.template_name).onChildren()
+    ).debug("template_not_called!template_name");
+
+    @SuppressWarnings("PublicField")
+    public boolean REPORT_PUBLIC_TEMPLATES = false;
+
+    public TemplateNotCalledInspection() {
+        super("template.not.called");
+    }
+
+    @Override
+    public boolean isEnabledByDefault() {
+        return true;
+    }
+
+    @NotNull
+    @Override
+    public HighlightDisplayLevel getDefaultLevel() {
+        return HighlightDisplayLevel.WARNING;
+    }
+
+    @Nullable
+    @Override
+    public JComponent createOptionsPanel() {
+        return new SingleCheckboxOptionsPanel(I18N.msg("inspection.template.not.called.option.public"),
+                                              this,
+                                              "REPORT_PUBLIC_TEMPLATES"); //NON-NLS
+    }
+
+    @Override
+    protected void findProblems(@NotNull SoyFile file,
+                                @NotNull InspectionManager manager,
+                                boolean isOnTheFly,
+                                @NotNull List<ProblemDescriptor> problems) {
+        VirtualFile virtualFile = file.getVirtualFile();
+        Set<Module> modules = new HashSet<Module>();
+        TemplateDeclarationIndex.getModulesToSearch(file, modules);
+        Collection<Module> allModules = Arrays.asList(TreeNavigator.INSTANCE.getModules(file.getProject()));
+        for (PsiElement element : PATH_TO_TEMPLATE_TAGS.navigate(file)) {
+            checkCanceled();
+            String templateName = element instanceof TemplateDefElement
+                                  ? ((TemplateDefElement)element).getTemplateName()
+                                  : null;
+            CacheEntry declaration = templateName == null
+                                     ? null
+                                     : findDeclaration(modules, templateName, virtualFile);
+            if (declaration == null) {
+                continue; // not indexed yet, calls to it may not be either
+            }
+            if (!declaration.isPrivateTemplate() && !REPORT_PUBLIC_TEMPLATES) {
+                continue;
+            }
+            if (!isCalled(allModules, templateName)) {
+                PsiElement name = PATH_TO_TEMPLATE_NAME.first(element);
+                problems.add(manager.createProblemDescriptor(name == null ? element : name,
+                        getMessage(templateName),
+                        (LocalQuickFix) null,
+                        ProblemHighlightType.LIKE_UNUSED_SYMBOL,
+                        isOnTheFly));
+            }
+        }
+    }
+
+    @Nullable
+    private CacheEntry findDeclaration(@NotNull Collection<Module> modules,
+                                       @NotNull String templateName,
+                                       @Nullable VirtualFile file) {
+        for (CacheEntry entry : TemplateDeclarationIndex.findTemplates(modules, templateName)) {
+            VirtualFile entryFile = entry.getFile();
+            if (entryFile != null && entryFile.equals(file)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private boolean isCalled(@NotNull Collection<Module> modules, @NotNull String templateName) {
+        for (CallEdge edge : CallGraphCache.findCallers(modules, templateName, false)) {
+            if (!templateName.equals(edge.getCaller()) || edge.isCallerDelegate()) {
+                return true; // recursive calls don't count
+            }
+        }
+        return false;
+    }
+}
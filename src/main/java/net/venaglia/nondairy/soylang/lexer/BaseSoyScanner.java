@@ -19,10 +19,8 @@ package net.venaglia.nondairy.soylang.lexer;
 import com.intellij.psi.tree.IElementType;
 import org.jetbrains.annotations.NonNls;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * User: ed
@@ -33,28 +31,122 @@ import java.util.regex.Pattern;
  */
 abstract class BaseSoyScanner {
 
-    @NonNls
-    static final Pattern MATCH_NON_IDENTIFIER_CHAR = Pattern.compile("[^a-zA-Z0-9_.]");
-    static final Map<String, SymbolTransform> EXPRESSION_TOKENS;
+    /**
+     * Identifiers with special meaning in expressions, indexed by length, so
+     * they can be matched in place against the scanner buffer.
+     */
+    private static final Keyword[][] KEYWORDS_BY_LENGTH = buildKeywordTable(
+            new Keyword("not", SoyToken.NOT, null), //NON-NLS
+            new Keyword("and", SoyToken.AND, null), //NON-NLS
+            new Keyword("or", SoyToken.OR, null), //NON-NLS
+            new Keyword("true", SoyToken.BOOLEAN_LITERAL, Boolean.TRUE), //NON-NLS
+            new Keyword("false", SoyToken.BOOLEAN_LITERAL, Boolean.FALSE), //NON-NLS
+            new Keyword("null", SoyToken.NULL_LITERAL, null), //NON-NLS
+            new Keyword("range", SoyToken.RANGE, null), //NON-NLS
+            new Keyword("in", SoyToken.IN, null), //NON-NLS
+            new Keyword("as", SoyToken.AS, null) //NON-NLS
+    );
+
+    abstract char yycharat(int pos);
+
+    abstract int yylength();
+
+    abstract CharSequence yytext();
+
+    /**
+     * Determines whether identifier tokens carry their text as a payload.
+     * Payloads are only consumed by tests, so the default implementation
+     * returns false, which avoids building a String for every identifier.
+     * @return true if {@link #symbol(IElementType, Object)} should receive
+     *     the text of each identifier.
+     */
+    boolean capturePayloads() {
+        return false;
+    }
+
+    /**
+     * @return The text of the current token as a payload, or null if
+     *     payloads are not being captured.
+     */
+    Object text() {
+        return capturePayloads() ? yytext().toString() : null;
+    }
 
-    static {
-        SymbolTransform booleanSymbolTransform = new SymbolTransform(SoyToken.BOOLEAN_LITERAL) {
-            @Override
-            protected Object getPayload(CharSequence identifier) {
-                return Boolean.parseBoolean(identifier.toString());
+    /**
+     * @return The number of identifier characters at the start of the
+     *     current token.
+     */
+    int identifierLength() {
+        int length = yylength();
+        for (int i = 0; i < length; i++) {
+            char c = yycharat(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_')) {
+                return i;
             }
-        };
-        Map<String, SymbolTransform> expressionTokens = new HashMap<String, SymbolTransform>();
-        expressionTokens.put("not", new SymbolTransform(SoyToken.NOT));
-        expressionTokens.put("and", new SymbolTransform(SoyToken.AND));
-        expressionTokens.put("or", new SymbolTransform(SoyToken.OR));
-        expressionTokens.put("true", booleanSymbolTransform); //NON-NLS
-        expressionTokens.put("false", booleanSymbolTransform); //NON-NLS
-        expressionTokens.put("null", new SymbolTransform(SoyToken.NULL_LITERAL)); //NON-NLS
-        EXPRESSION_TOKENS = Collections.unmodifiableMap(expressionTokens);
+        }
+        return length;
+    }
+
+    /**
+     * Classifies the identifier that makes up the current token, comparing
+     * it in place against the known keywords.
+     * @param functionCall true if the identifier is followed by an open
+     *     parenthesis.
+     * @return The symbol for the identifier.
+     */
+    IElementType identifierSymbol(boolean functionCall) {
+        Keyword keyword = findKeyword(yylength());
+        if (keyword != null) {
+            if (keyword.token == SoyToken.IN) {
+                if ("for".equals(currentCommand) || "foreach".equals(currentCommand)) { //NON-NLS
+                    return symbol(SoyToken.IN);
+                }
+            } else if (keyword.token == SoyToken.AS) {
+                if ("alias".equals(currentCommand)) { //NON-NLS
+                    return symbol(SoyToken.AS);
+                }
+            } else if (keyword.token == SoyToken.RANGE) {
+                if (functionCall && "for".equals(currentCommand)) { //NON-NLS
+                    return symbol(SoyToken.RANGE);
+                }
+            } else if (functionCall) {
+                return symbol(keyword.token, keyword.payload);
+            }
+        }
+        IElementType type = functionCall ? SoyToken.CAPTURED_FUNCTION_IDENTIFIER : SoyToken.CAPTURED_IDENTIFIER;
+        return capturePayloads() ? symbol(type, yytext().toString()) : symbol(type);
+    }
+
+    private Keyword findKeyword(int length) {
+        Keyword[] candidates = length < KEYWORDS_BY_LENGTH.length ? KEYWORDS_BY_LENGTH[length] : null;
+        if (candidates != null) {
+            for (Keyword keyword : candidates) {
+                if (keyword.matches(this)) {
+                    return keyword;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Keyword[][] buildKeywordTable(Keyword... keywords) {
+        int maxLength = 0;
+        for (Keyword keyword : keywords) {
+            maxLength = Math.max(maxLength, keyword.chars.length);
+        }
+        Keyword[][] table = new Keyword[maxLength + 1][];
+        for (Keyword keyword : keywords) {
+            Keyword[] existing = table[keyword.chars.length];
+            Keyword[] updated = new Keyword[existing == null ? 1 : existing.length + 1];
+            if (existing != null) {
+                System.arraycopy(existing, 0, updated, 0, existing.length);
+            }
+            updated[updated.length - 1] = keyword;
+            table[keyword.chars.length] = updated;
+        }
+        return table;
     }
 
-    abstract char yycharat(int pos);
 
     IElementType symbol(IElementType type) {
         return type;
@@ -100,21 +192,269 @@ abstract class BaseSoyScanner {
     char stringTerminator = '\"';
     int tagStartLine = -1;
 
-    protected static class SymbolTransform {
+    /**
+     * Number of low order bits of a packed lexer state that hold the JFlex
+     * lexical state. The remaining bits hold the index of an interned
+     * {@link ScannerState}.
+     */
+    static final int LEXICAL_STATE_BITS = 8;
+    static final int LEXICAL_STATE_MASK = (1 << LEXICAL_STATE_BITS) - 1;
 
-        private final SoyToken token;
+    private ScannerState currentScannerState = ScannerState.get(0);
 
-        public SymbolTransform(SoyToken token) {
-            this.token = token;
+    /**
+     * Combines the passed lexical state with the scanner fields that affect
+     * the tokens produced, so that lexing can be restarted at any token.
+     * @param lexicalState The current JFlex lexical state.
+     * @return The packed lexer state.
+     */
+    int packState(int lexicalState) {
+        if (lexicalState == _SoyLexer.AFTER_WHITESPACE && nextStateAfterWhitespace == _SoyLexer.YYINITIAL) {
+            // AFTER_WHITESPACE only differs from YYINITIAL in treating "//" as
+            // a line comment, which YYINITIAL already does
+            lexicalState = _SoyLexer.YYINITIAL;
+        }
+        if (lexicalState == _SoyLexer.YYINITIAL || lexicalState == _SoyLexer.HTML_INITIAL) {
+            resetTagFields();
+        }
+        if (!currentScannerState.matches(this)) {
+            currentScannerState = ScannerState.intern(new ScannerState(this));
+        }
+        return (currentScannerState.index << LEXICAL_STATE_BITS) | lexicalState;
+    }
+
+    /**
+     * Returns the fields that only describe the tag, string or html attribute
+     * being scanned to their initial values. Outside of tags the grammar
+     * always sets these again before reading them, but never clears them, so
+     * without this a token between two templates would not report the same
+     * state as the start of the file, and the editor highlighter could not
+     * restart there.
+     */
+    private void resetTagFields() {
+        doubleBraceTag = false;
+        closeTag = false;
+        closeHtml = false;
+        currentCommand = null;
+        nextStateAfterCloseTag = _SoyLexer.YYINITIAL;
+        nextStateAfterString = _SoyLexer.YYINITIAL;
+        nextStateAfterHtmlAttribute = _SoyLexer.YYINITIAL;
+        nextStateAfterWhitespace = _SoyLexer.YYINITIAL;
+        capturedIdentifierType = SoyToken.CAPTURED_IDENTIFIER;
+        stringTerminator = '\"';
+    }
+
+    /**
+     * Restores the scanner fields captured by {@link #packState(int)}.
+     * @param packedState A lexer state returned by {@link #packState(int)}.
+     * @return The JFlex lexical state to resume in.
+     */
+    int unpackState(int packedState) {
+        currentScannerState = ScannerState.get(packedState >>> LEXICAL_STATE_BITS);
+        currentScannerState.restore(this);
+        return packedState & LEXICAL_STATE_MASK;
+    }
+
+    /**
+     * Immutable snapshot of the scanner fields that influence the tokens
+     * produced. Each distinct snapshot is interned once per JVM, and is
+     * identified in the lexer state by its index. The line a tag started on
+     * and the current namespace are not captured, they never affect tokens;
+     * only the presence of a current template matters.
+     *
+     * Looking up a state by index reads a copy-on-write array and interning
+     * an already known state reads a concurrent map, so neither takes a lock.
+     * Only the first sighting of a new state is serialized.
+     */
+    static final class ScannerState {
+
+        @NonNls
+        private static final String IN_TEMPLATE = "";
+
+        private static final Object LOCK = new Object();
+        private static final ConcurrentMap<ScannerState,ScannerState> INTERNED =
+                new ConcurrentHashMap<ScannerState,ScannerState>();
+        private static volatile ScannerState[] STATES = new ScannerState[0];
+
+        static {
+            intern(new ScannerState(false, false, false, false, null, 0, 0, 0, 0, 0,
+                                    SoyToken.CAPTURED_IDENTIFIER, '\"'));
+        }
+
+        private final boolean doubleBraceTag;
+        private final boolean closeTag;
+        private final boolean closeHtml;
+        private final boolean inTemplate;
+        private final String currentCommand;
+        private final int nextStateAfterCloseTag;
+        private final int nextStateAfterLiterealTag;
+        private final int nextStateAfterString;
+        private final int nextStateAfterHtmlAttribute;
+        private final int nextStateAfterWhitespace;
+        private final IElementType capturedIdentifierType;
+        private final char stringTerminator;
+
+        /** Position in {@link #STATES}, assigned when the state is interned */
+        private int index = -1;
+
+        private ScannerState(BaseSoyScanner scanner) {
+            this(scanner.doubleBraceTag,
+                 scanner.closeTag,
+                 scanner.closeHtml,
+                 scanner.currentTemplate != null,
+                 scanner.currentCommand,
+                 scanner.nextStateAfterCloseTag,
+                 scanner.nextStateAfterLiterealTag,
+                 scanner.nextStateAfterString,
+                 scanner.nextStateAfterHtmlAttribute,
+                 scanner.nextStateAfterWhitespace,
+                 scanner.capturedIdentifierType,
+                 scanner.stringTerminator);
+        }
+
+        private ScannerState(boolean doubleBraceTag,
+                             boolean closeTag,
+                             boolean closeHtml,
+                             boolean inTemplate,
+                             String currentCommand,
+                             int nextStateAfterCloseTag,
+                             int nextStateAfterLiterealTag,
+                             int nextStateAfterString,
+                             int nextStateAfterHtmlAttribute,
+                             int nextStateAfterWhitespace,
+                             IElementType capturedIdentifierType,
+                             char stringTerminator) {
+            this.doubleBraceTag = doubleBraceTag;
+            this.closeTag = closeTag;
+            this.closeHtml = closeHtml;
+            this.inTemplate = inTemplate;
+            this.currentCommand = currentCommand;
+            this.nextStateAfterCloseTag = nextStateAfterCloseTag;
+            this.nextStateAfterLiterealTag = nextStateAfterLiterealTag;
+            this.nextStateAfterString = nextStateAfterString;
+            this.nextStateAfterHtmlAttribute = nextStateAfterHtmlAttribute;
+            this.nextStateAfterWhitespace = nextStateAfterWhitespace;
+            this.capturedIdentifierType = capturedIdentifierType;
+            this.stringTerminator = stringTerminator;
+        }
+
+        boolean matches(BaseSoyScanner scanner) {
+            return doubleBraceTag == scanner.doubleBraceTag &&
+                   closeTag == scanner.closeTag &&
+                   closeHtml == scanner.closeHtml &&
+                   inTemplate == (scanner.currentTemplate != null) &&
+                   (currentCommand == null ? scanner.currentCommand == null : currentCommand.equals(scanner.currentCommand)) &&
+                   nextStateAfterCloseTag == scanner.nextStateAfterCloseTag &&
+                   nextStateAfterLiterealTag == scanner.nextStateAfterLiterealTag &&
+                   nextStateAfterString == scanner.nextStateAfterString &&
+                   nextStateAfterHtmlAttribute == scanner.nextStateAfterHtmlAttribute &&
+                   nextStateAfterWhitespace == scanner.nextStateAfterWhitespace &&
+                   capturedIdentifierType == scanner.capturedIdentifierType &&
+                   stringTerminator == scanner.stringTerminator;
         }
 
-        protected Object getPayload(CharSequence identifier) {
-            return null;
+        void restore(BaseSoyScanner scanner) {
+            scanner.doubleBraceTag = doubleBraceTag;
+            scanner.closeTag = closeTag;
+            scanner.closeHtml = closeHtml;
+            scanner.currentTemplate = inTemplate ? IN_TEMPLATE : null;
+            scanner.currentCommand = currentCommand;
+            scanner.nextStateAfterCloseTag = nextStateAfterCloseTag;
+            scanner.nextStateAfterLiterealTag = nextStateAfterLiterealTag;
+            scanner.nextStateAfterString = nextStateAfterString;
+            scanner.nextStateAfterHtmlAttribute = nextStateAfterHtmlAttribute;
+            scanner.nextStateAfterWhitespace = nextStateAfterWhitespace;
+            scanner.capturedIdentifierType = capturedIdentifierType;
+            scanner.stringTerminator = stringTerminator;
         }
 
-        public IElementType toSymbol(BaseSoyScanner scanner, CharSequence identifier) {
-            Object payload = getPayload(identifier);
-            return scanner.symbol(token, payload);
+        static ScannerState intern(ScannerState state) {
+            ScannerState interned = INTERNED.get(state);
+            if (interned != null) {
+                return interned;
+            }
+            synchronized (LOCK) {
+                interned = INTERNED.get(state);
+                if (interned == null) {
+                    ScannerState[] states = STATES;
+                    ScannerState[] copy = new ScannerState[states.length + 1];
+                    System.arraycopy(states, 0, copy, 0, states.length);
+                    state.index = states.length;
+                    copy[state.index] = state;
+                    // publish the array first, so any index read from the map resolves
+                    STATES = copy;
+                    INTERNED.put(state, state);
+                    interned = state;
+                }
+            }
+            return interned;
+        }
+
+        static ScannerState get(int index) {
+            ScannerState[] states = STATES;
+            return index < states.length ? states[index] : states[0];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            ScannerState that = (ScannerState)o;
+
+            if (doubleBraceTag != that.doubleBraceTag) return false;
+            if (closeTag != that.closeTag) return false;
+            if (closeHtml != that.closeHtml) return false;
+            if (inTemplate != that.inTemplate) return false;
+            if (nextStateAfterCloseTag != that.nextStateAfterCloseTag) return false;
+            if (nextStateAfterLiterealTag != that.nextStateAfterLiterealTag) return false;
+            if (nextStateAfterString != that.nextStateAfterString) return false;
+            if (nextStateAfterHtmlAttribute != that.nextStateAfterHtmlAttribute) return false;
+            if (nextStateAfterWhitespace != that.nextStateAfterWhitespace) return false;
+            if (stringTerminator != that.stringTerminator) return false;
+            if (capturedIdentifierType != that.capturedIdentifierType) return false;
+            if (currentCommand != null ? !currentCommand.equals(that.currentCommand) : that.currentCommand != null) return false;
+
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (doubleBraceTag ? 1 : 0);
+            result = 31 * result + (closeTag ? 1 : 0);
+            result = 31 * result + (closeHtml ? 1 : 0);
+            result = 31 * result + (inTemplate ? 1 : 0);
+            result = 31 * result + (currentCommand != null ? currentCommand.hashCode() : 0);
+            result = 31 * result + nextStateAfterCloseTag;
+            result = 31 * result + nextStateAfterLiterealTag;
+            result = 31 * result + nextStateAfterString;
+            result = 31 * result + nextStateAfterHtmlAttribute;
+            result = 31 * result + nextStateAfterWhitespace;
+            result = 31 * result + (capturedIdentifierType != null ? capturedIdentifierType.hashCode() : 0);
+            result = 31 * result + (int)stringTerminator;
+            return result;
+        }
+    }
+
+    private static class Keyword {
+
+        private final char[] chars;
+        private final SoyToken token;
+        private final Object payload;
+
+        private Keyword(@NonNls String keyword, SoyToken token, Object payload) {
+            this.chars = keyword.toCharArray();
+            this.token = token;
+            this.payload = payload;
+        }
+
+        private boolean matches(BaseSoyScanner scanner) {
+            for (int i = 0; i < chars.length; i++) {
+                if (scanner.yycharat(i) != chars[i]) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
 }
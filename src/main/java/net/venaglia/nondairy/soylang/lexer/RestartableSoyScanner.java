@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.lexer;
+
+import com.intellij.lexer.FlexLexer;
+import com.intellij.psi.tree.IElementType;
+
+import java.io.IOException;
+
+/**
+ * Wraps the flex scanner so that the state it reports includes the scanner
+ * fields kept outside of the JFlex lexical state. A lexer can then be
+ * restarted at any token using only the state recorded for it. Tokens
+ * between templates report the initial state, which is where the editor
+ * highlighter restarts lexing after an edit.
+ */
+class RestartableSoyScanner implements FlexLexer {
+
+    private final _SoyLexer scanner = new _SoyLexer();
+    private final boolean coarseTemplateText;
+
+    private CharSequence buffer;
+    private int bufferEnd;
+    private int coarseStart = -1;
+    private int coarseEnd = -1;
+
+    RestartableSoyScanner() {
+        this(false);
+    }
+
+    /**
+     * @param coarseTemplateText true to emit each run of markup between soy
+     *     tags as a single {@link SoyToken#TEMPLATE_TEXT} token, rather than
+     *     as individual html tokens. This is suitable for consumers that only
+     *     care about the soy structure of a file.
+     */
+    RestartableSoyScanner(boolean coarseTemplateText) {
+        this.coarseTemplateText = coarseTemplateText;
+    }
+
+    @Override
+    public void yybegin(int state) {
+        scanner.yybegin(scanner.unpackState(state));
+    }
+
+    @Override
+    public int yystate() {
+        return scanner.packState(scanner.yystate());
+    }
+
+    @Override
+    public int getTokenStart() {
+        return coarseStart >= 0 ? coarseStart : scanner.getTokenStart();
+    }
+
+    @Override
+    public int getTokenEnd() {
+        return coarseStart >= 0 ? coarseEnd : scanner.getTokenEnd();
+    }
+
+    @Override
+    public IElementType advance() throws IOException {
+        int start = getTokenEnd();
+        coarseStart = -1;
+        if (coarseTemplateText && scanner.yystate() == _SoyLexer.HTML_INITIAL) {
+            int end = findEndOfTemplateText(start);
+            if (end > start) {
+                scanner.reset(buffer, end, bufferEnd, _SoyLexer.HTML_INITIAL);
+                coarseStart = start;
+                coarseEnd = end;
+                return SoyToken.TEMPLATE_TEXT;
+            }
+        }
+        return scanner.advance();
+    }
+
+    /**
+     * Scans forward for the next character that could begin something other
+     * than markup: a soy tag or brace, a comment, or an html comment, cdata
+     * section or directive that the scanner must see.
+     *
+     * Whether the scanner sees a comment depends on where its data tokens
+     * begin: "//" only begins a line comment after a whitespace token, and
+     * "/*" only begins a comment where a token begins. So a run that meets
+     * either one ends at the last offset where a token is sure to begin,
+     * just after a {@code >} or {@code <}, and the scanner decides from
+     * there. A "//" with no whitespace before it, as in a url, is never a
+     * comment.
+     * @return The offset where the run of markup ends.
+     */
+    private int findEndOfTemplateText(int start) {
+        CharSequence buffer = this.buffer;
+        int end = bufferEnd;
+        int tokenStart = start;
+        int i = start;
+        while (i < end) {
+            char c = buffer.charAt(i);
+            if (c == '{' || c == '}') {
+                return i;
+            }
+            char next = i + 1 < end ? buffer.charAt(i + 1) : 0;
+            if (c == '<' && (next == '!' || next == '?')) {
+                return i;
+            }
+            if (c == '<' && isHtmlTagStart(i + 1)) {
+                int endOfTag = findEndOfHtmlTag(i);
+                if (endOfTag < 0) {
+                    return i;
+                }
+                i = tokenStart = endOfTag;
+                continue;
+            }
+            if (c == '<' || c == '>') {
+                tokenStart = i + 1;
+            } else if (c == '/' && (next == '*' || next == '/' && i > start && isWhitespace(buffer.charAt(i - 1)))) {
+                return tokenStart;
+            }
+            i++;
+        }
+        return end;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\f' || c == '\r' || c == '\n';
+    }
+
+    private boolean isHtmlTagStart(int i) {
+        if (i < bufferEnd && buffer.charAt(i) == '/') {
+            i++;
+        }
+        if (i >= bufferEnd) {
+            return false;
+        }
+        char c = buffer.charAt(i);
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    /**
+     * Scans an html tag, to decide whether it can be part of a run of markup.
+     * A tag is left to the scanner if it holds a soy tag, a brace, a "/*", a
+     * "//" after whitespace, or a {@code >} within a quoted value, since what
+     * the scanner makes of those depends on the state it is in at the time.
+     * Any quote after an '=' is taken to open a value; where the scanner
+     * disagrees, the only difference this can make is to leave it the tag.
+     * @param tagStart The offset of the {@code <} that opens the tag.
+     * @return The offset just past the end of the tag, or -1 if the scanner
+     *     must lex the tag itself.
+     */
+    private int findEndOfHtmlTag(int tagStart) {
+        CharSequence buffer = this.buffer;
+        int end = bufferEnd;
+        char quote = 0;
+        char previous = 0;
+        for (int i = tagStart + 1; i < end; i++) {
+            char c = buffer.charAt(i);
+            char next = i + 1 < end ? buffer.charAt(i + 1) : 0;
+            if (c == '{' || c == '}' || c == '/' && (next == '*' || next == '/' && isWhitespace(buffer.charAt(i - 1)))) {
+                return -1;
+            }
+            if (quote != 0) {
+                if (c == '>') {
+                    return -1;
+                }
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '>') {
+                return i + 1;
+            } else if ((c == '"' || c == '\'') && previous == '=') {
+                quote = c;
+            }
+            if (!isWhitespace(c)) {
+                previous = c;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void reset(CharSequence buf, int start, int end, int initialState) {
+        buffer = buf;
+        bufferEnd = end;
+        coarseStart = -1;
+        scanner.reset(buf, start, end, scanner.unpackState(initialState));
+    }
+}
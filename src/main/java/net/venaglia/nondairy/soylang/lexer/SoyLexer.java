@@ -17,6 +17,8 @@
 package net.venaglia.nondairy.soylang.lexer;
 
 import com.intellij.lexer.FlexAdapter;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
 
 /**
  * User: ed
@@ -24,10 +26,140 @@ import com.intellij.lexer.FlexAdapter;
  * Time: 2:02:20 PM
  *
  * Implementation class for wrapping the soy flex lexer.
+ *
+ * Unless coarse template text is requested, tokens are shared through the
+ * {@link SoyTokenStreamCache}. When the text being lexed was lexed recently,
+ * its cached tokens are replayed from the requested offset and state.
+ * Otherwise a full lex of the text is recorded and cached when it completes.
  */
 public class SoyLexer extends FlexAdapter {
 
+    private final boolean useCache;
+
+    private SoyTokenStream replay;
+    private int replayIndex;
+    private CharSequence replayBuffer;
+    private SoyTokenStream.Builder recorder;
+    private CharSequence recordedBuffer;
+
     public SoyLexer() {
-        super(new _SoyLexer());
+        this(false);
+    }
+
+    /**
+     * @param coarseTemplateText true to emit each run of markup between soy
+     *     tags as a single {@link SoyToken#TEMPLATE_TEXT} token. Consumers
+     *     that only need the soy structure of a file, such as indexing and
+     *     word scanning, lex markup heavy templates much faster this way.
+     */
+    public SoyLexer(boolean coarseTemplateText) {
+        this(coarseTemplateText, !coarseTemplateText);
+    }
+
+    SoyLexer(boolean coarseTemplateText, boolean useCache) {
+        super(new RestartableSoyScanner(coarseTemplateText));
+        this.useCache = useCache;
+    }
+
+    /**
+     * Lexes the beginning of a buffer to find the lexer state at an offset,
+     * so lexing can be resumed there, as when part of a file is lexed on its
+     * own.
+     * @param buffer The text to lex, from the initial state.
+     * @param offset The offset to find the state at. This must be the start
+     *     of a token.
+     * @return The state of the lexer at offset.
+     */
+    public static int getStateAt(@NotNull CharSequence buffer, int offset) {
+        SoyLexer lexer = new SoyLexer(false, false);
+        lexer.start(buffer, 0, offset, 0);
+        while (lexer.getTokenType() != null) {
+            lexer.advance();
+        }
+        return lexer.getState();
+    }
+
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
+        replay = null;
+        recorder = null;
+        if (useCache && endOffset == buffer.length()) {
+            SoyTokenStream stream = SoyTokenStreamCache.find(buffer);
+            int index = stream == null ? -1 : stream.indexOf(startOffset, initialState);
+            if (index >= 0) {
+                replay = stream;
+                replayIndex = index;
+                replayBuffer = buffer;
+                return;
+            }
+            if (stream == null && startOffset == 0 && initialState == 0 && SoyTokenStreamCache.isCacheable(buffer)) {
+                recorder = new SoyTokenStream.Builder(endOffset);
+                recordedBuffer = buffer;
+            }
+        }
+        super.start(buffer, startOffset, endOffset, initialState);
+    }
+
+    @Override
+    public int getState() {
+        if (replay != null) {
+            return replayIndex < replay.size() ? replay.getState(replayIndex) : 0;
+        }
+        return super.getState();
+    }
+
+    @Override
+    public IElementType getTokenType() {
+        if (replay != null) {
+            return replayIndex < replay.size() ? replay.getType(replayIndex) : null;
+        }
+        return super.getTokenType();
+    }
+
+    @Override
+    public int getTokenStart() {
+        if (replay != null) {
+            return replayIndex < replay.size() ? replay.getStart(replayIndex) : replayBuffer.length();
+        }
+        return super.getTokenStart();
+    }
+
+    @Override
+    public int getTokenEnd() {
+        if (replay != null) {
+            return replayIndex < replay.size() ? replay.getEnd(replayIndex) : replayBuffer.length();
+        }
+        return super.getTokenEnd();
+    }
+
+    @Override
+    public void advance() {
+        if (replay != null) {
+            replayIndex++;
+            return;
+        }
+        if (recorder != null) {
+            IElementType type = super.getTokenType();
+            if (type != null) {
+                recorder.add(type, super.getTokenStart(), super.getState());
+            }
+        }
+        super.advance();
+        if (recorder != null && super.getTokenType() == null) {
+            SoyTokenStreamCache.put(recordedBuffer, recorder.build(super.getTokenEnd()));
+            recorder = null;
+            recordedBuffer = null;
+        }
+    }
+
+    @NotNull
+    @Override
+    public CharSequence getBufferSequence() {
+        return replay != null ? replayBuffer : super.getBufferSequence();
+    }
+
+    @Override
+    public int getBufferEnd() {
+        return replay != null ? replayBuffer.length() : super.getBufferEnd();
     }
 }
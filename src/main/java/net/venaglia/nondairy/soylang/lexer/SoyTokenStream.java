@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.lexer;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * The complete sequence of tokens produced by the {@link SoyLexer} for a
+ * text, stored as packed arrays of element type index, start offset and
+ * lexer state. Tokens are contiguous, so the end of each token is the start
+ * of the next.
+ */
+public class SoyTokenStream {
+
+    private final short[] types;
+    private final int[] starts;
+    private final int[] states;
+    private final int size;
+    private final int end;
+
+    private SoyTokenStream(short[] types, int[] starts, int[] states, int size, int end) {
+        this.types = types;
+        this.starts = starts;
+        this.states = states;
+        this.size = size;
+        this.end = end;
+    }
+
+    /**
+     * @return The number of tokens in this stream.
+     */
+    public int size() {
+        return size;
+    }
+
+    @NotNull
+    public IElementType getType(int index) {
+        return IElementType.find(types[index]);
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return index + 1 < size ? starts[index + 1] : end;
+    }
+
+    /**
+     * @return The lexer state in effect at the start of the token.
+     */
+    public int getState(int index) {
+        return states[index];
+    }
+
+    /**
+     * @param offset An offset within the lexed text.
+     * @param state The lexer state expected at that offset.
+     * @return The index of the token that starts at the specified offset in
+     *     the specified state, or -1 if there is none.
+     */
+    public int indexOf(int offset, int state) {
+        int index = Arrays.binarySearch(starts, 0, size, offset);
+        return index >= 0 && states[index] == state ? index : -1;
+    }
+
+    /**
+     * Lexes the passed text in full.
+     * @param text The text to lex.
+     * @return The tokens of the text.
+     */
+    @NotNull
+    public static SoyTokenStream lex(@NotNull CharSequence text) {
+        SoyLexer lexer = new SoyLexer(false, false);
+        lexer.start(text, 0, text.length(), 0);
+        Builder builder = new Builder(text.length());
+        for (IElementType type = lexer.getTokenType(); type != null; type = lexer.getTokenType()) {
+            builder.add(type, lexer.getTokenStart(), lexer.getState());
+            lexer.advance();
+        }
+        return builder.build(lexer.getTokenEnd());
+    }
+
+    /**
+     * Accumulates tokens as they are produced by a lexer.
+     */
+    static class Builder {
+
+        private short[] types;
+        private int[] starts;
+        private int[] states;
+        private int size = 0;
+
+        Builder(int textLength) {
+            int capacity = Math.max(16, textLength / 4);
+            types = new short[capacity];
+            starts = new int[capacity];
+            states = new int[capacity];
+        }
+
+        void add(@NotNull IElementType type, int start, int state) {
+            if (size == types.length) {
+                int capacity = size * 2;
+                types = Arrays.copyOf(types, capacity);
+                starts = Arrays.copyOf(starts, capacity);
+                states = Arrays.copyOf(states, capacity);
+            }
+            types[size] = type.getIndex();
+            starts[size] = start;
+            states[size] = state;
+            size++;
+        }
+
+        @NotNull
+        SoyTokenStream build(int end) {
+            return new SoyTokenStream(types, starts, states, size, end);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.lexer;
+
+import com.intellij.openapi.editor.Document;
+import com.intellij.util.text.ImmutableCharSequence;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Application level cache of the token streams of recently lexed soy text.
+ * Streams are keyed by the identity of the text they were lexed from. A
+ * document hands out the same immutable text until it is modified, so the
+ * highlighter, the parser and other consumers of an unchanged document all
+ * share one lex. Keys are weakly held, so a stream is released along with
+ * the text it belongs to.
+ */
+public class SoyTokenStreamCache {
+
+    private static final int CAPACITY = 8;
+
+    private static final Entry[] ENTRIES = new Entry[CAPACITY];
+    private static int next = 0;
+
+    private SoyTokenStreamCache() {
+        // static utility class
+    }
+
+    /**
+     * @param text Lexed text.
+     * @return The cached tokens for the exact text object passed, or null if
+     *     it has not been lexed recently.
+     */
+    @Nullable
+    public static SoyTokenStream find(@NotNull CharSequence text) {
+        if (!isCacheable(text)) {
+            return null;
+        }
+        synchronized (ENTRIES) {
+            for (Entry entry : ENTRIES) {
+                if (entry != null && entry.text.get() == text) {
+                    return entry.stream;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param document A soy document.
+     * @return The tokens of the document's current text, lexing it if they
+     *     are not already cached.
+     */
+    @NotNull
+    public static SoyTokenStream getTokens(@NotNull Document document) {
+        CharSequence text = document.getImmutableCharSequence();
+        SoyTokenStream stream = find(text);
+        if (stream == null) {
+            stream = SoyTokenStream.lex(text);
+            put(text, stream);
+        }
+        return stream;
+    }
+
+    /**
+     * Only text that cannot change after it is lexed can be keyed by
+     * identity.
+     */
+    static boolean isCacheable(@NotNull CharSequence text) {
+        return text instanceof String || text instanceof ImmutableCharSequence;
+    }
+
+    static void put(@NotNull CharSequence text, @NotNull SoyTokenStream stream) {
+        if (!isCacheable(text)) {
+            return;
+        }
+        synchronized (ENTRIES) {
+            for (int i = 0; i < CAPACITY; i++) {
+                Entry entry = ENTRIES[i];
+                if (entry == null || entry.text.get() == null || entry.text.get() == text) {
+                    ENTRIES[i] = new Entry(text, stream);
+                    return;
+                }
+            }
+            ENTRIES[next] = new Entry(text, stream);
+            next = (next + 1) % CAPACITY;
+        }
+    }
+
+    private static class Entry {
+
+        private final WeakReference<CharSequence> text;
+        private final SoyTokenStream stream;
+
+        private Entry(@NotNull CharSequence text, @NotNull SoyTokenStream stream) {
+            this.text = new WeakReference<CharSequence>(text);
+            this.stream = stream;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.lexer;
+
+import com.intellij.lang.cacheBuilder.WordOccurrence;
+import com.intellij.lang.cacheBuilder.WordsScanner;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.util.Processor;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Words scanner used to build the IdIndex for soy files. Dotted names, such
+ * as namespaces and absolute template names, are reported one segment at a
+ * time, and the "$" that precedes parameter references is dropped, so each
+ * part of a name can be searched for on its own.
+ *
+ * The tokens of the file are taken from the {@link SoyTokenStreamCache} when
+ * an editor has already lexed it. Otherwise the file is lexed once, with
+ * markup coalesced into coarse template text. Words are located by offset
+ * within each token. A single
+ * {@link WordOccurrence} is reused for every word reported.
+ */
+public class SoyWordsScanner implements WordsScanner {
+
+    @Override
+    public void processWords(CharSequence fileText, Processor<WordOccurrence> processor) {
+        WordOccurrence occurrence = new WordOccurrence(fileText, 0, 0, null);
+        SoyTokenStream stream = SoyTokenStreamCache.find(fileText);
+        if (stream != null) {
+            for (int i = 0, l = stream.size(); i < l; i++) {
+                if (!processToken(fileText, stream.getType(i), stream.getStart(i), stream.getEnd(i), occurrence, processor)) {
+                    return;
+                }
+            }
+            return;
+        }
+        SoyLexer lexer = new SoyLexer(true);
+        lexer.start(fileText);
+        for (IElementType type = lexer.getTokenType(); type != null; type = lexer.getTokenType()) {
+            if (!processToken(fileText, type, lexer.getTokenStart(), lexer.getTokenEnd(), occurrence, processor)) {
+                return;
+            }
+            lexer.advance();
+        }
+    }
+
+    private static boolean processToken(@NotNull CharSequence text,
+                                        @NotNull IElementType type,
+                                        int start,
+                                        int end,
+                                        @NotNull WordOccurrence occurrence,
+                                        @NotNull Processor<WordOccurrence> processor) {
+        if (SoyToken.NAME_TOKENS.contains(type)) {
+            return processWords(text, start, end, WordOccurrence.Kind.CODE, false, occurrence, processor);
+        } else if (SoyToken.COMMENT_TOKENS.contains(type)) {
+            return processWords(text, start, end, WordOccurrence.Kind.COMMENTS, true, occurrence, processor);
+        } else if (type == SoyToken.STRING_LITERAL) {
+            return processWords(text, start, end, WordOccurrence.Kind.LITERALS, true, occurrence, processor);
+        }
+        return true;
+    }
+
+    /**
+     * Reports each word found between two offsets of the file text.
+     * @param text The file text.
+     * @param start The offset to start at.
+     * @param end The offset to stop at.
+     * @param kind The kind of word occurrence to report.
+     * @param javaWords true to split words as java identifiers, false to
+     *     split them as soy identifiers.
+     * @param occurrence The occurrence object to reuse.
+     * @param processor The processor to report words to.
+     * @return false if the processor requested that scanning stop.
+     */
+    private static boolean processWords(@NotNull CharSequence text,
+                                        int start,
+                                        int end,
+                                        @NotNull WordOccurrence.Kind kind,
+                                        boolean javaWords,
+                                        @NotNull WordOccurrence occurrence,
+                                        @NotNull Processor<WordOccurrence> processor) {
+        int i = start;
+        while (i < end) {
+            char c = text.charAt(i);
+            if (javaWords ? Character.isJavaIdentifierStart(c) : isSoyIdentifierStart(c)) {
+                int wordStart = i++;
+                while (i < end && (javaWords ? Character.isJavaIdentifierPart(text.charAt(i))
+                                             : isSoyIdentifierPart(text.charAt(i)))) {
+                    i++;
+                }
+                occurrence.init(text, wordStart, i, kind);
+                if (!processor.process(occurrence)) {
+                    return false;
+                }
+            } else {
+                i++;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSoyIdentifierStart(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+    }
+
+    private static boolean isSoyIdentifierPart(char c) {
+        return isSoyIdentifierStart(c) || c >= '0' && c <= '9';
+    }
+}
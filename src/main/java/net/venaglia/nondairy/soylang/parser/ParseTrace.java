@@ -0,0 +1,302 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.parser;
+
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A compact trace of the marker and token events of a single parse, for
+ * diagnosing slow or broken parses in a running IDE. Unlike
+ * {@link TrackedPsiBuilderTokenSource}, no stack traces are captured: each
+ * event is four ints in a fixed size ring buffer, so only the most recent
+ * {@link #CAPACITY} events of a parse are kept.
+ *
+ * Tracing is off unless the system property {@link #SAMPLE_PROPERTY} is set
+ * to a positive number n, in which case one parse in n is traced. When
+ * {@link #THRESHOLD_PROPERTY} is also set, a traced parse is only kept if it
+ * took at least that many milliseconds. The most recent traces that were
+ * kept are available from {@link #getTraces()} and
+ * {@link #formatReport(int)}.
+ */
+public class ParseTrace {
+
+    @NonNls
+    public static final String SAMPLE_PROPERTY = "net.venaglia.nondairy.parser.trace.sample";
+    @NonNls
+    public static final String THRESHOLD_PROPERTY = "net.venaglia.nondairy.parser.trace.thresholdMs";
+
+    public static final int SAMPLE_RATE = Integer.getInteger(SAMPLE_PROPERTY, 0);
+    public static final long THRESHOLD_MILLIS = Long.getLong(THRESHOLD_PROPERTY, 0L);
+    public static final boolean TRACING_ENABLED = SAMPLE_RATE > 0;
+
+    /** The number of events kept for each parse */
+    public static final int CAPACITY = 4096;
+
+    /** The number of completed traces kept */
+    private static final int TRACES_KEPT = 16;
+
+    public static final int MARK = 1;
+    public static final int PRECEDE = 2;
+    public static final int DONE = 3;
+    public static final int COLLAPSE = 4;
+    public static final int DROP = 5;
+    public static final int ERROR = 6;
+    public static final int ROLLBACK = 7;
+    public static final int ADVANCE = 8;
+    public static final int TOKEN_ERROR = 9;
+
+    @NonNls
+    private static final String[] EVENT_NAMES = {
+            "?", "mark", "precede", "done", "collapse", "drop", "error", "rollback", "advance", "token-error"
+    };
+
+    private static final Pattern MATCH_NAMESPACE = Pattern.compile("\\{(?:namespace|delpackage)\\s+([\\w.]+)"); // NON-NLS
+    private static final int NAMESPACE_SEARCH_LIMIT = 4096;
+
+    private static final AtomicInteger PARSE_SEQ = new AtomicInteger();
+    private static final ConcurrentMap<String,Integer> SITE_IDS = new ConcurrentHashMap<String,Integer>();
+    private static final List<String> SITE_NAMES = new ArrayList<String>();
+    private static final LinkedList<ParseTrace> TRACES = new LinkedList<ParseTrace>();
+
+    private final int parseSeq;
+    private final String description;
+    private final int textLength;
+    private final long startNanos;
+    private final int[] events = new int[CAPACITY * 4];
+
+    private long eventCount;
+    private int nextMarkerId;
+    private long elapsedNanos = -1L;
+
+    ParseTrace(int parseSeq, @NotNull String description, int textLength) {
+        this.parseSeq = parseSeq;
+        this.description = description;
+        this.textLength = textLength;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Begins tracing a parse, if this parse is sampled.
+     * @param what A description of what is being parsed, such as the root
+     *     element type.
+     * @param text The text being parsed.
+     * @return A trace to record the parse's events into, or null if the
+     *     parse should not be traced.
+     */
+    @Nullable
+    public static ParseTrace start(@NotNull @NonNls String what, @NotNull CharSequence text) {
+        if (!TRACING_ENABLED) {
+            return null;
+        }
+        int seq = PARSE_SEQ.incrementAndGet();
+        if (seq % SAMPLE_RATE != 0) {
+            return null;
+        }
+        return new ParseTrace(seq, what + " " + findNamespace(text), text.length());
+    }
+
+    @NotNull
+    @NonNls
+    private static String findNamespace(@NotNull CharSequence text) {
+        Matcher matcher = MATCH_NAMESPACE.matcher(text.subSequence(0, Math.min(text.length(), NAMESPACE_SEARCH_LIMIT)));
+        return matcher.find() ? matcher.group(1) : "(no namespace)";
+    }
+
+    /**
+     * @param name The debugging name passed when a marker is created, which
+     *     identifies the place in the parser that created it.
+     * @return A small int that identifies name in the events of any trace.
+     */
+    static int getSiteId(@Nullable Object name) {
+        String key = String.valueOf(name);
+        Integer id = SITE_IDS.get(key);
+        if (id == null) {
+            synchronized (SITE_NAMES) {
+                id = SITE_IDS.get(key);
+                if (id == null) {
+                    id = SITE_NAMES.size();
+                    SITE_NAMES.add(key);
+                    SITE_IDS.put(key, id);
+                }
+            }
+        }
+        return id;
+    }
+
+    @NotNull
+    private static String getSiteName(int siteId) {
+        synchronized (SITE_NAMES) {
+            return siteId >= 0 && siteId < SITE_NAMES.size() ? SITE_NAMES.get(siteId) : "-";
+        }
+    }
+
+    /**
+     * @return A new id for a marker created during this parse.
+     */
+    int nextMarkerId() {
+        return ++nextMarkerId;
+    }
+
+    /**
+     * Records a single event.
+     * @param event One of the event constants defined by this class.
+     * @param type The element type the event applies to, or null.
+     * @param tokenIndex The index of the current token.
+     * @param markerId The marker the event applies to, or 0.
+     * @param siteId The place in the parser that created the marker, or -1.
+     */
+    void record(int event, @Nullable IElementType type, int tokenIndex, int markerId, int siteId) {
+        int i = (int)(eventCount++ % CAPACITY) * 4;
+        events[i] = event | ((type == null ? 0 : type.getIndex() + 1) << 8);
+        events[i + 1] = tokenIndex;
+        events[i + 2] = markerId;
+        events[i + 3] = siteId;
+    }
+
+    /**
+     * Completes this trace, and keeps it if the parse was slow enough.
+     */
+    public void finish() {
+        elapsedNanos = System.nanoTime() - startNanos;
+        if (elapsedNanos >= THRESHOLD_MILLIS * 1000000L) {
+            synchronized (TRACES) {
+                TRACES.addFirst(this);
+                while (TRACES.size() > TRACES_KEPT) {
+                    TRACES.removeLast();
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The traces kept so far, most recent first.
+     */
+    @NotNull
+    public static List<ParseTrace> getTraces() {
+        synchronized (TRACES) {
+            return new ArrayList<ParseTrace>(TRACES);
+        }
+    }
+
+    /**
+     * Discards all traces kept so far.
+     */
+    public static void reset() {
+        synchronized (TRACES) {
+            TRACES.clear();
+        }
+    }
+
+    /** @return What was parsed, and the namespace it declares. */
+    @NotNull
+    public String getDescription() {
+        return description;
+    }
+
+    /** @return The time the parse took, or -1 if it has not finished. */
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /** @return The total number of events recorded, including those overwritten. */
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Builds a plain text report of the traces kept so far.
+     * @param eventLimit The maximum number of events to include from each
+     *     trace; the most recent events are included.
+     * @return The formatted report.
+     */
+    @NotNull
+    @NonNls
+    public static String formatReport(int eventLimit) {
+        List<ParseTrace> traces = getTraces();
+        StringBuilder buffer = new StringBuilder(1024);
+        for (ParseTrace trace : traces) {
+            trace.format(buffer, eventLimit);
+        }
+        if (traces.isEmpty()) {
+            buffer.append(TRACING_ENABLED
+                          ? "(no parses have been traced)"
+                          : "(tracing is disabled, set -D" + SAMPLE_PROPERTY + "=n to trace one parse in n)");
+        }
+        return buffer.toString();
+    }
+
+    /**
+     * Builds a one line summary of each trace kept so far.
+     * @return The formatted summary.
+     */
+    @NotNull
+    @NonNls
+    public static String formatSummary() {
+        List<ParseTrace> traces = getTraces();
+        StringBuilder buffer = new StringBuilder(1024);
+        for (ParseTrace trace : traces) {
+            buffer.append(String.format("#%d %s: %d chars, %.2f ms, %d events%n",
+                                        trace.parseSeq,
+                                        trace.description,
+                                        trace.textLength,
+                                        trace.elapsedNanos / 1000000.0,
+                                        trace.eventCount));
+        }
+        if (traces.isEmpty()) {
+            buffer.append("(no parses have been traced)");
+        }
+        return buffer.toString();
+    }
+
+    @NonNls
+    private void format(@NotNull StringBuilder buffer, int eventLimit) {
+        long count = Math.min(Math.min(eventCount, CAPACITY), eventLimit);
+        buffer.append(String.format("=====[ parse #%d: %s, %d chars, %.2f ms, %d events, last %d shown ]=====%n",
+                                    parseSeq,
+                                    description,
+                                    textLength,
+                                    elapsedNanos / 1000000.0,
+                                    eventCount,
+                                    count));
+        buffer.append(String.format("%8s %-12s %8s %8s  %-24s %s%n", "event#", "event", "token", "marker", "site", "type"));
+        for (long seq = eventCount - count; seq < eventCount; seq++) {
+            int i = (int)(seq % CAPACITY) * 4;
+            int event = events[i] & 0xFF;
+            int typeIndex = (events[i] >>> 8) - 1;
+            IElementType type = typeIndex < 0 ? null : IElementType.find((short)typeIndex);
+            buffer.append(String.format("%8d %-12s %8d %8s  %-24s %s%n",
+                                        seq,
+                                        event < EVENT_NAMES.length ? EVENT_NAMES[event] : "?",
+                                        events[i + 1],
+                                        events[i + 2] == 0 ? "-" : String.valueOf(events[i + 2]),
+                                        getSiteName(events[i + 3]),
+                                        type == null ? "" : type.toString()));
+        }
+    }
+}
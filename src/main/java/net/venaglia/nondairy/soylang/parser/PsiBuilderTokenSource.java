@@ -54,6 +54,11 @@ public class PsiBuilderTokenSource extends TokenSource {
         return previousToken;
     }
 
+    @Override
+    public IElementType lookAhead(int steps) {
+        return builder.lookAhead(steps);
+    }
+
     @Override
     public String text() {
         return builder.getTokenText();
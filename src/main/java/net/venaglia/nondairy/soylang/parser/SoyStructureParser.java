@@ -40,19 +40,50 @@ import static net.venaglia.nondairy.soylang.SoyElement.*;
  *
  * Prime parser implementation for soy files. This class orchestrates the other
  * parser classes and manages the overall structure of the psi tree.
+ *
+ * The content between a template's open and close tags is wrapped in a
+ * {@link SoyElement#template_body} element. Because templates do not nest,
+ * the end of a body is found from the tokens alone, which is what allows
+ * bodies to be collapsed and parsed later, on their own.
+ *
+ * Malformed input is recovered from within a budget, so that half typed code
+ * costs time linear in its length, and builds a tree of bounded depth. At
+ * most {@link #MAX_OPEN_TAGS} tags may be open at once. After
+ * {@link #ERROR_BUDGET} errors within one template, the parser stops
+ * reporting errors one at a time and skips to the next synchronization
+ * point: a doc comment, the open tag of a namespace, template or
+ * deltemplate, or the close tag of a template or deltemplate. The budget is
+ * renewed at every synchronization point the parser reaches.
  */
 public class SoyStructureParser {
 
+    /** The most tags that may be open at once */
+    static final int MAX_OPEN_TAGS = 128;
+
+    /** The number of errors tolerated within a template before skipping ahead */
+    static final int ERROR_BUDGET = 64;
+
     private TokenSource source;
     private Stack<TagParser> unclosedTagParsers = new Stack<TagParser>();
     private PsiBuilder.Marker docBeginMarker = null;
+    private boolean parsingTemplateBlock = false;
+    private TagParser templateBlockTag = null;
+    private final boolean lazyTemplateBodies;
+    private PsiBuilder.Marker templateBody = null;
+    private TagParser templateBodyTag = null;
+    private int templateBodyStart = -1;
+    private int errorCount = 0;
 
     private static final Visitor<TagParser> CAPTURE_TAG_PAIR_VISITOR = new Visitor<TagParser>() {
         @Override
         public void visit(TagParser within) {
             SoyElement tagElement = within.getElement();
-            SoyElement tagPairElement = null;
-            if (tagElement.name().endsWith("_tag")) { // NON-NLS
+            IElementType tagPairElement = null;
+            if (tagElement == template_tag) {
+                tagPairElement = template_tag_pair;
+            } else if (tagElement == deltemplate_tag) {
+                tagPairElement = deltemplate_tag_pair;
+            } else if (tagElement.name().endsWith("_tag")) { // NON-NLS
                 tagPairElement = SoyElement.valueOf(tagElement.name() + "_pair"); //NON-NLS
             }
             if (tagPairElement == null) {
@@ -63,7 +94,19 @@ public class SoyStructureParser {
     };
 
     public SoyStructureParser(TokenSource source) {
+        this(source, false);
+    }
+
+    /**
+     * @param source The tokens to parse.
+     * @param lazyTemplateBodies true to collapse the body of each template
+     *     into a {@link SoyElement#template_body} element that is only parsed
+     *     when something descends into it. This requires a token source that
+     *     supports {@link PsiBuilder.Marker#collapse(IElementType)}.
+     */
+    public SoyStructureParser(TokenSource source, boolean lazyTemplateBodies) {
         this.source = source;
+        this.lazyTemplateBodies = lazyTemplateBodies;
     }
 
     /**
@@ -72,16 +115,68 @@ public class SoyStructureParser {
      */
     public void parse() {
         PsiBuilder.Marker marker = source.mark("marker");
+        parseContents();
+        marker.done(soy_file);
+    }
+
+    /**
+     * Parses the text of a single template or deltemplate, from its open tag
+     * to its close tag, as is done when an edited template is reparsed on
+     * its own. The caller is responsible for the marker that encloses the
+     * template.
+     * @see net.venaglia.nondairy.soylang.SoyTemplateBlockType
+     */
+    public void parseTemplateBlock() {
+        parsingTemplateBlock = true;
+        parseContents();
+    }
+
+    /**
+     * Parses the body of a single template, between its open and close tags,
+     * as is done when a lazily parsed {@link SoyElement#template_body} is
+     * expanded. The caller is responsible for the marker that encloses the
+     * body.
+     * @see net.venaglia.nondairy.soylang.SoyTemplateBodyType
+     */
+    public void parseTemplateBody() {
+        parseContents();
+        closeUnclosedTags();
+    }
+
+    private void parseContents() {
         PsiBuilder.Marker docBeginMarker = null;
         while (!source.eof()) {
             IElementType token = source.token();
+            if (isSyncPoint(token)) {
+                errorCount = 0;
+            } else if (errorCount >= ERROR_BUDGET) {
+                if (docBeginMarker != null) {
+                    docBeginMarker.drop();
+                    docBeginMarker = null;
+                }
+                skipToSyncPoint();
+                continue;
+            }
+            if (templateBody != null && isTemplateBoundary(token)) {
+                if (docBeginMarker != null) {
+                    docBeginMarker.drop();
+                    docBeginMarker = null;
+                }
+                closeTemplateBody();
+            }
             if (token == SoyToken.TAG_LBRACE || token == SoyToken.TAG_END_LBRACE) {
                 TagParser tagParser = new TagParser(source);
                 tagParser.parse();
+                errorCount += tagParser.getErrorCount();
                 processParsedTag(tagParser);
-                if (unclosedTagParsers.size() == 1 &&
-                    unclosedTagParsers.peek() == tagParser &&
-                    (tagParser.getTagToken() == SoyToken.TEMPLATE || tagParser.getTagToken() == SoyToken.DELTEMPLATE)) {
+                boolean opensTemplate = unclosedTagParsers.size() == 1 &&
+                                        unclosedTagParsers.peek() == tagParser &&
+                                        (tagParser.getTagToken() == SoyToken.TEMPLATE || tagParser.getTagToken() == SoyToken.DELTEMPLATE);
+                if (parsingTemplateBlock) {
+                    if (templateBlockTag == null) {
+                        templateBlockTag = tagParser;
+                    }
+                } else if (opensTemplate) {
                     if (this.docBeginMarker != null) {
                         this.docBeginMarker.drop();
                         this.docBeginMarker = null;
@@ -93,6 +188,9 @@ public class SoyStructureParser {
                         docBeginMarker = null;
                     }
                 }
+                if (opensTemplate) {
+                    openTemplateBody(tagParser);
+                }
             } else if (SoyToken.DOC_COMMENT_TOKENS.contains(token)) {
                 if (docBeginMarker != null) {
                     docBeginMarker.drop();
@@ -109,8 +207,10 @@ public class SoyStructureParser {
                 if (token == SoyToken.IGNORED_TEXT || token == SoyToken.TEMPLATE_TEXT || token == SoyToken.LITERAL_TEXT) {
                     source.advance();
                 } else if (token == SoyToken.LBRACE_ERROR) {
+                    errorCount++;
                     source.advanceAndMarkBad(unexpected_symbol, "command_expected", I18N.msg("syntax.error.expected.command"));
                 } else {
+                    errorCount++;
                     source.advanceAndMarkBad(unexpected_symbol, "unexpected_symbol", I18N.msg("lexer.error.unexpected.token", token));
                 }
             }
@@ -118,10 +218,116 @@ public class SoyStructureParser {
         if (docBeginMarker != null) {
             docBeginMarker.drop();
         }
+        if (templateBody != null) {
+            closeTemplateBody();
+        }
         if (this.docBeginMarker != null) {
             this.docBeginMarker.drop();
         }
-        marker.done(soy_file);
+    }
+
+    /**
+     * Begins the body of a template, after its open tag. When template
+     * bodies are parsed lazily, the tokens of the body are skipped and the
+     * body is collapsed immediately.
+     */
+    private void openTemplateBody(TagParser templateTag) {
+        templateBody = source.mark("templateBody");
+        templateBodyTag = templateTag;
+        templateBodyStart = source.index();
+        errorCount = 0;
+        if (lazyTemplateBodies) {
+            while (!source.eof() && !isTemplateBoundary(source.token())) {
+                source.advance();
+            }
+            closeTemplateBody();
+        }
+    }
+
+    private void closeTemplateBody() {
+        closeUnclosedTags();
+        if (source.index() == templateBodyStart) {
+            templateBody.drop(); // an empty template
+        } else if (lazyTemplateBodies) {
+            templateBody.collapse(template_body);
+        } else {
+            templateBody.done(template_body);
+        }
+        templateBody = null;
+        templateBodyTag = null;
+    }
+
+    /**
+     * Tags within a template body that are still open when the body ends
+     * are reported here, so their error markers end within the body.
+     */
+    private void closeUnclosedTags() {
+        while (!unclosedTagParsers.isEmpty() && unclosedTagParsers.peek() != templateBodyTag) {
+            processBadTag(unclosedTagParsers.pop(), I18N.msg("syntax.error.unclosed.open.tag"));
+        }
+    }
+
+    /**
+     * @return true if the current token begins a tag that ends the body of
+     *     the template being parsed: its close tag, or the open tag of a
+     *     namespace or another template.
+     */
+    private boolean isTemplateBoundary(IElementType token) {
+        if (token == SoyToken.TAG_END_LBRACE) {
+            return source.lookAhead(1) == templateBodyTag.getTagToken();
+        }
+        if (token == SoyToken.TAG_LBRACE) {
+            IElementType command = source.lookAhead(1);
+            return command == SoyToken.TEMPLATE || command == SoyToken.DELTEMPLATE || command == SoyToken.NAMESPACE;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the current token begins a doc comment, or a tag that
+     *     the parser can resume from after giving up on the tokens before it.
+     *     A doc comment is included so that skipping ahead keeps the doc
+     *     comment of the template that follows.
+     */
+    private boolean isSyncPoint(IElementType token) {
+        if (token == SoyToken.DOC_COMMENT_BEGIN) {
+            return true;
+        }
+        if (token == SoyToken.TAG_END_LBRACE) {
+            IElementType command = source.lookAhead(1);
+            return command == SoyToken.TEMPLATE || command == SoyToken.DELTEMPLATE;
+        }
+        if (token == SoyToken.TAG_LBRACE) {
+            IElementType command = source.lookAhead(1);
+            return command == SoyToken.TEMPLATE || command == SoyToken.DELTEMPLATE || command == SoyToken.NAMESPACE;
+        }
+        return false;
+    }
+
+    /**
+     * Called once the error budget is spent. Everything up to the next sync
+     * point is marked as a single error. The budget is renewed when parsing
+     * resumes at the sync point.
+     */
+    private void skipToSyncPoint() {
+        PsiBuilder.Marker skipped = source.mark("skipped");
+        while (!source.eof() && !isSyncPoint(source.token())) {
+            source.advance();
+        }
+        skipped.error(I18N.msg("syntax.error.too.many.errors"));
+    }
+
+    /**
+     * Tags nested deeper than {@link #MAX_OPEN_TAGS} are reported rather than
+     * left open. This bounds the depth of the tree, and the cost of matching
+     * each close tag against the tags that are open.
+     */
+    private void pushUnclosedTag(TagParser tagParser) {
+        if (unclosedTagParsers.size() >= MAX_OPEN_TAGS) {
+            processBadTag(tagParser, I18N.msg("syntax.error.tags.nested.too.deep", MAX_OPEN_TAGS));
+        } else {
+            unclosedTagParsers.push(tagParser);
+        }
     }
 
     private void processParsedTag(TagParser tagParser) {
@@ -156,7 +362,7 @@ public class SoyStructureParser {
                 unclosedTagParsers.push(within); // put it back
             }
             if (tagParser.isRequiresCloseTag()) {
-                unclosedTagParsers.push(tagParser);
+                pushUnclosedTag(tagParser);
             }
         } else if (tagToken == SoyToken.NAMESPACE || tagToken == SoyToken.TEMPLATE || tagToken == SoyToken.DELTEMPLATE) {
             if (!unclosedTagParsers.isEmpty()) {
@@ -169,7 +375,7 @@ public class SoyStructureParser {
                 unclosedTagParsers.push(tagParser);
             }
         } else if (tagParser.isRequiresCloseTag() && SoyToken.COMMAND_TOKENS.contains(tagToken)) {
-            unclosedTagParsers.push(tagParser);
+            pushUnclosedTag(tagParser);
         }
     }
 
@@ -184,8 +390,8 @@ public class SoyStructureParser {
         }
         if (types.contains(unclosedTagParsers.peek().getTagToken())) {
             TagParser top = unclosedTagParsers.pop();
-            if (visitBeforeDone != null) {
-                visitBeforeDone.visit(top);
+            if (visitBeforeDone != null && top != templateBlockTag) {
+                visitBeforeDone.visit(top); // the caller encloses a reparsed template
             }
             if (unclosedTagParsers.isEmpty() && docBeginMarker != null) {
                 docBeginMarker.done(tag_and_doc_comment);
@@ -226,11 +432,13 @@ public class SoyStructureParser {
     }
 
     private void processBadTag(TagParser offendingTag, TagParser tagParser, String message) {
+        errorCount++;
         PsiBuilder.Marker badMarker = tagParser.getTagMarker().precede();
         badMarker.errorBefore(message, offendingTag.getTagMarker());
     }
 
     private void processBadTag(TagParser tagParser, String message) {
+        errorCount++;
         PsiBuilder.Marker badMarker = tagParser.getTagMarker().precede();
         badMarker.error(message);
     }
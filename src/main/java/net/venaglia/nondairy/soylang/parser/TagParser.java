@@ -40,6 +40,14 @@ class TagParser {
 
     private static final TokenSet END_OF_TAG_TOKENS = TokenSet.create(SoyToken.TAG_END_RBRACE, SoyToken.TAG_RBRACE, SoyToken.RBRACE_ERROR);
 
+    /**
+     * Once this many errors have been reported within a single tag, the rest
+     * of the tag is skipped and marked as a single error. Without this, a
+     * tag that runs on, such as one opened with a stray '{{', is marked one
+     * bad token at a time until its end is found.
+     */
+    static final int TAG_ERROR_BUDGET = 8;
+
     private final TokenSource source;
     private final PsiBuilder.Marker tagMarker;
     private final boolean isCloseTag;
@@ -51,6 +59,7 @@ class TagParser {
     private Deque<SectionTag> companions = new LinkedList<SectionTag>();
     private boolean requiresCloseTag = false;
     private boolean markerIsDone = false;
+    private int errorCount = 0;
 //    private PsiBuilder.Marker tagPairMarker;
     private PsiBuilder.Marker innerMarker;
 
@@ -86,13 +95,13 @@ class TagParser {
             innerMarker.done(tag_between_braces);
             if (source.eof()) {
                 if (errorMessage == null) errorMessage = I18N.msg("syntax.error.unexpected.eof");
-                source.error(errorMessage);
+                error(errorMessage);
             } else if (END_OF_TAG_TOKENS.contains(source.token())) {
-                if (errorMessage != null) source.advanceAndMarkBad(unexpected_symbol, "unexpected_symbol", errorMessage);
+                if (errorMessage != null) advanceAndMarkBad(unexpected_symbol, "unexpected_symbol", errorMessage);
                 else source.advance();
             } else {
-                if (errorMessage == null) source.errorBadToken();
-                else source.error(errorMessage);
+                if (errorMessage == null) errorBadToken();
+                else error(errorMessage);
             }
             tagMarker.done(element);
 //            if (tagPairMarker != null) {
@@ -141,25 +150,25 @@ class TagParser {
                     if (SoyToken.COMMAND_TOKENS.contains(token)) {
                         parser = parser.parseInitial();
                     } else {
-                        source.advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.command"));
+                        advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.command"));
                     }
                     break;
                 case NAME:
                     if (SoyToken.NAME_TOKENS.contains(token)) {
                         parser = parser.parseName();
                     } else if (tagToken == SoyToken.TEMPLATE || tagToken == SoyToken.DELTEMPLATE) {
-                        source.advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.template.definition"));
+                        advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.template.definition"));
                     } else {
-                        source.advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.name"));
+                        advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.name"));
                     }
                     break;
                 case EXPRESSION:
                     notExpect(TagDataType.EXPRESSION);
                     if (!SoyToken.EXPRESSION_TOKENS.contains(token)) {
                         if (tagToken == SoyToken.IF || tagToken == SoyToken.ELSE_IF) {
-                            source.advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.boolean_expression"));
+                            advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.boolean_expression"));
                         } else {
-                            source.advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.expression"));
+                            advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.expression"));
                         }
                         break;
                     }
@@ -199,7 +208,7 @@ class TagParser {
                         if (token == SoyToken.CAPTURED_IDENTIFIER) {
                             source.advance();
                         } else {
-                            source.advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.name"));
+                            advanceAndMarkBad(token, "token", I18N.msg("syntax.error.expected.name"));
                         }
                     }
                     notExpect(TagDataType.KEYWORD);
@@ -208,7 +217,10 @@ class TagParser {
 
                     break;
             }
-            if (parser.expected == 0) {
+            if (parser != null && parser.errorCount >= TAG_ERROR_BUDGET) {
+                parser.expected = 0; // give up on this tag
+            }
+            if (parser != null && parser.expected == 0) {
                 parser.parseToTagRBrace(SoyToken.TAG_RBRACE, SoyToken.TAG_END_RBRACE);
                 parser.done();
                 parser = null;
@@ -224,7 +236,7 @@ class TagParser {
         if (token == SoyToken.CAPTURED_IDENTIFIER || token == SoyToken.KIND) {
             beginAttribute = source.mark("beginAttribute");
         } else {
-            source.advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
+            advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
             return;
         }
         source.advanceAndMark(attribute_key, "attribute_key");
@@ -235,7 +247,7 @@ class TagParser {
                 return;
             } else if (token != SoyToken.EQ) {
                 beginAttribute.drop();
-                source.advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
+                advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
                 return;
             } else {
                 source.advance();
@@ -248,7 +260,7 @@ class TagParser {
             token = source.token();
             if (token != SoyToken.STRING_LITERAL_BEGIN) {
                 beginAttribute.drop();
-                source.advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
+                advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
                 return;
             } else {
                 beginValue = source.mark("beginValue");
@@ -276,9 +288,9 @@ class TagParser {
                 }
                 beginAttribute.done(attribute);
                 if (token == SoyToken.UNTERMINATED_STRING_LITERAL) {
-                    source.advanceAndMarkBad(expression_error, "unterminated_string_literal", I18N.msg("syntax.error.unterminated.string.literal"));
+                    advanceAndMarkBad(expression_error, "unterminated_string_literal", I18N.msg("syntax.error.unterminated.string.literal"));
                 } else {
-                    source.advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
+                    advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
                 }
                 return;
             } else {
@@ -315,14 +327,14 @@ class TagParser {
         if (!source.eof()) {
             token = source.token();
             if (!SoyToken.DIRECTIVE_TOKENS.contains(token)) {
-                source.error(I18N.msg("syntax.error.expected.directive"));
+                error(I18N.msg("syntax.error.expected.directive"));
                 beginPipe.done(unexpected_symbol);
                 return;
             } else if (token == SoyToken.DIRECTIVE_IDENTIFIER) {
                 beginDirective = source.mark("beginDirective");
                 source.advanceAndMark(directive_key, "directive_key");
             } else {
-                source.advanceAndMarkBad(directive_key, "directive_key", I18N.msg("syntax.error.expected.directive"));
+                advanceAndMarkBad(directive_key, "directive_key", I18N.msg("syntax.error.expected.directive"));
                 beginPipe.drop();
                 return;
             }
@@ -344,7 +356,7 @@ class TagParser {
                 beginValue = source.mark("beginValue");
             } else {
                 beginDirective.done(directive);
-                source.advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
+                advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
                 return;
             }
         } else {
@@ -423,7 +435,7 @@ class TagParser {
                     if (source.token() == SoyToken.LET_IDENTIFIER) {
                         String name = source.text();
                         if (name.equals("$") || name.charAt(0) != '$' || name.contains(".")) {
-                            source.advanceAndMarkBad(let_parameter_def, "let_parameter_def", I18N.msg("syntax.error.invalid.let.variable.name", name));
+                            advanceAndMarkBad(let_parameter_def, "let_parameter_def", I18N.msg("syntax.error.invalid.let.variable.name", name));
                         } else {
                             name = name.substring(1); // trim the leading $
                             source.advanceAndMark(let_parameter_def, "let_parameter_def");
@@ -439,13 +451,13 @@ class TagParser {
                                 // this is OK, template content is an acceptable value
                                 requiresCloseTag = true;
                             } else if (source.token() == SoyToken.TAG_END_RBRACE) {
-                                source.error(I18N.msg("syntax.error.expected.let.value", name));
+                                error(I18N.msg("syntax.error.expected.let.value", name));
                             } else {
-                                source.error(I18N.msg("syntax.error.expected.colon.after.let.name"));
+                                error(I18N.msg("syntax.error.expected.colon.after.let.name"));
                             }
                         }
                     } else if (source.token() == SoyToken.COLON || SoyToken.TAG_BRACES.contains(source.token())) {
-                        source.error(I18N.msg("syntax.error.expected.let.name"));
+                        error(I18N.msg("syntax.error.expected.let.name"));
                     }
                 }
             } else if (token == SoyToken.IF) {
@@ -518,13 +530,13 @@ class TagParser {
                             } else if (source.token() == SoyToken.TAG_RBRACE) {
                                 // this is OK, template content is an acceptable value
                             } else if (source.token() == SoyToken.TAG_END_RBRACE) {
-                                source.error(I18N.msg("syntax.error.expected.parameter.value"));
+                                error(I18N.msg("syntax.error.expected.parameter.value"));
                             } else {
-                                source.error(I18N.msg("syntax.error.expected.colon.after.parameter.name"));
+                                error(I18N.msg("syntax.error.expected.colon.after.parameter.name"));
                             }
                         }
                     } else if (source.token() == SoyToken.COLON) {
-                        source.error(I18N.msg("syntax.error.expected.parameter.name"));
+                        error(I18N.msg("syntax.error.expected.parameter.name"));
                     }
                     requiresCloseTag = true;
                 }
@@ -543,7 +555,7 @@ class TagParser {
                     source.advance();
                 }
             } else if (SoyToken.NON_TAG_TOKENS.contains(token)) {
-                source.advanceAndMarkBad(invalid_text, "invalid_text");
+                advanceAndMarkBad(invalid_text, "invalid_text");
                 done();
                 return null;
             } else if (token == SoyToken.INNER_PARAM) {
@@ -554,7 +566,7 @@ class TagParser {
             this.command = command;
             return this;
         } else {
-            source.advanceAndMarkBad(command_keyword, "command_keyword");
+            advanceAndMarkBad(command_keyword, "command_keyword");
             return this;
         }
     }
@@ -566,7 +578,7 @@ class TagParser {
             if (token == SoyToken.PARAMETER_REF) {
                 source.advanceAndMark(parameter_def, "parameter_def");
             } else {
-                source.error(I18N.msg("syntax.error.expected.parameter.declaration"));
+                error(I18N.msg("syntax.error.expected.parameter.declaration"));
             }
         }
         if (!source.eof()) {
@@ -574,7 +586,7 @@ class TagParser {
             if (token == SoyToken.IN) {
                 source.advance();
             } else {
-                source.error(I18N.msg("syntax.error.expected.keyword.in"));
+                error(I18N.msg("syntax.error.expected.keyword.in"));
             }
         }
         if (!source.eof() && expectingRangeExpression) {
@@ -597,7 +609,7 @@ class TagParser {
                     startRangeExprMarker.drop();
                 }
             } else {
-                source.error(I18N.msg("syntax.error.expected.keyword.in"));
+                error(I18N.msg("syntax.error.expected.keyword.in"));
                 expectingRangeExpression = false;
             }
         }
@@ -628,6 +640,7 @@ class TagParser {
             if (END_OF_TAG_TOKENS.contains(source.token())) break;
             source.advance();
         }
+        errorCount++;
         if (element == package_def || element == namespace_def || element == alias_def || element == template_tag) {
             errorMarker.error(I18N.msg("syntax.error.unexpected.tokens.in.declaration.tag", command));
         } else if (command == null) {
@@ -667,9 +680,9 @@ class TagParser {
                 source.advanceAndMark(parameter_ref, "parameter_ref");
             } else if (token == SoyToken.CAPTURED_IDENTIFIER) {
                 if (element == template_tag) {
-                    source.advanceAndMarkBad(member_property_ref, "member_property_ref", I18N.msg("syntax.error.expected.template.definition"));
+                    advanceAndMarkBad(member_property_ref, "member_property_ref", I18N.msg("syntax.error.expected.template.definition"));
                 } else {
-                    source.advanceAndMarkBad(member_property_ref, "member_property_ref");
+                    advanceAndMarkBad(member_property_ref, "member_property_ref");
                 }
             } else if (token == SoyToken.INNER_PARAMETER_DEF) {
                 if(source.token() == SoyToken.QUESTION) {
@@ -687,11 +700,38 @@ class TagParser {
                 return this;
             }
         } else {
-            source.advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
+            advanceAndMarkBad(unexpected_symbol, "unexpected_symbol");
         }
         return this;
     }
 
+    private void advanceAndMarkBad(IElementType type, @NonNls Object name) {
+        errorCount++;
+        source.advanceAndMarkBad(type, name);
+    }
+
+    private void advanceAndMarkBad(IElementType type, @NonNls Object name, String message) {
+        errorCount++;
+        source.advanceAndMarkBad(type, name, message);
+    }
+
+    private void error(String message) {
+        errorCount++;
+        source.error(message);
+    }
+
+    private void errorBadToken() {
+        errorCount++;
+        source.errorBadToken();
+    }
+
+    /**
+     * @return The number of errors reported while parsing this tag.
+     */
+    int getErrorCount() {
+        return errorCount;
+    }
+
     private void setCompanions(SoyToken... companions) {
         this.companions.clear();
         for (SoyToken companion : companions) {
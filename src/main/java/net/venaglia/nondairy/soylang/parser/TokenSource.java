@@ -70,6 +70,14 @@ public abstract class TokenSource {
      */
     public abstract IElementType previous();
 
+    /**
+     * @param steps The number of tokens to look ahead, 1 for the token that
+     *     follows the current one.
+     * @return The type of the token the specified number of steps ahead of
+     *     the current one, or null if that is past the end of the file.
+     */
+    public abstract IElementType lookAhead(int steps);
+
     /**
      * @return The string that the current token was generated from.
      */
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.parser;
+
+import com.intellij.lang.PsiBuilder;
+import com.intellij.lang.WhitespacesAndCommentsBinder;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A PsiBuilderTokenSource that records each marker and token event into a
+ * {@link ParseTrace}. The name passed to {@link #mark(Object)} identifies the
+ * parser method that created each marker.
+ */
+public class TracingTokenSource extends PsiBuilderTokenSource {
+
+    private final ParseTrace trace;
+
+    public TracingTokenSource(@NotNull PsiBuilder builder, @NotNull ParseTrace trace) {
+        super(builder);
+        this.trace = trace;
+    }
+
+    @NotNull
+    public ParseTrace getTrace() {
+        return trace;
+    }
+
+    @Override
+    public PsiBuilder.Marker mark(@NonNls Object name) {
+        TracingMarker marker = new TracingMarker(super.mark(name), trace.nextMarkerId(), ParseTrace.getSiteId(name));
+        marker.record(ParseTrace.MARK, null);
+        return marker;
+    }
+
+    @Override
+    public void advance() {
+        trace.record(ParseTrace.ADVANCE, token(), index(), 0, -1);
+        super.advance();
+    }
+
+    @Override
+    public void error(String message) {
+        trace.record(ParseTrace.TOKEN_ERROR, token(), index(), 0, -1);
+        super.error(message);
+    }
+
+    @Nullable
+    private static PsiBuilder.Marker unwrap(@Nullable PsiBuilder.Marker marker) {
+        return marker instanceof TracingMarker ? ((TracingMarker)marker).marker : marker;
+    }
+
+    private class TracingMarker implements PsiBuilder.Marker {
+
+        private final PsiBuilder.Marker marker;
+        private final int markerId;
+        private final int siteId;
+
+        private TracingMarker(PsiBuilder.Marker marker, int markerId, int siteId) {
+            this.marker = marker;
+            this.markerId = markerId;
+            this.siteId = siteId;
+        }
+
+        private void record(int event, @Nullable IElementType type) {
+            trace.record(event, type, index(), markerId, siteId);
+        }
+
+        @NotNull
+        @Override
+        public PsiBuilder.Marker precede() {
+            TracingMarker preceding = new TracingMarker(marker.precede(), trace.nextMarkerId(), siteId);
+            preceding.record(ParseTrace.PRECEDE, null);
+            return preceding;
+        }
+
+        @Override
+        public void drop() {
+            record(ParseTrace.DROP, null);
+            marker.drop();
+        }
+
+        @Override
+        public void rollbackTo() {
+            record(ParseTrace.ROLLBACK, null);
+            marker.rollbackTo();
+        }
+
+        @Override
+        public void done(@NotNull IElementType type) {
+            record(ParseTrace.DONE, type);
+            marker.done(type);
+        }
+
+        @Override
+        public void collapse(@NotNull IElementType type) {
+            record(ParseTrace.COLLAPSE, type);
+            marker.collapse(type);
+        }
+
+        @Override
+        public void doneBefore(@NotNull IElementType type, @NotNull PsiBuilder.Marker before) {
+            record(ParseTrace.DONE, type);
+            marker.doneBefore(type, unwrap(before));
+        }
+
+        @Override
+        public void doneBefore(@NotNull IElementType type,
+                               @NotNull PsiBuilder.Marker before,
+                               String errorMessage) {
+            record(ParseTrace.DONE, type);
+            marker.doneBefore(type, unwrap(before), errorMessage);
+        }
+
+        @Override
+        public void error(String message) {
+            record(ParseTrace.ERROR, null);
+            marker.error(message);
+        }
+
+        @Override
+        public void errorBefore(String message, @NotNull PsiBuilder.Marker before) {
+            record(ParseTrace.ERROR, null);
+            marker.errorBefore(message, unwrap(before));
+        }
+
+        @Override
+        public void setCustomEdgeTokenBinders(@Nullable WhitespacesAndCommentsBinder left,
+                                              @Nullable WhitespacesAndCommentsBinder right) {
+            marker.setCustomEdgeTokenBinders(left, right);
+        }
+
+        @Override
+        public String toString() {
+            return marker.toString();
+        }
+    }
+}
@@ -23,6 +23,7 @@ import com.intellij.spellchecker.tokenizer.Tokenizer;
 import net.venaglia.nondairy.soylang.SoyElement;
 import net.venaglia.nondairy.soylang.elements.LocalTemplateNameDef;
 import net.venaglia.nondairy.soylang.elements.NamespaceTagElement;
+import net.venaglia.nondairy.soylang.elements.TreeNavigator;
 import org.jetbrains.annotations.NotNull;
 
 
@@ -58,7 +59,7 @@ public class PsiElementTokenizer extends Tokenizer<PsiElement> {
       } else if (elementType.equals(SoyElement.doc_comment)) {
         templateDocCommentTokenizer.tokenize(element, consumer);
       } else {
-        for (PsiElement child : element.getChildren()) {
+        for (PsiElement child : TreeNavigator.INSTANCE.children(element)) {
           tokenize(child, consumer);
         }
       }
@@ -72,17 +73,24 @@ public class PsiElementTokenizer extends Tokenizer<PsiElement> {
    * @return The {@link LocalTemplateNameDef} or {@code null} if not found.
    */
   private LocalTemplateNameDef getChildLocalTemplateNameDef(PsiElement parent) {
-    for (PsiElement child : parent.getChildren()) {
-      if (child instanceof LocalTemplateNameDef) {
-        return (LocalTemplateNameDef) child;
-      } else {
-        LocalTemplateNameDef templateNameDef =
-            getChildLocalTemplateNameDef(child);
-        if (templateNameDef != null) {
-          return templateNameDef;
-        }
+    for (PsiElement child : TreeNavigator.INSTANCE.children(parent)) {
+      LocalTemplateNameDef templateNameDef = getLocalTemplateNameDef(child);
+      if (templateNameDef != null) {
+        return templateNameDef;
       }
     }
-    return  null;
+    return null;
+  }
+
+  /**
+   * @param element A child PsiElement.
+   * @return element, if it is a {@link LocalTemplateNameDef}, otherwise the
+   *     first {@link LocalTemplateNameDef} below it, or {@code null}.
+   */
+  private LocalTemplateNameDef getLocalTemplateNameDef(PsiElement element) {
+    if (element instanceof LocalTemplateNameDef) {
+      return (LocalTemplateNameDef) element;
+    }
+    return getChildLocalTemplateNameDef(element);
   }
 }
@@ -24,6 +24,7 @@ import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiManager;
+import com.intellij.psi.tree.TokenSet;
 import net.venaglia.nondairy.soylang.elements.TreeNavigator;
 import net.venaglia.nondairy.util.SourceTuple;
 import org.jetbrains.annotations.NotNull;
@@ -80,6 +81,36 @@ public class MockTreeNavigator extends TreeNavigator {
         return children;
     }
 
+    @Nullable
+    @Override
+    public PsiElement getFirstChildElement(@NotNull ASTNode node, @Nullable TokenSet filter) {
+        return findElement(node.getFirstChildNode(), filter);
+    }
+
+    @Nullable
+    @Override
+    public PsiElement getNextSiblingElement(@NotNull ASTNode node, @Nullable TokenSet filter) {
+        return findElement(node.getTreeNext(), filter);
+    }
+
+    /**
+     * Skips leaves, as the default navigator skips anything that is not a
+     * CompositeElement.
+     */
+    @Nullable
+    private static PsiElement findElement(@Nullable ASTNode node, @Nullable TokenSet filter) {
+        for (; node != null; node = node.getTreeNext()) {
+            if (!(node instanceof MockTreeNode.MockLeafNode) &&
+                (filter == null || filter.contains(node.getElementType()))) {
+                PsiElement psi = node.getPsi();
+                if (psi != null) {
+                    return psi;
+                }
+            }
+        }
+        return null;
+    }
+
     @Nullable
     @Override
     public PsiElement getNextSibling(@NotNull ASTNode node) {
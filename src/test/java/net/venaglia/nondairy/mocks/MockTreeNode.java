@@ -457,7 +457,7 @@ public class MockTreeNode implements ASTNode {
         }
     }
 
-    private static class MockLeafNode extends MockTreeNode {
+    static class MockLeafNode extends MockTreeNode {
 
         private MockLeafNode() {
             // leaf nodes cannot have children
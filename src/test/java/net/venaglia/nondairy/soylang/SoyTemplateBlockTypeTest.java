@@ -0,0 +1,81 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.lang.ASTNode;
+import org.junit.Test;
+
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class SoyTemplateBlockTypeTest {
+
+    private static boolean isParsable(SoyTemplateBlockType type, String text) {
+        return type.isParsable(text, SoyLanguage.INSTANCE, null);
+    }
+
+    @Test
+    public void testTemplate() throws Exception {
+        assertTrue(isParsable(SoyElement.template_tag_pair,
+                              "{template .t}\n  {if $a}<b>{$a}</b>{/if}\n{/template}"));
+        assertTrue(isParsable(SoyElement.template_tag_pair,
+                              "{template .t}\n  {call .other /}{/template}"));
+        assertTrue(isParsable(SoyElement.deltemplate_tag_pair,
+                              "{deltemplate a.b}\n  hello\n{/deltemplate}"));
+    }
+
+    @Test
+    public void testUnclosedTemplate() throws Exception {
+        assertFalse(isParsable(SoyElement.template_tag_pair, "{template .t}\n  hello\n"));
+        assertFalse(isParsable(SoyElement.template_tag_pair, "{template .t}\n  hello\n{/template"));
+    }
+
+    @Test
+    public void testTemplateBoundaryChanged() throws Exception {
+        assertFalse(isParsable(SoyElement.template_tag_pair,
+                               "{template .t}\n{/template}\n{template .u}\n{/template}"));
+        assertFalse(isParsable(SoyElement.template_tag_pair,
+                               "{template .t}\n{template .u}\n{/template}"));
+        assertFalse(isParsable(SoyElement.template_tag_pair,
+                               "{template .t}\n{/template} "));
+        assertFalse(isParsable(SoyElement.template_tag_pair,
+                               " {template .t}\n{/template}"));
+        assertFalse(isParsable(SoyElement.template_tag_pair,
+                               "{template .t}\n{/deltemplate}"));
+        assertFalse(isParsable(SoyElement.deltemplate_tag_pair,
+                               "{template .t}\n{/template}"));
+        assertFalse(isParsable(SoyElement.template_tag_pair,
+                               "{template .t}\n{namespace a.b}\n{/template}"));
+    }
+
+    @Test
+    public void testCloseTagInComment() throws Exception {
+        assertFalse(isParsable(SoyElement.template_tag_pair,
+                               "{template .t}\n  /* {/template} */"));
+    }
+
+    @Test
+    public void testCreateNode() throws Exception {
+        String text = "{template .t}\n  hello\n{/template}";
+        ASTNode node = SoyElement.template_tag_pair.createNode(text);
+        assertSame(SoyElement.template_tag_pair, node.getElementType());
+        assertEquals(text, node.getText());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import net.venaglia.nondairy.mocks.MockProjectEnvironment;
+import net.venaglia.nondairy.soylang.elements.AbstractPsiElementTest;
+import net.venaglia.nondairy.util.SourceTuple;
+import org.jetbrains.annotations.NonNls;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class DeltemplateOverrideCacheTest extends AbstractPsiElementTest {
+
+    private static Collection<Module> getModules() {
+        return Collections.singleton(MockProjectEnvironment.getUnitTestModule());
+    }
+
+    private static String deltemplate(@NonNls String name, @NonNls String attributes) {
+        return "/**\n * @param x\n */\n{deltemplate " + name + attributes + "}\n  {$x}\n{/deltemplate}\n";
+    }
+
+    private static VirtualFile add(@NonNls String filename, @NonNls String source) {
+        SourceTuple tuple = new SourceTuple(filename, source);
+        MockProjectEnvironment.add(tuple);
+        return tuple.file;
+    }
+
+    private static TextRange nameRange(String source, String name, int fromIndex) {
+        int start = source.indexOf("{deltemplate " + name, fromIndex) + "{deltemplate ".length();
+        return new TextRange(start, start + name.length());
+    }
+
+    @Test
+    public void testDefaultAndOverride() throws Exception {
+        add("override_default.soy", "{namespace overrides.base}\n" + deltemplate("overrides.widget", ""));
+        add("override_custom.soy", "{delpackage custom}\n{namespace overrides.custom}\n" + deltemplate("overrides.widget", ""));
+        List<CacheEntry> defaults = DeltemplateOverrideCache.findImplementations(getModules(), "overrides.widget", null, true);
+        List<CacheEntry> overrides = DeltemplateOverrideCache.findImplementations(getModules(), "overrides.widget", null, false);
+        assertEquals(1, defaults.size());
+        assertEquals(1, overrides.size());
+        assertTrue(DeltemplateOverrideCache.isDefault(defaults.get(0)));
+        assertFalse(DeltemplateOverrideCache.isDefault(overrides.get(0)));
+        assertEquals("custom", overrides.get(0).getNamespace());
+        assertEquals(2, DeltemplateOverrideCache.getCache(MockProjectEnvironment.getUnitTestModule())
+                                                .getImplementations("overrides.widget")
+                                                .size());
+    }
+
+    @Test
+    public void testVariants() throws Exception {
+        add("variant_default.soy",
+            "{namespace variants.base}\n" +
+            deltemplate("variants.widget", "") +
+            deltemplate("variants.widget", " variant=\"'compact'\""));
+        add("variant_custom.soy",
+            "{delpackage custom}\n{namespace variants.custom}\n" +
+            deltemplate("variants.widget", " variant=\"'compact'\""));
+        List<CacheEntry> plain = DeltemplateOverrideCache.findImplementations(getModules(), "variants.widget", null, true);
+        assertEquals(1, plain.size());
+        assertNull(plain.get(0).getVariant());
+        List<CacheEntry> compact = DeltemplateOverrideCache.findImplementations(getModules(), "variants.widget", "'compact'", true);
+        assertEquals(1, compact.size());
+        assertEquals("'compact'", compact.get(0).getVariant());
+        assertEquals(1, DeltemplateOverrideCache.findImplementations(getModules(), "variants.widget", "'compact'", false).size());
+        assertTrue(DeltemplateOverrideCache.findImplementations(getModules(), "variants.widget", null, false).isEmpty());
+        assertTrue(DeltemplateOverrideCache.findImplementations(getModules(), "variants.widget", "'wide'", true).isEmpty());
+    }
+
+    @Test
+    public void testFindEntryByNameRange() throws Exception {
+        String source = "{namespace entries.base}\n" +
+                        deltemplate("entries.first", "") +
+                        deltemplate("entries.second", "");
+        VirtualFile file = add("entries.soy", source);
+        TextRange first = nameRange(source, "entries.first", 0);
+        TextRange second = nameRange(source, "entries.second", 0);
+        CacheEntry firstEntry = DeltemplateOverrideCache.findEntry(getModules(), file, "entries.first", first);
+        CacheEntry secondEntry = DeltemplateOverrideCache.findEntry(getModules(), file, "entries.second", second);
+        assertNotNull(firstEntry);
+        assertNotNull(secondEntry);
+        assertEquals("entries.first", firstEntry.getTemplate());
+        assertEquals("entries.second", secondEntry.getTemplate());
+        assertNull(DeltemplateOverrideCache.findEntry(getModules(), file, "entries.third", first));
+        // the range of a name still matches it after text is inserted before it
+        assertSame(secondEntry, DeltemplateOverrideCache.findEntry(getModules(), file, "entries.second", second.shiftRight(12)));
+        assertSame(firstEntry, DeltemplateOverrideCache.findEntry(getModules(), file, "entries.first", first.shiftRight(12)));
+    }
+
+    @Test
+    public void testFindEntryPrefersClosestVariant() throws Exception {
+        String source = "{namespace closest.base}\n" +
+                        deltemplate("closest.widget", "") +
+                        deltemplate("closest.widget", " variant=\"'compact'\"");
+        VirtualFile file = add("closest.soy", source);
+        TextRange plain = nameRange(source, "closest.widget", 0);
+        TextRange compact = nameRange(source, "closest.widget", plain.getEndOffset());
+        CacheEntry plainEntry = DeltemplateOverrideCache.findEntry(getModules(), file, "closest.widget", plain);
+        CacheEntry compactEntry = DeltemplateOverrideCache.findEntry(getModules(), file, "closest.widget", compact);
+        assertNotNull(plainEntry);
+        assertNotNull(compactEntry);
+        assertNull(plainEntry.getVariant());
+        assertEquals("'compact'", compactEntry.getVariant());
+        assertSame(compactEntry, DeltemplateOverrideCache.findEntry(getModules(), file, "closest.widget", compact.shiftRight(3)));
+    }
+
+    @Test
+    public void testUpdateAndRemove() throws Exception {
+        VirtualFile file = add("removed.soy", "{namespace removed.base}\n" + deltemplate("removed.widget", ""));
+        DeltemplateOverrideCache cache = DeltemplateOverrideCache.getCache(MockProjectEnvironment.getUnitTestModule());
+        Collection<CacheEntry> implementations = cache.getImplementations("removed.widget");
+        assertEquals(1, implementations.size());
+        cache.remove(file);
+        assertTrue(cache.getImplementations("removed.widget").isEmpty());
+        cache.update(file, new ArrayList<CacheEntry>(implementations));
+        assertEquals(1, cache.getImplementations("removed.widget").size());
+    }
+}
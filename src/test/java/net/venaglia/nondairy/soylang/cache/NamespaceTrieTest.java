@@ -0,0 +1,99 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import net.venaglia.nondairy.mocks.MockProjectEnvironment;
+import net.venaglia.nondairy.soylang.elements.AbstractPsiElementTest;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class NamespaceTrieTest extends AbstractPsiElementTest {
+
+    private NamespaceTrie getTrie() {
+        return NamespaceTrie.getCache(MockProjectEnvironment.getUnitTestModule());
+    }
+
+    @Test
+    public void testIsDeclared() throws Exception {
+        findRootElement("library.soy");
+        NamespaceTrie trie = getTrie();
+        assertTrue(trie.isDeclared("non.dairy.sample.library"));
+        assertFalse(trie.isDeclared("non.dairy.sample"));
+        assertFalse(trie.isDeclared("non.dairy.sample.lib"));
+    }
+
+    @Test
+    public void testFindNamespaces() throws Exception {
+        findRootElement("library.soy");
+        NamespaceTrie trie = getTrie();
+        List<String> found = trie.findNamespaces("non.dairy.sample.lib");
+        assertTrue(found.contains("non.dairy.sample.library"));
+        for (String namespace : found) {
+            assertTrue(namespace, namespace.startsWith("non.dairy.sample.lib"));
+        }
+        assertEquals(found, trie.findNamespaces("non.dairy.sample."));
+        assertTrue(trie.findNamespaces("non.dairy.nothing").isEmpty());
+    }
+
+    @Test
+    public void testGetChildren() throws Exception {
+        findRootElement("library.soy");
+        NamespaceTrie trie = getTrie();
+        assertEquals(Arrays.asList("non.dairy"), trie.getChildren("non"));
+        assertTrue(trie.getChildren("non.dairy.sample").contains("non.dairy.sample.library"));
+        assertTrue(trie.getChildren("").contains("non"));
+    }
+
+    @Test
+    public void testResolveAlias() throws Exception {
+        VirtualFile file = findRootElement("render1.soy").getVirtualFile();
+        NamespaceTrie trie = getTrie();
+        assertEquals(Arrays.asList("non.dairy.sample.library"), trie.resolveAliases(file, "library"));
+        assertTrue(trie.resolveAliases(file, "sample").isEmpty());
+    }
+
+    @Test
+    public void testResolveAlias_sameLastSegment() throws Exception {
+        VirtualFile file = findRootElement("minimal.soy").getVirtualFile();
+        NamespaceTrie trie = getTrie();
+        trie.update(file, "minimal.namespace", Arrays.asList("a.b.util", "c.d.util", "e.f.other"));
+        assertEquals(Arrays.asList("a.b.util", "c.d.util"), trie.resolveAliases(file, "util"));
+        assertEquals(Arrays.asList("e.f.other"), trie.resolveAliases(file, "other"));
+        trie.update(file, "minimal.namespace", Collections.<String>emptyList());
+        assertTrue(trie.resolveAliases(file, "util").isEmpty());
+    }
+
+    @Test
+    public void testUpdateAndRemove() throws Exception {
+        VirtualFile file = findRootElement("minimal.soy").getVirtualFile();
+        NamespaceTrie trie = getTrie();
+        assertTrue(trie.isDeclared("minimal.namespace"));
+        trie.remove(file);
+        assertFalse(trie.isDeclared("minimal.namespace"));
+        assertTrue(trie.getChildren("minimal").isEmpty());
+        trie.update(file, "minimal.namespace", Collections.<String>emptyList());
+        assertTrue(trie.isDeclared("minimal.namespace"));
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.cache;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.openapi.module.Module;
+import net.venaglia.nondairy.mocks.MockProjectEnvironment;
+import net.venaglia.nondairy.soylang.elements.AbstractPsiElementTest;
+import net.venaglia.nondairy.util.SourceTuple;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class SoyCacheUpdaterTest extends AbstractPsiElementTest {
+
+    private static final String SOURCE =
+            "{namespace updater.test}\n" +
+            "// {template .commentedOut}\n" +
+            "/*\n" +
+            " * {template .alsoCommentedOut}\n" +
+            " */\n" +
+            "/**\n" +
+            " * @param a\n" +
+            " * @param? b\n" +
+            " */\n" +
+            "{template .declared}\n" +
+            "  {@param c: string}\n" +
+            "  // {@param d: string}\n" +
+            "  <a href=\"http://example.com\">{$a}{$b}{$c}</a>\n" +
+            "  /* {/template} */\n" +
+            "  {@param e: string}\n" +
+            "{/template}\n";
+
+    private List<CacheEntry> findTemplates(String templateName) {
+        Set<Module> modules = Collections.singleton(MockProjectEnvironment.getUnitTestModule());
+        return TemplateDeclarationIndex.findTemplates(modules, templateName);
+    }
+
+    @Test
+    public void testFindComments() throws Exception {
+        String text = "a /* b */ c // d\ne http://f\n/**/";
+        int[] comments = SoyCacheUpdater.findComments(text);
+        assertArrayEquals(new int[]{ 2, 9, 12, 16, 28, 32 }, comments);
+        assertEquals(0, SoyCacheUpdater.findComment(comments, 2));
+        assertEquals(0, SoyCacheUpdater.findComment(comments, 8));
+        assertEquals(-1, SoyCacheUpdater.findComment(comments, 9));
+        assertEquals(2, SoyCacheUpdater.findComment(comments, 15));
+        assertEquals(-1, SoyCacheUpdater.findComment(comments, text.indexOf("//f")));
+        assertEquals(4, SoyCacheUpdater.findComment(comments, 31));
+    }
+
+    @Test
+    public void testUnterminatedComment() throws Exception {
+        assertArrayEquals(new int[]{ 2, 7 }, SoyCacheUpdater.findComments("a /*/ b"));
+    }
+
+    @Test
+    public void testCommentsAreNotIndexed() throws Exception {
+        MockProjectEnvironment.add(new SourceTuple("updater.soy", SOURCE));
+        assertTrue(findTemplates("updater.test.commentedOut").isEmpty());
+        assertTrue(findTemplates("updater.test.alsoCommentedOut").isEmpty());
+        List<CacheEntry> declared = findTemplates("updater.test.declared");
+        assertEquals(1, declared.size());
+        CacheEntry entry = declared.get(0);
+        assertEquals(Arrays.asList("a", "b", "c", "e"), entry.getParameters());
+        assertEquals(Arrays.asList("a"), entry.getRequiredParameters());
+        assertFalse(entry.isPrivateTemplate());
+    }
+}
@@ -118,6 +118,23 @@ public class CallParameterRefElementTest extends AbstractPsiElementTest {
         assertEquals("non.dairy.sample.library", ref.getNamespace());
     }
 
+    @Test
+    public void testUnresolvedCall() throws Exception {
+        buildAnonymousTestTemplate(
+                "call_unresolved",
+                "{call .not_a_template}\n" +
+                "    {param city:''/}\n" +
+                "{/call}"
+        );
+        CallParameterRefElement ref = findElement("call_unresolved",
+                                                  CallParameterRefElement.class,
+                                                  "city",
+                                                  null);
+        assertNull(ref.getTemplateName());
+        assertNull(ref.getNamespace());
+        assertNull(ref.getReference());
+    }
+
     @Test
     public void testGetName_sameFile() throws Exception {
         CallParameterRefElement ref = findElement("library.soy",
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements;
+
+import net.venaglia.nondairy.soylang.elements.path.PsiElementCollection;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class CallTagElementTest extends AbstractPsiElementTest {
+
+    @Test
+    public void testGetInvokedTemplateName() throws Exception {
+        CallTagElement call = findNthElement("render1.soy",
+                                             CallTagElement.class,
+                                             "{call non.dairy.sample.library.format_person}",
+                                             null,
+                                             1,
+                                             2);
+        assertEquals("non.dairy.sample.library.format_person", call.getInvokedTemplateName());
+    }
+
+    @Test
+    public void testGetInvokedTemplates_crossFile() throws Exception {
+        CallTagElement call = findNthElement("render1.soy",
+                                             CallTagElement.class,
+                                             "{call non.dairy.sample.library.format_person}",
+                                             null,
+                                             1,
+                                             2);
+        LocalTemplateNameDef def = findElement("library.soy",
+                                               LocalTemplateNameDef.class,
+                                               ".format_person",
+                                               null);
+        PsiElementCollection templates = call.getInvokedTemplates();
+        assertEquals(1, templates.size());
+        assertSame(def, templates.oneOrNull());
+    }
+
+    @Test
+    public void testGetDeclaredParameters_crossFile() throws Exception {
+        CallTagElement call = findNthElement("render1.soy",
+                                             CallTagElement.class,
+                                             "{call non.dairy.sample.library.format_person}",
+                                             null,
+                                             2,
+                                             2);
+        assertEquals(Collections.singleton("person"), call.getDeclaredParameters());
+    }
+
+    @Test
+    public void testGetDeclaredParameters_isShared() throws Exception {
+        CallTagElement call = findElement("render1.soy",
+                                          CallTagElement.class,
+                                          "{call non.dairy.sample.library.format_city}",
+                                          null);
+        Set<String> declared = call.getDeclaredParameters();
+        assertNotNull(declared);
+        assertSame(declared, call.getDeclaredParameters());
+    }
+}
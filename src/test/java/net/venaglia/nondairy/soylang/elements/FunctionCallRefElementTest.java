@@ -24,6 +24,8 @@ import com.intellij.psi.PsiReference;
 import net.venaglia.nondairy.soylang.icons.SoyIcons;
 import org.junit.Test;
 
+import java.util.Collections;
+
 import static org.junit.Assert.*;
 
 /**
@@ -54,6 +56,40 @@ public class FunctionCallRefElementTest extends AbstractPsiElementTest {
         assertEquals(SoyIcons.FUNCTION, presentation.getIcon(false));
     }
 
+    @Test
+    public void testResolveIsShared() throws Exception {
+        FunctionCallRefElement ref = findElement("render1.soy",
+                                                 FunctionCallRefElement.class,
+                                                 "length",
+                                                 null);
+        PsiElement element = ref.getReference().resolve();
+        assertSame(SoyFunctionRegistry.INSTANCE.findFunction("length"), element);
+        assertSame(element, ref.getReference().resolve());
+        assertTrue(((FunctionDefElement)element).isBuiltIn());
+        assertTrue(ref.getReference().isReferenceTo(element));
+    }
+
+    @Test
+    public void testPluginFunction() throws Exception {
+        SoyFunctionRegistry registry = new SoyFunctionRegistry(Collections.singleton("myPluginFunction"));
+        FunctionDefElement function = registry.findFunction("myPluginFunction");
+        assertNotNull(function);
+        assertSame(function, registry.getFunction("myPluginFunction"));
+        assertFalse(function.isBuiltIn());
+        assertFalse(registry.isBuiltIn("myPluginFunction"));
+        assertTrue(registry.isBuiltIn("length"));
+        assertNull(SoyFunctionRegistry.INSTANCE.findFunction("myPluginFunction"));
+    }
+
+    @Test
+    public void testUnknownFunctionIsNotRegistered() throws Exception {
+        FunctionDefElement function = SoyFunctionRegistry.INSTANCE.getFunction("myUnknownFunction");
+        assertEquals("myUnknownFunction", function.getName());
+        assertFalse(function.isBuiltIn());
+        assertNull(SoyFunctionRegistry.INSTANCE.findFunction("myUnknownFunction"));
+        assertEquals(function, SoyFunctionRegistry.INSTANCE.getFunction("myUnknownFunction"));
+    }
+
     @Test
     public void testGetPresentation() throws Exception {
         FunctionCallRefElement ref = findElement("render1.soy",
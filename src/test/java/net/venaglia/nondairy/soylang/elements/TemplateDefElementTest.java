@@ -17,6 +17,8 @@
 package net.venaglia.nondairy.soylang.elements;
 
 import com.intellij.navigation.ItemPresentation;
+import com.intellij.psi.PsiElement;
+import net.venaglia.nondairy.soylang.SoyElement;
 import org.junit.Test;
 
 import javax.swing.*;
@@ -66,4 +68,22 @@ public class TemplateDefElementTest extends AbstractPsiElementTest {
         ItemPresentation presentation = def.getPresentation();
         assertNull(presentation);
     }
+
+    @Test
+    public void testTemplateBody() throws Exception {
+        buildAnonymousTestTemplate("template_body", "{if $x}<b>{$x}</b>{/if}", "x");
+        TemplateDefElement def = findElement("template_body",
+                                             TemplateDefElement.class,
+                                             "{template .template_body}",
+                                             null);
+        PsiElement pair = def.getParent();
+        assertSame(SoyElement.template_tag_pair, pair.getNode().getElementType());
+        PsiElement body = findElement("template_body", SoyCommandTag.class, "{if $x}", null);
+        while (body.getNode().getElementType() != SoyElement.template_body) {
+            body = body.getParent();
+            assertNotNull(body);
+            assertNotSame(pair, body);
+        }
+        assertSame(pair, body.getParent());
+    }
 }
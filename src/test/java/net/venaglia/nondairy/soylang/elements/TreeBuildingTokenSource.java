@@ -110,6 +110,12 @@ public class TreeBuildingTokenSource extends TokenSource {
         return symbols.get(symbolIndex - 1).getToken();
     }
 
+    @Override
+    public IElementType lookAhead(int steps) {
+        int index = symbolIndex + steps;
+        return index < symbolCount ? symbols.get(index).getToken() : null;
+    }
+
     @Override
     public String text() {
 //        if (symbolIndex < 0) {
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements.factory;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IElementType;
+import net.venaglia.nondairy.mocks.MockTreeNode;
+import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.soylang.elements.CallTagElement;
+import net.venaglia.nondairy.soylang.elements.IntermediateElement;
+import net.venaglia.nondairy.soylang.elements.SoyPsiElement;
+import net.venaglia.nondairy.soylang.lexer.SoyToken;
+import net.venaglia.nondairy.util.SourceTuple;
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class SoyPsiElementFactoryTest {
+
+    @Test
+    public void testEveryElementClassHasStaticFactory() throws Exception {
+        Map<Class<?>,PsiElementFactory<?>> factories = SoyPsiElementFactory.buildFactoriesByClass();
+        List<String> missing = new ArrayList<String>();
+        int annotated = 0;
+        for (Field field : SoyElement.class.getFields()) {
+            ElementClass elementClass = field.getAnnotation(ElementClass.class);
+            if (elementClass != null) {
+                annotated++;
+                if (!factories.containsKey(elementClass.value())) {
+                    missing.add(field.getName() + " -> " + elementClass.value().getName());
+                }
+            }
+        }
+        assertTrue("no @ElementClass annotations found", annotated > 0);
+        assertTrue("no static factory is registered for " + missing, missing.isEmpty());
+    }
+
+    @Test
+    public void testNoTokenNeedsAFactory() throws Exception {
+        Map<Class<?>,PsiElementFactory<?>> factories = SoyPsiElementFactory.buildFactoriesByClass();
+        List<String> missing = new ArrayList<String>();
+        for (Field field : SoyToken.class.getFields()) {
+            ElementClass elementClass = field.getAnnotation(ElementClass.class);
+            if (elementClass != null && !factories.containsKey(elementClass.value())) {
+                missing.add(field.getName() + " -> " + elementClass.value().getName());
+            }
+        }
+        assertTrue("no static factory is registered for " + missing, missing.isEmpty());
+    }
+
+    @Test
+    public void testCreatedElementClasses() throws Exception {
+        Map<IElementType,Class<?>> classes = new HashMap<IElementType,Class<?>>();
+        for (Field field : SoyElement.class.getFields()) {
+            ElementClass elementClass = field.getAnnotation(ElementClass.class);
+            if (elementClass != null) {
+                classes.put((IElementType)field.get(null), elementClass.value());
+            }
+        }
+        List<ASTNode> nodes = new ArrayList<ASTNode>();
+        collectNodes(new SourceTuple("features.soy").root.getNode(), nodes);
+        int elements = 0;
+        for (ASTNode node : nodes) {
+            IElementType type = node.getElementType();
+            PsiElement psi = node.getPsi();
+            if (classes.containsKey(type)) {
+                Class<?> cls = classes.get(type);
+                if (!IntermediateElement.class.isAssignableFrom(cls)) {
+                    assertTrue(type + " built as " + psi.getClass().getName(), cls.isInstance(psi));
+                }
+                elements++;
+            }
+        }
+        assertTrue("no annotated elements found", elements > 0);
+    }
+
+    @Test
+    public void testTokensAreBuiltAsPlainElements() throws Exception {
+        int tokens = 0;
+        for (Field field : SoyToken.class.getFields()) {
+            if (Modifier.isStatic(field.getModifiers()) && field.getType() == SoyToken.class) {
+                MockTreeNode.Builder builder = new MockTreeNode.Builder();
+                builder.setType((SoyToken)field.get(null));
+                builder.setText("x");
+                builder.setStartOffset(0);
+                MockTreeNode node = builder.build(SoyPsiElementFactory.getInstance());
+                assertSame(field.getName(), SoyPsiElement.class, node.getPsi().getClass());
+                tokens++;
+            }
+        }
+        assertTrue("no tokens found", tokens > 0);
+    }
+
+    @Test
+    public void testReflectiveFallback() throws Exception {
+        PsiElementFactory<?> factory =
+                SoyPsiElementFactory.buildFactory(SoyElement.class.getField("call_tag"),
+                                                  new HashMap<Class<?>,PsiElementFactory<?>>());
+        assertTrue(factory instanceof SimplePsiElementFactory);
+        List<ASTNode> nodes = new ArrayList<ASTNode>();
+        collectNodes(new SourceTuple("features.soy").root.getNode(), nodes);
+        ASTNode callTag = null;
+        for (ASTNode node : nodes) {
+            if (node.getElementType() == SoyElement.call_tag) {
+                callTag = node;
+                break;
+            }
+        }
+        assertNotNull(callTag);
+        assertTrue(factory.create(callTag) instanceof CallTagElement);
+    }
+
+    private static void collectNodes(ASTNode node, List<ASTNode> nodes) {
+        nodes.add(node);
+        for (ASTNode child = node.getFirstChildNode(); child != null; child = child.getTreeNext()) {
+            collectNodes(child, nodes);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.tree.IElementType;
+import net.venaglia.nondairy.mocks.MockProjectEnvironment;
+import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.soylang.elements.AbstractPsiElementTest;
+import net.venaglia.nondairy.soylang.elements.ParameterRefElement;
+import net.venaglia.nondairy.util.SourceTuple;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class ParameterSymbolTableTest extends AbstractPsiElementTest {
+
+    private void addSource(@NotNull @NonNls String name, @NotNull @NonNls String source) {
+        MockProjectEnvironment.add(new SourceTuple(name, "{namespace unit.testing.symbols}\n" + source));
+    }
+
+    @NotNull
+    private ParameterRefElement findRef(@NotNull @NonNls String filename, @NotNull @NonNls String text, int n, int count) {
+        return findNthElement(filename, ParameterRefElement.class, text, null, n, count);
+    }
+
+    private static IElementType typeOf(@NotNull PsiElement element) {
+        return element.getNode().getElementType();
+    }
+
+    @Test
+    public void testDocParams() throws Exception {
+        buildAnonymousTestTemplate("symbols_doc", "{$a}{$b}{$c}", "a", "b");
+        ParameterRefElement ref = findRef("symbols_doc", "$a", 1, 1);
+        ParameterSymbolTable table = ParameterSymbolTable.forElement(ref);
+        PsiElement def = table.resolve(ref, "a");
+        assertNotNull(def);
+        assertSame(SoyElement.doc_comment_param_def, typeOf(def));
+        assertEquals(2, table.getDocParameters().size());
+        assertNull(table.resolve(ref, "c"));
+        assertTrue(table.isReferenced("b"));
+        assertFalse(table.isReferenced("d"));
+    }
+
+    @Test
+    public void testInnerParams() throws Exception {
+        addSource("symbols_inner",
+                  "{template .inner}\n" +
+                  "  {@param name: string}\n" +
+                  "  {$name}\n" +
+                  "{/template}\n");
+        ParameterRefElement ref = findRef("symbols_inner", "$name", 1, 1);
+        PsiElement def = ParameterSymbolTable.forElement(ref).resolve(ref, "name");
+        assertNotNull(def);
+        assertSame(SoyElement.parameter_def, typeOf(def));
+    }
+
+    @Test
+    public void testLetScopes() throws Exception {
+        buildAnonymousTestTemplate("symbols_let",
+                                   "{let $x: 1 /}\n" +
+                                   "{if $a}{let $y: 2 /}{$y}{/if}\n" +
+                                   "{$x}{$y}",
+                                   "a");
+        ParameterRefElement innerY = findRef("symbols_let", "$y", 1, 2);
+        ParameterRefElement outerY = findRef("symbols_let", "$y", 2, 2);
+        ParameterRefElement x = findRef("symbols_let", "$x", 1, 1);
+        ParameterSymbolTable table = ParameterSymbolTable.forElement(x);
+        PsiElement defX = table.resolve(x, "x");
+        assertNotNull(defX);
+        assertSame(SoyElement.let_parameter_def, typeOf(defX));
+        PsiElement defY = table.resolve(innerY, "y");
+        assertNotNull(defY);
+        assertSame(SoyElement.let_parameter_def, typeOf(defY));
+        assertNull("let inside {if} is not visible after it", table.resolve(outerY, "y"));
+        assertSame(defX, table.resolve(innerY, "x"));
+    }
+
+    @Test
+    public void testForeachScope() throws Exception {
+        buildAnonymousTestTemplate("symbols_foreach",
+                                   "{foreach $item in $items}{$item}{/foreach}\n" +
+                                   "{$item}",
+                                   "items");
+        ParameterRefElement inside = findRef("symbols_foreach", "$item", 1, 2);
+        ParameterRefElement outside = findRef("symbols_foreach", "$item", 2, 2);
+        ParameterSymbolTable table = ParameterSymbolTable.forElement(inside);
+        PsiElement def = table.resolve(inside, "item");
+        assertNotNull(def);
+        assertSame(SoyElement.parameter_def, typeOf(def));
+        assertTrue(table.isIteratorVariable(inside, "item"));
+        assertFalse(table.isIteratorVariable(outside, "item"));
+        assertNull(table.resolve(outside, "item"));
+        assertNotNull(table.resolve(inside, "items"));
+    }
+
+    @Test
+    public void testDeltemplateScope() throws Exception {
+        addSource("symbols_del",
+                  "/**\n" +
+                  " * @param d\n" +
+                  " */\n" +
+                  "{deltemplate unit.testing.symbols.del}\n" +
+                  "  {foreach $i in $d}{$i}{/foreach}{$d}\n" +
+                  "{/deltemplate}\n");
+        ParameterRefElement i = findRef("symbols_del", "$i", 1, 1);
+        ParameterRefElement d = findRef("symbols_del", "$d", 2, 2);
+        ParameterSymbolTable table = ParameterSymbolTable.forElement(d);
+        assertSame(table, ParameterSymbolTable.forElement(i));
+        PsiElement def = table.resolve(d, "d");
+        assertNotNull(def);
+        assertSame(SoyElement.doc_comment_param_def, typeOf(def));
+        assertTrue(table.isIteratorVariable(i, "i"));
+        assertTrue(table.isReferenced("d"));
+    }
+
+    @Test
+    public void testTablesAreShared() throws Exception {
+        buildAnonymousTestTemplate("symbols_shared", "{$a}{$a}", "a");
+        ParameterRefElement first = findRef("symbols_shared", "$a", 1, 2);
+        ParameterRefElement second = findRef("symbols_shared", "$a", 2, 2);
+        assertSame(ParameterSymbolTable.forElement(first), ParameterSymbolTable.forElement(second));
+    }
+
+    @Test
+    public void testDetachedTablesAreShared() throws Exception {
+        buildAnonymousTestTemplate("symbols_detached", "{$a}", "a", "b");
+        PsiElementCollection docParams = findElements("symbols_detached",
+                                                      null,
+                                                      (String)null,
+                                                      new ElementTypePredicate(SoyElement.doc_comment_param_def));
+        assertEquals(2, docParams.size());
+        PsiElement a = docParams.oneOrNull();
+        assertNotNull(a);
+        PsiElement b = null;
+        for (PsiElement element : docParams) {
+            b = element;
+        }
+        assertNotNull(b);
+        ParameterSymbolTable table = ParameterSymbolTable.forElement(a);
+        assertSame(table, ParameterSymbolTable.forElement(b));
+        assertSame(a, table.resolve(a, "a"));
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.elements.path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.psi.PsiElement;
+import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.util.SourceTuple;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Asserts that the lazy evaluation of a path, by first() and limit(),
+ * produces the elements that navigate() does, in the same order.
+ */
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class PsiElementPathTest {
+
+    /**
+     * The first template calls from deep inside an if, the second from its
+     * top level, so a level order search across both templates finds the
+     * second template's call first.
+     */
+    private static final String SOURCE =
+            "{namespace path.test}\n" +
+            "/**\n * @param a\n */\n" +
+            "{template .deep}\n" +
+            "  {if $a}{foreach $b in $a}{call .x /}{/foreach}{/if}\n" +
+            "{/template}\n" +
+            "/**\n * shallow\n */\n" +
+            "{template .shallow}\n" +
+            "  {call .y /}\n" +
+            "{/template}\n";
+
+    private static final PsiElementPath MULTI_ROOT_DESCENDANTS = new PsiElementPath(
+            new ElementTypePredicate(SoyElement.template_tag_pair).onAllDescendants(),
+            new ElementTypePredicate(SoyElement.call_tag).onAllDescendants()
+    );
+
+    private static List<PsiElement> toList(Iterator<PsiElement> iterator) {
+        List<PsiElement> list = new ArrayList<PsiElement>();
+        while (iterator.hasNext()) {
+            PsiElement element = iterator.next();
+            if (!list.contains(element)) {
+                list.add(element);
+            }
+        }
+        return list;
+    }
+
+    @Test
+    public void testLevelOrderTraversalIsNotDistributive() throws Exception {
+        assertFalse(MULTI_ROOT_DESCENDANTS.isDistributive());
+        assertTrue(new PsiElementPath(new ElementTypePredicate(SoyElement.call_tag).onChildren()).isDistributive());
+    }
+
+    @Test
+    public void testFirstMatchesNavigateOnMultiRootDescendants() throws Exception {
+        PsiElement root = new SourceTuple("path.soy", SOURCE).root;
+        PsiElementCollection navigated = MULTI_ROOT_DESCENDANTS.navigate(root);
+        assertEquals(2, navigated.size());
+        PsiElement first = MULTI_ROOT_DESCENDANTS.first(root);
+        assertNotNull(first);
+        assertSame(navigated.oneOrNull(), first);
+        assertEquals(new ArrayList<PsiElement>(navigated), new ArrayList<PsiElement>(MULTI_ROOT_DESCENDANTS.limit(root, 2)));
+    }
+
+    @Test
+    public void testIterateMatchesNavigateFromMultipleStarts() throws Exception {
+        PsiElement root = new SourceTuple("path.soy", SOURCE).root;
+        PsiElementCollection templates = new PsiElementPath(
+                new ElementTypePredicate(SoyElement.template_tag_pair).onAllDescendants()
+        ).navigate(root);
+        assertEquals(2, templates.size());
+        PsiElementPath calls = new PsiElementPath(new ElementTypePredicate(SoyElement.call_tag).onAllDescendants());
+        assertFalse(calls.isDistributive());
+        PsiElementCollection navigated = calls.navigate(templates);
+        assertEquals(2, navigated.size());
+        assertEquals(new ArrayList<PsiElement>(navigated), toList(calls.iterate(templates)));
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.inspection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.intellij.codeInspection.ProblemDescriptor;
+import net.venaglia.nondairy.mocks.MockInspectionManager;
+import net.venaglia.nondairy.soylang.elements.AbstractPsiElementTest;
+import net.venaglia.nondairy.soylang.elements.LocalTemplateNameDef;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class TemplateNotCalledInspectionTest extends AbstractPsiElementTest {
+
+    private TemplateNotCalledInspection inspection;
+
+    @Before
+    public void setup() {
+        inspection = new TemplateNotCalledInspection() {
+            @Override
+            protected void checkCanceled() {
+                // no-op
+            }
+        };
+    }
+
+    @Test
+    public void testPrivateTemplate_called() throws Exception {
+        buildAnonymousTestTemplate(
+                "private_called",
+                "{template .main}\n" +
+                "    {call .helper /}\n" +
+                "{/template}\n" +
+                "\n" +
+                "{template .helper private=\"true\"}\n" +
+                "    hello\n" +
+                "{/template}"
+        );
+
+        List<ProblemDescriptor> problems = new ArrayList<ProblemDescriptor>();
+        inspection.findProblems(findRootElement("private_called"), new MockInspectionManager(), true, problems);
+        assertEquals(0, problems.size());
+    }
+
+    @Test
+    public void testPrivateTemplate_notCalled() throws Exception {
+        buildAnonymousTestTemplate(
+                "private_not_called",
+                "{template .main}\n" +
+                "    hello\n" +
+                "{/template}\n" +
+                "\n" +
+                "{template .helper private=\"true\"}\n" +
+                "    {call .helper /}\n" +
+                "{/template}"
+        );
+
+        LocalTemplateNameDef helper = findElement("private_not_called",
+                                                  LocalTemplateNameDef.class,
+                                                  ".helper",
+                                                  null);
+
+        List<ProblemDescriptor> problems = new ArrayList<ProblemDescriptor>();
+        inspection.findProblems(findRootElement("private_not_called"), new MockInspectionManager(), true, problems);
+        assertEquals(1, problems.size());
+        assertSame(helper, problems.get(0).getPsiElement());
+    }
+
+    @Test
+    public void testPublicTemplate_notCalled() throws Exception {
+        buildAnonymousTestTemplate(
+                "public_not_called",
+                "{template .main}\n" +
+                "    hello\n" +
+                "{/template}"
+        );
+
+        List<ProblemDescriptor> problems = new ArrayList<ProblemDescriptor>();
+        inspection.findProblems(findRootElement("public_not_called"), new MockInspectionManager(), true, problems);
+        assertEquals(0, problems.size());
+
+        inspection.REPORT_PUBLIC_TEMPLATES = true;
+        inspection.findProblems(findRootElement("public_not_called"), new MockInspectionManager(), true, problems);
+        assertEquals(1, problems.size());
+    }
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.lexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.psi.tree.IElementType;
+import net.venaglia.nondairy.SoyTestUtil;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class SoyLexerTest {
+
+    @Test
+    public void testInitialStateIsZero() throws Exception {
+        SoyLexer lexer = new SoyLexer();
+        lexer.start("{namespace a.b}\n", 0, 16, 0);
+        assertEquals(0, lexer.getState());
+    }
+
+    @Test
+    public void testIdentifierClassification() throws Exception {
+        List<IElementType> types = lexTypes("{template .t}{for $i in range(3)}{if not($i) and isFirst($i)}" +
+                                            "{/if}{/for}{/template}");
+        assertTrue(types.contains(SoyToken.IN));
+        assertTrue(types.contains(SoyToken.RANGE));
+        assertTrue(types.contains(SoyToken.NOT));
+        assertTrue(types.contains(SoyToken.AND));
+        assertTrue(types.contains(SoyToken.CAPTURED_FUNCTION_IDENTIFIER));
+        assertFalse(lexTypes("{template .t}{print range(3)}{/template}").contains(SoyToken.RANGE));
+    }
+
+    @Test
+    public void testRestart_features() throws Exception {
+        assertRestartable("features.soy");
+    }
+
+    @Test
+    public void testRestart_edgeCases() throws Exception {
+        assertRestartable("edge-cases.soy");
+    }
+
+    @Test
+    public void testRestart_library() throws Exception {
+        assertRestartable("library.soy");
+    }
+
+    @Test
+    public void testInitialStateBetweenTemplates() throws Exception {
+        String source = "{namespace a.b}\n\n" +
+                        "{template .first}\n" +
+                        "  <a href=\"{$url}\" title='x'>{literal}{x}{/literal}</a>\n" +
+                        "  {call .second}{param p: 'it\\'s' /}{/call}\n" +
+                        "{/template}\n\n" +
+                        "{template .second}\n" +
+                        "  {$p}\n" +
+                        "{/template}\n";
+        int second = source.indexOf("{template .second}");
+        List<Token> tokens = lex(new SoyLexer(false, false), source);
+        Token found = null;
+        for (Token token : tokens) {
+            if (token.start == second) found = token;
+        }
+        assertNotNull(found);
+        assertEquals(SoyToken.TAG_LBRACE, found.type);
+        assertEquals(0, found.state);
+        assertEquals(tokens.subList(tokens.indexOf(found), tokens.size()), lex(source, second, 0));
+    }
+
+    @Test
+    public void testTokenStreamCache() throws Exception {
+        String source = new String(SoyTestUtil.getTestSourceBuffer("features.soy"));
+        List<Token> expected = lex(new SoyLexer(false, false), source);
+        assertNull(SoyTokenStreamCache.find(source));
+        assertEquals(expected, lex(new SoyLexer(), source));
+        SoyTokenStream stream = SoyTokenStreamCache.find(source);
+        assertNotNull(stream);
+        assertEquals(expected.size(), stream.size());
+        assertEquals(expected, lex(new SoyLexer(), source));
+        Token middle = expected.get(expected.size() / 2);
+        SoyLexer lexer = new SoyLexer();
+        lexer.start(source, middle.start, source.length(), middle.state);
+        assertEquals(middle.type, lexer.getTokenType());
+        assertEquals(middle.start, lexer.getTokenStart());
+        assertSame(stream, SoyTokenStreamCache.find(source));
+    }
+
+    @Test
+    public void testCoarseTemplateText_features() throws Exception {
+        assertSameSoyTokens("features.soy");
+    }
+
+    @Test
+    public void testCoarseTemplateText_edgeCases() throws Exception {
+        assertSameSoyTokens("edge-cases.soy");
+    }
+
+    @Test
+    public void testCoarseTemplateText_slashesInTags() throws Exception {
+        String source = "{namespace a.b}\n" +
+                        "{template .t}\n" +
+                        "  <a href=\"http://example.com/ //x\" title='a //b'>{$x}</a> //c\n" +
+                        "  <b class=\"{$y} //d\" //e\n" +
+                        "    >{call .u /}</b> /* f */ <br/>\n" +
+                        "  <i class=\"/* g */\">a//b</i>\n" +
+                        "  h //i {$z}\n" +
+                        "{/template}\n";
+        List<Token> coarse = assertSameSoyTokens(source, "slashes in tags");
+        List<IElementType> types = new ArrayList<IElementType>();
+        for (Token token : coarse) {
+            types.add(token.type);
+        }
+        assertTrue(types.contains(SoyToken.PARAMETER_REF));
+        assertTrue(types.contains(SoyToken.LINE_COMMENT));
+    }
+
+    /**
+     * Lexes a test source with and without coarse template text, and checks
+     * that both produce the same soy tokens at the same offsets, and that
+     * coarse lexing produces fewer tokens overall. Comments are compared
+     * too, since a comment hides any soy tags within it.
+     */
+    private void assertSameSoyTokens(String name) throws Exception {
+        assertSameSoyTokens(SoyTestUtil.getTestSourceBuffer(name), name);
+    }
+
+    private List<Token> assertSameSoyTokens(CharSequence source, String name) {
+        List<Token> fine = lex(new SoyLexer(false, false), source);
+        List<Token> coarse = lex(new SoyLexer(true, false), source);
+        assertEquals(name, soyTokens(fine), soyTokens(coarse));
+        assertTrue(name, coarse.size() < fine.size());
+        return coarse;
+    }
+
+    private List<String> soyTokens(List<Token> tokens) {
+        List<String> soyTokens = new ArrayList<String>();
+        for (Token token : tokens) {
+            if (token.type instanceof SoyToken &&
+                token.type != SoyToken.TEMPLATE_TEXT &&
+                !SoyToken.WHITESPACE_TOKENS.contains(token.type)) {
+                soyTokens.add(token.type + "@" + token.start);
+            }
+        }
+        return soyTokens;
+    }
+
+    /**
+     * Lexes a whole test source, then restarts a second lexer at every
+     * token using only the recorded start offset and state, and checks that
+     * it produces the same tokens as the first from there on.
+     */
+    private void assertRestartable(String name) throws Exception {
+        String source = SoyTestUtil.getTestSourceBuffer(name);
+        List<Token> tokens = lex(source, 0, 0);
+        assertTrue(tokens.size() > 1);
+        int step = Math.max(1, tokens.size() / 200);
+        for (int i = 0; i < tokens.size(); i += step) {
+            Token restartAt = tokens.get(i);
+            List<Token> relexed = lex(source, restartAt.start, restartAt.state);
+            assertEquals(name + " restarted at offset " + restartAt.start,
+                         tokens.subList(i, tokens.size()),
+                         relexed);
+        }
+    }
+
+    private List<IElementType> lexTypes(CharSequence source) {
+        List<IElementType> types = new ArrayList<IElementType>();
+        for (Token token : lex(source, 0, 0)) {
+            types.add(token.type);
+        }
+        return types;
+    }
+
+    private List<Token> lex(SoyLexer lexer, CharSequence source) {
+        lexer.start(source, 0, source.length(), 0);
+        List<Token> tokens = new ArrayList<Token>();
+        while (lexer.getTokenType() != null) {
+            tokens.add(new Token(lexer.getTokenStart(), lexer.getState(), lexer.getTokenType()));
+            lexer.advance();
+        }
+        return tokens;
+    }
+
+    private List<Token> lex(CharSequence source, int start, int state) {
+        SoyLexer lexer = new SoyLexer(false, false);
+        lexer.start(source, start, source.length(), state);
+        List<Token> tokens = new ArrayList<Token>();
+        while (lexer.getTokenType() != null) {
+            tokens.add(new Token(lexer.getTokenStart(), lexer.getState(), lexer.getTokenType()));
+            lexer.advance();
+        }
+        return tokens;
+    }
+
+    private static class Token {
+
+        private final int start;
+        private final int state;
+        private final IElementType type;
+
+        private Token(int start, int state, IElementType type) {
+            this.start = start;
+            this.state = state;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Token token = (Token)o;
+
+            return start == token.start && state == token.state && type == token.type;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * start + state) + (type != null ? type.hashCode() : 0);
+        }
+
+        @Override
+        public String toString() {
+            return type + "@" + start + "[" + Integer.toHexString(state) + "]";
+        }
+    }
+}
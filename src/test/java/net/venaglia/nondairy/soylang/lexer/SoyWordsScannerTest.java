@@ -0,0 +1,85 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.lexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.lang.cacheBuilder.WordOccurrence;
+import com.intellij.util.Processor;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class SoyWordsScannerTest {
+
+    private static final String SOURCE =
+            "{namespace my.app.ui}\n" +
+            "\n" +
+            "/** Renders a greeting. */\n" +
+            "{template .hello}\n" +
+            "  <div class=\"greeting\">{call my.app.ui.name}{param who: $person.name /}{/call}</div>\n" +
+            "{/template}\n";
+
+    @Test
+    public void testDottedNamesAreSplit() throws Exception {
+        List<String> code = scan(WordOccurrence.Kind.CODE);
+        assertTrue(code.contains("my"));
+        assertTrue(code.contains("app"));
+        assertTrue(code.contains("ui"));
+        assertTrue(code.contains("hello"));
+        assertTrue(code.contains("person"));
+        assertFalse(code.contains("my.app.ui"));
+        assertFalse(code.contains("$person"));
+        assertFalse(code.contains("greeting")); // markup is not scanned
+    }
+
+    @Test
+    public void testComments() throws Exception {
+        assertTrue(scan(WordOccurrence.Kind.COMMENTS).contains("greeting"));
+    }
+
+    @Test
+    public void testStopsWhenRequested() throws Exception {
+        final List<String> words = new ArrayList<String>();
+        new SoyWordsScanner().processWords(SOURCE, new Processor<WordOccurrence>() {
+            @Override
+            public boolean process(WordOccurrence occurrence) {
+                words.add(occurrence.getBaseText().subSequence(occurrence.getStart(), occurrence.getEnd()).toString());
+                return false;
+            }
+        });
+        assertEquals(1, words.size());
+    }
+
+    private List<String> scan(final WordOccurrence.Kind kind) {
+        final List<String> words = new ArrayList<String>();
+        new SoyWordsScanner().processWords(SOURCE, new Processor<WordOccurrence>() {
+            @Override
+            public boolean process(WordOccurrence occurrence) {
+                if (occurrence.getKind() == kind) {
+                    words.add(occurrence.getBaseText().subSequence(occurrence.getStart(), occurrence.getEnd()).toString());
+                }
+                return true;
+            }
+        });
+        return words;
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.lexer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.lang.ASTNode;
+import com.intellij.lang.PsiBuilder;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiErrorElement;
+import com.intellij.psi.tree.IElementType;
+import com.intellij.psi.tree.TokenSet;
+import net.venaglia.nondairy.SoyTestUtil;
+import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.soylang.SoyLanguage;
+import net.venaglia.nondairy.soylang.SoyTemplateBlockType;
+import net.venaglia.nondairy.soylang.elements.TreeBuildingTokenSource;
+import net.venaglia.nondairy.soylang.elements.factory.SoyPsiElementFactory;
+import net.venaglia.nondairy.soylang.parser.SoyStructureParser;
+import net.venaglia.nondairy.util.SourceTuple;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks, for every template body in the test sources, that expanding the
+ * body on its own gives what parsing the whole file eagerly does. The body
+ * is lexed the way {@link net.venaglia.nondairy.soylang.SoyTemplateBodyType}
+ * lexes it: from the state {@link SoyLexer#getStateAt(CharSequence, int)}
+ * finds within its parent. Likewise checks that reparsing a whole template
+ * on its own, as is done after an edit confined to it, gives what parsing
+ * the whole file does.
+ */
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class TemplateBodyRelexTest {
+
+    private static final String[] CORPUS = {
+            "aliases.soy",
+            "attributes-kind.soy",
+            "css.soy",
+            "delegates-call.soy",
+            "delegates-default.soy",
+            "delegates-override.soy",
+            "delegates-simple.soy",
+            "edge-cases.soy",
+            "error-cases.soy",
+            "example.soy",
+            "features.soy",
+            "innerParams.soy",
+            "innerParamsComplex.soy",
+            "innerParamsComplex2.soy",
+            "innerParamsNullable.soy",
+            "let.soy",
+            "library.soy",
+            "minimal.soy",
+            "render1.soy",
+            "render2.soy",
+            "render3.soy"
+    };
+
+    @Test
+    public void testRelexedBodiesMatchFullLex() throws Exception {
+        int bodies = 0;
+        for (String name : CORPUS) {
+            String source = SoyTestUtil.getTestSourceBuffer(name);
+            List<String> full = describeTokens(source, 0, 0);
+            for (ASTNode body : findNodes(new SourceTuple(name, source).root, SoyElement.template_body)) {
+                int start = body.getStartOffset();
+                int end = start + body.getTextLength();
+                List<String> expected = new ArrayList<String>();
+                for (String token : full) {
+                    int offset = offsetOf(token);
+                    if (offset >= start && offset < end) {
+                        expected.add(token);
+                    }
+                }
+                List<String> relexed = describeTokens(body.getChars(), getInitialState(body), start);
+                assertEquals(name + " body at offset " + start, expected, relexed);
+                bodies++;
+            }
+        }
+        assertTrue("no template bodies found", bodies > 0);
+    }
+
+    @Test
+    public void testExpandedBodiesMatchEagerParse() throws Exception {
+        int bodies = 0;
+        for (String name : CORPUS) {
+            SourceTuple tuple = new SourceTuple(name, SoyTestUtil.getTestSourceBuffer(name));
+            for (ASTNode body : findNodes(tuple.root, SoyElement.template_body)) {
+                CharSequence chars = body.getChars();
+                List<SoySymbol> symbols = new ArrayList<SoySymbol>();
+                SoyLexer lexer = new SoyLexer(false, false);
+                lexer.start(chars, 0, chars.length(), getInitialState(body));
+                while (lexer.getTokenType() != null) {
+                    IElementType type = lexer.getTokenType();
+                    if (!SoyToken.WHITESPACE_TOKENS.contains(type)) {
+                        int length = lexer.getTokenEnd() - lexer.getTokenStart();
+                        symbols.add(new SoySymbol(type, lexer.getState(), 0, 0, lexer.getTokenStart(), length));
+                    }
+                    lexer.advance();
+                }
+                TreeBuildingTokenSource tokenSource = new TreeBuildingTokenSource(chars, symbols.iterator());
+                PsiBuilder.Marker marker = tokenSource.mark("_body_");
+                new SoyStructureParser(tokenSource).parseTemplateBody();
+                assertTrue(tokenSource.eof());
+                marker.done(SoyElement.template_body);
+                PsiElement expanded = tokenSource.buildNode(tuple.psi, SoyPsiElementFactory.getInstance());
+                assertEquals(name + " body at offset " + body.getStartOffset(),
+                             describeTree(body.getPsi()),
+                             describeTree(expanded));
+                bodies++;
+            }
+        }
+        assertTrue("no template bodies found", bodies > 0);
+    }
+
+    @Test
+    public void testReparsedBlocksMatchFullParse() throws Exception {
+        int blocks = 0;
+        for (String name : CORPUS) {
+            SourceTuple tuple = new SourceTuple(name, SoyTestUtil.getTestSourceBuffer(name));
+            for (ASTNode block : findNodes(tuple.root, SoyElement.template_tag_pair, SoyElement.deltemplate_tag_pair)) {
+                SoyTemplateBlockType type = (SoyTemplateBlockType)block.getElementType();
+                CharSequence chars = block.getChars();
+                if (!type.isParsable(chars, SoyLanguage.INSTANCE, null)) {
+                    continue; // the whole file would be reparsed instead
+                }
+                assertNotNull(type.createNode(chars));
+                List<SoySymbol> symbols = new ArrayList<SoySymbol>();
+                SoyLexer lexer = new SoyLexer(false, false);
+                lexer.start(chars, 0, chars.length(), 0);
+                while (lexer.getTokenType() != null) {
+                    IElementType tokenType = lexer.getTokenType();
+                    if (!SoyToken.WHITESPACE_TOKENS.contains(tokenType)) {
+                        int length = lexer.getTokenEnd() - lexer.getTokenStart();
+                        symbols.add(new SoySymbol(tokenType, lexer.getState(), 0, 0, lexer.getTokenStart(), length));
+                    }
+                    lexer.advance();
+                }
+                TreeBuildingTokenSource tokenSource = new TreeBuildingTokenSource(chars, symbols.iterator());
+                PsiBuilder.Marker marker = tokenSource.mark("_block_");
+                new SoyStructureParser(tokenSource).parseTemplateBlock();
+                assertTrue(tokenSource.eof());
+                marker.done(type);
+                PsiElement reparsed = tokenSource.buildNode(tuple.psi, SoyPsiElementFactory.getInstance());
+                assertEquals(name + " template at offset " + block.getStartOffset(),
+                             describeTree(block.getPsi()),
+                             describeTree(reparsed));
+                blocks++;
+            }
+        }
+        assertTrue("no templates found", blocks > 0);
+    }
+
+    /**
+     * Finds the lexer state at the start of a body, as
+     * {@link net.venaglia.nondairy.soylang.SoyTemplateBodyType} does.
+     */
+    private static int getInitialState(ASTNode body) {
+        ASTNode parent = body.getTreeParent();
+        return SoyLexer.getStateAt(parent.getChars(), body.getStartOffset() - parent.getStartOffset());
+    }
+
+    private static List<ASTNode> findNodes(PsiElement root, IElementType... types) {
+        List<ASTNode> nodes = new ArrayList<ASTNode>();
+        findNodes(root, TokenSet.create(types), nodes);
+        return nodes;
+    }
+
+    private static void findNodes(PsiElement element, TokenSet types, List<ASTNode> nodes) {
+        ASTNode node = element.getNode();
+        if (node != null && types.contains(node.getElementType())) {
+            nodes.add(node);
+            return;
+        }
+        for (PsiElement child : element.getChildren()) {
+            findNodes(child, types, nodes);
+        }
+    }
+
+    private static List<String> describeTokens(CharSequence buffer, int initialState, int shift) {
+        SoyLexer lexer = new SoyLexer(false, false);
+        lexer.start(buffer, 0, buffer.length(), initialState);
+        List<String> tokens = new ArrayList<String>();
+        while (lexer.getTokenType() != null) {
+            tokens.add(lexer.getTokenType() + "@" + (lexer.getTokenStart() + shift));
+            lexer.advance();
+        }
+        return tokens;
+    }
+
+    private static int offsetOf(String token) {
+        return Integer.parseInt(token.substring(token.lastIndexOf('@') + 1));
+    }
+
+    private static String describeTree(PsiElement element) {
+        StringBuilder buffer = new StringBuilder(4096);
+        describeTree(element, "", buffer);
+        return buffer.toString();
+    }
+
+    private static void describeTree(PsiElement element, String indent, StringBuilder buffer) {
+        buffer.append(indent).append(element.getNode().getElementType());
+        if (element instanceof PsiErrorElement) {
+            buffer.append(" error: ").append(((PsiErrorElement)element).getErrorDescription());
+        }
+        buffer.append(" ").append(SoyTestUtil.toSource(element.getText())).append("\n");
+        for (PsiElement child : element.getChildren()) {
+            describeTree(child, indent + "    ", buffer);
+        }
+    }
+}
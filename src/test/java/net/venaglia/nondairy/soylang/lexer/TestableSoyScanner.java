@@ -119,6 +119,11 @@ public class TestableSoyScanner extends _SoyLexer implements Iterable<SoySymbol>
 
     private SoySymbol lastSymbol = null;
 
+    @Override
+    boolean capturePayloads() {
+        return true;
+    }
+
     IElementType symbol(IElementType type) {
         IElementType symbolType = type instanceof SoyToken || dummyTokenForNonSoyTokens == null ? type : dummyTokenForNonSoyTokens;
         lastSymbol = symbolType instanceof SoyToken
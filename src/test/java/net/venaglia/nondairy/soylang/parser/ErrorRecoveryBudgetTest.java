@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiErrorElement;
+import net.venaglia.nondairy.SoyTestUtil;
+import net.venaglia.nondairy.i18n.I18N;
+import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.soylang.parser.permutations.PermutationProducer;
+import net.venaglia.nondairy.soylang.parser.permutations.Permutator;
+import net.venaglia.nondairy.soylang.parser.permutations.impl.ASyncPermutator;
+import net.venaglia.nondairy.soylang.parser.permutations.impl.SingleSymbolOmittingPermutator;
+import net.venaglia.nondairy.soylang.parser.permutations.impl.TemplatesOneCharacterAtATime;
+import net.venaglia.nondairy.util.SourceTuple;
+import org.jetbrains.annotations.NonNls;
+import org.junit.Test;
+
+import java.util.Collection;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Asserts that malformed input is parsed into a tree of bounded depth, with
+ * markers and tree nodes that grow no faster than the input does.
+ */
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class ErrorRecoveryBudgetTest {
+
+    /** Markers created per token, in the worst case tolerated */
+    private static final int MAX_MARKERS_PER_TOKEN = 8;
+
+    /** Tree depth allowed beyond the open tag limit, for the file, template and expressions */
+    private static final int DEPTH_ALLOWANCE = 24;
+
+    private static String repeat(String text, int count) {
+        StringBuilder buffer = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) {
+            buffer.append(text);
+        }
+        return buffer.toString();
+    }
+
+    private static String template(String name, String body) {
+        return "{template ." + name + "}\n" + body + "\n{/template}\n";
+    }
+
+    private static int depth(PsiElement element) {
+        int depth = 0;
+        for (PsiElement child : element.getChildren()) {
+            depth = Math.max(depth, depth(child));
+        }
+        return depth + 1;
+    }
+
+    private static int count(PsiElement element) {
+        int count = 1;
+        for (PsiElement child : element.getChildren()) {
+            count += count(child);
+        }
+        return count;
+    }
+
+    private static PsiElement parse(@NonNls String source) {
+        return new SourceTuple("budget.soy", source).root;
+    }
+
+    private static void assertLinear(String label, String small, String large, int ratio) {
+        int smallCount = count(parse(small));
+        int largeCount = count(parse(large));
+        assertTrue(String.format("%s: %d nodes for 1x input, %d nodes for %dx input", label, smallCount, largeCount, ratio),
+                   largeCount <= smallCount * ratio + smallCount / 2);
+    }
+
+    @Test
+    public void testUnclosedTagsDepthIsBounded() throws Exception {
+        int n = SoyStructureParser.MAX_OPEN_TAGS * 4;
+        String source = "{namespace budget}\n" +
+                        template("t", repeat("{if $x}\n", n) + repeat("{/if}\n", n));
+        int depth = depth(parse(source));
+        assertTrue("tree depth " + depth, depth <= SoyStructureParser.MAX_OPEN_TAGS + DEPTH_ALLOWANCE);
+    }
+
+    @Test
+    public void testUnmatchedCloseTagsAreLinear() throws Exception {
+        String small = "{namespace budget}\n" +
+                       template("t", repeat("{if $x}\n", 200) + repeat("{/foreach}\n", 200));
+        String large = "{namespace budget}\n" +
+                       template("t", repeat("{if $x}\n", 800) + repeat("{/foreach}\n", 800));
+        assertLinear("unmatched close tags", small, large, 4);
+    }
+
+    @Test
+    public void testStrayDoubleBraces() throws Exception {
+        String body = "{{if $x\n" + repeat("  <b> text , ) ] : . </b>\n", 50);
+        String small = "{namespace budget}\n" + template("t", body) + template("u", "hello");
+        String large = "{namespace budget}\n" + template("t", repeat(body, 4)) + template("u", "hello");
+        assertLinear("stray double braces", small, large, 4);
+    }
+
+    @Test
+    public void testErrorBudgetResumesAtNextTemplate() throws Exception {
+        String garbage = repeat("{/if}{/foreach}{else}\n", SoyStructureParser.ERROR_BUDGET);
+        String doc = "/**\n * @param y\n */\n";
+        String source = "{namespace budget}\n" + template("t", garbage) + doc + template("u", "{if $y}hi{/if}");
+        List<PsiElement> pairs = new LinkedList<PsiElement>();
+        findTemplatePairs(parse(source), pairs);
+        assertEquals(2, pairs.size());
+        PsiElement last = pairs.get(1);
+        assertTrue(last.getText(), last.getText().startsWith("{template .u}"));
+        assertTrue("depth of the template after the errors", depth(last) < DEPTH_ALLOWANCE);
+        PsiElement documented = last.getParent();
+        assertEquals(SoyElement.tag_and_doc_comment, documented.getNode().getElementType());
+        assertTrue(documented.getText(), documented.getText().startsWith(doc));
+    }
+
+    @Test
+    public void testErrorBudgetIsRenewedAtCloseTag() throws Exception {
+        // errors between templates do not draw on the budget spent by the template before them
+        String garbage = repeat("{/if}", SoyStructureParser.ERROR_BUDGET - 1);
+        String source = "{namespace budget}\n" + template("t", garbage) + "{/if}{/if}\n" + template("u", "hi");
+        assertEquals(0, countErrors(parse(source), I18N.msg("syntax.error.too.many.errors")));
+    }
+
+    private static int countErrors(PsiElement element, String message) {
+        int count = element instanceof PsiErrorElement && message.equals(((PsiErrorElement)element).getErrorDescription()) ? 1 : 0;
+        for (PsiElement child : element.getChildren()) {
+            count += countErrors(child, message);
+        }
+        return count;
+    }
+
+    private static void findTemplatePairs(PsiElement element, List<PsiElement> pairs) {
+        if (element.getNode() != null && element.getNode().getElementType() == SoyElement.template_tag_pair) {
+            pairs.add(element);
+            return;
+        }
+        for (PsiElement child : element.getChildren()) {
+            findTemplatePairs(child, pairs);
+        }
+    }
+
+    @Test
+    public void testPermutedErrorCases() throws Exception {
+        testPermutations("error-cases.soy");
+    }
+
+    @Test
+    public void testPermutedEdgeCases() throws Exception {
+        testPermutations("edge-cases.soy");
+    }
+
+    private void testPermutations(String resourceName) throws Exception {
+        Collection<Permutator> permutators = new LinkedList<Permutator>();
+        permutators.add(new SingleSymbolOmittingPermutator());
+        permutators.add(new TemplatesOneCharacterAtATime());
+        ASyncPermutator producer = new ASyncPermutator(permutators, resourceName);
+        producer.permutate(SoyTestUtil.getTestSourceBuffer(resourceName), "YYINITIAL");
+        int permutations = 0;
+        while (producer.hasNext()) {
+            producer.next();
+            assertBounded(producer);
+            permutations++;
+        }
+        assertTrue("no permutations of " + resourceName, permutations > 0);
+    }
+
+    private void assertBounded(PermutationProducer producer) {
+        MockTokenSource tokenSource = new MockTokenSource(producer.getModifiedSource(), producer.getIterator());
+        new SoyStructureParser(tokenSource).parse();
+        assertTrue(tokenSource.eof());
+        tokenSource.assertAllMarkersAreClosed();
+        int tokens = Math.max(tokenSource.index(), 1);
+        String where = producer.getPermutatorName() + " - " + producer.getSeq();
+        assertTrue(String.format("%s: %d markers for %d tokens", where, tokenSource.getMarkerCount(), tokens),
+                   tokenSource.getMarkerCount() <= tokens * MAX_MARKERS_PER_TOKEN);
+        assertTrue(String.format("%s: %d markers open at once", where, tokenSource.getMaxOpenMarkerCount()),
+                   tokenSource.getMaxOpenMarkerCount() <= SoyStructureParser.MAX_OPEN_TAGS + DEPTH_ALLOWANCE);
+    }
+}
@@ -45,6 +45,7 @@ public class MockTokenSource extends TokenSource {
     
     private final CharSequence source;
     private final Iterator<SoySymbol> iterator;
+    private final Deque<SoySymbol> lookAheadBuffer = new LinkedList<SoySymbol>();
     private final Set<Object> distinctEventsSinceLastAdvance = new LinkedHashSet<Object>();
 
     private SoySymbol current;
@@ -58,6 +59,9 @@ public class MockTokenSource extends TokenSource {
     private EventDelegate eventDelegate = null;
     private MockMarker firstProducedMarker;
     private MockMarker lastProducedMarker;
+    private int markerCount = 0;
+    private int openMarkerCount = 0;
+    private int maxOpenMarkerCount = 0;
 
     public MockTokenSource(CharSequence source, Iterator<SoySymbol> symbolIterator) {
         this.source = source;
@@ -113,6 +117,25 @@ public class MockTokenSource extends TokenSource {
         return previous == null ? null : previous.getToken();
     }
 
+    @Override
+    public IElementType lookAhead(int steps) {
+        while (lookAheadBuffer.size() < steps && iterator.hasNext()) {
+            lookAheadBuffer.add(iterator.next());
+        }
+        if (lookAheadBuffer.size() < steps) {
+            return null;
+        }
+        Iterator<SoySymbol> i = lookAheadBuffer.iterator();
+        for (int j = 1; j < steps; j++) {
+            i.next();
+        }
+        return i.next().getToken();
+    }
+
+    private boolean hasNext() {
+        return !lookAheadBuffer.isEmpty() || iterator.hasNext();
+    }
+
     @Override
     public String text() {
         textReadSinceLastAdvance++;
@@ -128,7 +151,7 @@ public class MockTokenSource extends TokenSource {
         eofCountSinceLastAdvance++;
         distinctEventsSinceLastAdvance.add(new MockParseMetaToken("eof()", this));
         testForEndlessLoop();
-        return current == null && !iterator.hasNext();
+        return current == null && !hasNext();
     }
 
     private void countAdvance() {
@@ -143,9 +166,9 @@ public class MockTokenSource extends TokenSource {
     @Override
     public void advance() {
         if (current != null) event(current.getToken());
-        if (iterator.hasNext()) {
+        if (hasNext()) {
             previous = current;
-            current = iterator.next();
+            current = lookAheadBuffer.isEmpty() ? iterator.next() : lookAheadBuffer.poll();
             countAdvance();
         } else {
             if (!finished) {
@@ -176,6 +199,27 @@ public class MockTokenSource extends TokenSource {
         return buffer;
     }
 
+    /**
+     * @return The number of markers created, including those preceding
+     *     others.
+     */
+    public int getMarkerCount() {
+        return markerCount;
+    }
+
+    /**
+     * @return The most markers that were open at the same time.
+     */
+    public int getMaxOpenMarkerCount() {
+        return maxOpenMarkerCount;
+    }
+
+    private void countMarker() {
+        markerCount++;
+        openMarkerCount++;
+        maxOpenMarkerCount = Math.max(maxOpenMarkerCount, openMarkerCount);
+    }
+
     public void assertAllMarkersAreClosed() {
         StringBuilder buffer = new StringBuilder();
         int unclosedMarkers = 0;
@@ -210,6 +254,7 @@ public class MockTokenSource extends TokenSource {
 
         public MockMarker(int startSeq, SoySymbol symbol) {
             caller = get2Back();
+            countMarker();
             this.startSeq = startSeq;
             this.symbol = symbol;
             if (firstProducedMarker == null) {
@@ -224,6 +269,7 @@ public class MockTokenSource extends TokenSource {
 
         private MockMarker(@NotNull MockMarker precede) {
             caller = get2Back();
+            countMarker();
             startSeq = precede.startSeq;
             symbol = precede.symbol;
             next = precede;
@@ -246,6 +292,7 @@ public class MockTokenSource extends TokenSource {
         public void drop() {
             Assert.assertTrue(open);
             open = false;
+            openMarkerCount--;
             if (prev != null && next != null) {
                 prev.next = next;
                 next.prev = prev;
@@ -286,6 +333,7 @@ public class MockTokenSource extends TokenSource {
             Assert.assertTrue(message, unclosedMarkers == 0);
 
             Assert.assertTrue(action + " that was already closed or discarded at " + MockTokenSource.this, open);
+            openMarkerCount--;
 //            Assert.assertTrue("Closing a marker that contains no tokens at " + MockTokenSource.this, getTokenCount() > 0);
             open = false;
         }
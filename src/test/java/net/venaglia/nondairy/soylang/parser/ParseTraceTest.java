@@ -0,0 +1,67 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.parser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.venaglia.nondairy.soylang.SoyElement;
+import net.venaglia.nondairy.soylang.lexer.SoyToken;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class ParseTraceTest {
+
+    @After
+    public void tearDown() throws Exception {
+        ParseTrace.reset();
+    }
+
+    @Test
+    public void testRingBuffer() throws Exception {
+        ParseTrace.reset();
+        ParseTrace trace = new ParseTrace(1, "soy_file a.b", 100);
+        int site = ParseTrace.getSiteId("template_tag");
+        assertEquals(site, ParseTrace.getSiteId("template_tag"));
+        int total = ParseTrace.CAPACITY + 10;
+        for (int i = 0; i < total - 1; i++) {
+            trace.record(ParseTrace.ADVANCE, SoyToken.TAG_LBRACE, i, 0, -1);
+        }
+        int marker = trace.nextMarkerId();
+        trace.record(ParseTrace.DONE, SoyElement.template_tag, total - 1, marker, site);
+        trace.finish();
+
+        assertEquals(total, trace.getEventCount());
+        List<ParseTrace> traces = ParseTrace.getTraces();
+        assertEquals(1, traces.size());
+        assertSame(trace, traces.get(0));
+
+        String report = ParseTrace.formatReport(2);
+        assertTrue(report, report.contains("parse #1: soy_file a.b, 100 chars"));
+        assertTrue(report, report.matches("(?s).*\\bdone\\s+" + (total - 1) + "\\s+" + marker + "\\s+template_tag\\s+template_tag\\..*"));
+        assertTrue(report, report.contains("advance"));
+        assertFalse(report, report.contains(" " + (total - 3) + " "));
+
+        ParseTrace.reset();
+        assertTrue(ParseTrace.getTraces().isEmpty());
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+package net.venaglia.nondairy.soylang.parser;
+
+import static org.junit.Assert.assertTrue;
+
+import com.intellij.psi.PsiElement;
+import net.venaglia.nondairy.Benchmark;
+import net.venaglia.nondairy.SoyTestUtil;
+import net.venaglia.nondairy.soylang.elements.TreeBuildingTokenSource;
+import net.venaglia.nondairy.soylang.lexer.SoySymbol;
+import net.venaglia.nondairy.util.SourceTuple;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.List;
+
+/**
+ * Measures the throughput of the lexer and parser, run headless against the
+ * mock environment, over each file in testSources and over the whole corpus
+ * concatenated 1, 10 and 100 times. The time spent per token must not grow
+ * by more than {@link #MAX_SLOWDOWN} as the input grows tenfold.
+ *
+ * Timings vary with the machine and its load, so this only runs with the
+ * benchmark task. {@link ParserThroughputTest} checks the same scaling in
+ * the test task, by counting work rather than timing it.
+ */
+@Category(Benchmark.class)
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class ParserThroughputBenchmark {
+
+    /** Tolerated growth in time per token, when the input grows tenfold */
+    private static final double MAX_SLOWDOWN = 3.0;
+
+    /** Each measurement is the fastest of this many runs, after one warm up run */
+    private static final int RUNS = 3;
+
+    private static String[] names;
+    private static String corpus;
+
+    @BeforeClass
+    public static void loadCorpus() throws Exception {
+        names = ParserThroughputTest.listCorpus();
+        corpus = ParserThroughputTest.concatenate(names);
+    }
+
+    private static void parse(CharSequence source, List<SoySymbol> symbols) {
+        TreeBuildingTokenSource tokenSource = new TreeBuildingTokenSource(source, symbols.iterator());
+        new SoyStructureParser(tokenSource).parse();
+        assertTrue(tokenSource.eof());
+    }
+
+    private static int countNodes(PsiElement element) {
+        int count = 1;
+        for (PsiElement child : element.getChildren()) {
+            count += countNodes(child);
+        }
+        return count;
+    }
+
+    /**
+     * The time taken to lex, and then to parse, the specified source.
+     */
+    private static class Measurement {
+
+        private final String label;
+        private final int chars;
+
+        private int tokens;
+        private long lexNanos = Long.MAX_VALUE;
+        private long parseNanos = Long.MAX_VALUE;
+
+        private Measurement(String label, CharSequence source) throws Exception {
+            this.label = label;
+            this.chars = source.length();
+            for (int run = -1; run < RUNS; run++) {
+                long start = System.nanoTime();
+                List<SoySymbol> symbols = ParserThroughputTest.lex(source);
+                long lexed = System.nanoTime();
+                parse(source, symbols);
+                long parsed = System.nanoTime();
+                if (run >= 0) { // the first run warms up
+                    lexNanos = Math.min(lexNanos, lexed - start);
+                    parseNanos = Math.min(parseNanos, parsed - lexed);
+                }
+                tokens = symbols.size();
+            }
+        }
+
+        private double lexNanosPerToken() {
+            return (double)lexNanos / Math.max(tokens, 1);
+        }
+
+        private double parseNanosPerToken() {
+            return (double)parseNanos / Math.max(tokens, 1);
+        }
+
+        private static double perSecond(int count, long nanos) {
+            return count * 1.0e9 / Math.max(nanos, 1L);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %9d chars %8d tokens  lex %,12.0f tokens/s  parse %,12.0f tokens/s",
+                                 label,
+                                 chars,
+                                 tokens,
+                                 perSecond(tokens, lexNanos),
+                                 perSecond(tokens, parseNanos));
+        }
+    }
+
+    @Test
+    public void testCorpusThroughput() throws Exception {
+        for (String name : names) {
+            Measurement measurement = new Measurement(name, SoyTestUtil.getTestSourceBuffer(name));
+            System.out.println(measurement);
+            assertTrue(name, measurement.tokens > 0);
+        }
+    }
+
+    @Test
+    public void testTreeBuildThroughput() throws Exception {
+        for (int scale : new int[]{ 1, 10 }) {
+            String source = ParserThroughputTest.repeat(corpus, scale);
+            long best = Long.MAX_VALUE;
+            int nodes = 0;
+            for (int run = -1; run < RUNS; run++) {
+                long start = System.nanoTime();
+                PsiElement root = new SourceTuple("corpus-" + scale + "x.soy", source).root;
+                long elapsed = System.nanoTime() - start;
+                if (run >= 0) {
+                    best = Math.min(best, elapsed);
+                }
+                nodes = countNodes(root);
+            }
+            assertTrue(nodes > 1);
+            System.out.println(String.format("corpus %3dx tree build: %9d nodes %,12.0f nodes/s",
+                                             scale,
+                                             nodes,
+                                             nodes * 1.0e9 / Math.max(best, 1L)));
+        }
+    }
+
+    @Test
+    public void testLinearScaling() throws Exception {
+        Measurement[] measurements = new Measurement[3];
+        int scale = 1;
+        for (int i = 0; i < measurements.length; i++, scale *= 10) {
+            measurements[i] = new Measurement("corpus " + scale + "x", ParserThroughputTest.repeat(corpus, scale));
+            System.out.println(measurements[i]);
+        }
+        for (int i = 1; i < measurements.length; i++) {
+            Measurement smaller = measurements[i - 1];
+            Measurement larger = measurements[i];
+            assertTrue(larger.tokens >= smaller.tokens * 10);
+            assertScaling("lexer", smaller, larger, smaller.lexNanosPerToken(), larger.lexNanosPerToken());
+            assertScaling("parser", smaller, larger, smaller.parseNanosPerToken(), larger.parseNanosPerToken());
+        }
+    }
+
+    private void assertScaling(String what,
+                               Measurement smaller,
+                               Measurement larger,
+                               double smallerNanosPerToken,
+                               double largerNanosPerToken) {
+        double slowdown = largerNanosPerToken / smallerNanosPerToken;
+        String message = String.format("%s time per token grew %.1fx from %s to %s: %.0f ns vs %.0f ns",
+                                       what,
+                                       slowdown,
+                                       smaller.label,
+                                       larger.label,
+                                       smallerNanosPerToken,
+                                       largerNanosPerToken);
+        System.out.println(message);
+        assertTrue(message, slowdown <= MAX_SLOWDOWN);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010 - 2013 Ed Venaglia
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License");
+ *    you may not use this file except in compliance with the License.
+ *    You may obtain a copy of the License at
+ *
+ *        http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS,
+ *    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *    See the License for the specific language governing permissions and
+ *    limitations under the License.
+ */
+
+
+package net.venaglia.nondairy.soylang.parser;
+
+import static org.junit.Assert.assertTrue;
+
+import net.venaglia.nondairy.SoyTestUtil;
+import net.venaglia.nondairy.soylang.lexer.SoyScannerTest;
+import net.venaglia.nondairy.soylang.lexer.SoySymbol;
+import net.venaglia.nondairy.soylang.lexer.SoyToken;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Checks that the work done by the lexer and parser grows linearly with
+ * their input, over the files in testSources concatenated 1 and 10 times.
+ * Work is counted rather than timed, as tokens per character of input and
+ * markers per token, so the result does not depend on the machine. A parser
+ * that does more than linear work on its input fails here long before it is
+ * noticed in the IDE. {@link ParserThroughputBenchmark} times the same
+ * inputs.
+ */
+@SuppressWarnings({ "HardCodedStringLiteral" })
+public class ParserThroughputTest {
+
+    /** Tolerated growth in tokens per char, or markers per token, when the input grows tenfold */
+    private static final double MAX_GROWTH = 1.1;
+
+    private static String corpus;
+
+    @BeforeClass
+    public static void loadCorpus() throws Exception {
+        corpus = concatenate(listCorpus());
+    }
+
+    static String[] listCorpus() throws Exception {
+        File dir = new File(SoyTestUtil.class.getResource("/testSources").toURI());
+        List<String> soyFiles = new ArrayList<String>();
+        for (String name : dir.list()) {
+            if (name.endsWith(".soy")) {
+                soyFiles.add(name);
+            }
+        }
+        String[] names = soyFiles.toArray(new String[soyFiles.size()]);
+        Arrays.sort(names);
+        return names;
+    }
+
+    static String concatenate(String[] names) throws Exception {
+        StringBuilder buffer = new StringBuilder(65536);
+        for (String name : names) {
+            buffer.append(SoyTestUtil.getTestSourceBuffer(name)).append('\n');
+        }
+        return buffer.toString();
+    }
+
+    static String repeat(String text, int count) {
+        StringBuilder buffer = new StringBuilder(text.length() * count);
+        for (int i = 0; i < count; i++) {
+            buffer.append(text);
+        }
+        return buffer.toString();
+    }
+
+    static List<SoySymbol> lex(CharSequence source) throws Exception {
+        List<SoySymbol> symbols = new ArrayList<SoySymbol>(source.length() / 4);
+        for (Iterator<SoySymbol> i = SoyScannerTest.buildScanner(source, "YYINITIAL").iterator(); i.hasNext(); ) {
+            SoySymbol symbol = i.next();
+            if (!SoyToken.WHITESPACE_TOKENS.contains(symbol.getToken())) {
+                symbols.add(symbol);
+            }
+        }
+        return symbols;
+    }
+
+    /**
+     * The tokens lexed from, and the markers created parsing, a source.
+     */
+    private static class Work {
+
+        private final String label;
+        private final int chars;
+        private final int tokens;
+        private final int markers;
+
+        private Work(String label, CharSequence source) throws Exception {
+            List<SoySymbol> symbols = lex(source);
+            MockTokenSource tokenSource = new MockTokenSource(source, symbols.iterator());
+            new SoyStructureParser(tokenSource).parse();
+            assertTrue(label, tokenSource.eof());
+            tokenSource.assertAllMarkersAreClosed();
+            this.label = label;
+            this.chars = source.length();
+            this.tokens = symbols.size();
+            this.markers = tokenSource.getMarkerCount();
+        }
+
+        private double tokensPerChar() {
+            return (double)tokens / Math.max(chars, 1);
+        }
+
+        private double markersPerToken() {
+            return (double)markers / Math.max(tokens, 1);
+        }
+    }
+
+    @Test
+    public void testLinearScaling() throws Exception {
+        Work smaller = new Work("corpus 1x", corpus);
+        Work larger = new Work("corpus 10x", repeat(corpus, 10));
+        assertTrue("no tokens in the corpus", smaller.tokens > 0);
+        assertGrowth("tokens per char", smaller, larger, smaller.tokensPerChar(), larger.tokensPerChar());
+        assertGrowth("markers per token", smaller, larger, smaller.markersPerToken(), larger.markersPerToken());
+    }
+
+    private void assertGrowth(String what, Work smaller, Work larger, double smallerRatio, double largerRatio) {
+        String message = String.format("%s grew from %.3f for %s to %.3f for %s",
+                                       what,
+                                       smallerRatio,
+                                       smaller.label,
+                                       largerRatio,
+                                       larger.label);
+        assertTrue(message, largerRatio <= smallerRatio * MAX_GROWTH);
+    }
+}